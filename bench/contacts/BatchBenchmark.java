@@ -0,0 +1,102 @@
+package contacts;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares changing the phone number of every contact one by one with
+ * changing them all in one batch. The time is for every contact.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BatchBenchmark {
+    /** The number of contacts. */
+    @Param({"10000", "1000000", "10000000"})
+    public int size;
+
+    /** The store holding the contacts. */
+    @Param("heap")
+    public String store;
+
+    /** The SSNs of the contacts. */
+    private String[] ssns;
+
+    /** The number of the iteration, so every one sets new numbers. */
+    private int iteration;
+
+    /**
+     * Loads the contacts.
+     *
+     * @throws IOException If the contacts file can't be written.
+     */
+    @Setup(Level.Trial)
+    public void load() throws IOException {
+        BenchmarkContacts.load(size, store);
+        ssns = new String[size];
+        for (int i = 0; i < size; i++) {
+            ssns[i] = ContactsGenerator.ssn(i);
+        }
+    }
+
+    /** Picks the phone numbers to set in the next iteration. */
+    @Setup(Level.Iteration)
+    public void next() {
+        iteration++;
+    }
+
+    /** Closes the journal of the contacts. */
+    @TearDown(Level.Trial)
+    public void close() {
+        ContactsSerializer.saveContactsToFile();
+    }
+
+    /**
+     * Changes the phone number of every contact one by one.
+     *
+     * @return The number of contacts changed.
+     */
+    @Benchmark
+    public long single() {
+        final String prefix = iteration % 2 == 0 ? "040" : "050";
+        long updated = 0;
+        for (int i = 0; i < size; i++) {
+            updated += ContactsManager.updateDetail(ssns[i],
+                ContactField.PHONE_NUMBER, prefix + (1_000_000 + i)) == null
+                ? 0 : 1;
+        }
+        return updated;
+    }
+
+    /**
+     * Changes the phone number of every contact in one batch.
+     *
+     * @return The number of contacts changed.
+     */
+    @Benchmark
+    public int batch() {
+        final String prefix = iteration % 2 == 0 ? "040" : "050";
+        final ContactsBatch batch = new ContactsBatch();
+        for (int i = 0; i < size; i++) {
+            batch.update(ssns[i], ContactField.PHONE_NUMBER,
+                prefix + (1_000_000 + i));
+        }
+        return ContactsManager.applyBatch(batch).getApplied();
+    }
+}
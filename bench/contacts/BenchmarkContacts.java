@@ -0,0 +1,97 @@
+package contacts;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * The contacts the benchmarks run on. Contacts files are generated with
+ * the deterministic {@link ContactsGenerator}, so every run loads the
+ * same contacts, and kept between runs in the directory set with
+ * {@code -Dbench.dir}, by default {@code contacts-bench} in the
+ * temporary directory, because writing ten million contacts takes a
+ * while. Delete the directory after changing the file format.
+ */
+final class BenchmarkContacts {
+    /** The number of different inputs cycled through by a benchmark. */
+    static final int INPUTS = 1024;
+
+    /** The seed of the random inputs, so that runs are comparable. */
+    static final long SEED = 42;
+
+    /** A rough upper bound of the heap used by one contact. */
+    private static final long BYTES_PER_CONTACT = 600;
+
+    /** Prevents instantiation of this utility class. */
+    private BenchmarkContacts() {
+    }
+
+    /**
+     * Gets the directory the contacts files are kept in.
+     *
+     * @return The directory, created if missing.
+     * @throws IOException If the directory can't be created.
+     */
+    static Path directory() throws IOException {
+        return Files.createDirectories(Paths.get(System.getProperty(
+            "bench.dir", System.getProperty("java.io.tmpdir")
+            + "/contacts-bench")));
+    }
+
+    /**
+     * Writes a contacts file of the given size, if not written yet,
+     * and loads it into the ContactsManager with a fresh store.
+     *
+     * @param size The number of contacts.
+     * @param store The name of the store, see
+     *        {@link ContactsApp#createStore(String)}.
+     * @return The contacts file.
+     * @throws IOException If the directory can't be created.
+     * @throws IllegalStateException If the contacts don't fit in the heap.
+     */
+    static Path load(final int size, final String store) throws IOException {
+        requireHeap(size);
+        final Path file = directory().resolve("Contacts" + size + ".dat");
+        ContactsSerializer.useFile(file);
+        if (!Files.exists(file)) {
+            ContactsManager.useStore(new HeapContactStore());
+            for (int i = 0; i < size; i++) {
+                ContactsManager.addContact(ContactsGenerator.person(i));
+            }
+            ContactsSerializer.saveSnapshot();
+        }
+        ContactsManager.useStore(ContactsApp.createStore(store));
+        ContactsSerializer.loadContactsFromFile();
+        return file;
+    }
+
+    /**
+     * Checks that the given number of contacts fits into the heap, so
+     * that a size too large fails fast instead of thrashing.
+     *
+     * @param size The number of contacts.
+     * @throws IllegalStateException If the contacts don't fit.
+     */
+    static void requireHeap(final int size) {
+        final long needed = size * BYTES_PER_CONTACT;
+        if (needed > Runtime.getRuntime().maxMemory()) {
+            throw new IllegalStateException("Skipping " + size
+                + " contacts, run with -jvmArgsAppend -Xmx"
+                + ((needed >> 30) + 1) + "g or more");
+        }
+    }
+
+    /**
+     * Gets the heap in use after collecting the garbage.
+     *
+     * @return The used heap in bytes.
+     */
+    static long usedHeap() {
+        final Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
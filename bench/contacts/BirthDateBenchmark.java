@@ -0,0 +1,138 @@
+package contacts;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.time.MonthDay;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks finding the contacts by birth date with the birth date
+ * index, and by decoding the SSN of every contact as the baseline.
+ * The queries cycle through {@value BenchmarkContacts#INPUTS} dates and
+ * the time is per query.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BirthDateBenchmark {
+    /** The number of contacts found by a query at most. */
+    private static final int LIMIT = 20;
+
+    /** The number of contacts. */
+    @Param({"10000", "1000000", "10000000"})
+    public int size;
+
+    /** The store holding the contacts. */
+    @Param("heap")
+    public String store;
+
+    /** The birth dates of random contacts. */
+    private final LocalDate[] dates = new LocalDate[BenchmarkContacts.INPUTS];
+
+    /**
+     * Loads the contacts, builds the index and picks the dates.
+     *
+     * @throws IOException If the contacts file can't be written.
+     */
+    @Setup(Level.Trial)
+    public void load() throws IOException {
+        BenchmarkContacts.load(size, store);
+        ContactsManager.findBornBetween(LocalDate.MIN, LocalDate.MIN, 1);
+        final Random random = new Random(BenchmarkContacts.SEED);
+        for (int i = 0; i < BenchmarkContacts.INPUTS; i++) {
+            final int born = ContactsBirthDateIndex.birthDateOf(
+                ContactsGenerator.ssn(random.nextInt(size)));
+            dates[i] = LocalDate.of(born / 10000, born / 100 % 100,
+                born % 100);
+        }
+    }
+
+    /** Closes the journal of the contacts. */
+    @TearDown(Level.Trial)
+    public void close() {
+        ContactsSerializer.saveContactsToFile();
+    }
+
+    /**
+     * Builds the birth date index over every contact.
+     *
+     * @return The contacts found by a query of the new index.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Measurement(iterations = 5)
+    public int build() {
+        return new ContactsBirthDateIndex(ContactsManager.getStore())
+            .bornBetween(LocalDate.MIN, LocalDate.MIN, 1).size();
+    }
+
+    /**
+     * Finds the contacts born within a year of a date.
+     *
+     * @param blackhole The sink of the results.
+     */
+    @Benchmark
+    @OperationsPerInvocation(BenchmarkContacts.INPUTS)
+    public void bornWithinYear(final Blackhole blackhole) {
+        for (LocalDate date : dates) {
+            blackhole.consume(ContactsManager.findBornBetween(date,
+                date.plusYears(1), LIMIT));
+        }
+    }
+
+    /**
+     * Finds the contacts having their birthday within a week of a day.
+     *
+     * @param blackhole The sink of the results.
+     */
+    @Benchmark
+    @OperationsPerInvocation(BenchmarkContacts.INPUTS)
+    public void birthdaysWithinWeek(final Blackhole blackhole) {
+        for (LocalDate date : dates) {
+            blackhole.consume(ContactsManager.findBirthdaysBetween(
+                MonthDay.from(date), MonthDay.from(date.plusDays(6)), LIMIT));
+        }
+    }
+
+    /**
+     * Finds the contacts born within a year of a date by decoding the
+     * SSN of every contact.
+     *
+     * @return The number of contacts found.
+     */
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public long bornWithinYearScan() {
+        final int from = ContactsBirthDateIndex.birthDateOf(
+            ContactsGenerator.ssn(size / 2));
+        long found = 0;
+        for (Person person : ContactsManager.getContacts()) {
+            final int born =
+                ContactsBirthDateIndex.birthDateOf(person.getSsn());
+            if (born >= from && born <= from + 10000) {
+                found++;
+            }
+        }
+        return found;
+    }
+}
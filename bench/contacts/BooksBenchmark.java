@@ -0,0 +1,213 @@
+package contacts;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks the named contact books: looking up a contact in a small
+ * book while a large one is loaded, and loading a small book. The heap
+ * left used by small books once they are idle and unloaded is reported
+ * as the secondary results {@code idleHeapPerBook} and
+ * {@code idleLoaded} of {@code smallLoad}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BooksBenchmark {
+    /** The number of small contact books next to the large one. */
+    private static final int SMALL_BOOKS = 64;
+
+    /** The number of contacts in a small contact book. */
+    private static final int SMALL_BOOK_SIZE = 1000;
+
+    /** The time to wait for idle contact books to be unloaded. */
+    private static final long BOOK_EVICTION_WAIT = 1500;
+
+    /** The number of contacts in the large book. */
+    @Param({"10000", "1000000", "10000000"})
+    public int size;
+
+    /** The directory of the books. */
+    private Path directory;
+
+    /** The books, with the large one and a small one loaded. */
+    private ContactBooks books;
+
+    /** The SSNs looked up in the small book. */
+    private final String[] ssns = new String[BenchmarkContacts.INPUTS];
+
+    /** The next SSN to look up. */
+    private int next;
+
+    /** The heap left used by an idle small book in bytes. */
+    private double idleHeapPerBook;
+
+    /** The contacts left loaded once the small books are idle. */
+    private long idleLoaded;
+
+    /** The number of the small book loaded next. */
+    private int nextBook;
+
+    /**
+     * Writes the books, if not written yet, measures the heap they use
+     * when idle and loads the large book.
+     *
+     * @throws IOException If the directory can't be created.
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    @Setup(Level.Trial)
+    public void load() throws IOException, InterruptedException {
+        BenchmarkContacts.requireHeap(size);
+        directory = BenchmarkContacts.directory().resolve("books" + size);
+        if (!Files.exists(directory)) {
+            write();
+        }
+        measureIdle();
+        books = new ContactBooks(directory, Integer.MAX_VALUE,
+            Integer.MAX_VALUE);
+        try (ContactBook large = books.open("large")) {
+            if (large.getContactsSize() != size) {
+                throw new IllegalStateException("Loaded "
+                    + large.getContactsSize() + " of " + size
+                    + " contacts, delete " + directory);
+            }
+        }
+        books.open("small0").close();
+        for (int i = 0; i < ssns.length; i++) {
+            ssns[i] = ContactsGenerator.ssn(i % SMALL_BOOK_SIZE);
+        }
+    }
+
+    /** Saves and unloads the books. */
+    @TearDown(Level.Trial)
+    public void close() {
+        books.close();
+    }
+
+    /** Writes the large book and the small books. */
+    private void write() {
+        try (ContactBooks written = new ContactBooks(directory,
+                Integer.MAX_VALUE, Integer.MAX_VALUE)) {
+            try (ContactBook book = written.open("large")) {
+                for (int i = 0; i < size; i++) {
+                    book.createContact(ContactsGenerator.person(i));
+                }
+            }
+            for (int b = 0; b < SMALL_BOOKS; b++) {
+                try (ContactBook book = written.open("small" + b)) {
+                    for (int i = 0; i < SMALL_BOOK_SIZE; i++) {
+                        book.createContact(ContactsGenerator.person(
+                            (long) b * SMALL_BOOK_SIZE + i));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Measures the heap left used by the small books once they have
+     * been used and left idle, with no contacts allowed to stay loaded.
+     *
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    private void measureIdle() throws InterruptedException {
+        try (ContactBooks idle = new ContactBooks(directory, 0, 0)) {
+            final long before = BenchmarkContacts.usedHeap();
+            for (int b = 0; b < SMALL_BOOKS; b++) {
+                try (ContactBook book = idle.open("small" + b)) {
+                    book.findContact(ContactsGenerator.ssn(
+                        (long) b * SMALL_BOOK_SIZE));
+                }
+            }
+            Thread.sleep(BOOK_EVICTION_WAIT);
+            idleHeapPerBook = (double) Math.max(0,
+                BenchmarkContacts.usedHeap() - before) / SMALL_BOOKS;
+            idleLoaded = idle.getLoadedContacts();
+        }
+    }
+
+    /** The heap used by idle books. */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class IdleHeap {
+        /** The benchmark that measured the heap. */
+        private BooksBenchmark benchmark;
+
+        /**
+         * Reads the heap measured by the benchmark.
+         *
+         * @param measured The benchmark.
+         */
+        @Setup(Level.Trial)
+        public void read(final BooksBenchmark measured) {
+            benchmark = measured;
+        }
+
+        /**
+         * Gets the heap left used by an idle small book.
+         *
+         * @return The heap in bytes.
+         */
+        public double idleHeapPerBook() {
+            return benchmark.idleHeapPerBook;
+        }
+
+        /**
+         * Gets the contacts left loaded once the small books are idle.
+         *
+         * @return The number of contacts.
+         */
+        public long idleLoaded() {
+            return benchmark.idleLoaded;
+        }
+    }
+
+    /**
+     * Opens the small book, looks up a contact and closes the book.
+     *
+     * @return The contact, or null if not found.
+     */
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public Person smallLookup() {
+        try (ContactBook book = books.open("small0")) {
+            return book.findContact(
+                ssns[next++ & (BenchmarkContacts.INPUTS - 1)]);
+        }
+    }
+
+    /**
+     * Loads a small book from its file.
+     *
+     * @param idle The heap used by idle books.
+     * @return The number of contacts loaded.
+     */
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public int smallLoad(final IdleHeap idle) {
+        try (ContactBooks loaded = new ContactBooks(directory,
+                Integer.MAX_VALUE, Integer.MAX_VALUE);
+            ContactBook book = loaded.open("small"
+                + nextBook++ % SMALL_BOOKS)) {
+            return book.getContactsSize();
+        }
+    }
+}
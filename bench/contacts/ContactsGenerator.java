@@ -0,0 +1,122 @@
+package contacts;
+
+/**
+ * A deterministic generator of valid contacts for benchmarks.
+ * The same index always gives the same contact, and different
+ * indexes always give different social security numbers.
+ */
+public final class ContactsGenerator {
+    /** The number of individual numbers used per birth date (002-899). */
+    private static final int INDIVIDUALS_PER_DAY = 898;
+
+    /** The first individual number. */
+    private static final int FIRST_INDIVIDUAL = 2;
+
+    /** The year of the first generated birth date. */
+    private static final int FIRST_YEAR = 1940;
+
+    /** The number of days in a generated year, keeping every date valid. */
+    private static final int DAYS_PER_MONTH = 28;
+
+    /** The number of months in a year. */
+    private static final int MONTHS = 12;
+
+    /** Common Finnish first names. */
+    private static final String[] FIRST_NAMES = {
+        "Matti", "Timo", "Juha", "Mikko", "Antti", "Jari", "Jukka", "Mika",
+        "Markku", "Pekka", "Anne", "Tuula", "Päivi", "Anna", "Ritva",
+        "Leena", "Pirjo", "Sari", "Minna", "Marja", "Aino", "Eino", "Väinö",
+        "Helmi", "Sofia", "Onni", "Eeva", "Liisa", "Åsa", "Jörö"
+    };
+
+    /** Common Finnish last names. */
+    private static final String[] LAST_NAMES = {
+        "Korhonen", "Virtanen", "Mäkinen", "Nieminen", "Mäkelä", "Hämäläinen",
+        "Laine", "Heikkinen", "Koskinen", "Järvinen", "Lehtonen", "Lehtinen",
+        "Saarinen", "Salminen", "Heinonen", "Niemi", "Heikkilä", "Kinnunen",
+        "Salonen", "Turunen", "Salo", "Laitinen", "Tuominen", "Rantanen",
+        "Karjalainen", "Jokinen", "Mattila", "Savolainen", "Lahtinen", "Ahonen"
+    };
+
+    /** Common street names. */
+    private static final String[] STREETS = {
+        "Mannerheimintie", "Hämeentie", "Aleksanterinkatu", "Kauppakatu",
+        "Puistokatu", "Koulukatu", "Rantatie", "Kirkkokatu", "Asemakatu",
+        "Myllytie"
+    };
+
+    /** Common email domains. */
+    private static final String[] DOMAINS = {
+        "gmail.com", "hotmail.com", "outlook.com", "yahoo.com", "elisa.fi",
+        "kolumbus.fi", "luukku.com", "suomi24.fi"
+    };
+
+    /** Prevents instantiation of this utility class. */
+    private ContactsGenerator() {
+    }
+
+    /**
+     * Generates a valid Finnish social security number with
+     * a correct control character.
+     *
+     * @param index The index of the contact.
+     * @return The social security number.
+     */
+    public static String ssn(final long index) {
+        final int individual =
+            (int) (index % INDIVIDUALS_PER_DAY) + FIRST_INDIVIDUAL;
+        final long dayIndex = index / INDIVIDUALS_PER_DAY;
+        final int day = (int) (dayIndex % DAYS_PER_MONTH) + 1;
+        final int month = (int) (dayIndex / DAYS_PER_MONTH % MONTHS) + 1;
+        final int year =
+            FIRST_YEAR + (int) (dayIndex / (DAYS_PER_MONTH * MONTHS));
+        final int shortYear = year % 100;
+        final char century = year < 2000 ? '-' : 'A';
+        final int digits =
+            ((day * 100 + month) * 100 + shortYear) * 1000 + individual;
+
+        final char[] ssn = new char[11];
+        put(ssn, 0, day);
+        put(ssn, 2, month);
+        put(ssn, 4, shortYear);
+        ssn[6] = century;
+        ssn[7] = (char) ('0' + individual / 100);
+        put(ssn, 8, individual % 100);
+        ssn[10] = ContactsValidation.controlCharacter(digits);
+        return new String(ssn);
+    }
+
+    /**
+     * Writes a two digit number into the array.
+     *
+     * @param target The array to write into.
+     * @param index The index of the first digit.
+     * @param value The number, 0-99.
+     */
+    private static void put(final char[] target, final int index,
+            final int value) {
+        target[index] = (char) ('0' + value / 10);
+        target[index + 1] = (char) ('0' + value % 10);
+    }
+
+    /**
+     * Generates a valid contact.
+     *
+     * @param index The index of the contact.
+     * @return The contact.
+     */
+    public static Person person(final long index) {
+        final String firstName =
+            FIRST_NAMES[(int) (index % FIRST_NAMES.length)];
+        final String lastName =
+            LAST_NAMES[(int) (index / FIRST_NAMES.length % LAST_NAMES.length)];
+        final String phoneNumber = "+35840" + String.format("%07d",
+            index % 10_000_000);
+        final String address = STREETS[(int) (index % STREETS.length)] + " "
+            + (index % 120 + 1) + ", Helsinki";
+        final String emailAddress = "user" + index + "@"
+            + DOMAINS[(int) (index % DOMAINS.length)];
+        return new Person(ssn(index), firstName, lastName, phoneNumber,
+            address, emailAddress);
+    }
+}
@@ -0,0 +1,223 @@
+package contacts;
+
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * A load test of the HTTP server started with
+ * {@code java -jar target/app/contacts-app.jar serve}.
+ *
+ * The client first creates the generated contacts it uses, then sends
+ * a mix of requests with many of them in flight at once: gets by SSN,
+ * phone number changes, searches and listings. Finally it prints the
+ * throughput, the latency percentiles and the number of responses of
+ * each status class.
+ *
+ * Usage: {@code java -cp target/bench/benchmarks.jar
+ * contacts.ContactsLoadClient [url]} with the URL of the
+ * contacts resource, {@code http://localhost:8080/contacts} by default.
+ * The load is set with {@code -Dload.contacts=10000},
+ * {@code -Dload.requests=100000} and {@code -Dload.concurrency=1000}.
+ */
+public final class ContactsLoadClient {
+    /** The URL of the contacts resource used by default. */
+    private static final String DEFAULT_URL = "http://localhost:8080/contacts";
+
+    /** The seed of the random requests, so that runs are comparable. */
+    private static final long SEED = 42;
+
+    /** The percentage of requests that get a contact. */
+    private static final int GET_PERCENT = 60;
+
+    /** The percentage of requests that change a phone number. */
+    private static final int UPDATE_PERCENT = 20;
+
+    /** The percentage of requests that search. */
+    private static final int SEARCH_PERCENT = 10;
+
+    /** Prevents instantiation of this class. */
+    private ContactsLoadClient() {
+    }
+
+    /**
+     * Runs the load test.
+     *
+     * @param args The URL of the contacts resource, or none for the default.
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    public static void main(final String[] args) throws InterruptedException {
+        final String url = args.length > 0 ? args[0] : DEFAULT_URL;
+        final int contacts = Integer.getInteger("load.contacts", 10_000);
+        final int requests = Integer.getInteger("load.requests", 100_000);
+        final int concurrency = Integer.getInteger("load.concurrency", 1000);
+        final HttpClient client = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1).build();
+
+        final double createMillis = run(client, contacts, concurrency,
+            new long[contacts], new AtomicIntegerArray(6),
+            i -> create(url, ContactsGenerator.person(i)));
+        report("load.create " + contacts,
+            contacts / (createMillis / 1000), "req/s");
+
+        final Random random = new Random(SEED);
+        final HttpRequest[] mix = new HttpRequest[requests];
+        for (int i = 0; i < requests; i++) {
+            final Person person =
+                ContactsGenerator.person(random.nextInt(contacts));
+            final int kind = random.nextInt(100);
+            if (kind < GET_PERCENT) {
+                mix[i] = HttpRequest.newBuilder(
+                    URI.create(url + '/' + person.getSsn())).build();
+            } else if (kind < GET_PERCENT + UPDATE_PERCENT) {
+                mix[i] = HttpRequest.newBuilder(
+                    URI.create(url + '/' + person.getSsn()))
+                    .method("PATCH", HttpRequest.BodyPublishers.ofString(
+                        "{\"phoneNumber\":\"040"
+                        + (1_000_000 + random.nextInt(8_000_000)) + "\"}"))
+                    .header("Content-Type", "application/json").build();
+            } else if (kind < GET_PERCENT + UPDATE_PERCENT + SEARCH_PERCENT) {
+                mix[i] = HttpRequest.newBuilder(URI.create(url + "?q="
+                    + URLEncoder.encode(person.getLastName().substring(0, 4),
+                        StandardCharsets.UTF_8)
+                    + "&limit=20")).build();
+            } else {
+                mix[i] = HttpRequest.newBuilder(
+                    URI.create(url + "?sort=last_name&limit=20")).build();
+            }
+        }
+        final long[] latencies = new long[requests];
+        final AtomicIntegerArray statuses = new AtomicIntegerArray(6);
+        final double millis = run(client, requests, concurrency, latencies,
+            statuses, i -> mix[i]);
+
+        Arrays.sort(latencies);
+        report("load.throughput " + concurrency + " in flight",
+            requests / (millis / 1000), "req/s");
+        for (double percentile : new double[] {50, 90, 99, 99.9}) {
+            report("load.latency.p" + percentile,
+                latencies[(int) Math.min(requests - 1,
+                    requests * percentile / 100)] / 1_000_000.0, "ms");
+        }
+        report("load.latency.max",
+            latencies[requests - 1] / 1_000_000.0, "ms");
+        for (int status = 1; status < statuses.length(); status++) {
+            if (statuses.get(status) > 0) {
+                report("load.status." + status + "xx",
+                    statuses.get(status), "");
+            }
+        }
+        if (statuses.get(0) > 0) {
+            report("load.failed", statuses.get(0), "");
+        }
+    }
+
+    /**
+     * Prints a measured value.
+     *
+     * @param name The name of the value.
+     * @param value The value.
+     * @param unit The unit of the value.
+     */
+    private static void report(final String name, final double value,
+            final String unit) {
+        System.out.println(String.format(Locale.ROOT,
+            "%-48s %14.1f %s", name, value, unit));
+    }
+
+    /**
+     * Makes the request that creates a contact.
+     *
+     * @param url The URL of the contacts resource.
+     * @param person The contact.
+     * @return The request.
+     */
+    private static HttpRequest create(final String url, final Person person) {
+        final StringBuilder json = new StringBuilder("{");
+        for (ContactField field : ContactField.values()) {
+            if (field != ContactField.SSN) {
+                json.append(',');
+            }
+            json.append('"').append(jsonName(field)).append("\":\"")
+                .append(person.getDetail(field)).append('"');
+        }
+        return HttpRequest.newBuilder(URI.create(url))
+            .POST(HttpRequest.BodyPublishers.ofString(json.append('}')
+                .toString()))
+            .header("Content-Type", "application/json").build();
+    }
+
+    /**
+     * Gets the JSON member name of a detail.
+     *
+     * @param field The detail.
+     * @return The member name.
+     */
+    private static String jsonName(final ContactField field) {
+        final String[] words = field.name().toLowerCase(Locale.ROOT).split("_");
+        final StringBuilder name = new StringBuilder(words[0]);
+        for (int i = 1; i < words.length; i++) {
+            name.append(Character.toUpperCase(words[i].charAt(0)))
+                .append(words[i], 1, words[i].length());
+        }
+        return name.toString();
+    }
+
+    /** Makes the request with the given index. */
+    private interface Requests {
+        /**
+         * Makes a request.
+         *
+         * @param index The index of the request.
+         * @return The request.
+         */
+        HttpRequest get(int index);
+    }
+
+    /**
+     * Sends requests with at most the given number in flight at once.
+     *
+     * @param client The HTTP client.
+     * @param count The number of requests.
+     * @param concurrency The most requests in flight at once.
+     * @param latencies The latency of each request in nanoseconds.
+     * @param statuses The number of responses of each status class,
+     *        with failed requests counted at index 0.
+     * @param requests The requests.
+     * @return The time taken in milliseconds.
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    private static double run(final HttpClient client, final int count,
+            final int concurrency, final long[] latencies,
+            final AtomicIntegerArray statuses, final Requests requests)
+            throws InterruptedException {
+        final Semaphore inFlight = new Semaphore(concurrency);
+        final CountDownLatch done = new CountDownLatch(count);
+        final long start = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            inFlight.acquire();
+            final int index = i;
+            final long sent = System.nanoTime();
+            client.sendAsync(requests.get(i),
+                HttpResponse.BodyHandlers.discarding())
+                .whenComplete((response, failure) -> {
+                    latencies[index] = System.nanoTime() - sent;
+                    statuses.incrementAndGet(
+                        failure == null ? response.statusCode() / 100 : 0);
+                    inFlight.release();
+                    done.countDown();
+                });
+        }
+        done.await();
+        return (System.nanoTime() - start) / 1_000_000.0;
+    }
+}
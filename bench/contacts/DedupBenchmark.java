@@ -0,0 +1,76 @@
+package contacts;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks finding the contacts that may be the same person, on as
+ * many threads as set with {@code -p threads=1,2,4,8}, so the speedup
+ * is the ratio of the times.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DedupBenchmark {
+    /** The number of contacts. */
+    @Param({"10000", "1000000", "10000000"})
+    public int size;
+
+    /** The store holding the contacts. */
+    @Param("heap")
+    public String store;
+
+    /** The threads comparing the contacts. */
+    @Param({"1", "4"})
+    public int threads;
+
+    /** The contacts compared. */
+    private Collection<Person> contacts;
+
+    /**
+     * Loads the contacts.
+     *
+     * @throws IOException If the contacts file can't be written.
+     */
+    @Setup(Level.Trial)
+    public void load() throws IOException {
+        BenchmarkContacts.load(size, store);
+        contacts = ContactsManager.snapshot();
+    }
+
+    /** Closes the journal of the contacts. */
+    @TearDown(Level.Trial)
+    public void close() {
+        ContactsSerializer.saveContactsToFile();
+    }
+
+    /**
+     * Finds the contacts that may be the same person.
+     *
+     * @return The number of matches.
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    @Benchmark
+    public int findMatches() throws InterruptedException {
+        return ContactsDeduplicator.findMatches(contacts,
+            ContactsDeduplicator.DEFAULT_THRESHOLD,
+            ContactsDeduplicator.DEFAULT_WINDOW, threads).size();
+    }
+}
@@ -0,0 +1,119 @@
+package contacts;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the heap used by the contacts in the heap store and in the
+ * columnar store, reported as the secondary results {@code heapBytes}
+ * and {@code bytesPerContact}, along with the time to load them.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FootprintBenchmark {
+    /** The number of contacts. */
+    @Param({"10000", "1000000", "10000000"})
+    public int size;
+
+    /** The store holding the contacts. */
+    @Param({"heap", "columnar"})
+    public String store;
+
+    /** The heap used by the loaded contacts in bytes. */
+    private long used;
+
+    /**
+     * Writes the contacts file and measures the heap used by its
+     * contacts once loaded.
+     *
+     * @throws IOException If the contacts file can't be written.
+     */
+    @Setup(Level.Trial)
+    public void load() throws IOException {
+        BenchmarkContacts.load(size, "heap");
+        ContactsSerializer.saveContactsToFile();
+        ContactsManager.useStore(new HeapContactStore());
+        final long before = BenchmarkContacts.usedHeap();
+        ContactsManager.useStore(ContactsApp.createStore(store));
+        ContactsSerializer.loadContactsFromFile();
+        used = BenchmarkContacts.usedHeap() - before;
+    }
+
+    /** Closes the journal of the contacts. */
+    @TearDown(Level.Trial)
+    public void close() {
+        ContactsSerializer.saveContactsToFile();
+    }
+
+    /** The heap used by the contacts. */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Footprint {
+        /** The heap used by the contacts in bytes. */
+        private long used;
+
+        /** The number of contacts. */
+        private int contacts;
+
+        /**
+         * Reads the heap measured by the benchmark.
+         *
+         * @param benchmark The benchmark.
+         */
+        @Setup(Level.Trial)
+        public void read(final FootprintBenchmark benchmark) {
+            used = benchmark.used;
+            contacts = benchmark.size;
+        }
+
+        /**
+         * Gets the heap used by the contacts.
+         *
+         * @return The heap in bytes.
+         */
+        public long heapBytes() {
+            return used;
+        }
+
+        /**
+         * Gets the heap used per contact.
+         *
+         * @return The bytes per contact.
+         */
+        public double bytesPerContact() {
+            return (double) used / contacts;
+        }
+    }
+
+    /**
+     * Loads every contact from the contacts file into a fresh store.
+     *
+     * @param footprint The heap used by the contacts.
+     * @return The number of contacts loaded.
+     */
+    @Benchmark
+    public int load(final Footprint footprint) {
+        ContactsSerializer.saveContactsToFile();
+        ContactsManager.useStore(ContactsApp.createStore(store));
+        ContactsSerializer.loadContactsFromFile();
+        return ContactsManager.getContactsSize();
+    }
+}
@@ -0,0 +1,180 @@
+package contacts;
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import javax.management.ListenerNotFoundException;
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the garbage collection pauses with the contacts in the heap
+ * store and in the off-heap store, while the contacts are looked up and
+ * changed at random, and when the whole heap is collected. The pauses
+ * of each iteration are reported as the secondary results
+ * {@code gcCount}, {@code gcTotalMs} and {@code gcMaxMs}; run with
+ * {@code -prof gc} for the allocation rate too.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class GcPauseBenchmark {
+    /** The number of contacts. */
+    @Param({"10000", "1000000", "10000000"})
+    public int size;
+
+    /** The store holding the contacts. */
+    @Param({"heap", "offheap"})
+    public String store;
+
+    /** The random contacts and changes. */
+    private final Random random = new Random(BenchmarkContacts.SEED);
+
+    /**
+     * Loads the contacts.
+     *
+     * @throws IOException If the contacts file can't be written.
+     */
+    @Setup(Level.Trial)
+    public void load() throws IOException {
+        BenchmarkContacts.load(size, store);
+    }
+
+    /** Closes the journal of the contacts. */
+    @TearDown(Level.Trial)
+    public void close() {
+        ContactsSerializer.saveContactsToFile();
+    }
+
+    /** Records the garbage collection pauses of an iteration. */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class GcPauses implements NotificationListener {
+        /** The number of pauses. */
+        private long count;
+
+        /** The sum of the pauses in milliseconds. */
+        private long totalMillis;
+
+        /** The longest pause in milliseconds. */
+        private long maxMillis;
+
+        /** Starts listening to every garbage collector. */
+        @Setup(Level.Iteration)
+        public synchronized void start() {
+            count = 0;
+            totalMillis = 0;
+            maxMillis = 0;
+            for (GarbageCollectorMXBean collector
+                    : ManagementFactory.getGarbageCollectorMXBeans()) {
+                ((NotificationEmitter) collector)
+                    .addNotificationListener(this, null, null);
+            }
+        }
+
+        /** Stops listening. */
+        @TearDown(Level.Iteration)
+        public void stop() {
+            for (GarbageCollectorMXBean collector
+                    : ManagementFactory.getGarbageCollectorMXBeans()) {
+                try {
+                    ((NotificationEmitter) collector)
+                        .removeNotificationListener(this);
+                } catch (ListenerNotFoundException e) {
+                    // Never added to this collector.
+                }
+            }
+        }
+
+        @Override
+        public synchronized void handleNotification(
+                final Notification notification, final Object handback) {
+            if (notification.getType().equals(
+                    GarbageCollectionNotificationInfo
+                        .GARBAGE_COLLECTION_NOTIFICATION)) {
+                final long millis = GarbageCollectionNotificationInfo.from(
+                    (CompositeData) notification.getUserData()
+                ).getGcInfo().getDuration();
+                count++;
+                totalMillis += millis;
+                maxMillis = Math.max(maxMillis, millis);
+            }
+        }
+
+        /**
+         * Gets the number of pauses.
+         *
+         * @return The number of pauses in the iteration.
+         */
+        public synchronized long gcCount() {
+            return count;
+        }
+
+        /**
+         * Gets the sum of the pauses.
+         *
+         * @return The sum in milliseconds.
+         */
+        public synchronized long gcTotalMs() {
+            return totalMillis;
+        }
+
+        /**
+         * Gets the longest pause.
+         *
+         * @return The longest pause in milliseconds.
+         */
+        public synchronized long gcMaxMs() {
+            return maxMillis;
+        }
+    }
+
+    /**
+     * Looks up a random contact, or changes its phone number one time
+     * in four.
+     *
+     * @param pauses The pauses recorded.
+     * @return The contact.
+     */
+    @Benchmark
+    public Person mixed(final GcPauses pauses) {
+        final String ssn = ContactsGenerator.ssn(random.nextInt(size));
+        if (random.nextInt(4) == 0) {
+            return ContactsManager.updateDetail(ssn,
+                ContactField.PHONE_NUMBER,
+                "040" + (1_000_000 + random.nextInt(8_000_000)));
+        }
+        return ContactsManager.findContact(ssn);
+    }
+
+    /** Collects the whole heap. */
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Measurement(iterations = 5)
+    public void fullGc() {
+        System.gc();
+    }
+}
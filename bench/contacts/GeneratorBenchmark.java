@@ -0,0 +1,47 @@
+package contacts;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks the deterministic generator the other benchmarks write
+ * their contacts files with.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class GeneratorBenchmark {
+    /** The index of the next contact. */
+    private long index;
+
+    /**
+     * Generates the SSN of a contact.
+     *
+     * @return The social security number.
+     */
+    @Benchmark
+    public String ssn() {
+        return ContactsGenerator.ssn(index++ % 10_000_000);
+    }
+
+    /**
+     * Generates a contact.
+     *
+     * @return The contact.
+     */
+    @Benchmark
+    public Person person() {
+        return ContactsGenerator.person(index++ % 10_000_000);
+    }
+}
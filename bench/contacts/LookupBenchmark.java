@@ -0,0 +1,117 @@
+package contacts;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks looking contacts up by their social security number and
+ * detecting a duplicate one when a contact is created, with
+ * {@value BenchmarkContacts#INPUTS} random SSNs per invocation. The time
+ * is per lookup.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LookupBenchmark {
+    /** The number of contacts. */
+    @Param({"10000", "1000000", "10000000"})
+    public int size;
+
+    /** The store holding the contacts. */
+    @Param("heap")
+    public String store;
+
+    /** The SSNs of contacts that exist. */
+    private final String[] hits = new String[BenchmarkContacts.INPUTS];
+
+    /** The SSNs of contacts that don't exist. */
+    private final String[] misses = new String[BenchmarkContacts.INPUTS];
+
+    /** Contacts whose SSN is already in use. */
+    private final Person[] duplicates = new Person[BenchmarkContacts.INPUTS];
+
+    /** The store looked up from. */
+    private ContactStore contacts;
+
+    /**
+     * Loads the contacts and picks the SSNs to look up.
+     *
+     * @throws IOException If the contacts file can't be written.
+     */
+    @Setup(Level.Trial)
+    public void load() throws IOException {
+        BenchmarkContacts.load(size, store);
+        final Random random = new Random(BenchmarkContacts.SEED);
+        for (int i = 0; i < BenchmarkContacts.INPUTS; i++) {
+            final int index = random.nextInt(size);
+            hits[i] = ContactsGenerator.ssn(index);
+            misses[i] = ContactsGenerator.ssn((long) size + index);
+            duplicates[i] = ContactsGenerator.person(index);
+        }
+        contacts = ContactsManager.getStore();
+    }
+
+    /** Closes the journal of the contacts. */
+    @TearDown(Level.Trial)
+    public void close() {
+        ContactsSerializer.saveContactsToFile();
+    }
+
+    /**
+     * Looks up contacts that exist.
+     *
+     * @param blackhole The sink of the results.
+     */
+    @Benchmark
+    @OperationsPerInvocation(BenchmarkContacts.INPUTS)
+    public void hit(final Blackhole blackhole) {
+        for (String ssn : hits) {
+            blackhole.consume(contacts.get(ssn));
+        }
+    }
+
+    /**
+     * Looks up contacts that don't exist.
+     *
+     * @param blackhole The sink of the results.
+     */
+    @Benchmark
+    @OperationsPerInvocation(BenchmarkContacts.INPUTS)
+    public void miss(final Blackhole blackhole) {
+        for (String ssn : misses) {
+            blackhole.consume(contacts.get(ssn));
+        }
+    }
+
+    /**
+     * Tries to create contacts whose SSN is already in use.
+     *
+     * @param blackhole The sink of the results.
+     */
+    @Benchmark
+    @OperationsPerInvocation(BenchmarkContacts.INPUTS)
+    public void duplicateDetection(final Blackhole blackhole) {
+        for (Person person : duplicates) {
+            blackhole.consume(ContactsManager.createContact(person));
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package contacts;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks building the search index and searching it by the
+ * beginnings of names and phone numbers. The searches cycle through
+ * {@value BenchmarkContacts#INPUTS} queries and the time is per search.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SearchBenchmark {
+    /** The number of contacts found by a search at most. */
+    private static final int LIMIT = 20;
+
+    /** The number of contacts. */
+    @Param({"10000", "1000000", "10000000"})
+    public int size;
+
+    /** The store holding the contacts. */
+    @Param("heap")
+    public String store;
+
+    /** The beginnings of first and last names to search for. */
+    private final String[] names = new String[BenchmarkContacts.INPUTS];
+
+    /** The beginnings of phone numbers to search for. */
+    private final String[] phones = new String[BenchmarkContacts.INPUTS];
+
+    /** The index searched, built once. */
+    private ContactsSearchIndex index;
+
+    /**
+     * Loads the contacts, builds the index and picks the queries.
+     *
+     * @throws IOException If the contacts file can't be written.
+     */
+    @Setup(Level.Trial)
+    public void load() throws IOException {
+        BenchmarkContacts.load(size, store);
+        index = new ContactsSearchIndex(ContactsManager.getStore());
+        index.search("", 1);
+        final Random random = new Random(BenchmarkContacts.SEED);
+        for (int i = 0; i < BenchmarkContacts.INPUTS; i++) {
+            final Person person =
+                ContactsGenerator.person(random.nextInt(size));
+            names[i] = person.getFirstName().substring(0, 3) + " "
+                + person.getLastName().substring(0, 4);
+            phones[i] = "0" + person.getPhoneNumber().substring(4, 11);
+        }
+    }
+
+    /** Closes the journal of the contacts. */
+    @TearDown(Level.Trial)
+    public void close() {
+        ContactsSerializer.saveContactsToFile();
+    }
+
+    /**
+     * Builds the search index over every contact.
+     *
+     * @return The number of words in the index.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Measurement(iterations = 5)
+    public int build() {
+        final ContactsSearchIndex built =
+            new ContactsSearchIndex(ContactsManager.getStore());
+        built.search("", 1);
+        return built.size();
+    }
+
+    /**
+     * Searches for a common last name.
+     *
+     * @return The contacts found.
+     */
+    @Benchmark
+    public int lastName() {
+        return index.search("virtanen", LIMIT).size();
+    }
+
+    /**
+     * Searches for the beginnings of first and last names.
+     *
+     * @param blackhole The sink of the results.
+     */
+    @Benchmark
+    @OperationsPerInvocation(BenchmarkContacts.INPUTS)
+    public void namePrefixes(final Blackhole blackhole) {
+        for (String name : names) {
+            blackhole.consume(index.search(name, LIMIT));
+        }
+    }
+
+    /**
+     * Searches for the beginnings of phone numbers.
+     *
+     * @param blackhole The sink of the results.
+     */
+    @Benchmark
+    @OperationsPerInvocation(BenchmarkContacts.INPUTS)
+    public void phonePrefix(final Blackhole blackhole) {
+        for (String phone : phones) {
+            blackhole.consume(index.search(phone, LIMIT));
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package contacts;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks saving every contact to the contacts file and loading it
+ * back. Besides the saves or loads per second, the bytes per second
+ * and the size of the file are reported as the secondary results
+ * {@code bytes}, {@code fileBytes} and {@code bytesPerContact}.
+ * Loading decodes the chunks of the file on {@code loadThreads}
+ * threads, so {@code -p loadThreads=1,2,4,8} shows how it scales.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SerializerBenchmark {
+    /** The number of contacts. */
+    @Param({"10000", "1000000", "10000000"})
+    public int size;
+
+    /** The store holding the contacts. */
+    @Param("heap")
+    public String store;
+
+    /** The threads decoding the file, or 0 for one per processor. */
+    @Param("0")
+    public int loadThreads;
+
+    /** The size of the contacts file in bytes. */
+    private long fileSize;
+
+    /**
+     * Writes and loads the contacts file.
+     *
+     * @throws IOException If the contacts file can't be written.
+     */
+    @Setup(Level.Trial)
+    public void load() throws IOException {
+        if (loadThreads > 0) {
+            System.setProperty("contacts.load.threads",
+                Integer.toString(loadThreads));
+        }
+        final Path file = BenchmarkContacts.load(size, store);
+        fileSize = Files.size(file);
+    }
+
+    /** Closes the journal of the contacts. */
+    @TearDown(Level.Trial)
+    public void close() {
+        ContactsSerializer.saveContactsToFile();
+    }
+
+    /** The bytes saved or loaded, reported per second. */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Bytes {
+        /** The bytes saved or loaded in the iteration. */
+        public long bytes;
+    }
+
+    /** The size of the contacts file. */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class FileSize {
+        /** The size of the contacts file in bytes. */
+        private long size;
+
+        /** The number of contacts in the file. */
+        private int contacts;
+
+        /**
+         * Reads the size of the file written by the benchmark.
+         *
+         * @param benchmark The benchmark.
+         */
+        @Setup(Level.Trial)
+        public void read(final SerializerBenchmark benchmark) {
+            size = benchmark.fileSize;
+            contacts = benchmark.size;
+        }
+
+        /**
+         * Gets the size of the contacts file.
+         *
+         * @return The size in bytes.
+         */
+        public long fileBytes() {
+            return size;
+        }
+
+        /**
+         * Gets the size of the contacts file per contact.
+         *
+         * @return The bytes per contact.
+         */
+        public double bytesPerContact() {
+            return (double) size / contacts;
+        }
+    }
+
+    /**
+     * Writes every contact to the contacts file.
+     *
+     * @param bytes The bytes written.
+     * @param file The size of the file.
+     * @return Whether the contacts were saved.
+     */
+    @Benchmark
+    public boolean save(final Bytes bytes, final FileSize file) {
+        bytes.bytes += fileSize;
+        return ContactsSerializer.saveSnapshot();
+    }
+
+    /**
+     * Loads every contact from the contacts file into a fresh store.
+     *
+     * @param bytes The bytes read.
+     * @param file The size of the file.
+     * @return The number of contacts loaded.
+     */
+    @Benchmark
+    public int load(final Bytes bytes, final FileSize file) {
+        bytes.bytes += fileSize;
+        ContactsSerializer.saveContactsToFile();
+        ContactsManager.useStore(ContactsApp.createStore(store));
+        ContactsSerializer.loadContactsFromFile();
+        return ContactsManager.getContactsSize();
+    }
+}
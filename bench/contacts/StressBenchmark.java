@@ -0,0 +1,121 @@
+package contacts;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Hammers the thread-safe ContactsManager API from every core with
+ * creates, updates and deletes of the same few thousand contacts, and
+ * then checks that the store and its iteration agree. Set the threads
+ * with {@code -t}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(Threads.MAX)
+@State(Scope.Benchmark)
+public class StressBenchmark {
+    /** The number of different contacts. */
+    private static final int KEYS = 4096;
+
+    /** The store holding the contacts. */
+    @Param("heap")
+    public String store;
+
+    /** The contacts created, changed and deleted. */
+    private final Person[] people = new Person[KEYS];
+
+    /** The seeds of the threads. */
+    private final AtomicInteger seeds = new AtomicInteger();
+
+    /** Empties the store and generates the contacts. */
+    @Setup(Level.Trial)
+    public void create() {
+        ContactsManager.useStore(ContactsApp.createStore(store));
+        for (int i = 0; i < KEYS; i++) {
+            people[i] = ContactsGenerator.person(i);
+        }
+    }
+
+    /**
+     * Checks that every contact iterated is found once by its SSN, and
+     * that the size agrees with the iteration.
+     *
+     * @throws IllegalStateException If the store is inconsistent.
+     */
+    @TearDown(Level.Trial)
+    public void check() {
+        final HashSet<String> seen = new HashSet<>();
+        for (Person person : ContactsManager.getContacts()) {
+            if (!seen.add(person.getSsn())
+                    || ContactsManager.findContact(person.getSsn()) == null) {
+                throw new IllegalStateException(
+                    "Store is inconsistent at " + person.getSsn()
+                );
+            }
+        }
+        if (seen.size() != ContactsManager.getContactsSize()) {
+            throw new IllegalStateException("Store size is inconsistent");
+        }
+    }
+
+    /** The random operations of a thread. */
+    @State(Scope.Thread)
+    public static class Operations {
+        /** The random contacts and operations. */
+        private Random random;
+
+        /**
+         * Seeds the random operations differently on each thread.
+         *
+         * @param benchmark The benchmark.
+         */
+        @Setup(Level.Trial)
+        public void seed(final StressBenchmark benchmark) {
+            random = new Random(benchmark.seeds.getAndIncrement());
+        }
+    }
+
+    /**
+     * Creates, deletes or changes the phone number of a random contact.
+     *
+     * @param operations The random operations of the thread.
+     * @return The contact created, deleted or changed, or null.
+     */
+    @Benchmark
+    public Person mixed(final Operations operations) {
+        final Random random = operations.random;
+        final Person person = people[random.nextInt(KEYS)];
+        final int operation = random.nextInt(4);
+        if (operation == 0) {
+            return ContactsManager.createContact(new Person(
+                person.getSsn(), person.getFirstName(),
+                person.getLastName(), person.getPhoneNumber(),
+                person.getAddress(), person.getEmailAddress()
+            )) ? person : null;
+        } else if (operation == 1) {
+            return ContactsManager.deleteContact(person.getSsn());
+        }
+        return ContactsManager.updateDetail(person.getSsn(),
+            ContactField.PHONE_NUMBER,
+            "040" + (1_000_000 + random.nextInt(8_000_000)));
+    }
+}
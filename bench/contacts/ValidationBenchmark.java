@@ -0,0 +1,263 @@
+package contacts;
+
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Compares the validators of ContactsValidation with the regular
+ * expressions they replaced, called the way they used to be, which
+ * compiled the pattern again for every call. Every benchmark validates
+ * the same {@value BenchmarkContacts#INPUTS} generated details, and the
+ * time is per detail.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ValidationBenchmark {
+    /** The regular expression the SSN format was validated with. */
+    private static final Pattern SSN_REGEX = Pattern.compile(
+        "^(0[1-9]|[12][0-9]|3[01])(0[1-9]|1[0-2])\\d{2}[A-]"
+        + "(00[2-9]|[0-8][0-9][0-9])([0-9A-FHJ-NPR-Y])$"
+    );
+
+    /** The regular expression names were validated with. */
+    private static final Pattern NAME_REGEX =
+        Pattern.compile("^[A-ZÅÄÖa-zåäö \\-]+$");
+
+    /** The regular expression phone numbers were validated with. */
+    private static final Pattern PHONE_REGEX =
+        Pattern.compile("^(\\+\\d{1,3})?\\d{7,20}$");
+
+    /** The regular expression addresses were validated with. */
+    private static final Pattern ADDRESS_REGEX =
+        Pattern.compile("^$|^[A-Z-ÅÄÖa-zäåö\\d ,.-]+$");
+
+    /** The regular expression email addresses were validated with. */
+    private static final Pattern EMAIL_REGEX = Pattern.compile(
+        "^$|^([a-z0-9-]+(\\.[a-z0-9-]+)?){1,64}@([a-z0-9-]+\\.[a-z0-9-]+)$"
+    );
+
+    /** The social security numbers to validate. */
+    private final String[] ssns = new String[BenchmarkContacts.INPUTS];
+
+    /** The names to validate. */
+    private final String[] names = new String[BenchmarkContacts.INPUTS];
+
+    /** The phone numbers to validate. */
+    private final String[] phones = new String[BenchmarkContacts.INPUTS];
+
+    /** The addresses to validate. */
+    private final String[] addresses = new String[BenchmarkContacts.INPUTS];
+
+    /** The email addresses to validate. */
+    private final String[] emails = new String[BenchmarkContacts.INPUTS];
+
+    /** Generates the details to validate. */
+    @Setup
+    public void generate() {
+        for (int i = 0; i < BenchmarkContacts.INPUTS; i++) {
+            final Person person = ContactsGenerator.person(i * 7919L);
+            ssns[i] = person.getSsn();
+            names[i] = person.getLastName();
+            phones[i] = person.getPhoneNumber();
+            addresses[i] = person.getAddress();
+            emails[i] = person.getEmailAddress();
+        }
+    }
+
+    /**
+     * Validates the format of the social security numbers.
+     *
+     * @param blackhole The sink of the results.
+     */
+    @Benchmark
+    @OperationsPerInvocation(BenchmarkContacts.INPUTS)
+    public void ssnFormat(final Blackhole blackhole) {
+        for (String ssn : ssns) {
+            blackhole.consume(ContactsValidation.isValidFinnishSsnFormat(ssn));
+        }
+    }
+
+    /**
+     * Validates the format of the social security numbers with the
+     * regular expression.
+     *
+     * @param blackhole The sink of the results.
+     */
+    @Benchmark
+    @OperationsPerInvocation(BenchmarkContacts.INPUTS)
+    public void ssnFormatRegex(final Blackhole blackhole) {
+        for (String ssn : ssns) {
+            blackhole.consume(Pattern.matches(SSN_REGEX.pattern(), ssn));
+        }
+    }
+
+    /**
+     * Validates the control characters of the social security numbers.
+     *
+     * @param blackhole The sink of the results.
+     */
+    @Benchmark
+    @OperationsPerInvocation(BenchmarkContacts.INPUTS)
+    public void controlCharacter(final Blackhole blackhole) {
+        for (String ssn : ssns) {
+            blackhole.consume(ContactsValidation.isValidControlCharacter(ssn));
+        }
+    }
+
+    /**
+     * Validates the control characters of the social security numbers
+     * with substrings, as before the arithmetic version.
+     *
+     * @param blackhole The sink of the results.
+     */
+    @Benchmark
+    @OperationsPerInvocation(BenchmarkContacts.INPUTS)
+    public void controlCharacterSubstring(final Blackhole blackhole) {
+        for (String ssn : ssns) {
+            blackhole.consume(legacyControlCharacter(ssn));
+        }
+    }
+
+    /**
+     * Validates the names.
+     *
+     * @param blackhole The sink of the results.
+     */
+    @Benchmark
+    @OperationsPerInvocation(BenchmarkContacts.INPUTS)
+    public void name(final Blackhole blackhole) {
+        for (String name : names) {
+            blackhole.consume(ContactsValidation.isValidName(name));
+        }
+    }
+
+    /**
+     * Validates the names with the regular expression.
+     *
+     * @param blackhole The sink of the results.
+     */
+    @Benchmark
+    @OperationsPerInvocation(BenchmarkContacts.INPUTS)
+    public void nameRegex(final Blackhole blackhole) {
+        for (String name : names) {
+            blackhole.consume(Pattern.matches(NAME_REGEX.pattern(), name));
+        }
+    }
+
+    /**
+     * Validates the phone numbers.
+     *
+     * @param blackhole The sink of the results.
+     */
+    @Benchmark
+    @OperationsPerInvocation(BenchmarkContacts.INPUTS)
+    public void phoneNumber(final Blackhole blackhole) {
+        for (String phone : phones) {
+            blackhole.consume(ContactsValidation.isValidPhoneNumber(phone));
+        }
+    }
+
+    /**
+     * Validates the phone numbers with the regular expression.
+     *
+     * @param blackhole The sink of the results.
+     */
+    @Benchmark
+    @OperationsPerInvocation(BenchmarkContacts.INPUTS)
+    public void phoneNumberRegex(final Blackhole blackhole) {
+        for (String phone : phones) {
+            blackhole.consume(Pattern.matches(PHONE_REGEX.pattern(), phone));
+        }
+    }
+
+    /**
+     * Validates the addresses.
+     *
+     * @param blackhole The sink of the results.
+     */
+    @Benchmark
+    @OperationsPerInvocation(BenchmarkContacts.INPUTS)
+    public void address(final Blackhole blackhole) {
+        for (String address : addresses) {
+            blackhole.consume(ContactsValidation.isValidAddress(address));
+        }
+    }
+
+    /**
+     * Validates the addresses with the regular expression.
+     *
+     * @param blackhole The sink of the results.
+     */
+    @Benchmark
+    @OperationsPerInvocation(BenchmarkContacts.INPUTS)
+    public void addressRegex(final Blackhole blackhole) {
+        for (String address : addresses) {
+            blackhole.consume(
+                Pattern.matches(ADDRESS_REGEX.pattern(), address));
+        }
+    }
+
+    /**
+     * Validates the email addresses.
+     *
+     * @param blackhole The sink of the results.
+     */
+    @Benchmark
+    @OperationsPerInvocation(BenchmarkContacts.INPUTS)
+    public void emailAddress(final Blackhole blackhole) {
+        for (String email : emails) {
+            blackhole.consume(ContactsValidation.isValidEmailAddress(email));
+        }
+    }
+
+    /**
+     * Validates the email addresses with the regular expression.
+     *
+     * @param blackhole The sink of the results.
+     */
+    @Benchmark
+    @OperationsPerInvocation(BenchmarkContacts.INPUTS)
+    public void emailAddressRegex(final Blackhole blackhole) {
+        for (String email : emails) {
+            blackhole.consume(Pattern.matches(EMAIL_REGEX.pattern(), email));
+        }
+    }
+
+    /**
+     * The control character check as it was written before the
+     * arithmetic version, kept as the baseline.
+     *
+     * @param ssn The social security number to check.
+     * @return {@code true} if the control character is valid.
+     */
+    private static boolean legacyControlCharacter(final String ssn) {
+        final int ssnDigits = Integer.parseInt(
+            (ssn.charAt(0) == '0')
+            ? ssn.substring(1, 6) + ssn.substring(7, ssn.length() - 1)
+            : ssn.substring(0, 6) + ssn.substring(7, ssn.length() - 1)
+        );
+        final char[] controlCharacters = {
+            '0', '1', '2', '3', '4', '5', '6', '7', '8', '9',
+            'A', 'B', 'C', 'D', 'E', 'F', 'H', 'J', 'K', 'L',
+            'M', 'N', 'P', 'R', 'S', 'T', 'U', 'V', 'W', 'X', 'Y'
+        };
+        return ssn.charAt(ssn.length() - 1)
+            == controlCharacters[ssnDigits % controlCharacters.length];
+    }
+}
@@ -0,0 +1,179 @@
+package contacts;
+
+import java.io.Closeable;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Writes log messages to a stream on a background thread, so that the
+ * thread reporting a message never waits for the console.
+ *
+ * Messages are put into a fixed ring buffer and the background thread
+ * writes everything in it at once, flushing the stream once per batch
+ * rather than once per message. When the buffer is full, reporting
+ * waits for room instead of losing messages.
+ */
+public final class AsyncLogWriter implements ContactsLogListener, Closeable {
+    /** The number of messages the buffer holds by default. */
+    private static final int DEFAULT_CAPACITY = 1024;
+
+    /** The seconds waited for the last messages when closing. */
+    private static final int CLOSE_TIMEOUT = 5;
+
+    /** The stream the messages are written to. */
+    private final PrintStream out;
+
+    /** The messages waiting to be written, a power of two in size. */
+    private final String[] ring;
+
+    /** The lock guarding the buffer. */
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /** Signalled when a message is put into the buffer. */
+    private final Condition notEmpty = lock.newCondition();
+
+    /** Signalled when messages have been written. */
+    private final Condition written = lock.newCondition();
+
+    /** The number of messages written, the index of the oldest one. */
+    private long head;
+
+    /** The number of messages put into the buffer. */
+    private long tail;
+
+    /** Whether the writer has been closed. */
+    private boolean closed;
+
+    /** The background thread writing the messages. */
+    private final Thread writer;
+
+    /**
+     * Creates a writer of the given stream with the default capacity
+     * and starts its background thread.
+     *
+     * @param out The stream to write to.
+     */
+    public AsyncLogWriter(final PrintStream out) {
+        this(out, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates a writer of the given stream and starts its
+     * background thread.
+     *
+     * @param out The stream to write to.
+     * @param capacity The number of messages the buffer holds,
+     *        rounded up to a power of two.
+     */
+    public AsyncLogWriter(final PrintStream out, final int capacity) {
+        this.out = out;
+        ring = new String[Integer.highestOneBit(Math.max(1, capacity - 1))
+            << 1];
+        writer = new Thread(this::run, "contacts-log");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Puts a message into the buffer, waiting for room if it is full.
+     * Once the writer is closed, messages are written right away.
+     *
+     * @param message The message.
+     */
+    @Override
+    public void log(final String message) {
+        lock.lock();
+        try {
+            while (tail - head == ring.length && !closed) {
+                written.awaitUninterruptibly();
+            }
+            if (!closed) {
+                ring[(int) tail & (ring.length - 1)] = message;
+                tail++;
+                notEmpty.signal();
+                return;
+            }
+        } finally {
+            lock.unlock();
+        }
+        out.println(message);
+    }
+
+    /**
+     * Waits until every message put into the buffer so far has been
+     * written, for example before prompting on the console.
+     */
+    public void flush() {
+        lock.lock();
+        try {
+            final long target = tail;
+            while (head < target && writer.isAlive()) {
+                written.awaitUninterruptibly();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Writes the messages left in the buffer and stops the background
+     * thread. Later messages are written right away.
+     */
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            closed = true;
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(CLOSE_TIMEOUT));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /** Writes the messages in batches until closed. */
+    private void run() {
+        final StringBuilder batch = new StringBuilder();
+        final String lineSeparator = System.lineSeparator();
+        while (true) {
+            final long from;
+            final long to;
+            lock.lock();
+            try {
+                while (head == tail && !closed) {
+                    notEmpty.awaitUninterruptibly();
+                }
+                if (head == tail) {
+                    return;
+                }
+                from = head;
+                to = tail;
+            } finally {
+                lock.unlock();
+            }
+            batch.setLength(0);
+            for (long i = from; i < to; i++) {
+                batch.append(ring[(int) i & (ring.length - 1)])
+                    .append(lineSeparator);
+            }
+            out.print(batch);
+            out.flush();
+            lock.lock();
+            try {
+                for (long i = from; i < to; i++) {
+                    ring[(int) i & (ring.length - 1)] = null;
+                }
+                head = to;
+                written.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
@@ -0,0 +1,1033 @@
+package contacts;
+
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractCollection;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A compact contact store that keeps the details in columns of
+ * primitive arrays instead of one Person object per contact.
+ *
+ * <ul>
+ * <li>The social security number is packed into a {@code long}: the
+ * nine digits of the birth date and individual number times two plus
+ * one for the 2000s. The control character follows from the digits.</li>
+ * <li>Names and email domains, which repeat a lot, are dictionary
+ * encoded: each distinct value is stored once and the columns hold
+ * its number.</li>
+ * <li>Phone numbers of up to 17 digits are packed into a {@code long}.</li>
+ * <li>Addresses, the user names of email addresses and longer phone
+ * numbers are stored as UTF-8 in one shared byte array, and the
+ * columns hold their offsets.</li>
+ * </ul>
+ *
+ * Contacts are handed out as flyweight views that read their details
+ * from the columns when asked and write changes straight back to them.
+ * A view keeps working after other contacts are deleted, but reads
+ * null details once its own contact is deleted.
+ *
+ * All access to the columns is synchronized on the store.
+ */
+public class ColumnarContactStore implements ContactStore {
+    /** The key of an empty hash table slot and of a deleted contact. */
+    private static final long NO_KEY = 0;
+
+    /** The offset or dictionary number standing for a null detail. */
+    private static final int NULL = -1;
+
+    /** The packed phone number standing for a null phone number. */
+    private static final long NULL_PHONE = -1;
+
+    /** The most digits of a phone number packed into a long. */
+    private static final int MAX_PACKED_DIGITS = 17;
+
+    /** The position of the digit count in a packed phone number. */
+    private static final int PHONE_LENGTH_SHIFT = 57;
+
+    /** The bit of a packed phone number that starts with a plus. */
+    private static final long PHONE_PLUS_BIT = 1L << 62;
+
+    /** The number of contacts the columns first have room for. */
+    private static final int INITIAL_CAPACITY = 1024;
+
+    /** The heap size under which garbage is never compacted. */
+    private static final int MIN_COMPACTION_SIZE = 1 << 20;
+
+    /** The index of the century character in a social security number. */
+    private static final int SSN_CENTURY_INDEX = 6;
+
+    /** The length of a social security number. */
+    private static final int SSN_LENGTH = 11;
+
+    /** The packed social security numbers, {@link #NO_KEY} if deleted. */
+    private long[] keys = new long[INITIAL_CAPACITY];
+
+    /** The dictionary numbers of the first names. */
+    private int[] firstNames = new int[INITIAL_CAPACITY];
+
+    /** The dictionary numbers of the last names. */
+    private int[] lastNames = new int[INITIAL_CAPACITY];
+
+    /** The packed phone numbers, or minus two minus their heap offset. */
+    private long[] phoneNumbers = new long[INITIAL_CAPACITY];
+
+    /** The heap offsets of the addresses. */
+    private int[] addresses = new int[INITIAL_CAPACITY];
+
+    /** The heap offsets of the email addresses up to the @. */
+    private int[] emailUsers = new int[INITIAL_CAPACITY];
+
+    /** The dictionary numbers of the email domains, null if no @. */
+    private int[] emailDomains = new int[INITIAL_CAPACITY];
+
+    /** The number of used rows, including deleted ones. */
+    private int rows;
+
+    /** The number of contacts. */
+    private int size;
+
+    /** The first and last names. */
+    private Dictionary names = new Dictionary();
+
+    /** The email domains. */
+    private Dictionary domains = new Dictionary();
+
+    /** The UTF-8 strings, each after its length as a varint. */
+    private byte[] heap = new byte[INITIAL_CAPACITY * 16];
+
+    /** The number of used bytes in the heap. */
+    private int heapSize;
+
+    /** The number of heap bytes no longer referenced. */
+    private int heapGarbage;
+
+    /** The packed SSNs of the hash table, {@link #NO_KEY} if empty. */
+    private long[] tableKeys = new long[INITIAL_CAPACITY * 2];
+
+    /** The row of each packed SSN in the hash table. */
+    private int[] tableRows = new int[INITIAL_CAPACITY * 2];
+
+    /** Creates an empty store. */
+    public ColumnarContactStore() {
+    }
+
+    /**
+     * Creates a frozen copy of a store for {@link #snapshot()}. The
+     * columns are copied, while the dictionaries and the heap are shared
+     * because they are only ever appended to or replaced as a whole.
+     *
+     * @param source The store to copy.
+     */
+    private ColumnarContactStore(final ColumnarContactStore source) {
+        keys = Arrays.copyOf(source.keys, source.rows);
+        firstNames = Arrays.copyOf(source.firstNames, source.rows);
+        lastNames = Arrays.copyOf(source.lastNames, source.rows);
+        phoneNumbers = Arrays.copyOf(source.phoneNumbers, source.rows);
+        addresses = Arrays.copyOf(source.addresses, source.rows);
+        emailUsers = Arrays.copyOf(source.emailUsers, source.rows);
+        emailDomains = Arrays.copyOf(source.emailDomains, source.rows);
+        rows = source.rows;
+        size = source.size;
+        names = source.names.frozen();
+        domains = source.domains.frozen();
+        heap = source.heap;
+        heapSize = source.heapSize;
+        tableKeys = new long[0];
+        tableRows = new int[0];
+    }
+
+    /**
+     * A dictionary giving each distinct string a number.
+     * Numbers are never reused, so a frozen copy can share the values.
+     */
+    private static final class Dictionary {
+        /** The numbers keyed by the strings. */
+        private final HashMap<String, Integer> numbers;
+
+        /** The strings by their numbers. */
+        private String[] values;
+
+        /** The number of strings. */
+        private int count;
+
+        /** Creates an empty dictionary. */
+        Dictionary() {
+            numbers = new HashMap<>();
+            values = new String[16];
+        }
+
+        /**
+         * Creates a read-only dictionary sharing the given strings.
+         *
+         * @param values The strings by their numbers.
+         * @param count The number of strings.
+         */
+        private Dictionary(final String[] values, final int count) {
+            numbers = null;
+            this.values = values;
+            this.count = count;
+        }
+
+        /**
+         * Gets the number of a string, adding the string if it is new.
+         *
+         * @param value The string, may be null.
+         * @return The number of the string, {@link #NULL} for null.
+         */
+        int numberOf(final String value) {
+            if (value == null) {
+                return NULL;
+            }
+            final Integer number = numbers.get(value);
+            if (number != null) {
+                return number;
+            }
+            if (count == values.length) {
+                values = Arrays.copyOf(values, count * 2);
+            }
+            values[count] = value;
+            numbers.put(value, count);
+            return count++;
+        }
+
+        /**
+         * Gets the string of a number.
+         *
+         * @param number The number.
+         * @return The string, or null for {@link #NULL}.
+         */
+        String valueOf(final int number) {
+            return number == NULL ? null : values[number];
+        }
+
+        /**
+         * Gets a read-only copy seeing the strings added so far.
+         *
+         * @return The copy.
+         */
+        Dictionary frozen() {
+            return new Dictionary(values, count);
+        }
+    }
+
+    /**
+     * A contact whose details are read from and written to the columns
+     * of the store. Only the packed social security number is kept;
+     * the row is looked up again if rows were moved by a compaction.
+     */
+    private static final class View extends Person {
+        /** The serialization version of the class. */
+        private static final long serialVersionUID = 1L;
+
+        /** The store holding the details. */
+        private final transient ColumnarContactStore store;
+
+        /** The packed social security number. */
+        private final long key;
+
+        /** The row the details were last found in. */
+        private transient int row;
+
+        /**
+         * Creates a view of a row.
+         *
+         * @param store The store holding the details.
+         * @param key The packed social security number.
+         * @param row The row of the details.
+         */
+        View(final ColumnarContactStore store, final long key,
+                final int row) {
+            this.store = store;
+            this.key = key;
+            this.row = row;
+        }
+
+        /**
+         * Reads a detail from the store.
+         *
+         * @param field The detail to read.
+         * @return The detail, or null if the contact was deleted.
+         */
+        private String read(final ContactField field) {
+            synchronized (store) {
+                if (row >= store.rows || store.keys[row] != key) {
+                    row = store.find(key);
+                    if (row < 0) {
+                        return null;
+                    }
+                }
+                return store.read(row, field);
+            }
+        }
+
+        /**
+         * Writes a detail to the store, unless the contact was deleted.
+         *
+         * @param field The detail to write.
+         * @param value The value of the detail.
+         */
+        private void writeBack(final ContactField field, final String value) {
+            synchronized (store) {
+                final int current = store.find(key);
+                if (current >= 0) {
+                    row = current;
+                    store.write(current, field, value);
+                }
+            }
+        }
+
+        @Override
+        public String getSsn() {
+            return unpack(key);
+        }
+
+        @Override
+        public String getFirstName() {
+            return read(ContactField.FIRST_NAME);
+        }
+
+        @Override
+        public String getLastName() {
+            return read(ContactField.LAST_NAME);
+        }
+
+        @Override
+        public String getPhoneNumber() {
+            return read(ContactField.PHONE_NUMBER);
+        }
+
+        @Override
+        public String getAddress() {
+            return read(ContactField.ADDRESS);
+        }
+
+        @Override
+        public String getEmailAddress() {
+            return read(ContactField.EMAIL_ADDRESS);
+        }
+
+        @Override
+        public String getDetail(final ContactField field) {
+            return field == ContactField.SSN ? getSsn() : read(field);
+        }
+
+        @Override
+        void setFirstName(final String firstName) {
+            super.setFirstName(firstName);
+            writeBack(ContactField.FIRST_NAME, firstName);
+        }
+
+        @Override
+        void setLastName(final String lastName) {
+            super.setLastName(lastName);
+            writeBack(ContactField.LAST_NAME, lastName);
+        }
+
+        @Override
+        void setPhoneNumber(final String phoneNumber) {
+            super.setPhoneNumber(phoneNumber);
+            writeBack(ContactField.PHONE_NUMBER, phoneNumber);
+        }
+
+        @Override
+        void setAddress(final String address) {
+            super.setAddress(address);
+            writeBack(ContactField.ADDRESS, address);
+        }
+
+        @Override
+        void setEmailAddress(final String emailAddress) {
+            super.setEmailAddress(emailAddress);
+            writeBack(ContactField.EMAIL_ADDRESS, emailAddress);
+        }
+
+        @Override
+        void restoreDetail(final ContactField field, final String value) {
+            if (field != ContactField.SSN) {
+                writeBack(field, value);
+            }
+        }
+    }
+
+    /**
+     * Packs a social security number into a long.
+     *
+     * @param ssn The social security number.
+     * @return The packed number, or {@link #NO_KEY} if it is not valid.
+     */
+    static long pack(final String ssn) {
+        if (ssn == null || ssn.length() != SSN_LENGTH
+                || !ContactsValidation.isValidFinnishSsnFormat(ssn)
+                || !ContactsValidation.isValidControlCharacter(ssn)) {
+            return NO_KEY;
+        }
+        long digits = 0;
+        for (int i = 0; i < SSN_LENGTH - 1; i++) {
+            if (i != SSN_CENTURY_INDEX) {
+                digits = digits * 10 + (ssn.charAt(i) - '0');
+            }
+        }
+        return digits * 2 + (ssn.charAt(SSN_CENTURY_INDEX) == 'A' ? 1 : 0);
+    }
+
+    /**
+     * Unpacks a social security number packed by {@link #pack(String)}.
+     *
+     * @param key The packed number.
+     * @return The social security number.
+     */
+    static String unpack(final long key) {
+        final int digits = (int) (key >>> 1);
+        final char[] ssn = new char[SSN_LENGTH];
+        int rest = digits;
+        for (int i = SSN_LENGTH - 2; i >= 0; i--) {
+            if (i == SSN_CENTURY_INDEX) {
+                ssn[i] = (key & 1) == 1 ? 'A' : '-';
+            } else {
+                ssn[i] = (char) ('0' + rest % 10);
+                rest /= 10;
+            }
+        }
+        ssn[SSN_LENGTH - 1] = ContactsValidation.controlCharacter(digits);
+        return new String(ssn);
+    }
+
+    @Override
+    public synchronized Person get(final String ssn) {
+        final long key = pack(ssn);
+        final int row = key == NO_KEY ? -1 : find(key);
+        return row < 0 ? null : new View(this, key, row);
+    }
+
+    @Override
+    public synchronized boolean contains(final String ssn) {
+        final long key = pack(ssn);
+        return key != NO_KEY && find(key) >= 0;
+    }
+
+    /**
+     * Adds a contact unless its social security number is already in use.
+     *
+     * @param person The contact to add.
+     * @return {@code true} if added, {@code false} if the SSN already exists.
+     * @throws IllegalArgumentException If the social security number
+     *         is not valid and can't be packed.
+     */
+    @Override
+    public synchronized boolean add(final Person person) {
+        final long key = pack(person.getSsn());
+        if (key == NO_KEY) {
+            throw new IllegalArgumentException(
+                "Invalid social security number " + person.getSsn()
+            );
+        }
+        if (find(key) >= 0) {
+            return false;
+        }
+        if (rows == keys.length) {
+            growColumns(rows + (rows >> 1));
+        }
+        final int row = rows++;
+        keys[row] = key;
+        addresses[row] = NULL;
+        emailUsers[row] = NULL;
+        phoneNumbers[row] = NULL_PHONE;
+        for (ContactField field : ContactField.values()) {
+            if (field != ContactField.SSN) {
+                write(row, field, person.getDetail(field));
+            }
+        }
+        insert(key, row);
+        size++;
+        return true;
+    }
+
+    @Override
+    public synchronized Person remove(final String ssn) {
+        final long key = pack(ssn);
+        final int row = key == NO_KEY ? -1 : find(key);
+        if (row < 0) {
+            return null;
+        }
+        final Person removed = new View(this, key, row).copy();
+        release(row);
+        keys[row] = NO_KEY;
+        delete(key);
+        size--;
+        if (rows - size > Math.max(INITIAL_CAPACITY, rows >> 1)) {
+            compactRows();
+        }
+        return removed;
+    }
+
+    @Override
+    public synchronized void clear() {
+        final ColumnarContactStore empty = new ColumnarContactStore();
+        keys = empty.keys;
+        firstNames = empty.firstNames;
+        lastNames = empty.lastNames;
+        phoneNumbers = empty.phoneNumbers;
+        addresses = empty.addresses;
+        emailUsers = empty.emailUsers;
+        emailDomains = empty.emailDomains;
+        rows = 0;
+        size = 0;
+        names = empty.names;
+        domains = empty.domains;
+        heap = empty.heap;
+        heapSize = 0;
+        heapGarbage = 0;
+        tableKeys = empty.tableKeys;
+        tableRows = empty.tableRows;
+    }
+
+    @Override
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Keeps the details of a changed contact. Views write their changes
+     * to the columns as they are made, so only other contacts with the
+     * same social security number need to be copied.
+     *
+     * @param person The changed contact.
+     */
+    @Override
+    public synchronized void updated(final Person person) {
+        if (person instanceof View && ((View) person).store == this) {
+            return;
+        }
+        final long key = pack(person.getSsn());
+        final int row = key == NO_KEY ? -1 : find(key);
+        if (row >= 0) {
+            for (ContactField field : ContactField.values()) {
+                if (field != ContactField.SSN) {
+                    write(row, field, person.getDetail(field));
+                }
+            }
+        }
+    }
+
+    @Override
+    public Iterator<Person> iterator() {
+        final long[] liveKeys;
+        synchronized (this) {
+            liveKeys = new long[size];
+            int count = 0;
+            for (int row = 0; row < rows; row++) {
+                if (keys[row] != NO_KEY) {
+                    liveKeys[count++] = keys[row];
+                }
+            }
+        }
+        return new Iterator<Person>() {
+            private int position;
+
+            private Person next = advance();
+
+            private Person advance() {
+                synchronized (ColumnarContactStore.this) {
+                    while (position < liveKeys.length) {
+                        final long key = liveKeys[position++];
+                        final int row = find(key);
+                        if (row >= 0) {
+                            return new View(ColumnarContactStore.this, key,
+                                row);
+                        }
+                    }
+                    return null;
+                }
+            }
+
+            @Override
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            @Override
+            public Person next() {
+                if (next == null) {
+                    throw new NoSuchElementException();
+                }
+                final Person current = next;
+                next = advance();
+                return current;
+            }
+        };
+    }
+
+    /**
+     * Takes a frozen copy of the columns. The copy shares the dictionaries
+     * and the string heap, so it costs a few bytes per contact.
+     *
+     * @return The contacts in insertion order.
+     */
+    @Override
+    public synchronized Collection<Person> snapshot() {
+        final ColumnarContactStore frozen = new ColumnarContactStore(this);
+        return new AbstractCollection<Person>() {
+            @Override
+            public Iterator<Person> iterator() {
+                return frozen.frozenIterator();
+            }
+
+            @Override
+            public int size() {
+                return frozen.size;
+            }
+        };
+    }
+
+    /**
+     * Iterates the rows of a frozen copy, which has no hash table.
+     *
+     * @return The iterator of the contacts.
+     */
+    private Iterator<Person> frozenIterator() {
+        return new Iterator<Person>() {
+            private int row = skipDeleted(0);
+
+            private int skipDeleted(final int from) {
+                int next = from;
+                while (next < rows && keys[next] == NO_KEY) {
+                    next++;
+                }
+                return next;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return row < rows;
+            }
+
+            @Override
+            public Person next() {
+                if (row >= rows) {
+                    throw new NoSuchElementException();
+                }
+                final Person person = new Person(unpack(keys[row]),
+                    read(row, ContactField.FIRST_NAME),
+                    read(row, ContactField.LAST_NAME),
+                    read(row, ContactField.PHONE_NUMBER),
+                    read(row, ContactField.ADDRESS),
+                    read(row, ContactField.EMAIL_ADDRESS));
+                row = skipDeleted(row + 1);
+                return person;
+            }
+        };
+    }
+
+    /**
+     * Reads a detail of a row.
+     *
+     * @param row The row.
+     * @param field The detail, not the social security number.
+     * @return The detail.
+     */
+    private String read(final int row, final ContactField field) {
+        switch (field) {
+            case FIRST_NAME:
+                return names.valueOf(firstNames[row]);
+            case LAST_NAME:
+                return names.valueOf(lastNames[row]);
+            case PHONE_NUMBER:
+                return unpackPhoneNumber(phoneNumbers[row]);
+            case ADDRESS:
+                return readString(addresses[row]);
+            case EMAIL_ADDRESS:
+                final String user = readString(emailUsers[row]);
+                final int domain = emailDomains[row];
+                return user == null || domain == NULL ? user
+                    : user + '@' + domains.valueOf(domain);
+            default:
+                throw new IllegalArgumentException("Unknown field " + field);
+        }
+    }
+
+    /**
+     * Writes a detail of a row.
+     *
+     * @param row The row.
+     * @param field The detail, not the social security number.
+     * @param value The value of the detail, may be null.
+     */
+    private void write(final int row, final ContactField field,
+            final String value) {
+        switch (field) {
+            case FIRST_NAME:
+                firstNames[row] = names.numberOf(value);
+                break;
+            case LAST_NAME:
+                lastNames[row] = names.numberOf(value);
+                break;
+            case PHONE_NUMBER:
+                releasePhoneNumber(phoneNumbers[row]);
+                phoneNumbers[row] = packPhoneNumber(value);
+                break;
+            case ADDRESS:
+                releaseString(addresses[row]);
+                addresses[row] = writeString(value);
+                break;
+            case EMAIL_ADDRESS:
+                releaseString(emailUsers[row]);
+                final int at = value == null ? -1 : value.lastIndexOf('@');
+                emailUsers[row] =
+                    writeString(at < 0 ? value : value.substring(0, at));
+                emailDomains[row] = at < 0 ? NULL
+                    : domains.numberOf(value.substring(at + 1));
+                break;
+            default:
+                throw new IllegalArgumentException(
+                    "The social security number of a contact can't be changed."
+                );
+        }
+        if (heapGarbage > Math.max(MIN_COMPACTION_SIZE, heapSize >> 1)) {
+            compactHeap();
+        }
+    }
+
+    /**
+     * Marks the heap strings of a deleted row as garbage.
+     *
+     * @param row The row.
+     */
+    private void release(final int row) {
+        releasePhoneNumber(phoneNumbers[row]);
+        releaseString(addresses[row]);
+        releaseString(emailUsers[row]);
+    }
+
+    /**
+     * Packs a phone number of up to 17 digits and an optional leading
+     * plus into a long, or stores a longer one in the heap.
+     *
+     * @param phoneNumber The phone number, may be null.
+     * @return The packed phone number.
+     */
+    private long packPhoneNumber(final String phoneNumber) {
+        if (phoneNumber == null) {
+            return NULL_PHONE;
+        }
+        final boolean plus = phoneNumber.startsWith("+");
+        final int digits = phoneNumber.length() - (plus ? 1 : 0);
+        long value = 0;
+        boolean packable = digits <= MAX_PACKED_DIGITS;
+        for (int i = plus ? 1 : 0; packable && i < phoneNumber.length(); i++) {
+            final char ch = phoneNumber.charAt(i);
+            packable = ch >= '0' && ch <= '9';
+            value = value * 10 + (ch - '0');
+        }
+        if (!packable) {
+            return -2L - writeString(phoneNumber);
+        }
+        return (plus ? PHONE_PLUS_BIT : 0)
+            | ((long) digits << PHONE_LENGTH_SHIFT) | value;
+    }
+
+    /**
+     * Unpacks a phone number packed by {@link #packPhoneNumber(String)}.
+     *
+     * @param packed The packed phone number.
+     * @return The phone number.
+     */
+    private String unpackPhoneNumber(final long packed) {
+        if (packed == NULL_PHONE) {
+            return null;
+        }
+        if (packed < 0) {
+            return readString((int) (-2L - packed));
+        }
+        final boolean plus = (packed & PHONE_PLUS_BIT) != 0;
+        final int digits =
+            (int) (packed >>> PHONE_LENGTH_SHIFT) & (0x1F);
+        long value = packed & ((1L << PHONE_LENGTH_SHIFT) - 1);
+        final char[] phoneNumber = new char[digits + (plus ? 1 : 0)];
+        for (int i = phoneNumber.length - 1; i >= (plus ? 1 : 0); i--) {
+            phoneNumber[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+        if (plus) {
+            phoneNumber[0] = '+';
+        }
+        return new String(phoneNumber);
+    }
+
+    /**
+     * Marks a phone number stored in the heap as garbage.
+     *
+     * @param packed The packed phone number.
+     */
+    private void releasePhoneNumber(final long packed) {
+        if (packed < NULL_PHONE) {
+            releaseString((int) (-2L - packed));
+        }
+    }
+
+    /**
+     * Appends a string to the heap.
+     *
+     * @param value The string, may be null.
+     * @return The offset of the string, {@link #NULL} for null.
+     */
+    private int writeString(final String value) {
+        if (value == null) {
+            return NULL;
+        }
+        final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        final int needed = heapSize + 5 + bytes.length;
+        if (needed > heap.length) {
+            heap = Arrays.copyOf(heap,
+                Math.max(needed, heap.length + (heap.length >> 1)));
+        }
+        final int offset = heapSize;
+        int length = bytes.length;
+        while (length >= 0x80) {
+            heap[heapSize++] = (byte) (length | 0x80);
+            length >>>= 7;
+        }
+        heap[heapSize++] = (byte) length;
+        System.arraycopy(bytes, 0, heap, heapSize, bytes.length);
+        heapSize += bytes.length;
+        return offset;
+    }
+
+    /**
+     * Reads a string from the heap.
+     *
+     * @param offset The offset of the string.
+     * @return The string, or null for {@link #NULL}.
+     */
+    private String readString(final int offset) {
+        if (offset == NULL) {
+            return null;
+        }
+        int position = offset;
+        int length = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = heap[position++];
+            length |= (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        return new String(heap, position, length, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Gets the number of heap bytes a string takes.
+     *
+     * @param offset The offset of the string.
+     * @return The number of bytes, including the length.
+     */
+    private int stringSize(final int offset) {
+        int position = offset;
+        int length = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = heap[position++];
+            length |= (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        return position - offset + length;
+    }
+
+    /**
+     * Marks a string in the heap as garbage.
+     *
+     * @param offset The offset of the string.
+     */
+    private void releaseString(final int offset) {
+        if (offset != NULL) {
+            heapGarbage += stringSize(offset);
+        }
+    }
+
+    /**
+     * Copies the strings still in use to a new heap. The old heap is
+     * left as it was, so frozen copies sharing it stay valid.
+     */
+    private void compactHeap() {
+        final byte[] old = heap;
+        heap = new byte[Math.max(INITIAL_CAPACITY, heapSize - heapGarbage)];
+        heapSize = 0;
+        heapGarbage = 0;
+        for (int row = 0; row < rows; row++) {
+            if (keys[row] == NO_KEY) {
+                continue;
+            }
+            addresses[row] = moveString(old, addresses[row]);
+            emailUsers[row] = moveString(old, emailUsers[row]);
+            if (phoneNumbers[row] < NULL_PHONE) {
+                phoneNumbers[row] =
+                    -2L - moveString(old, (int) (-2L - phoneNumbers[row]));
+            }
+        }
+    }
+
+    /**
+     * Copies a string from an old heap to the end of the heap.
+     *
+     * @param old The old heap.
+     * @param offset The offset of the string in the old heap.
+     * @return The offset of the string in the heap.
+     */
+    private int moveString(final byte[] old, final int offset) {
+        if (offset == NULL) {
+            return NULL;
+        }
+        final byte[] current = heap;
+        heap = old;
+        final int size = stringSize(offset);
+        heap = current;
+        if (heapSize + size > heap.length) {
+            heap = Arrays.copyOf(heap, heap.length + (heap.length >> 1) + size);
+        }
+        System.arraycopy(old, offset, heap, heapSize, size);
+        heapSize += size;
+        return heapSize - size;
+    }
+
+    /** Drops the rows of deleted contacts, keeping the order of the rest. */
+    private void compactRows() {
+        int live = 0;
+        for (int row = 0; row < rows; row++) {
+            if (keys[row] == NO_KEY) {
+                continue;
+            }
+            keys[live] = keys[row];
+            firstNames[live] = firstNames[row];
+            lastNames[live] = lastNames[row];
+            phoneNumbers[live] = phoneNumbers[row];
+            addresses[live] = addresses[row];
+            emailUsers[live] = emailUsers[row];
+            emailDomains[live] = emailDomains[row];
+            live++;
+        }
+        rows = live;
+        growColumns(Math.max(INITIAL_CAPACITY, live + (live >> 1)));
+        rebuildTable(tableKeys.length);
+    }
+
+    /**
+     * Resizes the columns.
+     *
+     * @param capacity The new number of rows the columns have room for.
+     */
+    private void growColumns(final int capacity) {
+        keys = Arrays.copyOf(keys, capacity);
+        firstNames = Arrays.copyOf(firstNames, capacity);
+        lastNames = Arrays.copyOf(lastNames, capacity);
+        phoneNumbers = Arrays.copyOf(phoneNumbers, capacity);
+        addresses = Arrays.copyOf(addresses, capacity);
+        emailUsers = Arrays.copyOf(emailUsers, capacity);
+        emailDomains = Arrays.copyOf(emailDomains, capacity);
+    }
+
+    /**
+     * Finds the row of a packed social security number.
+     *
+     * @param key The packed number.
+     * @return The row, or -1 if there is no such contact.
+     */
+    private int find(final long key) {
+        final int mask = tableKeys.length - 1;
+        for (int slot = slotOf(key, mask); ; slot = (slot + 1) & mask) {
+            if (tableKeys[slot] == key) {
+                return tableRows[slot];
+            }
+            if (tableKeys[slot] == NO_KEY) {
+                return -1;
+            }
+        }
+    }
+
+    /**
+     * Adds a packed social security number to the hash table,
+     * growing the table to keep it at most half full.
+     *
+     * @param key The packed number.
+     * @param row The row of the contact.
+     */
+    private void insert(final long key, final int row) {
+        if ((size + 1) * 2 > tableKeys.length) {
+            rebuildTable(tableKeys.length * 2);
+        }
+        final int mask = tableKeys.length - 1;
+        int slot = slotOf(key, mask);
+        while (tableKeys[slot] != NO_KEY) {
+            slot = (slot + 1) & mask;
+        }
+        tableKeys[slot] = key;
+        tableRows[slot] = row;
+    }
+
+    /**
+     * Removes a packed social security number from the hash table,
+     * moving back the keys after it so that lookups never stop early.
+     *
+     * @param key The packed number.
+     */
+    private void delete(final long key) {
+        final int mask = tableKeys.length - 1;
+        int slot = slotOf(key, mask);
+        while (tableKeys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        int next = slot;
+        while (true) {
+            next = (next + 1) & mask;
+            if (tableKeys[next] == NO_KEY) {
+                break;
+            }
+            final int home = slotOf(tableKeys[next], mask);
+            // Move the key back unless its home lies in (slot, next].
+            if (((next - home) & mask) >= ((next - slot) & mask)) {
+                tableKeys[slot] = tableKeys[next];
+                tableRows[slot] = tableRows[next];
+                slot = next;
+            }
+        }
+        tableKeys[slot] = NO_KEY;
+    }
+
+    /**
+     * Rebuilds the hash table from the columns.
+     *
+     * @param capacity The number of slots, a power of two.
+     */
+    private void rebuildTable(final int capacity) {
+        tableKeys = new long[capacity];
+        tableRows = new int[capacity];
+        final int mask = capacity - 1;
+        for (int row = 0; row < rows; row++) {
+            final long key = keys[row];
+            if (key == NO_KEY) {
+                continue;
+            }
+            int slot = slotOf(key, mask);
+            while (tableKeys[slot] != NO_KEY) {
+                slot = (slot + 1) & mask;
+            }
+            tableKeys[slot] = key;
+            tableRows[slot] = row;
+        }
+    }
+
+    /**
+     * Gets the home slot of a packed social security number.
+     *
+     * @param key The packed number.
+     * @param mask The number of slots minus one.
+     * @return The slot.
+     */
+    private static int slotOf(final long key, final int mask) {
+        final long hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+}
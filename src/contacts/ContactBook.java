@@ -0,0 +1,1150 @@
+package contacts;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.MonthDay;
+import java.util.AbstractCollection;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+import java.util.stream.IntStream;
+
+/**
+ * A book of contacts with a store, indexes, change tracker and write
+ * locks of its own. The ContactsManager works on the default book,
+ * which is loaded at startup and saved through the static methods of
+ * the ContactsSerializer. Named books are kept apart from it and from
+ * each other, each saved in a file of its own by a ContactsSerializer
+ * of its own, with a journal and segments next to it, so working with
+ * one book never costs anything for the size of another.
+ *
+ * Named books are opened through {@link ContactBooks}, which loads a
+ * book when it is first opened and unloads it again once it has been
+ * idle long enough to be worth the memory. An unloaded book holds
+ * nothing but its name and file. Every open must be paired with a
+ * {@link #close()}, best with try-with-resources, and the contacts may
+ * only be used in between:
+ *
+ * <pre>
+ * try (ContactBook book = books.open("work")) {
+ *     book.findContact(ssn);
+ * }
+ * </pre>
+ *
+ * Reads never lock. Changes lock one of a fixed set of stripes chosen
+ * by the social security number, so changes to different contacts
+ * rarely wait for each other while changes to the same contact,
+ * and the listeners told about them, happen one at a time.
+ *
+ * A change returns only once the journal has it on disk, waiting
+ * after its lock is released so that changes to other contacts join
+ * the same fsync. If the journal can't be written, the change throws
+ * an {@link UncheckedIOException}; it stays made in memory
+ * and is saved by the next checkpoint.
+ */
+public final class ContactBook implements AutoCloseable {
+    /** The extension of the files the named books are saved in. */
+    public static final String FILE_EXTENSION = ".dat";
+
+    /** The extension of the journals of the named books. */
+    private static final String JOURNAL_EXTENSION = ".journal";
+
+    /** The number of write lock stripes, a power of two. */
+    private static final int LOCK_STRIPES = 64;
+
+    /** The size from which a batch is validated in parallel. */
+    private static final int PARALLEL_BATCH_SIZE = 1024;
+
+    /** The name of the book, or null for the default book. */
+    private final String name;
+
+    /** The file the book is saved in, or null for the default book. */
+    private final Path file;
+
+    /** The counters and latencies of the operations on the contacts. */
+    private final ContactsMetrics metrics;
+
+    /** The listeners told about every change to the contacts. */
+    private final CopyOnWriteArrayList<ContactsListener> listeners =
+        new CopyOnWriteArrayList<>();
+
+    /** The changes made since the contacts were last saved. */
+    private final ContactsChangeTracker changes = new ContactsChangeTracker();
+
+    /** The write locks, each guarding the contacts whose SSN maps to it. */
+    private final ReentrantLock[] locks = new ReentrantLock[LOCK_STRIPES];
+
+    /**
+     * The store holding the contacts keyed by their social security
+     * number, or null while a named book is not loaded.
+     */
+    private ContactStore contacts;
+
+    /** The search index over the details of the contacts. */
+    private ContactsSearchIndex searchIndex;
+
+    /** The sorted indexes for listing the contacts. */
+    private ContactsSortIndex sortIndex;
+
+    /** The indexes of the phone numbers and email addresses. */
+    private ContactsDetailIndex detailIndex;
+
+    /** The sorted index of the birth dates of the contacts. */
+    private ContactsBirthDateIndex birthDateIndex;
+
+    /** The details no two contacts may share. */
+    private volatile Set<ContactField> uniqueFields;
+
+    /** The file of a loaded named book, or null. */
+    private ContactsSerializer serializer;
+
+    /** The number of opens not closed yet. */
+    private int leases;
+
+    /** Whether the book was unloaded and must not be opened again. */
+    private boolean retired;
+
+    /** The time the book was last closed, from {@link System#nanoTime()}. */
+    private volatile long lastUsed = System.nanoTime();
+
+    /**
+     * Creates the default book, loaded with an empty heap store.
+     *
+     * @param metrics The metrics to record the operations in.
+     */
+    ContactBook(final ContactsMetrics metrics) {
+        this(null, null, metrics, Collections.emptySet());
+        useStore(new HeapContactStore());
+    }
+
+    /**
+     * Creates a named book that is not loaded yet.
+     *
+     * @param name The name of the book.
+     * @param file The file the book is saved in.
+     * @param metrics The metrics to record the operations in.
+     * @param uniqueFields The details no two contacts may share.
+     */
+    ContactBook(final String name, final Path file,
+            final ContactsMetrics metrics,
+            final Set<ContactField> uniqueFields) {
+        this.name = name;
+        this.file = file;
+        this.metrics = metrics;
+        this.uniqueFields = uniqueFields;
+        listeners.add(changes);
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            locks[i] = new ReentrantLock();
+        }
+    }
+
+    /**
+     * Gets the name of the book.
+     *
+     * @return The name, or null for the default book.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Loads the book unless it is loaded already, and counts an open
+     * that must be paired with a {@link #close()}.
+     *
+     * @return {@code true} if opened, {@code false} if the book was
+     *         unloaded in the meantime and has to be opened anew.
+     */
+    synchronized boolean acquire() {
+        if (retired) {
+            return false;
+        }
+        if (contacts == null) {
+            load();
+        }
+        leases++;
+        return true;
+    }
+
+    /**
+     * Ends an open of the book. The book stays loaded until the
+     * {@link ContactBooks} it belongs to needs the memory.
+     */
+    @Override
+    public synchronized void close() {
+        if (leases > 0) {
+            leases--;
+        }
+        lastUsed = System.nanoTime();
+    }
+
+    /**
+     * Checks whether the book is loaded.
+     *
+     * @return {@code true} if the contacts are in memory.
+     */
+    synchronized boolean isLoaded() {
+        return contacts != null;
+    }
+
+    /**
+     * Gets the time the book was last closed.
+     *
+     * @return The time from {@link System#nanoTime()}.
+     */
+    long getLastUsed() {
+        return lastUsed;
+    }
+
+    /**
+     * Loads the file of a named book with its segments and journal,
+     * the same way as the default contacts are loaded.
+     */
+    private void load() {
+        useStore(new HeapContactStore());
+        try {
+            Files.createDirectories(file.toAbsolutePath().getParent());
+        } catch (IOException e) {
+            // Loading finds no file and opening the journal fails.
+        }
+        serializer = new ContactsSerializer(this, file);
+        serializer.load();
+    }
+
+    /**
+     * Saves a named book and drops its contacts from memory, unless it
+     * is open or the changes could be lost.
+     *
+     * @param force Whether to unload the book even if it is open.
+     * @return {@code true} if unloaded, {@code false} otherwise.
+     */
+    synchronized boolean unload(final boolean force) {
+        if (contacts == null || (leases > 0 && !force)) {
+            return false;
+        }
+        if (!serializer.saveAndClose()) {
+            return false;
+        }
+        if (contacts.size() == 0) {
+            try {
+                Files.deleteIfExists(
+                    file.resolveSibling(name + JOURNAL_EXTENSION));
+            } catch (IOException e) {
+                // Left for the next load, which finds it empty.
+            }
+        }
+        listeners.remove(searchIndex);
+        listeners.remove(sortIndex);
+        listeners.remove(detailIndex);
+        listeners.remove(birthDateIndex);
+        contacts = null;
+        searchIndex = null;
+        sortIndex = null;
+        detailIndex = null;
+        birthDateIndex = null;
+        serializer = null;
+        retired = true;
+        return true;
+    }
+
+    /**
+     * Saves the changes made to a named book since it was last saved,
+     * into a segment next to its file or by rewriting the file, and
+     * waits until they are on disk. The book must be open.
+     *
+     * @return {@code true} if the contacts are saved, {@code false} if
+     *         saving failed.
+     */
+    public boolean save() {
+        return serializer.saveChanges();
+    }
+
+    /**
+     * Starts saving the changes of a loaded named book in the background
+     * if its journal has grown large or old enough.
+     */
+    synchronized void checkpointIfNeeded() {
+        if (serializer != null) {
+            serializer.checkpointIfDue();
+        }
+    }
+
+    /** Locks every stripe, in order. */
+    private void lockAll() {
+        for (ReentrantLock lock : locks) {
+            lock.lock();
+        }
+    }
+
+    /** Unlocks every stripe. */
+    private void unlockAll() {
+        for (ReentrantLock lock : locks) {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gets the write lock guarding the contact with the given SSN.
+     *
+     * @param ssn The social security number of the contact.
+     * @return The write lock.
+     */
+    private ReentrantLock lockFor(final String ssn) {
+        final int hash = ssn.hashCode() * 0x9E3779B9;
+        return locks[(hash ^ (hash >>> 16)) & (LOCK_STRIPES - 1)];
+    }
+
+    /**
+     * Adds a new, fully validated contact unless its social security
+     * number is already in use. Safe to call from any thread.
+     *
+     * @param person The contact to add.
+     * @return {@code true} if added, {@code false} if the SSN already exists.
+     * @throws IllegalArgumentException If another contact has a detail
+     *         that has to be unique, see {@link #requireUnique}.
+     */
+    public boolean createContact(final Person person) {
+        final long start = metrics.start();
+        final ReentrantLock lock = lockFor(person.getSsn());
+        boolean inUse = false;
+        try {
+            lock.lock();
+            final boolean added;
+            try {
+                final Set<ContactField> unique = uniqueFields;
+                if (!unique.isEmpty()) {
+                    if (contacts.contains(person.getSsn())) {
+                        inUse = true;
+                        return false;
+                    }
+                    detailIndex.reserve(person, unique);
+                }
+                added = contacts.add(person);
+                inUse = !added;
+                if (added) {
+                    for (ContactsListener listener : listeners) {
+                        listener.contactCreated(person);
+                    }
+                }
+            } finally {
+                lock.unlock();
+            }
+            if (added) {
+                awaitDurable();
+            }
+            return added;
+        } finally {
+            metrics.record(ContactsMetrics.Operation.CREATE, start, !inUse);
+        }
+    }
+
+    /**
+     * Validates and sets a detail of the contact with the given social
+     * security number. Safe to call from any thread.
+     *
+     * @param ssn The social security number of the contact.
+     * @param field The detail to set.
+     * @param value The value of the detail.
+     * @return The updated contact or null if there is no such contact.
+     * @throws IllegalArgumentException If the value is invalid, or
+     *         another contact has it and it has to be unique.
+     */
+    public Person updateDetail(final String ssn, final ContactField field,
+            final String value) {
+        final long start = metrics.start();
+        final ReentrantLock lock = lockFor(ssn);
+        boolean missing = false;
+        try {
+            lock.lock();
+            final Person person;
+            try {
+                person = contacts.get(ssn);
+                if (person == null) {
+                    missing = true;
+                    return null;
+                }
+                if (uniqueFields.contains(field)) {
+                    Person.validate(field, value);
+                    detailIndex.reserve(ssn, field, value);
+                }
+                final String oldValue = person.getDetail(field);
+                person.setDetail(field, value);
+                contacts.updated(person);
+                for (ContactsListener listener : listeners) {
+                    listener.contactUpdated(person, field, oldValue);
+                }
+            } finally {
+                lock.unlock();
+            }
+            awaitDurable();
+            return person;
+        } finally {
+            metrics.record(ContactsMetrics.Operation.UPDATE, start, !missing);
+        }
+    }
+
+    /**
+     * Validates and sets several details of the contact with the given
+     * social security number as one change. Every value is validated
+     * and every unique one reserved before any detail is set, so the
+     * contact is either changed as a whole or not at all.
+     * Safe to call from any thread.
+     *
+     * @param ssn The social security number of the contact.
+     * @param details The values of the details to set.
+     * @return The updated contact or null if there is no such contact.
+     * @throws IllegalArgumentException If a value is invalid, the
+     *         social security number is among the details, or another
+     *         contact has a value that has to be unique.
+     */
+    public Person updateDetails(final String ssn,
+            final Map<ContactField, String> details) {
+        final long start = metrics.start();
+        final ReentrantLock lock = lockFor(ssn);
+        boolean missing = false;
+        try {
+            lock.lock();
+            final Person person;
+            try {
+                person = updateLocked(ssn, details);
+            } finally {
+                lock.unlock();
+            }
+            missing = person == null;
+            if (!missing) {
+                awaitDurable();
+            }
+            return person;
+        } finally {
+            metrics.record(ContactsMetrics.Operation.UPDATE, start, !missing);
+        }
+    }
+
+    /**
+     * Validates and sets several details of a contact as one change,
+     * see {@link #updateDetails(String, Map)}. The lock of the contact
+     * must be held.
+     *
+     * @param ssn The social security number of the contact.
+     * @param details The values of the details to set.
+     * @return The updated contact or null if there is no such contact.
+     * @throws IllegalArgumentException If a value is invalid.
+     */
+    private Person updateLocked(final String ssn,
+            final Map<ContactField, String> details) {
+        for (Map.Entry<ContactField, String> detail : details.entrySet()) {
+            if (detail.getKey() == ContactField.SSN) {
+                throw new IllegalArgumentException(
+                    "The social security number of a contact"
+                    + " can't be changed."
+                );
+            }
+            Person.validate(detail.getKey(), detail.getValue());
+        }
+        final Person person = contacts.get(ssn);
+        if (person == null) {
+            return null;
+        }
+        detailIndex.reserve(ssn, details, uniqueFields);
+        final Map<ContactField, String> oldValues =
+            new EnumMap<>(ContactField.class);
+        for (Map.Entry<ContactField, String> detail : details.entrySet()) {
+            oldValues.put(detail.getKey(), person.getDetail(detail.getKey()));
+            person.restoreDetail(detail.getKey(), detail.getValue());
+        }
+        contacts.updated(person);
+        for (Map.Entry<ContactField, String> old : oldValues.entrySet()) {
+            for (ContactsListener listener : listeners) {
+                listener.contactUpdated(person, old.getKey(), old.getValue());
+            }
+        }
+        return person;
+    }
+
+    /**
+     * Deletes the contact with the given social security number.
+     * Safe to call from any thread.
+     *
+     * @param ssn The social security number of the contact.
+     * @return The deleted contact or null if there was no such contact.
+     */
+    public Person deleteContact(final String ssn) {
+        final long start = metrics.start();
+        final ReentrantLock lock = lockFor(ssn);
+        Person person = null;
+        try {
+            lock.lock();
+            try {
+                person = contacts.remove(ssn);
+                if (person != null) {
+                    for (ContactsListener listener : listeners) {
+                        listener.contactDeleted(person);
+                    }
+                }
+            } finally {
+                lock.unlock();
+            }
+            if (person != null) {
+                awaitDurable();
+            }
+            return person;
+        } finally {
+            metrics.record(ContactsMetrics.Operation.DELETE, start,
+                person != null);
+        }
+    }
+
+    /**
+     * Deletes all contacts. Every stripe is locked, in order, so no other
+     * change can slip in between the deletion and the listeners.
+     * Safe to call from any thread.
+     */
+    public void deleteAllContacts() {
+        lockAll();
+        try {
+            contacts.clear();
+            for (ContactsListener listener : listeners) {
+                listener.contactsCleared();
+            }
+        } finally {
+            unlockAll();
+        }
+        awaitDurable();
+    }
+
+    /**
+     * Applies a batch of creates, updates and deletes. Every change is
+     * validated first, in parallel for large batches, with the same
+     * rules as the setters of Person.
+     * The valid changes are then made in order while every stripe is
+     * locked, so no other change is made in between, and the listeners
+     * are told about them as one batch, which the journal writes as a
+     * single entry. A change that fails does not stop the others.
+     * Safe to call from any thread.
+     *
+     * @param batch The changes to make.
+     * @return The number of changes made and the reasons of the others.
+     */
+    public ContactsBatchResult applyBatch(final ContactsBatch batch) {
+        final long start = metrics.start();
+        final List<ContactsBatch.Change> batchChanges = batch.changes();
+        final String[] failures = new String[batchChanges.size()];
+        final Person[] created = new Person[batchChanges.size()];
+        IntStream indexes = IntStream.range(0, batchChanges.size());
+        if (batchChanges.size() >= PARALLEL_BATCH_SIZE) {
+            indexes = indexes.parallel();
+        }
+        indexes.forEach(i -> {
+            try {
+                created[i] = validate(batchChanges.get(i));
+            } catch (IllegalArgumentException e) {
+                failures[i] = e.getMessage();
+            }
+        });
+        return applyValidated(start, batchChanges, created, failures);
+    }
+
+    /**
+     * Creates contacts whose details have already been validated with
+     * the same rules as the setters of Person, as one batch like
+     * {@link #applyBatch(ContactsBatch)} but without validating them
+     * again. A contact whose SSN or unique detail is already in use is
+     * not created.
+     *
+     * @param people The contacts to create.
+     * @return The number of contacts created and the reasons of the
+     *         others keyed by their index in the list.
+     */
+    ContactsBatchResult createValidated(final List<Person> people) {
+        final long start = metrics.start();
+        final ContactsBatch batch = new ContactsBatch();
+        for (Person person : people) {
+            batch.create(person);
+        }
+        return applyValidated(start, batch.changes(),
+            people.toArray(new Person[0]), new String[people.size()]);
+    }
+
+    /**
+     * Makes the validated changes of a batch in order while every stripe
+     * is locked, telling the listeners about them as one batch.
+     *
+     * @param start The time the batch was started, for the metrics.
+     * @param batchChanges The changes of the batch.
+     * @param created The contact to create for each create.
+     * @param failures The reason each invalid change failed, or null
+     *        for the valid ones, filled in for the changes that fail.
+     * @return The number of changes made and the reasons of the others.
+     */
+    private ContactsBatchResult applyValidated(final long start,
+            final List<ContactsBatch.Change> batchChanges,
+            final Person[] created, final String[] failures) {
+        int applied = 0;
+        lockAll();
+        try {
+            for (ContactsListener listener : listeners) {
+                listener.batchStarted();
+            }
+            try {
+                for (int i = 0; i < failures.length; i++) {
+                    if (failures[i] == null) {
+                        failures[i] = apply(batchChanges.get(i), created[i]);
+                        applied += failures[i] == null ? 1 : 0;
+                    }
+                }
+            } finally {
+                for (ContactsListener listener : listeners) {
+                    listener.batchApplied();
+                }
+            }
+        } finally {
+            unlockAll();
+        }
+        if (applied > 0) {
+            awaitDurable();
+        }
+
+        final TreeMap<Integer, String> failed = new TreeMap<>();
+        for (int i = 0; i < failures.length; i++) {
+            if (failures[i] != null) {
+                failed.put(i, failures[i]);
+            }
+        }
+        metrics.recordBatch(start, failures.length, failed.size());
+        return new ContactsBatchResult(applied, failed);
+    }
+
+    /**
+     * Waits until the listeners have saved the changes made by this
+     * thread, once their locks are released, so a change is only
+     * reported as done when it is on disk.
+     *
+     * @throws UncheckedIOException If the changes could not be saved.
+     *         They stay made, and are saved by the next checkpoint.
+     */
+    private void awaitDurable() {
+        for (ContactsListener listener : listeners) {
+            try {
+                listener.awaitDurable();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /**
+     * Validates a change of a batch.
+     *
+     * @param change The change.
+     * @return The contact to create for a create, otherwise null.
+     * @throws IllegalArgumentException If the change is invalid.
+     */
+    private static Person validate(final ContactsBatch.Change change) {
+        Person.validate(ContactField.SSN, change.ssn);
+        switch (change.kind) {
+            case CREATE:
+                final String[] details =
+                    new String[ContactField.values().length];
+                for (ContactField field : ContactField.values()) {
+                    String value = change.person.getDetail(field);
+                    if (value == null && (field == ContactField.ADDRESS
+                            || field == ContactField.EMAIL_ADDRESS)) {
+                        value = "";
+                    }
+                    Person.validate(field, value);
+                    details[field.getCode()] = value;
+                }
+                return new Person(change.ssn,
+                    details[ContactField.FIRST_NAME.getCode()],
+                    details[ContactField.LAST_NAME.getCode()],
+                    details[ContactField.PHONE_NUMBER.getCode()],
+                    details[ContactField.ADDRESS.getCode()],
+                    details[ContactField.EMAIL_ADDRESS.getCode()]);
+            case UPDATE:
+                if (change.field == ContactField.SSN) {
+                    throw new IllegalArgumentException(
+                        "The social security number of a contact"
+                        + " can't be changed."
+                    );
+                }
+                Person.validate(change.field, change.value);
+                return null;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Makes a validated change of a batch. Every stripe must be locked.
+     *
+     * @param change The change.
+     * @param created The contact to create for a create.
+     * @return The reason the change could not be made, or null if made.
+     */
+    private String apply(final ContactsBatch.Change change,
+            final Person created) {
+        switch (change.kind) {
+            case CREATE:
+                if (contacts.contains(created.getSsn())) {
+                    return "Contact with this social security number"
+                        + " already exists.";
+                }
+                try {
+                    if (!uniqueFields.isEmpty()) {
+                        detailIndex.reserve(created, uniqueFields);
+                    }
+                } catch (IllegalArgumentException e) {
+                    return e.getMessage();
+                }
+                contacts.add(created);
+                for (ContactsListener listener : listeners) {
+                    listener.contactCreated(created);
+                }
+                return null;
+            case UPDATE:
+                final Person person = contacts.get(change.ssn);
+                if (person == null) {
+                    return "No contact with this social security number.";
+                }
+                if (uniqueFields.contains(change.field)) {
+                    try {
+                        detailIndex.reserve(change.ssn, change.field,
+                            change.value);
+                    } catch (IllegalArgumentException e) {
+                        return e.getMessage();
+                    }
+                }
+                final String oldValue = person.getDetail(change.field);
+                person.restoreDetail(change.field, change.value);
+                contacts.updated(person);
+                for (ContactsListener listener : listeners) {
+                    listener.contactUpdated(person, change.field, oldValue);
+                }
+                return null;
+            default:
+                final Person removed = contacts.remove(change.ssn);
+                if (removed == null) {
+                    return "No contact with this social security number.";
+                }
+                for (ContactsListener listener : listeners) {
+                    listener.contactDeleted(removed);
+                }
+                return null;
+        }
+    }
+
+    /**
+     * Adds an already validated contact, for example one loaded from a file.
+     * The contact is not added if its SSN is already in use.
+     *
+     * @param person The contact to add.
+     * @return {@code true} if added, {@code false} if the SSN already exists.
+     */
+    public boolean addContact(final Person person) {
+        return contacts.add(person);
+    }
+
+    /**
+     * Finds the contact with the given social security number.
+     *
+     * @param ssn The social security number to look for.
+     * @return The contact if found, otherwise null.
+     */
+    public Person findContact(final String ssn) {
+        final long start = metrics.start();
+        final Person person = contacts.get(ssn);
+        metrics.record(ContactsMetrics.Operation.LOOKUP, start,
+            person != null);
+        return person;
+    }
+
+    /**
+     * Finds the contacts having a word starting with each word of the
+     * query in their names, phone number, email address or address.
+     * Safe to call from any thread.
+     *
+     * @param query The words to search for, separated by spaces.
+     * @param limit The maximum number of contacts to find.
+     * @return The contacts found.
+     * @see ContactsSearchIndex#search(String, int)
+     */
+    public List<Person> search(final String query, final int limit) {
+        return searchIndex.search(query, limit);
+    }
+
+    /**
+     * Requires no two contacts to share a phone number or an email
+     * address, or stops requiring it. Contacts already sharing one are
+     * kept, but no contact is created or changed to share one.
+     *
+     * @param field {@link ContactField#PHONE_NUMBER} or
+     *        {@link ContactField#EMAIL_ADDRESS}.
+     * @param unique Whether the detail has to be unique.
+     * @throws IllegalArgumentException If the detail is not indexed.
+     */
+    public synchronized void requireUnique(final ContactField field,
+            final boolean unique) {
+        if (!ContactsDetailIndex.INDEXED_FIELDS.contains(field)) {
+            throw new IllegalArgumentException(
+                "Only phone numbers and email addresses can be unique."
+            );
+        }
+        final Set<ContactField> fields = EnumSet.noneOf(ContactField.class);
+        fields.addAll(uniqueFields);
+        if (unique) {
+            fields.add(field);
+        } else {
+            fields.remove(field);
+        }
+        uniqueFields = Collections.unmodifiableSet(fields);
+    }
+
+    /**
+     * Gets the details no two contacts may share.
+     *
+     * @return The details, empty if none has to be unique.
+     */
+    public Set<ContactField> getUniqueFields() {
+        return uniqueFields;
+    }
+
+    /**
+     * Checks that no other contact has a value of a detail that has to
+     * be unique, for a contact that is still being created.
+     *
+     * @param ssn The social security number of the contact.
+     * @param field The detail.
+     * @param value The value of the detail.
+     * @throws IllegalArgumentException If the value is invalid, or
+     *         another contact has it and it has to be unique.
+     */
+    void checkUnique(final String ssn, final ContactField field,
+            final String value) {
+        if (uniqueFields.contains(field)) {
+            Person.validate(field, value);
+            detailIndex.checkUnique(ssn, field, value);
+        }
+    }
+
+    /**
+     * Finds the contacts having the given phone number or email address.
+     * Finnish phone numbers match in both their international and their
+     * national form, and email addresses in any case.
+     * Safe to call from any thread.
+     *
+     * @param field {@link ContactField#PHONE_NUMBER} or
+     *        {@link ContactField#EMAIL_ADDRESS}.
+     * @param value The phone number or email address.
+     * @return The contacts found.
+     */
+    public List<Person> findSharing(final ContactField field,
+            final String value) {
+        return contactsOf(detailIndex.find(field, value));
+    }
+
+    /**
+     * Finds the groups of contacts sharing a phone number or an email
+     * address. Safe to call from any thread.
+     *
+     * @param field {@link ContactField#PHONE_NUMBER} or
+     *        {@link ContactField#EMAIL_ADDRESS}.
+     * @return The contacts of each shared value, keyed by the value.
+     */
+    public Map<String, List<Person>> findDuplicates(final ContactField field) {
+        final Map<String, List<Person>> duplicates = new TreeMap<>();
+        for (Map.Entry<String, List<String>> shared
+                : detailIndex.duplicates(field).entrySet()) {
+            final List<Person> sharing = contactsOf(shared.getValue());
+            if (sharing.size() > 1) {
+                duplicates.put(shared.getKey(), sharing);
+            }
+        }
+        return duplicates;
+    }
+
+    /**
+     * Finds the contacts born within a range of dates, from the birth
+     * dates in their social security numbers. The dates are kept in a
+     * sorted index, so the time depends on the contacts found rather
+     * than on all of them. Safe to call from any thread.
+     *
+     * @param from The first birth date.
+     * @param to The last birth date.
+     * @param limit The maximum number of contacts to find.
+     * @return The contacts found, the oldest first.
+     */
+    public List<Person> findBornBetween(final LocalDate from,
+            final LocalDate to, final int limit) {
+        return lookUp(birthDateIndex.bornBetween(from, to, limit));
+    }
+
+    /**
+     * Finds the contacts having their birthday within a range of days
+     * of the year, such as this week. A range from a later day to an
+     * earlier one goes over the new year. Safe to call from any thread.
+     *
+     * @param from The first day.
+     * @param to The last day.
+     * @param limit The maximum number of contacts to find.
+     * @return The contacts found, in the order of their birthdays from
+     *         the first day.
+     */
+    public List<Person> findBirthdaysBetween(final MonthDay from,
+            final MonthDay to, final int limit) {
+        return lookUp(birthDateIndex.birthdaysBetween(from, to, limit));
+    }
+
+    /**
+     * Looks up the contacts with the given social security numbers,
+     * skipping those deleted in the meantime, sorted by their SSN.
+     *
+     * @param ssns The social security numbers.
+     * @return The contacts.
+     */
+    private List<Person> contactsOf(final List<String> ssns) {
+        final List<Person> found = lookUp(ssns);
+        found.sort(Comparator.comparing(Person::getSsn));
+        return found;
+    }
+
+    /**
+     * Looks up the contacts with the given social security numbers in
+     * their order, skipping those deleted in the meantime.
+     *
+     * @param ssns The social security numbers.
+     * @return The contacts.
+     */
+    private List<Person> lookUp(final List<String> ssns) {
+        final List<Person> found = new ArrayList<>(ssns.size());
+        for (String ssn : ssns) {
+            final Person person = contacts.get(ssn);
+            if (person != null) {
+                found.add(person);
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Lists a page of the contacts in the given order. Pages are read
+     * from sorted indexes, so listing a page costs the same however far
+     * into the contacts it is. Safe to call from any thread.
+     *
+     * @param sort The order of the contacts.
+     * @param filter The contacts to list.
+     * @param cursor The cursor of the previous page, or null for the
+     *        first page.
+     * @param pageSize The maximum number of contacts on the page.
+     * @return The page.
+     * @see ContactsSortIndex#list(ContactSort, Predicate, String, int)
+     */
+    public ContactsPage listContacts(final ContactSort sort,
+            final Predicate<Person> filter, final String cursor,
+            final int pageSize) {
+        return sortIndex.list(sort, filter, cursor, pageSize);
+    }
+
+    /**
+     * Gets a read-only view of the contacts in insertion order.
+     * The view reflects later changes and can be iterated while
+     * other threads change the contacts.
+     *
+     * @return The contacts.
+     */
+    public Collection<Person> getContacts() {
+        final ContactStore store = contacts;
+        return new AbstractCollection<Person>() {
+            @Override
+            public Iterator<Person> iterator() {
+                return store.iterator();
+            }
+
+            @Override
+            public int size() {
+                return store.size();
+            }
+        };
+    }
+
+    /**
+     * Takes a consistent view of the contacts as they are now, which
+     * can be read while the contacts keep changing. Every stripe is
+     * locked while the view is taken, so the view never holds half of
+     * a change. Safe to call from any thread.
+     *
+     * @return The contacts in insertion order.
+     */
+    public Collection<Person> snapshot() {
+        lockAll();
+        try {
+            return contacts.snapshot();
+        } finally {
+            unlockAll();
+        }
+    }
+
+    /**
+     * Takes a consistent view of the contacts like {@link #snapshot()}
+     * and forgets the changes made so far, for saving every contact.
+     *
+     * @param journal The journal to move aside while no change can be
+     *        made, so that it holds exactly the changes in the view,
+     *        or null.
+     * @return The contacts in insertion order.
+     * @throws IOException If the journal could not be moved aside.
+     *         Nothing is forgotten then.
+     */
+    Collection<Person> snapshotForSave(final ContactsJournal journal)
+            throws IOException {
+        lockAll();
+        try {
+            if (journal != null) {
+                journal.rotate();
+            }
+            changes.reset();
+            return contacts.snapshot();
+        } finally {
+            unlockAll();
+        }
+    }
+
+    /**
+     * Takes the changes made since the contacts were last saved as
+     * journal entries, for saving only the contacts that changed.
+     * Every stripe is locked so no change is made in between.
+     *
+     * @param journal The journal to move aside while no change can be
+     *        made, so that it holds exactly the changes taken, or null.
+     * @return The bodies of the entries, or null if every contact has
+     *         to be saved with {@link #snapshotForSave} instead, in which
+     *         case the journal is not moved.
+     * @throws IOException If the journal could not be moved aside.
+     *         No change is taken then.
+     */
+    List<ByteBuffer> takeChanges(final ContactsJournal journal)
+            throws IOException {
+        lockAll();
+        try {
+            if (changes.needsEverything()) {
+                return null;
+            }
+            if (journal != null) {
+                journal.rotate();
+            }
+            return changes.takeChanges(contacts);
+        } finally {
+            unlockAll();
+        }
+    }
+
+    /**
+     * Checks whether the contacts changed since they were last saved.
+     *
+     * @return {@code true} if there are changes to save.
+     */
+    public boolean hasUnsavedChanges() {
+        return changes.hasChanges();
+    }
+
+    /**
+     * Marks every contact as changed, for example when saving the
+     * changes failed.
+     */
+    void markAllUnsaved() {
+        changes.markEverything();
+    }
+
+    /**
+     * Gets the tracker of the changes made since the contacts were last
+     * saved, for telling it about changes replayed from the journal.
+     *
+     * @return The change tracker.
+     */
+    ContactsChangeTracker getChangeTracker() {
+        return changes;
+    }
+
+    /**
+     * Adds a listener that is told about every change to the contacts.
+     *
+     * @param listener The listener to add.
+     */
+    public void addListener(final ContactsListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Removes a listener added with {@link #addListener(ContactsListener)}.
+     *
+     * @param listener The listener to remove.
+     */
+    public void removeListener(final ContactsListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Gets the store that holds the contacts.
+     *
+     * @return The contact store.
+     */
+    public ContactStore getStore() {
+        return contacts;
+    }
+
+    /**
+     * Replaces the store that holds the contacts.
+     * This is meant to be done before any contacts are loaded,
+     * and the contacts of the new store count as saved.
+     *
+     * @param store The contact store to use.
+     */
+    public void useStore(final ContactStore store) {
+        contacts = store;
+        changes.reset();
+        listeners.remove(searchIndex);
+        listeners.remove(sortIndex);
+        listeners.remove(detailIndex);
+        listeners.remove(birthDateIndex);
+        searchIndex = new ContactsSearchIndex(store);
+        sortIndex = new ContactsSortIndex(store);
+        detailIndex = new ContactsDetailIndex(store);
+        birthDateIndex = new ContactsBirthDateIndex(store);
+        listeners.add(searchIndex);
+        listeners.add(sortIndex);
+        listeners.add(detailIndex);
+        listeners.add(birthDateIndex);
+    }
+
+    /**
+     * Gets the counters and latencies of the operations on the contacts.
+     *
+     * @return The metrics.
+     */
+    public ContactsMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Gets the number of contacts in the book.
+     *
+     * @return The number of contacts, or 0 if the book is not loaded.
+     */
+    public int getContactsSize() {
+        final ContactStore store = contacts;
+        return store == null ? 0 : store.size();
+    }
+}
@@ -0,0 +1,210 @@
+package contacts;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * The named contact books saved in a directory, each in a file of its
+ * own, such as {@code books/work.dat}. A book is loaded when it is
+ * first opened, so starting up costs nothing however many books there
+ * are, and books that have not been opened cost no memory.
+ *
+ * The loaded books are held within a budget: a number of contacts and
+ * a number of books. Whenever the budget is exceeded, the books closed
+ * the longest time ago are saved and unloaded on a background thread
+ * until the rest fit, so neither the unloading nor the saving is ever
+ * done by a request to another book. Books that are open are never
+ * unloaded, so a single book larger than the budget still works.
+ * An unloaded book is forgotten altogether and loaded again from its
+ * file when it is next opened. The same thread checkpoints the
+ * journals of the loaded books once they have grown large or old
+ * enough, like the journal of the default contacts.
+ */
+public final class ContactBooks implements AutoCloseable {
+    /** The number of contacts loaded at once by default. */
+    public static final int DEFAULT_BUDGET = 1_000_000;
+
+    /** The number of books loaded at once by default. */
+    public static final int DEFAULT_MAX_LOADED = 256;
+
+    /** The names books may have. */
+    private static final Pattern NAME = Pattern.compile("[A-Za-z0-9_-]{1,64}");
+
+    /** The time between checks of the budget in milliseconds. */
+    private static final long EVICTION_INTERVAL = 1000;
+
+    /** The directory the books are saved in. */
+    private final Path directory;
+
+    /** The most contacts loaded at once, unless books are open. */
+    private final int budget;
+
+    /** The most books loaded at once, unless books are open. */
+    private final int maxLoaded;
+
+    /** The books opened since they were last unloaded, keyed by name. */
+    private final ConcurrentHashMap<String, ContactBook> books =
+        new ConcurrentHashMap<>();
+
+    /** The background thread unloading the books over the budget. */
+    private final ScheduledExecutorService evictor =
+        Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "contacts-books");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+    /**
+     * Creates the books saved in the given directory, which is created
+     * when the first book is loaded.
+     *
+     * @param directory The directory of the books.
+     * @param budget The most contacts loaded at once.
+     * @param maxLoaded The most books loaded at once.
+     */
+    public ContactBooks(final Path directory, final int budget,
+            final int maxLoaded) {
+        this.directory = directory;
+        this.budget = budget;
+        this.maxLoaded = maxLoaded;
+        evictor.scheduleWithFixedDelay(this::evict, EVICTION_INTERVAL,
+            EVICTION_INTERVAL, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Opens the book with the given name, loading it if it is not
+     * loaded. A book that does not exist yet is created empty and saved
+     * once it has contacts. The book must be closed after use.
+     *
+     * @param name The name of the book, made of letters, digits,
+     *        hyphens and underscores.
+     * @return The open book.
+     * @throws IllegalArgumentException If the name is not valid.
+     */
+    public ContactBook open(final String name) {
+        if (!NAME.matcher(name).matches()) {
+            throw new IllegalArgumentException(
+                "Invalid book name " + name + ", use up to 64 letters,"
+                + " digits, hyphens and underscores."
+            );
+        }
+        while (true) {
+            final ContactBook book = books.computeIfAbsent(name,
+                key -> new ContactBook(key,
+                    directory.resolve(key + ContactBook.FILE_EXTENSION),
+                    ContactsManager.getMetrics(),
+                    ContactsManager.getUniqueFields()));
+            final boolean loaded = book.isLoaded();
+            if (book.acquire()) {
+                if (!loaded) {
+                    evictor.execute(this::evict);
+                }
+                return book;
+            }
+            // Unloaded in the meantime, so load it anew.
+            books.remove(name, book);
+        }
+    }
+
+    /**
+     * Lists the names of the books, both the saved and the loaded ones.
+     *
+     * @return The names in order.
+     * @throws IOException If the directory can't be read.
+     */
+    public List<String> list() throws IOException {
+        final TreeSet<String> names = new TreeSet<>(books.keySet());
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(
+                directory, "*" + ContactBook.FILE_EXTENSION)) {
+            for (Path file : files) {
+                final String fileName = file.getFileName().toString();
+                final String name = fileName.substring(0,
+                    fileName.length() - ContactBook.FILE_EXTENSION.length());
+                if (NAME.matcher(name).matches()) {
+                    names.add(name);
+                }
+            }
+        } catch (NoSuchFileException e) {
+            // No book has been saved yet.
+        }
+        return new ArrayList<>(names);
+    }
+
+    /**
+     * Gets the number of contacts in the loaded books.
+     *
+     * @return The number of contacts.
+     */
+    public long getLoadedContacts() {
+        long loaded = 0;
+        for (ContactBook book : books.values()) {
+            loaded += book.getContactsSize();
+        }
+        return loaded;
+    }
+
+    /**
+     * Checkpoints the loaded books that need it, then unloads the books
+     * closed the longest time ago until the loaded books fit in the
+     * budget. Runs on the background thread.
+     */
+    private void evict() {
+        final List<ContactBook> loaded = new ArrayList<>();
+        long contacts = 0;
+        for (ContactBook book : books.values()) {
+            book.checkpointIfNeeded();
+            if (book.isLoaded()) {
+                loaded.add(book);
+                contacts += book.getContactsSize();
+            }
+        }
+        if (contacts <= budget && loaded.size() <= maxLoaded) {
+            return;
+        }
+        loaded.sort(Comparator.comparingLong(ContactBook::getLastUsed));
+        int count = loaded.size();
+        for (ContactBook book : loaded) {
+            if (contacts <= budget && count <= maxLoaded) {
+                return;
+            }
+            final int size = book.getContactsSize();
+            if (book.unload(false)) {
+                books.remove(book.getName(), book);
+                contacts -= size;
+                count--;
+            }
+        }
+    }
+
+    /**
+     * Stops unloading books in the background and saves and unloads
+     * every loaded book, open or not. Meant to be called once when the
+     * program exits.
+     */
+    @Override
+    public void close() {
+        evictor.shutdown();
+        try {
+            evictor.awaitTermination(EVICTION_INTERVAL,
+                TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (ContactBook book : books.values()) {
+            book.unload(true);
+            books.remove(book.getName(), book);
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package contacts;
+
+/**
+ * The details of a contact. Each detail has a stable numeric
+ * code that is used when the detail is written to a file.
+ */
+public enum ContactField {
+    /** The Finnish social security number. */
+    SSN(0),
+    /** The first name. */
+    FIRST_NAME(1),
+    /** The last name. */
+    LAST_NAME(2),
+    /** The phone number. */
+    PHONE_NUMBER(3),
+    /** The home address. */
+    ADDRESS(4),
+    /** The email address. */
+    EMAIL_ADDRESS(5);
+
+    /** The code of the detail used in files. */
+    private final int code;
+
+    /**
+     * Creates a detail with the given code.
+     *
+     * @param code The code of the detail used in files.
+     */
+    ContactField(final int code) {
+        this.code = code;
+    }
+
+    /**
+     * Gets the code of the detail used in files.
+     *
+     * @return The code.
+     */
+    public int getCode() {
+        return code;
+    }
+
+    /**
+     * Finds the detail with the given code.
+     *
+     * @param code The code of the detail.
+     * @return The detail.
+     * @throws IllegalArgumentException If no detail has the code.
+     */
+    public static ContactField fromCode(final int code) {
+        for (ContactField field : values()) {
+            if (field.code == code) {
+                return field;
+            }
+        }
+        throw new IllegalArgumentException("Unknown contact field " + code);
+    }
+}
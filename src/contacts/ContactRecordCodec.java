@@ -0,0 +1,578 @@
+package contacts;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A utility class for encoding and decoding contacts in the
+ * compact binary record format used by the contacts file.
+ *
+ * The file starts with a header made of a magic number, a format
+ * version and the number of records. Each record is prefixed with its
+ * length in bytes and holds the six details of a person, each of them
+ * prefixed with its own length. A length of -1 marks a missing detail.
+ *
+ * The records are followed by a chunk directory with the offset and
+ * number of records of every {@value #CHUNK_RECORDS} records, so that
+ * the chunks can be decoded independently of each other. A trailer
+ * after the directory holds the generation of the file, which grows by
+ * one every time the file is rewritten. Files without a trailer are
+ * generation 0 and have no directory, and readers that stop after the
+ * last record never see either.
+ */
+public final class ContactRecordCodec {
+    /** The magic number at the start of every contacts file ("CNTC"). */
+    public static final int MAGIC = 0x434E5443;
+
+    /** The current version of the file format. */
+    public static final short VERSION = 1;
+
+    /** The size of the file header in bytes. */
+    public static final int HEADER_SIZE = 10;
+
+    /** The size of the length prefix in front of every record. */
+    public static final int RECORD_PREFIX_SIZE = 4;
+
+    /** The magic number at the start of the trailer ("GENR"). */
+    private static final int TRAILER_MAGIC = 0x47454E52;
+
+    /** The size of the trailer after the last record in bytes. */
+    private static final int TRAILER_SIZE = 12;
+
+    /** The magic number at the end of the chunk directory ("CHNK"). */
+    private static final int DIRECTORY_MAGIC = 0x43484E4B;
+
+    /** The size of the chunk count and magic ending the directory. */
+    private static final int DIRECTORY_END_SIZE = 8;
+
+    /** The size of one chunk in the directory: its offset and count. */
+    private static final int CHUNK_ENTRY_SIZE = 12;
+
+    /** The number of records in every chunk but the last. */
+    public static final int CHUNK_RECORDS = 1 << 14;
+
+    /** A chunk of records that can be decoded on its own. */
+    public static final class Chunk {
+        /** The offset of the first record of the chunk in the file. */
+        private final long offset;
+
+        /** The offset just past the last record of the chunk. */
+        private final long end;
+
+        /** The number of records in the chunk. */
+        private final int count;
+
+        /**
+         * Creates a chunk.
+         *
+         * @param offset The offset of the first record.
+         * @param end The offset just past the last record.
+         * @param count The number of records.
+         */
+        Chunk(final long offset, final long end, final int count) {
+            this.offset = offset;
+            this.end = end;
+            this.count = count;
+        }
+
+        /**
+         * Gets the offset of the first record of the chunk in the file.
+         *
+         * @return The offset.
+         */
+        public long getOffset() {
+            return offset;
+        }
+
+        /**
+         * Gets the size of the records of the chunk.
+         *
+         * @return The size in bytes.
+         */
+        public int getSize() {
+            return (int) (end - offset);
+        }
+
+        /**
+         * Gets the number of records in the chunk.
+         *
+         * @return The number of records.
+         */
+        public int getCount() {
+            return count;
+        }
+    }
+
+    /** The size of the length prefix in front of every field. */
+    private static final int FIELD_PREFIX_SIZE = 2;
+
+    /** The number of fields stored for every person. */
+    private static final int FIELD_COUNT = 6;
+
+    /** The largest field in bytes that the length prefix can hold. */
+    public static final int MAX_FIELD_SIZE = Short.MAX_VALUE;
+
+    /** The field length used to mark a missing detail. */
+    private static final short NULL_LENGTH = -1;
+
+    /** The default size of the buffers used for channel I/O. */
+    public static final int BUFFER_SIZE = 1 << 16;
+
+    /** Prevents instantiation of this utility class. */
+    private ContactRecordCodec() {
+    }
+
+    /**
+     * Writes the file header into the given buffer.
+     *
+     * @param buffer The buffer to write into.
+     * @param recordCount The number of records that will follow.
+     */
+    public static void writeHeader(final ByteBuffer buffer,
+            final int recordCount) {
+        buffer.putInt(MAGIC);
+        buffer.putShort(VERSION);
+        buffer.putInt(recordCount);
+    }
+
+    /**
+     * Reads and checks the file header from the given buffer.
+     *
+     * @param buffer The buffer to read from.
+     * @return The number of records in the file.
+     * @throws StreamCorruptedException If the header is not recognised.
+     */
+    public static int readHeader(final ByteBuffer buffer)
+            throws StreamCorruptedException {
+        if (buffer.getInt() != MAGIC) {
+            throw new StreamCorruptedException("Not a contacts file");
+        }
+        final short version = buffer.getShort();
+        if (version != VERSION) {
+            throw new StreamCorruptedException(
+                "Unsupported contacts file version " + version
+            );
+        }
+        final int recordCount = buffer.getInt();
+        if (recordCount < 0) {
+            throw new StreamCorruptedException("Negative record count");
+        }
+        return recordCount;
+    }
+
+    /**
+     * Writes the chunk directory after the last record.
+     *
+     * @param offsets The offset of the first record of every chunk.
+     * @param recordCount The number of records in the file.
+     * @param buffer The buffer to write into.
+     * @param channel The channel the buffer is flushed to when it is full.
+     * @throws IOException If flushing the buffer fails.
+     */
+    public static void writeChunkDirectory(final long[] offsets,
+            final int recordCount, final ByteBuffer buffer,
+            final WritableByteChannel channel) throws IOException {
+        for (int i = 0; i < offsets.length; i++) {
+            if (buffer.remaining() < CHUNK_ENTRY_SIZE) {
+                flush(buffer, channel);
+            }
+            buffer.putLong(offsets[i]);
+            buffer.putInt(Math.min(CHUNK_RECORDS,
+                recordCount - i * CHUNK_RECORDS));
+        }
+        if (buffer.remaining() < DIRECTORY_END_SIZE) {
+            flush(buffer, channel);
+        }
+        buffer.putInt(offsets.length);
+        buffer.putInt(DIRECTORY_MAGIC);
+    }
+
+    /**
+     * Reads the chunk directory of a contacts file.
+     *
+     * @param channel The channel of the file.
+     * @return The chunks in file order, or null if the file has no
+     *         chunk directory.
+     * @throws IOException If reading fails or the directory is malformed.
+     */
+    public static Chunk[] readChunkDirectory(final FileChannel channel)
+            throws IOException {
+        final long size = channel.size();
+        final long directoryEnd = size - TRAILER_SIZE;
+        if (readGeneration(channel) == 0
+                || directoryEnd - DIRECTORY_END_SIZE < HEADER_SIZE) {
+            return null;
+        }
+        final ByteBuffer end = read(channel,
+            directoryEnd - DIRECTORY_END_SIZE, DIRECTORY_END_SIZE);
+        final int chunkCount = end.getInt();
+        if (end.getInt() != DIRECTORY_MAGIC) {
+            return null;
+        }
+        final long directoryStart = directoryEnd - DIRECTORY_END_SIZE
+            - (long) chunkCount * CHUNK_ENTRY_SIZE;
+        if (chunkCount < 0 || directoryStart < HEADER_SIZE) {
+            throw new StreamCorruptedException("Invalid chunk directory");
+        }
+        final ByteBuffer entries = read(channel, directoryStart,
+            chunkCount * CHUNK_ENTRY_SIZE);
+        final Chunk[] chunks = new Chunk[chunkCount];
+        long offset = chunkCount == 0 ? 0 : entries.getLong(0);
+        for (int i = 0; i < chunkCount; i++) {
+            entries.position(i * CHUNK_ENTRY_SIZE + Long.BYTES);
+            final int count = entries.getInt();
+            final long next = i + 1 < chunkCount
+                ? entries.getLong((i + 1) * CHUNK_ENTRY_SIZE) : directoryStart;
+            if (offset < HEADER_SIZE || next < offset
+                    || next - offset > Integer.MAX_VALUE || count < 0) {
+                throw new StreamCorruptedException("Invalid chunk directory");
+            }
+            chunks[i] = new Chunk(offset, next, count);
+            offset = next;
+        }
+        return chunks;
+    }
+
+    /**
+     * Decodes the records of a chunk.
+     *
+     * @param channel The channel of the file, which may be read by other
+     *        threads at the same time.
+     * @param chunk The chunk.
+     * @return The decoded contacts in file order.
+     * @throws IOException If reading fails or a record is malformed.
+     */
+    public static Person[] readChunk(final FileChannel channel,
+            final Chunk chunk) throws IOException {
+        final ByteBuffer buffer =
+            read(channel, chunk.getOffset(), chunk.getSize());
+        final Person[] contacts = new Person[chunk.getCount()];
+        for (int i = 0; i < contacts.length; i++) {
+            if (buffer.remaining() < RECORD_PREFIX_SIZE) {
+                throw new EOFException("Unexpected end of chunk");
+            }
+            contacts[i] = readRecord(buffer);
+        }
+        if (buffer.hasRemaining()) {
+            throw new StreamCorruptedException("Invalid chunk length");
+        }
+        return contacts;
+    }
+
+    /**
+     * Reads bytes at the given position without moving the position
+     * of the channel, so other threads can read it at the same time.
+     *
+     * @param channel The channel to read from.
+     * @param position The position of the first byte.
+     * @param size The number of bytes.
+     * @return The bytes, ready to be read.
+     * @throws IOException If reading fails or the channel ends too early.
+     */
+    public static ByteBuffer read(final FileChannel channel,
+            final long position, final int size) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate(size);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException("Unexpected end of contacts file");
+            }
+        }
+        return buffer.flip();
+    }
+
+    /**
+     * Writes the trailer holding the generation of the file after the
+     * last record.
+     *
+     * @param generation The generation of the file.
+     * @param buffer The buffer to write into.
+     * @param channel The channel the buffer is flushed to when it is full.
+     * @throws IOException If flushing the buffer fails.
+     */
+    public static void writeTrailer(final long generation,
+            final ByteBuffer buffer, final WritableByteChannel channel)
+            throws IOException {
+        if (buffer.remaining() < TRAILER_SIZE) {
+            flush(buffer, channel);
+        }
+        buffer.putInt(TRAILER_MAGIC);
+        buffer.putLong(generation);
+    }
+
+    /**
+     * Reads the generation of a contacts file from its trailer.
+     *
+     * @param channel The channel of the file.
+     * @return The generation, or 0 if the file has no trailer.
+     * @throws IOException If reading fails.
+     */
+    public static long readGeneration(final FileChannel channel)
+            throws IOException {
+        final long size = channel.size();
+        if (size < HEADER_SIZE + TRAILER_SIZE) {
+            return 0;
+        }
+        final ByteBuffer trailer = read(channel, size - TRAILER_SIZE,
+            TRAILER_SIZE);
+        return trailer.getInt() == TRAILER_MAGIC ? trailer.getLong() : 0;
+    }
+
+    /**
+     * Encodes the details of the given person into UTF-8 byte arrays.
+     * Validation keeps every detail far shorter than the largest field,
+     * but a longer one is refused here rather than written with a
+     * length that can't be read back.
+     *
+     * @param person The person to encode.
+     * @return The encoded fields in the order they are stored.
+     * @throws IllegalArgumentException If a detail is longer than
+     *         {@value #MAX_FIELD_SIZE} bytes.
+     */
+    private static byte[][] fieldsOf(final Person person) {
+        final String[] values = {
+            person.getSsn(), person.getFirstName(), person.getLastName(),
+            person.getPhoneNumber(), person.getAddress(),
+            person.getEmailAddress()
+        };
+        final byte[][] fields = new byte[FIELD_COUNT][];
+        for (int i = 0; i < FIELD_COUNT; i++) {
+            fields[i] = values[i] == null
+                ? null : values[i].getBytes(StandardCharsets.UTF_8);
+            if (fields[i] != null && fields[i].length > MAX_FIELD_SIZE) {
+                throw new IllegalArgumentException(
+                    "A detail of " + person.getSsn() + " is too long to save."
+                );
+            }
+        }
+        return fields;
+    }
+
+    /**
+     * Encodes the given person as a length-prefixed record.
+     * The buffer is grown if the record does not fit into it.
+     *
+     * @param person The person to encode.
+     * @param buffer The buffer to write into.
+     * @param channel The channel the buffer is flushed to when it is full.
+     * @return The buffer that holds the record, which may be a new one.
+     * @throws IOException If flushing the buffer fails.
+     */
+    public static ByteBuffer writeRecord(final Person person,
+            final ByteBuffer buffer, final WritableByteChannel channel)
+            throws IOException {
+        final byte[][] fields = fieldsOf(person);
+        final int bodySize = bodySizeOf(fields);
+
+        ByteBuffer target = buffer;
+        if (target.remaining() < RECORD_PREFIX_SIZE + bodySize) {
+            flush(target, channel);
+            if (target.remaining() < RECORD_PREFIX_SIZE + bodySize) {
+                target = ByteBuffer.allocate(
+                    Math.max(BUFFER_SIZE, RECORD_PREFIX_SIZE + bodySize)
+                );
+            }
+        }
+
+        putRecord(fields, bodySize, target);
+        return target;
+    }
+
+    /**
+     * Encodes the given person as a length-prefixed record
+     * into a new buffer that is ready to be read.
+     *
+     * @param person The person to encode.
+     * @return The buffer holding the record.
+     */
+    public static ByteBuffer encodeRecord(final Person person) {
+        final byte[][] fields = fieldsOf(person);
+        final int bodySize = bodySizeOf(fields);
+        final ByteBuffer buffer =
+            ByteBuffer.allocate(RECORD_PREFIX_SIZE + bodySize);
+        putRecord(fields, bodySize, buffer);
+        return buffer.flip();
+    }
+
+    /**
+     * Counts the size of a record body made of the given fields.
+     *
+     * @param fields The encoded fields.
+     * @return The size of the record body in bytes.
+     */
+    private static int bodySizeOf(final byte[][] fields) {
+        int bodySize = 0;
+        for (byte[] field : fields) {
+            bodySize += FIELD_PREFIX_SIZE + (field == null ? 0 : field.length);
+        }
+        return bodySize;
+    }
+
+    /**
+     * Writes the length prefix and the fields of a record.
+     *
+     * @param fields The encoded fields.
+     * @param bodySize The size of the record body in bytes.
+     * @param target The buffer to write into.
+     */
+    private static void putRecord(final byte[][] fields, final int bodySize,
+            final ByteBuffer target) {
+        target.putInt(bodySize);
+        for (byte[] field : fields) {
+            putField(field, target);
+        }
+    }
+
+    /**
+     * Writes a single length-prefixed field.
+     *
+     * @param field The encoded field or null if the detail is missing.
+     * @param target The buffer to write into.
+     */
+    private static void putField(final byte[] field, final ByteBuffer target) {
+        if (field == null) {
+            target.putShort(NULL_LENGTH);
+        } else {
+            target.putShort((short) field.length);
+            target.put(field);
+        }
+    }
+
+    /**
+     * Writes a single length-prefixed UTF-8 string.
+     *
+     * @param value The string to write, may be null.
+     * @param target The buffer to write into.
+     */
+    public static void writeString(final String value,
+            final ByteBuffer target) {
+        putField(
+            value == null ? null : value.getBytes(StandardCharsets.UTF_8),
+            target
+        );
+    }
+
+    /**
+     * Counts how many bytes the given string takes when written with
+     * {@link #writeString(String, ByteBuffer)}.
+     *
+     * @param value The string, may be null.
+     * @return The encoded size in bytes.
+     */
+    public static int stringSize(final String value) {
+        return FIELD_PREFIX_SIZE + (value == null
+            ? 0 : value.getBytes(StandardCharsets.UTF_8).length);
+    }
+
+    /**
+     * Decodes a person from a length-prefixed record at the
+     * current position of the buffer.
+     *
+     * @param buffer The buffer to read from.
+     * @return The decoded person.
+     * @throws StreamCorruptedException If the record is malformed.
+     */
+    public static Person readRecord(final ByteBuffer buffer)
+            throws StreamCorruptedException {
+        final int bodySize = buffer.getInt();
+        final int end = buffer.position() + bodySize;
+        if (bodySize < 0 || end > buffer.limit()) {
+            throw new StreamCorruptedException("Invalid record length");
+        }
+        final String[] values = new String[FIELD_COUNT];
+        for (int i = 0; i < FIELD_COUNT; i++) {
+            values[i] = readString(buffer);
+        }
+        if (buffer.position() != end) {
+            throw new StreamCorruptedException("Invalid record length");
+        }
+        return new Person(
+            values[0], values[1], values[2], values[3], values[4], values[5]
+        );
+    }
+
+    /**
+     * Decodes a single length-prefixed UTF-8 string.
+     *
+     * @param buffer The buffer to read from.
+     * @return The decoded string or null if the field was missing.
+     * @throws StreamCorruptedException If the field length is invalid.
+     */
+    public static String readString(final ByteBuffer buffer)
+            throws StreamCorruptedException {
+        final short length = buffer.getShort();
+        if (length == NULL_LENGTH) {
+            return null;
+        }
+        if (length < 0 || length > buffer.remaining()) {
+            throw new StreamCorruptedException("Invalid field length");
+        }
+        final String value;
+        if (buffer.hasArray()) {
+            value = new String(
+                buffer.array(), buffer.arrayOffset() + buffer.position(),
+                length, StandardCharsets.UTF_8
+            );
+            buffer.position(buffer.position() + length);
+        } else {
+            final byte[] bytes = new byte[length];
+            buffer.get(bytes);
+            value = new String(bytes, StandardCharsets.UTF_8);
+        }
+        return value;
+    }
+
+    /**
+     * Writes everything in the buffer to the channel and clears the buffer.
+     *
+     * @param buffer The buffer to flush.
+     * @param channel The channel to write to.
+     * @throws IOException If writing fails.
+     */
+    public static void flush(final ByteBuffer buffer,
+            final WritableByteChannel channel) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Makes sure that at least the given amount of bytes can be read
+     * from the buffer, reading more from the channel when needed.
+     * The buffer is expected to be in read mode.
+     *
+     * @param buffer The buffer to fill.
+     * @param channel The channel to read from.
+     * @param bytes The number of bytes that must be available.
+     * @return The buffer holding the bytes, which may be a new one.
+     * @throws IOException If reading fails or the channel ends too early.
+     */
+    public static ByteBuffer fill(final ByteBuffer buffer,
+            final ReadableByteChannel channel, final int bytes)
+            throws IOException {
+        if (buffer.remaining() >= bytes) {
+            return buffer;
+        }
+        ByteBuffer target = buffer;
+        if (target.capacity() < bytes) {
+            target = ByteBuffer.allocate(bytes);
+            target.put(buffer);
+        } else {
+            target.compact();
+        }
+        while (target.position() < bytes) {
+            if (channel.read(target) < 0) {
+                throw new EOFException("Unexpected end of contacts file");
+            }
+        }
+        target.flip();
+        return target;
+    }
+}
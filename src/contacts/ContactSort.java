@@ -0,0 +1,82 @@
+package contacts;
+
+/**
+ * The orders contacts can be listed in. Each order breaks ties with
+ * the social security number, so every contact has a unique place.
+ */
+public enum ContactSort {
+    /** By last name, then by first name. */
+    LAST_NAME,
+    /** By first name, then by last name. */
+    FIRST_NAME,
+    /** By the birth date in the social security number, oldest first. */
+    BIRTH_DATE;
+
+    /** The character separating the parts of a sort key. */
+    private static final char SEPARATOR = '\u0000';
+
+    /** The index of the century character in a social security number. */
+    private static final int SSN_CENTURY_INDEX = 6;
+
+    /**
+     * Builds the sort key of a contact. Keys compare in the order of
+     * this sort when compared as strings.
+     *
+     * @param ssn The social security number of the contact.
+     * @param firstName The first name of the contact.
+     * @param lastName The last name of the contact.
+     * @return The sort key.
+     */
+    String key(final String ssn, final String firstName,
+            final String lastName) {
+        final StringBuilder key = new StringBuilder();
+        switch (this) {
+            case LAST_NAME:
+                appendName(key, lastName);
+                appendName(key, firstName);
+                break;
+            case FIRST_NAME:
+                appendName(key, firstName);
+                appendName(key, lastName);
+                break;
+            default:
+                // ddmmyyCnnnc sorts as ccyymmddnnn.
+                key.append(ssn.charAt(SSN_CENTURY_INDEX) == 'A' ? "20" : "19")
+                    .append(ssn, 4, 6).append(ssn, 2, 4).append(ssn, 0, 2)
+                    .append(ssn, SSN_CENTURY_INDEX + 1, SSN_CENTURY_INDEX + 4)
+                    .append(SEPARATOR);
+        }
+        return key.append(ssn).toString();
+    }
+
+    /**
+     * Builds the sort key of a contact.
+     *
+     * @param person The contact.
+     * @return The sort key.
+     */
+    String key(final Person person) {
+        return key(person.getSsn(), person.getFirstName(),
+            person.getLastName());
+    }
+
+    /**
+     * Appends a name in Finnish alphabetical order: case is ignored,
+     * and å, ä and ö come after z in that order.
+     *
+     * @param key The key to append to.
+     * @param name The name, may be null.
+     */
+    private static void appendName(final StringBuilder key,
+            final String name) {
+        if (name != null) {
+            for (int i = 0; i < name.length(); i++) {
+                final char ch = ContactsSearchIndex.fold(name.charAt(i));
+                // In Unicode ä comes before å, so all three are moved.
+                key.append(ch == 'å' ? '{' : ch == 'ä' ? '|'
+                    : ch == 'ö' ? '}' : ch);
+            }
+        }
+        key.append(SEPARATOR);
+    }
+}
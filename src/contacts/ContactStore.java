@@ -0,0 +1,135 @@
+package contacts;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * The storage engine behind the ContactsManager.
+ * A store holds contacts keyed by their social security number
+ * and iterates them in the order they were added.
+ *
+ * Stores that do not keep Person objects on the heap may hand out
+ * a fresh copy from {@link #get(String)}. Whenever a detail of such a
+ * contact is changed, the change must be reported with
+ * {@link #updated(Person)} so that the store can keep it.
+ */
+public interface ContactStore extends Iterable<Person> {
+    /**
+     * Finds the contact with the given social security number.
+     *
+     * @param ssn The social security number to look for.
+     * @return The contact if found, otherwise null.
+     */
+    Person get(String ssn);
+
+    /**
+     * Checks whether a contact with the given social security number exists.
+     *
+     * @param ssn The social security number to look for.
+     * @return {@code true} if the contact exists, {@code false} otherwise.
+     */
+    boolean contains(String ssn);
+
+    /**
+     * Adds a contact unless its social security number is already in use.
+     *
+     * @param person The contact to add.
+     * @return {@code true} if added, {@code false} if the SSN already exists.
+     */
+    boolean add(Person person);
+
+    /**
+     * Adds the contacts of the given chunks in order, skipping those
+     * whose social security number is already in use, as if each was
+     * added with {@link #add(Person)}. Stores that can add contacts from
+     * many threads at once may add the chunks in parallel when called
+     * from a {@link java.util.concurrent.ForkJoinPool}, as long as the
+     * order of the contacts stays the same.
+     *
+     * @param chunks The contacts to add, chunk by chunk.
+     * @return The number of contacts added.
+     */
+    default int addAll(final List<Person[]> chunks) {
+        int added = 0;
+        for (Person[] chunk : chunks) {
+            for (Person person : chunk) {
+                if (add(person)) {
+                    added++;
+                }
+            }
+        }
+        return added;
+    }
+
+    /**
+     * Removes the contact with the given social security number.
+     *
+     * @param ssn The social security number of the contact to remove.
+     * @return The removed contact or null if there was no such contact.
+     */
+    Person remove(String ssn);
+
+    /** Removes all contacts. */
+    void clear();
+
+    /**
+     * Gets the number of contacts in the store.
+     *
+     * @return The number of contacts.
+     */
+    int size();
+
+    /**
+     * Tells the store that a detail of the given contact has changed.
+     *
+     * @param person The changed contact.
+     */
+    void updated(Person person);
+
+    /**
+     * Gets a view of the contacts as they are now that another thread
+     * can read while the store keeps changing, for example to write a
+     * checkpoint or an export in the background. Later changes to the
+     * contacts, including changes to their details, are not seen
+     * through the view. The view must be taken while the store is not
+     * being changed, such as through {@link ContactsManager#snapshot()}.
+     *
+     * @return The contacts in insertion order.
+     */
+    default Collection<Person> snapshot() {
+        final ArrayList<Person> snapshot = new ArrayList<>(size());
+        for (Person person : this) {
+            snapshot.add(person.copy());
+        }
+        return snapshot;
+    }
+
+    /**
+     * Lets the store serve contacts directly from the given contacts file
+     * instead of having the serializer decode and add every contact.
+     *
+     * @param file The contacts file to attach to.
+     * @return {@code true} if the store attached to the file,
+     *         {@code false} if the contacts should be added one by one.
+     * @throws IOException If the file cannot be read or is corrupted.
+     */
+    default boolean attach(final Path file) throws IOException {
+        return false;
+    }
+
+    /**
+     * Tells the store that a view taken with {@link #snapshot()} has been
+     * written to the given file, which replaced the contacts file. The
+     * contacts may have changed since the view was taken.
+     *
+     * @param snapshot The view that was written.
+     * @param file The new contacts file.
+     * @throws IOException If the new file cannot be read.
+     */
+    default void snapshotSaved(final Collection<Person> snapshot,
+            final Path file) throws IOException {
+    }
+}
@@ -0,0 +1,500 @@
+package contacts;
+
+import java.io.Console;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.time.MonthDay;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The main class for the ContactsApp application.
+ * This class manages the execution of the ContactsApp.
+ */
+public class ContactsApp {
+    /** The console object for reading user input. */
+    private static Console c = System.console();
+
+    /** A flag indicating whether the application is running. */
+    private static boolean appRunning = true;
+
+    /** The port the contacts are served on by default. */
+    private static final int DEFAULT_PORT = 8080;
+
+    /** The number of days birthdays are listed for by default. */
+    private static final int BIRTHDAY_DAYS = 7;
+
+    /** The most days birthdays are listed for. */
+    private static final int MAX_BIRTHDAY_DAYS = 365;
+
+    /** The largest port number. */
+    private static final int MAX_PORT = 65535;
+
+    /** The writer of the messages of the app to the console. */
+    private static AsyncLogWriter console;
+
+    /**
+     * The main entry point for the ContactsApp application.
+     * Invokes methods within the class and in other classes to
+     * load, manage, and save contacts. Contacts are loaded if available,
+     * then managed, and finally, saved to a file if there are any.
+     * The contact store can be chosen with the {@code contacts.store}
+     * system property, for example {@code -Dcontacts.store=mapped}, and
+     * phone numbers and email addresses required to be unique with
+     * {@code -Dcontacts.unique=phone,email}.
+     *
+     * Running {@code java contacts.ContactsApp import <file> [report]}
+     * imports the contacts in a CSV or vCard file without the console
+     * instead, and {@code java contacts.ContactsApp export <file>}
+     * exports them. {@code java contacts.ContactsApp serve [port]} serves
+     * the contacts over HTTP until stopped with Ctrl+C, and
+     * {@code java contacts.ContactsApp metrics} prints the metrics of
+     * loading them. {@code java contacts.ContactsApp duplicates} lists
+     * the contacts sharing a phone number or an email address, and
+     * {@code java contacts.ContactsApp matches <file>} writes the
+     * contacts that may be the same person to a CSV file.
+     * {@code java contacts.ContactsApp birthdays [days]} lists the
+     * birthdays of the next seven days, or of the given number of days,
+     * and {@code java contacts.ContactsApp books} lists the named contact
+     * books served under {@code /books} by {@code serve}.
+     * The metrics are also registered in JMX as
+     * {@value ContactsMetrics#OBJECT_NAME}.
+     *
+     * The console subscribes to the {@link ContactsLog} with a
+     * background writer, so loading, saving and importing never wait
+     * for the console.
+     *
+     * @param args The command line arguments, empty for the console.
+     * @author Simo Alanne
+     */
+    public static void main(final String[] args) {
+        console = new AsyncLogWriter(System.out);
+        ContactsLog.addListener(console);
+        try {
+            ContactsManager.getMetrics().register();
+            ContactsManager.useStore(
+                createStore(System.getProperty("contacts.store", "heap"))
+            );
+            requireUnique(System.getProperty("contacts.unique", ""));
+            ContactsSerializer.loadContactsFromFile();
+            if (args.length > 0) {
+                runCommand(args);
+            } else {
+                manageContacts();
+            }
+            ContactsSerializer.saveContactsToFile();
+        } finally {
+            ContactsLog.removeListener(console);
+            console.close();
+        }
+    }
+
+    /**
+     * Runs a command given on the command line.
+     *
+     * @param args The command and its arguments.
+     */
+    public static void runCommand(final String[] args) {
+        if (args[0].equals("import") && args.length >= 2) {
+            final Path input = Paths.get(args[1]);
+            final Path report = args.length >= 3 ? Paths.get(args[2])
+                : input.resolveSibling(input.getFileName() + ".rejects.csv");
+            try {
+                ContactsImporter.importContacts(input, report);
+            } catch (IOException e) {
+                ContactsLog.log(
+                    "Failed to import " + input.getFileName() + ": "
+                    + e.getMessage()
+                );
+            }
+        } else if (args[0].equals("export") && args.length >= 2) {
+            final Path output = Paths.get(args[1]);
+            try {
+                final int exported = ContactsExporter.exportSnapshot(output,
+                    ContactsExporter.Format.of(args[1]), person -> true);
+                ContactsLog.log(
+                    "Exported " + exported + " contact/contacts to: "
+                    + output.getFileName()
+                );
+            } catch (IOException e) {
+                ContactsLog.log(
+                    "Failed to export " + output.getFileName() + ": "
+                    + e.getMessage()
+                );
+            }
+        } else if (args[0].equals("serve")) {
+            final int port = args.length >= 2
+                ? parseNumber(args[1], 0, MAX_PORT) : DEFAULT_PORT;
+            if (port < 0) {
+                logUsage();
+                return;
+            }
+            try {
+                ContactsServer.serve(port, createBooks());
+            } catch (IOException e) {
+                ContactsLog.log(
+                    "Failed to serve on port " + port + ": " + e.getMessage()
+                );
+            }
+        } else if (args[0].equals("metrics")) {
+            ContactsLog.log(ContactsManager.getMetrics().dump().trim());
+        } else if (args[0].equals("duplicates")) {
+            logDuplicates(ContactField.PHONE_NUMBER, "Phone number",
+                "phone number/numbers");
+            logDuplicates(ContactField.EMAIL_ADDRESS, "Email address",
+                "email address/addresses");
+        } else if (args[0].equals("matches") && args.length >= 2) {
+            writeMatches(Paths.get(args[1]));
+        } else if (args[0].equals("birthdays")) {
+            final int days = args.length >= 2
+                ? parseNumber(args[1], 1, MAX_BIRTHDAY_DAYS) : BIRTHDAY_DAYS;
+            if (days < 0) {
+                logUsage();
+                return;
+            }
+            logBirthdays(days);
+        } else if (args[0].equals("books")) {
+            logBooks();
+        } else {
+            logUsage();
+        }
+    }
+
+    /**
+     * Parses a number given on the command line.
+     *
+     * @param argument The argument.
+     * @param min The smallest number allowed.
+     * @param max The largest number allowed.
+     * @return The number, or -1 if the argument is not a number within
+     *         the limits.
+     */
+    private static int parseNumber(final String argument, final int min,
+            final int max) {
+        try {
+            final int number = Integer.parseInt(argument);
+            if (number >= min && number <= max) {
+                return number;
+            }
+            ContactsLog.log(
+                argument + " is not between " + min + " and " + max + "."
+            );
+        } catch (NumberFormatException e) {
+            ContactsLog.log(argument + " is not a number.");
+        }
+        return -1;
+    }
+
+    /** Logs the commands that can be given on the command line. */
+    private static void logUsage() {
+        ContactsLog.log("Usage: java contacts.ContactsApp"
+            + " [import <file> [report] | export <file> | serve [port]"
+            + " | metrics | duplicates | matches <file>"
+            + " | birthdays [days] | books]");
+    }
+
+    /**
+     * Creates the contact books. They are saved in the directory set
+     * with the {@code contacts.books.dir} property, "books" by default,
+     * and loaded within the budget set with {@code contacts.books.budget}
+     * contacts and {@code contacts.books.loaded} books.
+     *
+     * @return The contact books.
+     */
+    public static ContactBooks createBooks() {
+        return new ContactBooks(
+            Paths.get(System.getProperty("contacts.books.dir", "books")),
+            Integer.getInteger("contacts.books.budget",
+                ContactBooks.DEFAULT_BUDGET),
+            Integer.getInteger("contacts.books.loaded",
+                ContactBooks.DEFAULT_MAX_LOADED)
+        );
+    }
+
+    /** Logs the names of the contact books. */
+    private static void logBooks() {
+        try (ContactBooks books = createBooks()) {
+            final List<String> names = books.list();
+            final StringBuilder message = new StringBuilder();
+            for (String name : names) {
+                message.append("  ").append(name).append('\n');
+            }
+            ContactsLog.log(
+                message + "Found " + names.size() + " contact book/books."
+            );
+        } catch (IOException e) {
+            ContactsLog.log("Failed to list the books: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Requires the given details to be unique.
+     *
+     * @param names The details separated by commas: "phone" and "email".
+     */
+    private static void requireUnique(final String names) {
+        for (String name : names.split(",")) {
+            switch (name.trim()) {
+                case "phone":
+                    ContactsManager.requireUnique(
+                        ContactField.PHONE_NUMBER, true);
+                    break;
+                case "email":
+                    ContactsManager.requireUnique(
+                        ContactField.EMAIL_ADDRESS, true);
+                    break;
+                case "":
+                    break;
+                default:
+                    ContactsLog.log("Unknown unique detail " + name + ".");
+            }
+        }
+    }
+
+    /**
+     * Logs the contacts sharing a value of a detail.
+     *
+     * @param field {@link ContactField#PHONE_NUMBER} or
+     *        {@link ContactField#EMAIL_ADDRESS}.
+     * @param label The name of the detail.
+     * @param counted The name of the detail when counted.
+     */
+    private static void logDuplicates(final ContactField field,
+            final String label, final String counted) {
+        final Map<String, List<Person>> duplicates =
+            ContactsManager.findDuplicates(field);
+        for (Map.Entry<String, List<Person>> shared
+                : duplicates.entrySet()) {
+            final StringBuilder message = new StringBuilder(label)
+                .append(' ').append(shared.getKey()).append(" is shared by:");
+            for (Person person : shared.getValue()) {
+                message.append("\n  ").append(person.getSsn()).append(' ')
+                    .append(person.getFirstName()).append(' ')
+                    .append(person.getLastName());
+            }
+            ContactsLog.log(message.toString());
+        }
+        ContactsLog.log(
+            "Found " + duplicates.size() + " shared " + counted + "."
+        );
+    }
+
+    /**
+     * Logs the contacts having their birthday within a number of days
+     * from today, with the age they turn.
+     *
+     * @param days The number of days, from 1 to
+     *        {@value #MAX_BIRTHDAY_DAYS}.
+     */
+    private static void logBirthdays(final int days) {
+        final int count = Math.max(1, Math.min(days, MAX_BIRTHDAY_DAYS));
+        final LocalDate today = LocalDate.now();
+        final MonthDay first = MonthDay.from(today);
+        final List<Person> contacts = ContactsManager.findBirthdaysBetween(
+            first, MonthDay.from(today.plusDays(count - 1)),
+            Integer.MAX_VALUE);
+        final StringBuilder message = new StringBuilder();
+        for (Person person : contacts) {
+            // yyyymmdd
+            final int born = ContactsBirthDateIndex.birthDateOf(
+                person.getSsn());
+            final int month = born / 100 % 100;
+            final int day = born % 100;
+            final boolean nextYear = month < first.getMonthValue()
+                || month == first.getMonthValue()
+                && day < first.getDayOfMonth();
+            message.append("  ").append(day).append('.').append(month)
+                .append(". ").append(person.getFirstName()).append(' ')
+                .append(person.getLastName()).append(" turns ")
+                .append(today.getYear() + (nextYear ? 1 : 0) - born / 10000)
+                .append('\n');
+        }
+        ContactsLog.log(
+            message + "Found " + contacts.size() + " birthday/birthdays in"
+            + " the next " + count + " day/days."
+        );
+    }
+
+    /**
+     * Writes the contacts that may be the same person to a CSV file.
+     * The lowest score reported is set with the
+     * {@code contacts.match.threshold} property, and the number of
+     * threads with {@code contacts.match.threads}.
+     *
+     * @param report The file to write.
+     */
+    private static void writeMatches(final Path report) {
+        try {
+            final List<ContactsMatch> matches =
+                ContactsDeduplicator.findMatches(ContactsManager.snapshot(),
+                    Double.parseDouble(System.getProperty(
+                        "contacts.match.threshold",
+                        Double.toString(
+                            ContactsDeduplicator.DEFAULT_THRESHOLD))),
+                    ContactsDeduplicator.DEFAULT_WINDOW,
+                    Integer.getInteger("contacts.match.threads",
+                        Runtime.getRuntime().availableProcessors()));
+            ContactsDeduplicator.writeReport(report, matches);
+            ContactsLog.log(
+                "Found " + matches.size() + " possible duplicate/duplicates,"
+                + " see: " + report.getFileName()
+            );
+        } catch (IOException e) {
+            ContactsLog.log(
+                "Failed to write " + report.getFileName() + ": "
+                + e.getMessage()
+            );
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            ContactsLog.log("Finding duplicates was interrupted.");
+        }
+    }
+
+    /**
+     * Creates the contact store with the given name.
+     * Unknown names fall back to the default heap store.
+     *
+     * @param name The name of the store: "heap", "mapped",
+     *        "columnar", "offheap" or "disk".
+     * @return The contact store.
+     */
+    public static ContactStore createStore(final String name) {
+        switch (name) {
+            case "mapped":
+                return new MappedContactStore();
+            case "columnar":
+                return new ColumnarContactStore();
+            case "offheap":
+                return new OffHeapContactStore();
+            case "disk":
+                try {
+                    return new DiskContactStore(
+                        Paths.get(System.getProperty("contacts.disk.dir",
+                            System.getProperty("java.io.tmpdir"))),
+                        Integer.getInteger("contacts.cache.size",
+                            DiskContactStore.DEFAULT_CACHE_SIZE)
+                    );
+                } catch (IOException e) {
+                    ContactsLog.log(
+                        "Failed to create the disk store: " + e.getMessage()
+                        + "\nUsing heap."
+                    );
+                    return new HeapContactStore();
+                }
+            case "heap":
+                return new HeapContactStore();
+            default:
+                ContactsLog.log(
+                    "Unknown contact store " + name + ", using heap."
+                );
+                return new HeapContactStore();
+        }
+    }
+
+    /**
+     * Manages the contacts app by providing a Command Line Interface (CLI)
+     * that depends on contacts amount.
+     * If there are no contacts the simplified CLI is chosen.
+     * If at least one contact exists then the full CLI is chosen.
+     */
+    public static void manageContacts() {
+        flushConsole();
+        System.out.println("Hello and welcome to the contacts app!");
+        while (appRunning) {
+            flushConsole();
+            try {
+                if (ContactsManager.getContacts().isEmpty()) {
+                    System.out.println("No contacts available.");
+                    menuWithoutContacts();
+                } else {
+                    menuWithContacts();
+                }
+            } catch (UncheckedIOException e) {
+                System.out.println(
+                    "The change was made but could not be saved yet:\n"
+                    + e.getCause().getMessage() + "\n"
+                    + "It is saved with the contacts on exit."
+                );
+            }
+            ContactsSerializer.checkpointIfNeeded();
+        }
+    }
+
+    /**
+     * Waits until the messages of the app have been written, so that
+     * what was loaded or saved is shown before the next menu.
+     */
+    private static void flushConsole() {
+        if (console != null) {
+            console.flush();
+        }
+    }
+
+    /**
+     * Displays the main menu when at least one contact is available.
+     * It provides options to create, read, search, update and
+     * delete contacts, and to save and exit the program.
+     */
+    public static void menuWithContacts() {
+        System.out.println(
+            "What would you like to do?\n"
+            + "Type 1 to create a new contact\n"
+            + "Type 2 to read contacts\n"
+            + "Type 3 to search contacts\n"
+            + "Type 4 to edit contacts\n"
+            + "Type 5 to delete contacts\n"
+            + "Type 6 to save and exit the program"
+        );
+
+        switch (c.readLine()) {
+            case "1":
+                ContactsManager.createNewContact();
+                break;
+            case "2":
+                ContactsManager.readContacts();
+                break;
+            case "3":
+                ContactsManager.searchContacts();
+                break;
+            case "4":
+                ContactsManager.updateContact(ContactsManager.checkForSsn());
+                break;
+            case "5":
+                ContactsManager.deleteContacts();
+                break;
+            case "6":
+                appRunning = false;
+                break;
+            default:
+                System.out.println("Invalid choice");
+        }
+    }
+
+    /**
+     * Displays the main menu when no contacts are available.
+     * It provides options to create a new contact
+     * and to save and exit the program.
+     */
+    public static void menuWithoutContacts() {
+        System.out.println(
+            "What would you like to do?\n"
+            + "Type 1 to create a new contact\n"
+            + "Type 2 to save and exit the program"
+        );
+
+        switch (c.readLine()) {
+            case "1":
+                ContactsManager.createNewContact();
+                break;
+            case "2":
+                appRunning = false;
+                System.out.println("Exiting program...");
+                break;
+            default:
+                System.out.println("Invalid choice");
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package contacts;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A list of creates, updates and deletes applied together with
+ * {@link ContactsManager#applyBatch(ContactsBatch)}.
+ *
+ * The changes are applied in the order they were added, so a contact
+ * created by a batch can be updated or deleted later in the same batch.
+ * Nothing is validated or printed while the batch is built.
+ */
+public final class ContactsBatch {
+    /** The kinds of changes in a batch. */
+    enum Kind {
+        /** Creates a contact. */
+        CREATE,
+        /** Sets a detail of a contact. */
+        UPDATE,
+        /** Deletes a contact. */
+        DELETE
+    }
+
+    /** One change of a batch. */
+    static final class Change {
+        /** The kind of the change. */
+        final Kind kind;
+
+        /** The social security number of the contact. */
+        final String ssn;
+
+        /** The contact to create, or null. */
+        final Person person;
+
+        /** The detail to set, or null. */
+        final ContactField field;
+
+        /** The value of the detail to set, or null. */
+        final String value;
+
+        /**
+         * Creates a change.
+         *
+         * @param kind The kind of the change.
+         * @param ssn The social security number of the contact.
+         * @param person The contact to create, or null.
+         * @param field The detail to set, or null.
+         * @param value The value of the detail to set, or null.
+         */
+        Change(final Kind kind, final String ssn, final Person person,
+                final ContactField field, final String value) {
+            this.kind = kind;
+            this.ssn = ssn;
+            this.person = person;
+            this.field = field;
+            this.value = value;
+        }
+    }
+
+    /** The changes in the order they were added. */
+    private final List<Change> changes = new ArrayList<>();
+
+    /**
+     * Adds the creation of a contact. The details are validated when the
+     * batch is applied, and a missing address or email address is empty.
+     *
+     * @param person The contact to create.
+     * @return This batch.
+     */
+    public ContactsBatch create(final Person person) {
+        changes.add(new Change(Kind.CREATE, person.getSsn(), person,
+            null, null));
+        return this;
+    }
+
+    /**
+     * Adds the change of a detail of a contact.
+     *
+     * @param ssn The social security number of the contact.
+     * @param field The detail to set.
+     * @param value The value of the detail.
+     * @return This batch.
+     */
+    public ContactsBatch update(final String ssn, final ContactField field,
+            final String value) {
+        changes.add(new Change(Kind.UPDATE, ssn, null, field, value));
+        return this;
+    }
+
+    /**
+     * Adds the deletion of a contact.
+     *
+     * @param ssn The social security number of the contact.
+     * @return This batch.
+     */
+    public ContactsBatch delete(final String ssn) {
+        changes.add(new Change(Kind.DELETE, ssn, null, null, null));
+        return this;
+    }
+
+    /**
+     * Gets the number of changes in the batch.
+     *
+     * @return The number of changes.
+     */
+    public int size() {
+        return changes.size();
+    }
+
+    /**
+     * Gets the changes in the order they were added.
+     *
+     * @return The changes.
+     */
+    List<Change> changes() {
+        return changes;
+    }
+}
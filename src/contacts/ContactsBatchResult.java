@@ -0,0 +1,56 @@
+package contacts;
+
+import java.util.Collections;
+import java.util.SortedMap;
+
+/**
+ * The outcome of applying a {@link ContactsBatch}: how many changes
+ * were made and why the others were not.
+ */
+public final class ContactsBatchResult {
+    /** The number of changes made. */
+    private final int applied;
+
+    /** The reasons of the failed changes keyed by their index. */
+    private final SortedMap<Integer, String> failures;
+
+    /**
+     * Creates a result.
+     *
+     * @param applied The number of changes made.
+     * @param failures The reasons of the failed changes keyed by
+     *        their index in the batch.
+     */
+    ContactsBatchResult(final int applied,
+            final SortedMap<Integer, String> failures) {
+        this.applied = applied;
+        this.failures = Collections.unmodifiableSortedMap(failures);
+    }
+
+    /**
+     * Gets the number of changes that were made.
+     *
+     * @return The number of changes made.
+     */
+    public int getApplied() {
+        return applied;
+    }
+
+    /**
+     * Gets the changes that were not made.
+     *
+     * @return The reasons keyed by the index of the change in the batch.
+     */
+    public SortedMap<Integer, String> getFailures() {
+        return failures;
+    }
+
+    /**
+     * Checks whether every change of the batch was made.
+     *
+     * @return {@code true} if no change failed.
+     */
+    public boolean isSuccessful() {
+        return failures.isEmpty();
+    }
+}
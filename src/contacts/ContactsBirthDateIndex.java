@@ -0,0 +1,593 @@
+package contacts;
+
+import java.time.LocalDate;
+import java.time.MonthDay;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.LongStream;
+
+/**
+ * A sorted index of the birth dates in the social security numbers of
+ * the contacts, for finding the contacts born within a range of dates
+ * or having their birthday within a range of days in log time.
+ *
+ * The SSN of each contact is decoded once, when it is indexed, into a
+ * single long: the birth date as yyyymmdd followed by the three digits
+ * of the individual number. These keys sort by birth date, and as the
+ * control character follows from the digits, the SSN is rebuilt from
+ * its key without storing any strings. The keys are kept in sorted
+ * blocks of up to {@value #BLOCK_SIZE}, like the leaves of a B+ tree,
+ * so adding or removing a key only moves the keys of one block.
+ *
+ * The index is a listener of the ContactsManager and is kept up to date
+ * as contacts are created and deleted. It is built from the contact
+ * store the first time it is used, so it costs nothing until then.
+ * Created and deleted contacts are queued without locking, so they
+ * never wait for each other, and applied to the blocks under the lock
+ * of the index by the next lookup, or by the change that fills the
+ * queue if no lookup holds the lock.
+ */
+public final class ContactsBirthDateIndex implements ContactsListener {
+    /** The most keys in a block. */
+    private static final int BLOCK_SIZE = 1024;
+
+    /** The number of keys put into each block when building the index. */
+    private static final int BUILD_FILL = BLOCK_SIZE * 3 / 4;
+
+    /** The number of queued changes above which a change applies them. */
+    private static final int MAX_PENDING = BLOCK_SIZE;
+
+    /** The length of a social security number. */
+    private static final int SSN_LENGTH = 11;
+
+    /** The index of the century character in a social security number. */
+    private static final int SSN_CENTURY_INDEX = 6;
+
+    /** The number of individual numbers per birth date. */
+    private static final int INDIVIDUALS = 1000;
+
+    /** The multiplier of the year in a yyyymmdd date. */
+    private static final int YEAR = 10000;
+
+    /** One more than the largest key. */
+    private static final long KEY_RANGE = (long) YEAR * YEAR * INDIVIDUALS;
+
+    /** The multiplier of the month in a yyyymmdd or mmdd date. */
+    private static final int MONTH = 100;
+
+    /** The first month-day of a year as mmdd. */
+    private static final int FIRST_DAY = 101;
+
+    /** The last month-day of a year as mmdd. */
+    private static final int LAST_DAY = 1231;
+
+    /** The blocks of sorted keys, in order. */
+    private long[][] blocks = new long[0][];
+
+    /** The number of keys in each block. */
+    private int[] sizes = new int[0];
+
+    /** The number of blocks in use. */
+    private int blockCount;
+
+    /** The store the contacts are read from when building the index. */
+    private final ContactStore store;
+
+    /** Whether the index has been built. */
+    private volatile boolean built;
+
+    /** The lock held while the blocks are read or changed. */
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * The lock held exclusively while the index is built, and shared by
+     * changes made before the index is known to be built, so that a
+     * build never misses a change.
+     */
+    private final ReentrantReadWriteLock buildLock =
+        new ReentrantReadWriteLock();
+
+    /**
+     * The keys of the created contacts, and the complements of the keys
+     * of the deleted ones, not yet applied to the blocks, in the order
+     * the contacts were changed.
+     */
+    private final ConcurrentLinkedQueue<Long> pending =
+        new ConcurrentLinkedQueue<>();
+
+    /** The number of queued changes. */
+    private final AtomicInteger pendingCount = new AtomicInteger();
+
+    /**
+     * Creates an empty index over the given store.
+     *
+     * @param store The store holding the contacts.
+     */
+    public ContactsBirthDateIndex(final ContactStore store) {
+        this.store = store;
+    }
+
+    /**
+     * Decodes the birth date and individual number of an SSN.
+     *
+     * @param ssn The social security number.
+     * @return The key: the birth date as yyyymmdd followed by the three
+     *         digits of the individual number, or -1 if the SSN is not
+     *         of the form ddmmyyCnnnc with A or - as the century.
+     */
+    public static long keyOf(final String ssn) {
+        if (ssn == null || ssn.length() != SSN_LENGTH) {
+            return -1;
+        }
+        final char century = ssn.charAt(SSN_CENTURY_INDEX);
+        if (century != 'A' && century != '-') {
+            return -1;
+        }
+        long digits = 0;
+        for (int i = 0; i < SSN_LENGTH - 1; i++) {
+            if (i == SSN_CENTURY_INDEX) {
+                continue;
+            }
+            final char digit = ssn.charAt(i);
+            if (digit < '0' || digit > '9') {
+                return -1;
+            }
+            digits = digits * 10 + (digit - '0');
+        }
+        // ddmmyynnn
+        final int individual = (int) (digits % INDIVIDUALS);
+        final int date = (int) (digits / INDIVIDUALS);
+        final int year = (century == 'A' ? 2000 : 1900) + date % 100;
+        final int month = date / 100 % 100;
+        final int day = date / YEAR;
+        return ((long) year * YEAR + month * MONTH + day) * INDIVIDUALS
+            + individual;
+    }
+
+    /**
+     * Decodes the birth date of an SSN.
+     *
+     * @param ssn The social security number.
+     * @return The birth date as yyyymmdd, or -1 if the SSN is not of the
+     *         form ddmmyyCnnnc with A or - as the century.
+     */
+    public static int birthDateOf(final String ssn) {
+        final long key = keyOf(ssn);
+        return key < 0 ? -1 : (int) (key / INDIVIDUALS);
+    }
+
+    /**
+     * Rebuilds the social security number of a key.
+     *
+     * @param key The key, as given by {@link #keyOf(String)}.
+     * @return The social security number.
+     */
+    public static String ssnOf(final long key) {
+        final int individual = (int) (key % INDIVIDUALS);
+        final int date = (int) (key / INDIVIDUALS);
+        final int year = date / YEAR;
+        final int month = date / MONTH % 100;
+        final int day = date % 100;
+        final char[] ssn = new char[SSN_LENGTH];
+        putTwoDigits(ssn, 0, day);
+        putTwoDigits(ssn, 2, month);
+        putTwoDigits(ssn, 4, year % 100);
+        ssn[SSN_CENTURY_INDEX] = year >= 2000 ? 'A' : '-';
+        ssn[SSN_CENTURY_INDEX + 1] = (char) ('0' + individual / 100);
+        putTwoDigits(ssn, SSN_CENTURY_INDEX + 2, individual % 100);
+        ssn[SSN_LENGTH - 1] = ContactsValidation.controlCharacter(
+            ((day * 100 + month) * 100 + year % 100) * INDIVIDUALS
+            + individual);
+        return new String(ssn);
+    }
+
+    /**
+     * Writes a two digit number into an array.
+     *
+     * @param target The array to write into.
+     * @param index The index of the first digit.
+     * @param value The number, 0-99.
+     */
+    private static void putTwoDigits(final char[] target, final int index,
+            final int value) {
+        target[index] = (char) ('0' + value / 10);
+        target[index + 1] = (char) ('0' + value % 10);
+    }
+
+    /**
+     * Finds the contacts born within a range of dates.
+     *
+     * @param from The first birth date.
+     * @param to The last birth date.
+     * @param limit The maximum number of contacts to find.
+     * @return The social security numbers, the oldest first.
+     */
+    public List<String> bornBetween(final LocalDate from,
+            final LocalDate to, final int limit) {
+        final LongStream.Builder keys = LongStream.builder();
+        lock.lock();
+        try {
+            update();
+            collect(dateOf(from) * INDIVIDUALS,
+                dateOf(to) * INDIVIDUALS + INDIVIDUALS - 1, keys, limit);
+        } finally {
+            lock.unlock();
+        }
+        final List<String> ssns = new ArrayList<>();
+        keys.build().forEach(key -> ssns.add(ssnOf(key)));
+        return ssns;
+    }
+
+    /**
+     * Finds the contacts having their birthday within a range of days
+     * of the year. A range from a later day to an earlier one, such as
+     * from December 29 to January 4, goes over the new year.
+     *
+     * @param from The first day.
+     * @param to The last day.
+     * @param limit The maximum number of contacts to find.
+     * @return The social security numbers in the order of the birthdays
+     *         from the first day, and of the birth dates on the same day.
+     */
+    public List<String> birthdaysBetween(final MonthDay from,
+            final MonthDay to, final int limit) {
+        final int first = from.getMonthValue() * MONTH + from.getDayOfMonth();
+        final int last = to.getMonthValue() * MONTH + to.getDayOfMonth();
+        final LongStream.Builder keys = LongStream.builder();
+        lock.lock();
+        try {
+            update();
+            collectBirthdays(first, last, keys, limit);
+        } finally {
+            lock.unlock();
+        }
+        final List<String> ssns = new ArrayList<>();
+        // Sort by the day from the first one, then by the key.
+        keys.build().map(key -> {
+            final long day = key / INDIVIDUALS % YEAR;
+            return (day < first ? LAST_DAY + day : day) * KEY_RANGE + key;
+        }).sorted().limit(limit)
+            .forEach(order -> ssns.add(ssnOf(order % KEY_RANGE)));
+        return ssns;
+    }
+
+    /**
+     * Collects the keys having their birthday within a range of days
+     * of the year, up to the limit from each year. The lock must be
+     * held.
+     *
+     * @param first The first day as mmdd.
+     * @param last The last day as mmdd.
+     * @param keys The keys collected.
+     * @param limit The maximum number of keys to collect from a year.
+     */
+    private void collectBirthdays(final int first, final int last,
+            final LongStream.Builder keys, final int limit) {
+        if (blockCount == 0) {
+            return;
+        }
+        final long firstYear = blocks[0][0] / INDIVIDUALS / YEAR;
+        final long lastYear =
+            blocks[blockCount - 1][sizes[blockCount - 1] - 1]
+            / INDIVIDUALS / YEAR;
+        // The birthdays of each year are a range of keys of their own,
+        // in order, so no more than the limit is needed from each.
+        for (long year = firstYear; year <= lastYear; year++) {
+            final long start = year * YEAR * INDIVIDUALS;
+            if (first <= last) {
+                collect(start + first * INDIVIDUALS,
+                    start + last * INDIVIDUALS + INDIVIDUALS - 1,
+                    keys, limit);
+            } else {
+                collect(start + first * INDIVIDUALS,
+                    start + LAST_DAY * INDIVIDUALS + INDIVIDUALS - 1,
+                    keys, limit);
+                collect(start + FIRST_DAY * INDIVIDUALS,
+                    start + last * INDIVIDUALS + INDIVIDUALS - 1,
+                    keys, limit);
+            }
+        }
+    }
+
+    /**
+     * Collects the keys within a range, in order.
+     *
+     * @param from The first key.
+     * @param to The last key.
+     * @param keys The keys collected.
+     * @param limit The maximum number of keys to collect.
+     */
+    private void collect(final long from, final long to,
+            final LongStream.Builder keys, final int limit) {
+        int block = findBlock(from);
+        int position = block < blockCount ? lowerBound(block, from) : 0;
+        int count = 0;
+        for (; block < blockCount; block++, position = 0) {
+            for (; position < sizes[block]; position++) {
+                final long key = blocks[block][position];
+                if (key > to || count == limit) {
+                    return;
+                }
+                keys.add(key);
+                count++;
+            }
+        }
+    }
+
+    /**
+     * Gets a date as yyyymmdd.
+     *
+     * @param date The date.
+     * @return The date as a number.
+     */
+    private static long dateOf(final LocalDate date) {
+        return (long) date.getYear() * YEAR + date.getMonthValue() * MONTH
+            + date.getDayOfMonth();
+    }
+
+    /**
+     * Finds the first block whose last key is at least the given key.
+     *
+     * @param key The key.
+     * @return The index of the block, or the number of blocks if every
+     *         key is smaller.
+     */
+    private int findBlock(final long key) {
+        int low = 0;
+        int high = blockCount;
+        while (low < high) {
+            final int middle = (low + high) >>> 1;
+            if (blocks[middle][sizes[middle] - 1] < key) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Finds the first position of a block whose key is at least the
+     * given key.
+     *
+     * @param block The index of the block.
+     * @param key The key.
+     * @return The position.
+     */
+    private int lowerBound(final int block, final long key) {
+        final int position =
+            Arrays.binarySearch(blocks[block], 0, sizes[block], key);
+        return position >= 0 ? position : -position - 1;
+    }
+
+    /**
+     * Adds a key, unless it already is in the index.
+     *
+     * @param key The key.
+     */
+    private void add(final long key) {
+        if (key < 0) {
+            return;
+        }
+        if (blockCount == 0) {
+            // An empty block would have no last key to search by.
+            final long[] keys = new long[BLOCK_SIZE];
+            keys[0] = key;
+            insertBlock(0, keys, 1);
+            return;
+        }
+        final int block = Math.min(findBlock(key), blockCount - 1);
+        int position =
+            Arrays.binarySearch(blocks[block], 0, sizes[block], key);
+        if (position >= 0) {
+            return;
+        }
+        position = -position - 1;
+        int target = block;
+        if (sizes[block] == BLOCK_SIZE) {
+            // Split the full block into two halves.
+            final int half = BLOCK_SIZE / 2;
+            final long[] upper = new long[BLOCK_SIZE];
+            System.arraycopy(blocks[block], half, upper, 0, BLOCK_SIZE - half);
+            sizes[block] = half;
+            insertBlock(block + 1, upper, BLOCK_SIZE - half);
+            if (position > half) {
+                target = block + 1;
+                position -= half;
+            }
+        }
+        final long[] keys = blocks[target];
+        System.arraycopy(keys, position, keys, position + 1,
+            sizes[target] - position);
+        keys[position] = key;
+        sizes[target]++;
+    }
+
+    /**
+     * Removes a key from the index, if it is there.
+     *
+     * @param key The key.
+     */
+    private void remove(final long key) {
+        if (key < 0) {
+            return;
+        }
+        final int block = findBlock(key);
+        if (block == blockCount) {
+            return;
+        }
+        final int position =
+            Arrays.binarySearch(blocks[block], 0, sizes[block], key);
+        if (position < 0) {
+            return;
+        }
+        final long[] keys = blocks[block];
+        System.arraycopy(keys, position + 1, keys, position,
+            sizes[block] - position - 1);
+        if (--sizes[block] == 0) {
+            System.arraycopy(blocks, block + 1, blocks, block,
+                blockCount - block - 1);
+            System.arraycopy(sizes, block + 1, sizes, block,
+                blockCount - block - 1);
+            blocks[--blockCount] = null;
+        }
+    }
+
+    /**
+     * Inserts a block.
+     *
+     * @param index The index of the new block.
+     * @param keys The keys of the block, with room for a full block.
+     * @param size The number of keys in the block.
+     */
+    private void insertBlock(final int index, final long[] keys,
+            final int size) {
+        if (blockCount == blocks.length) {
+            final int capacity = Math.max(1, blockCount * 2);
+            blocks = Arrays.copyOf(blocks, capacity);
+            sizes = Arrays.copyOf(sizes, capacity);
+        }
+        System.arraycopy(blocks, index, blocks, index + 1,
+            blockCount - index);
+        System.arraycopy(sizes, index, sizes, index + 1, blockCount - index);
+        blocks[index] = keys;
+        sizes[index] = size;
+        blockCount++;
+    }
+
+    /**
+     * Brings the blocks up to date for a lookup, building the index
+     * first if needed and applying the queued changes. The lock must
+     * be held.
+     */
+    private void update() {
+        if (!built) {
+            buildLock.writeLock().lock();
+            try {
+                build();
+            } finally {
+                buildLock.writeLock().unlock();
+            }
+        }
+        applyPending();
+    }
+
+    /**
+     * Checks whether the index is built, so changes have to be indexed,
+     * first waiting for a build in progress to end.
+     *
+     * @return {@code true} if the index is built.
+     */
+    private boolean isBuilt() {
+        if (!built) {
+            buildLock.readLock().lock();
+            buildLock.readLock().unlock();
+        }
+        return built;
+    }
+
+    /**
+     * Queues a change, and applies the queued changes once there are
+     * many of them, unless a lookup holds the lock and applies them.
+     *
+     * @param change The key of a created contact, or the complement of
+     *        the key of a deleted one.
+     */
+    private void queue(final long change) {
+        pending.add(change);
+        if (pendingCount.incrementAndGet() > MAX_PENDING && lock.tryLock()) {
+            try {
+                applyPending();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /** Applies the queued changes in order. The lock must be held. */
+    private void applyPending() {
+        for (Long change = pending.poll(); change != null;
+                change = pending.poll()) {
+            pendingCount.decrementAndGet();
+            if (change >= 0) {
+                add(change);
+            } else {
+                remove(~change);
+            }
+        }
+    }
+
+    /** Indexes every contact of the store. The lock must be held. */
+    private void build() {
+        long[] keys = new long[BLOCK_SIZE];
+        int count = 0;
+        for (Person person : store) {
+            final long key = keyOf(person.getSsn());
+            if (key >= 0) {
+                if (count == keys.length) {
+                    keys = Arrays.copyOf(keys, count * 2);
+                }
+                keys[count++] = key;
+            }
+        }
+        Arrays.sort(keys, 0, count);
+        final int capacity = (count + BUILD_FILL - 1) / BUILD_FILL;
+        blocks = new long[Math.max(1, capacity)][];
+        sizes = new int[blocks.length];
+        blockCount = 0;
+        for (int start = 0; start < count; start += BUILD_FILL) {
+            final int size = Math.min(BUILD_FILL, count - start);
+            final long[] block = new long[BLOCK_SIZE];
+            System.arraycopy(keys, start, block, 0, size);
+            blocks[blockCount] = block;
+            sizes[blockCount++] = size;
+        }
+        built = true;
+    }
+
+    /** Removes every key. */
+    private void clear() {
+        blocks = new long[0][];
+        sizes = new int[0];
+        blockCount = 0;
+    }
+
+    @Override
+    public void contactCreated(final Person person) {
+        final long key = keyOf(person.getSsn());
+        if (key >= 0 && isBuilt()) {
+            queue(key);
+        }
+    }
+
+    @Override
+    public void contactUpdated(final Person person,
+            final ContactField field, final String oldValue) {
+        // The social security number of a contact never changes.
+    }
+
+    @Override
+    public void contactDeleted(final Person person) {
+        final long key = keyOf(person.getSsn());
+        if (key >= 0 && isBuilt()) {
+            queue(~key);
+        }
+    }
+
+    @Override
+    public void contactsCleared() {
+        lock.lock();
+        try {
+            pending.clear();
+            pendingCount.set(0);
+            clear();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,223 @@
+package contacts;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps track of the contacts that were created, changed or deleted
+ * since the contacts were last saved, so that a save only writes those.
+ *
+ * Each contact is tracked once however often it changes: as created,
+ * as deleted, as deleted and created again, or with the details that
+ * were changed. A contact created and deleted again is not tracked at
+ * all. Created contacts are written in the order they were created, so
+ * writing them keeps the order of the contacts.
+ *
+ * Changes to different contacts are tracked concurrently, and the
+ * changes to one contact are made one at a time by the book, so the
+ * tracker takes no lock of its own.
+ *
+ * When too many contacts change for tracking them to pay off, or the
+ * changes are not known, the tracker asks for everything to be saved.
+ */
+public class ContactsChangeTracker implements ContactsListener {
+    /** The state of a contact that was created. */
+    private static final int CREATED = -1;
+
+    /** The state of a contact that was deleted. */
+    private static final int DELETED = -2;
+
+    /** The state of a contact that was deleted and created again. */
+    private static final int REPLACED = -3;
+
+    /** The number of tracked contacts above which everything is saved. */
+    private static final int MAX_TRACKED = 1 << 20;
+
+    /**
+     * The change of each changed contact keyed by its social security
+     * number.
+     */
+    private final ConcurrentHashMap<String, Change> changes =
+        new ConcurrentHashMap<>();
+
+    /** The order of the next contact to be tracked. */
+    private final AtomicLong nextOrder = new AtomicLong();
+
+    /** Whether all contacts were deleted. */
+    private volatile boolean cleared;
+
+    /** Whether every contact has to be saved. */
+    private volatile boolean everything;
+
+    /** The change of a contact. */
+    private static final class Change {
+        /** The order the contact was first tracked or created in. */
+        private final long order;
+
+        /**
+         * The state of the contact, or a bit set for each changed
+         * detail if positive.
+         */
+        private final int state;
+
+        /**
+         * Creates the change of a contact.
+         *
+         * @param order The order the contact was tracked in.
+         * @param state The state of the contact.
+         */
+        private Change(final long order, final int state) {
+            this.order = order;
+            this.state = state;
+        }
+    }
+
+    @Override
+    public void contactCreated(final Person person) {
+        if (everything) {
+            return;
+        }
+        changes.compute(person.getSsn(), (ssn, change) -> new Change(
+            nextOrder.getAndIncrement(),
+            change != null && change.state == DELETED ? REPLACED : CREATED
+        ));
+        limit();
+    }
+
+    @Override
+    public void contactUpdated(final Person person,
+            final ContactField field, final String oldValue) {
+        if (everything) {
+            return;
+        }
+        changes.compute(person.getSsn(), (ssn, change) -> {
+            if (change == null) {
+                return new Change(nextOrder.getAndIncrement(),
+                    1 << field.getCode());
+            }
+            return change.state > 0
+                ? new Change(change.order,
+                    change.state | 1 << field.getCode())
+                : change;
+        });
+        limit();
+    }
+
+    @Override
+    public void contactDeleted(final Person person) {
+        if (everything) {
+            return;
+        }
+        changes.compute(person.getSsn(), (ssn, change) -> {
+            if (change != null && change.state == CREATED) {
+                return null;
+            }
+            return new Change(change == null
+                ? nextOrder.getAndIncrement() : change.order, DELETED);
+        });
+        limit();
+    }
+
+    @Override
+    public void contactsCleared() {
+        changes.clear();
+        cleared = true;
+    }
+
+    /**
+     * Stops tracking single contacts once there are too many of them.
+     */
+    private void limit() {
+        if (changes.size() > MAX_TRACKED) {
+            markEverything();
+        }
+    }
+
+    /**
+     * Asks for every contact to be saved, for example after saving the
+     * changes failed and they are no longer known one by one.
+     */
+    public void markEverything() {
+        everything = true;
+        changes.clear();
+    }
+
+    /**
+     * Checks whether anything changed since the contacts were saved.
+     *
+     * @return {@code true} if there are changes to save.
+     */
+    public boolean hasChanges() {
+        return everything || cleared || !changes.isEmpty();
+    }
+
+    /**
+     * Checks whether every contact has to be saved.
+     *
+     * @return {@code true} if the changes are not known one by one.
+     */
+    public boolean needsEverything() {
+        return everything;
+    }
+
+    /**
+     * Forgets the changes, once every contact has been saved.
+     * No contact may change meanwhile.
+     */
+    public void reset() {
+        changes.clear();
+        cleared = false;
+        everything = false;
+    }
+
+    /**
+     * Takes the changes as journal entries and forgets them.
+     * No contact may change while the entries are made.
+     *
+     * @param store The store holding the current details.
+     * @return The bodies of the entries, in the order to replay them.
+     * @throws IllegalStateException If every contact has to be saved.
+     */
+    public List<ByteBuffer> takeChanges(final ContactStore store) {
+        if (everything) {
+            throw new IllegalStateException("Every contact has to be saved");
+        }
+        final List<ByteBuffer> entries = new ArrayList<>();
+        if (cleared) {
+            entries.add(ContactsJournal.clearEntry());
+        }
+        final List<Map.Entry<String, Change>> ordered =
+            new ArrayList<>(changes.entrySet());
+        ordered.sort(Comparator.comparingLong(
+            change -> change.getValue().order));
+        changes.clear();
+        for (Map.Entry<String, Change> change : ordered) {
+            final String ssn = change.getKey();
+            final int state = change.getValue().state;
+            if (state == DELETED || state == REPLACED) {
+                entries.add(ContactsJournal.deleteEntry(ssn));
+            }
+            final Person person = state == DELETED ? null : store.get(ssn);
+            if (person == null) {
+                continue;
+            }
+            if (state < 0) {
+                entries.add(ContactsJournal.createEntry(person));
+                continue;
+            }
+            for (ContactField field : ContactField.values()) {
+                if ((state & 1 << field.getCode()) != 0) {
+                    entries.add(ContactsJournal.updateEntry(ssn, field,
+                        person.getDetail(field)));
+                }
+            }
+        }
+        cleared = false;
+        return entries;
+    }
+}
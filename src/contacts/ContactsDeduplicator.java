@@ -0,0 +1,586 @@
+package contacts;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Finds contacts that may be the same person entered twice under
+ * different social security numbers, such as "Matti Virtanen" and
+ * "Virtanen Matti" born on the same day, or the same names with a
+ * mistyped email address.
+ *
+ * Comparing every contact with every other would take time growing
+ * with the square of the contacts, so contacts are only compared
+ * within blocks that duplicates are likely to share: the birth date in
+ * the SSN, a phonetic key of either name and the domain of the email
+ * address. The contacts of all blocks are sorted together, by block and
+ * then so that alike contacts are next to each other, and each is
+ * compared with the few that follow it in its block. The time then
+ * grows about linearly with the contacts however large a block is, and
+ * every step runs in parallel on a fork-join pool.
+ *
+ * A pair is scored from 0 to 1 by how well both names agree in either
+ * order, whether the birth dates match, how well the email addresses
+ * and the addresses agree, and a shared phone number. Names, email
+ * addresses and addresses agree by their Jaro-Winkler similarity, above
+ * the similarity any two strings of letters tend to have, and names are
+ * compared with the letters that sound alike in Finnish made the same.
+ * A different phone number does not count against a pair, as numbers
+ * change, and details missing from either contact are left out.
+ */
+public final class ContactsDeduplicator {
+    /** The score from which contacts are reported by default. */
+    public static final double DEFAULT_THRESHOLD = 0.9;
+
+    /** The number of contacts of a block each one is compared with. */
+    public static final int DEFAULT_WINDOW = 8;
+
+    /** The kind of the blocks of the contacts born on the same day. */
+    private static final int BIRTH_DATE = 0;
+
+    /** The kind of the blocks of the contacts with alike sounding names. */
+    private static final int NAME = 1;
+
+    /** The kind of the blocks of the contacts with the same email domain. */
+    private static final int EMAIL_DOMAIN = 2;
+
+    /** The weight of the names in the score. */
+    private static final double NAME_WEIGHT = 0.45;
+
+    /** The weight of the birth dates in the score. */
+    private static final double BIRTH_DATE_WEIGHT = 0.2;
+
+    /** The weight of the email addresses in the score. */
+    private static final double EMAIL_WEIGHT = 0.2;
+
+    /** The weight of the phone numbers in the score. */
+    private static final double PHONE_WEIGHT = 0.1;
+
+    /** The weight of the addresses in the score. */
+    private static final double ADDRESS_WEIGHT = 0.05;
+
+    /** The Jaro-Winkler similarity below which strings don't agree. */
+    private static final double AGREEMENT_FLOOR = 0.8;
+
+    /** The similarity of birth dates a typing error apart. */
+    private static final double MISTYPED_BIRTH_DATE = 0.5;
+
+    /** The length of the birth date at the start of an SSN. */
+    private static final int BIRTH_DATE_LENGTH = 6;
+
+    /** The maximum length of a phonetic key. */
+    private static final int PHONETIC_LENGTH = 6;
+
+    /** How much the Jaro-Winkler similarity rewards a common prefix. */
+    private static final double PREFIX_SCALE = 0.1;
+
+    /** The longest common prefix the Jaro-Winkler similarity rewards. */
+    private static final int MAX_PREFIX = 4;
+
+    /** Orders the matches from the most alike. */
+    private static final Comparator<ContactsMatch> BEST_FIRST = Comparator
+        .comparingDouble(ContactsMatch::getScore).reversed()
+        .thenComparing(match -> match.getFirst().getSsn())
+        .thenComparing(match -> match.getSecond().getSsn());
+
+    /** Prevents instantiation of this utility class. */
+    private ContactsDeduplicator() {
+    }
+
+    /** The details of a contact in the forms they are compared in. */
+    private static final class Profile {
+        /** The contact. */
+        private final Person person;
+
+        /** The sounds of the first name, as given by {@link #soundsOf}. */
+        private final String firstName;
+
+        /** The sounds of the last name, as given by {@link #soundsOf}. */
+        private final String lastName;
+
+        /** Both names in alphabetical order, whichever is the last. */
+        private final String names;
+
+        /** The birth date in the SSN. */
+        private final String birthDate;
+
+        /** The phone number in its national form, or null. */
+        private final String phoneNumber;
+
+        /** The email address in lower case, or null. */
+        private final String emailAddress;
+
+        /** The address in lower case, or null. */
+        private final String address;
+
+        /**
+         * Creates the profile of a contact.
+         *
+         * @param person The contact.
+         */
+        Profile(final Person person) {
+            this.person = person;
+            firstName = soundsOf(person.getFirstName());
+            lastName = soundsOf(person.getLastName());
+            names = firstName.compareTo(lastName) <= 0
+                ? firstName + ' ' + lastName : lastName + ' ' + firstName;
+            birthDate = person.getSsn().substring(0, BIRTH_DATE_LENGTH);
+            phoneNumber = ContactsDetailIndex.keyOf(
+                ContactField.PHONE_NUMBER, person.getPhoneNumber());
+            emailAddress = ContactsDetailIndex.keyOf(
+                ContactField.EMAIL_ADDRESS, person.getEmailAddress());
+            address = isEmpty(person.getAddress()) ? null
+                : person.getAddress().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    /**
+     * A contact in one of its blocks. Entries are ordered by block and
+     * the alike contacts of a block together.
+     */
+    private static final class Entry implements Comparable<Entry> {
+        /** The kind of the block. */
+        private final int kind;
+
+        /** The key of the block. */
+        private final String block;
+
+        /** The key alike contacts of the block are sorted together by. */
+        private final String order;
+
+        /** The contact. */
+        private final Profile profile;
+
+        /**
+         * Creates an entry.
+         *
+         * @param kind The kind of the block.
+         * @param block The key of the block.
+         * @param order The key of the contact within the block.
+         * @param profile The contact.
+         */
+        Entry(final int kind, final String block, final String order,
+                final Profile profile) {
+            this.kind = kind;
+            this.block = block;
+            this.order = order;
+            this.profile = profile;
+        }
+
+        @Override
+        public int compareTo(final Entry other) {
+            int order = Integer.compare(kind, other.kind);
+            if (order == 0) {
+                order = block.compareTo(other.block);
+            }
+            if (order == 0) {
+                order = this.order.compareTo(other.order);
+            }
+            return order != 0 ? order : profile.person.getSsn()
+                .compareTo(other.profile.person.getSsn());
+        }
+    }
+
+    /**
+     * Finds the contacts that may be the same person.
+     *
+     * @param contacts The contacts, such as a snapshot of them.
+     * @param threshold The score from which contacts are reported.
+     * @param window The number of contacts of a block each one is
+     *        compared with.
+     * @param threads The number of threads to compare them on.
+     * @return The pairs of contacts scoring at least the threshold,
+     *         the most alike first.
+     * @throws InterruptedException If interrupted while comparing.
+     */
+    public static List<ContactsMatch> findMatches(
+            final Collection<Person> contacts, final double threshold,
+            final int window, final int threads)
+            throws InterruptedException {
+        final Person[] people = contacts.toArray(new Person[0]);
+        final ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            return pool.submit(() -> match(people, threshold, window)).get();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Finds the contacts that may be the same person, in parallel on
+     * the fork-join pool of the calling thread.
+     *
+     * @param people The contacts.
+     * @param threshold The score from which contacts are reported.
+     * @param window The number of contacts of a block each one is
+     *        compared with.
+     * @return The pairs of contacts scoring at least the threshold,
+     *         the most alike first.
+     */
+    private static List<ContactsMatch> match(final Person[] people,
+            final double threshold, final int window) {
+        final Entry[] entries = Arrays.stream(people).parallel()
+            .map(Profile::new)
+            .flatMap(ContactsDeduplicator::entriesOf)
+            .toArray(Entry[]::new);
+        Arrays.parallelSort(entries);
+        final Map<String, ContactsMatch> matches = new ConcurrentHashMap<>();
+        IntStream.range(0, entries.length).parallel().forEach(i -> {
+            final int end = Math.min(entries.length, i + 1 + window);
+            for (int j = i + 1; j < end && entries[j].kind == entries[i].kind
+                    && entries[j].block.equals(entries[i].block); j++) {
+                compare(entries[i].profile, entries[j].profile, threshold,
+                    matches);
+            }
+        });
+        final List<ContactsMatch> found = new ArrayList<>(matches.values());
+        found.sort(BEST_FIRST);
+        return found;
+    }
+
+    /**
+     * Puts a contact into its blocks.
+     *
+     * @param profile The contact.
+     * @return The entries of the contact in each of its blocks.
+     */
+    private static Stream<Entry> entriesOf(final Profile profile) {
+        final Stream.Builder<Entry> entries = Stream.builder();
+        entries.add(new Entry(BIRTH_DATE, profile.birthDate, profile.names,
+            profile));
+        final String lastName = phoneticKey(profile.lastName);
+        final String firstName = phoneticKey(profile.firstName);
+        if (!lastName.isEmpty()) {
+            entries.add(new Entry(NAME, lastName, profile.names, profile));
+        }
+        if (!firstName.isEmpty() && !firstName.equals(lastName)) {
+            entries.add(new Entry(NAME, firstName, profile.names, profile));
+        }
+        if (profile.emailAddress != null) {
+            final int at = profile.emailAddress.lastIndexOf('@');
+            entries.add(new Entry(EMAIL_DOMAIN,
+                profile.emailAddress.substring(at + 1),
+                profile.emailAddress, profile));
+        }
+        return entries.build();
+    }
+
+    /**
+     * Scores two contacts and keeps them if they are alike enough.
+     * A pair sharing many blocks is scored in each of them.
+     *
+     * @param a A contact.
+     * @param b Another contact, or the same one again.
+     * @param threshold The score from which contacts are kept.
+     * @param matches The kept pairs keyed by their SSNs.
+     */
+    private static void compare(final Profile a, final Profile b,
+            final double threshold, final Map<String, ContactsMatch> matches) {
+        if (a == b) {
+            return;
+        }
+        final double score = score(a, b, threshold);
+        if (score >= threshold) {
+            final boolean ordered =
+                a.person.getSsn().compareTo(b.person.getSsn()) < 0;
+            final Person first = ordered ? a.person : b.person;
+            final Person second = ordered ? b.person : a.person;
+            matches.putIfAbsent(first.getSsn() + second.getSsn(),
+                new ContactsMatch(first, second, score));
+        }
+    }
+
+    /**
+     * Scores how alike two contacts are. The names, birth dates and
+     * phone numbers are compared first, and the email addresses and
+     * addresses only if the pair can still reach the threshold.
+     *
+     * @param a A contact.
+     * @param b Another contact.
+     * @param threshold The score from which contacts are kept.
+     * @return The score, from 0 for nothing alike to 1 for the same
+     *         details, or 0 if the pair can't reach the threshold.
+     */
+    private static double score(final Profile a, final Profile b,
+            final double threshold) {
+        final double names = Math.max(
+            bothAgree(a.firstName, b.firstName, a.lastName, b.lastName),
+            bothAgree(a.firstName, b.lastName, a.lastName, b.firstName)
+        );
+        if (NAME_WEIGHT * names + 1 - NAME_WEIGHT < threshold) {
+            return 0;
+        }
+        double score = NAME_WEIGHT * names
+            + BIRTH_DATE_WEIGHT * birthDateSimilarity(a.birthDate, b.birthDate);
+        double weights = NAME_WEIGHT + BIRTH_DATE_WEIGHT;
+        if (a.phoneNumber != null && a.phoneNumber.equals(b.phoneNumber)) {
+            score += PHONE_WEIGHT;
+            weights += PHONE_WEIGHT;
+        }
+        final boolean emails = a.emailAddress != null
+            && b.emailAddress != null;
+        final boolean addresses = a.address != null && b.address != null;
+        final double remaining = (emails ? EMAIL_WEIGHT : 0)
+            + (addresses ? ADDRESS_WEIGHT : 0);
+        if ((score + remaining) / (weights + remaining) < threshold) {
+            return 0;
+        }
+        if (emails) {
+            score += EMAIL_WEIGHT * agreement(a.emailAddress, b.emailAddress);
+            weights += EMAIL_WEIGHT;
+        }
+        if (addresses) {
+            score += ADDRESS_WEIGHT * agreement(a.address, b.address);
+            weights += ADDRESS_WEIGHT;
+        }
+        return score / weights;
+    }
+
+    /**
+     * Gets how well two pairs of names both agree.
+     *
+     * @param a A name.
+     * @param b The name compared with the first.
+     * @param c Another name.
+     * @param d The name compared with the other.
+     * @return The lower agreement of the pairs.
+     */
+    private static double bothAgree(final String a, final String b,
+            final String c, final String d) {
+        final double first = agreement(a, b);
+        return first == 0 ? 0 : Math.min(first, agreement(c, d));
+    }
+
+    /**
+     * Gets how well two strings agree: 0 up to the Jaro-Winkler
+     * similarity of {@link #AGREEMENT_FLOOR} and 1 for the same string.
+     *
+     * @param a A string.
+     * @param b Another string.
+     * @return The agreement, from 0 to 1.
+     */
+    private static double agreement(final String a, final String b) {
+        return Math.max(0,
+            (jaroWinkler(a, b) - AGREEMENT_FLOOR) / (1 - AGREEMENT_FLOOR));
+    }
+
+    /**
+     * Compares two birth dates, allowing for a mistyped or two swapped
+     * digits.
+     *
+     * @param a A birth date.
+     * @param b Another birth date of the same length.
+     * @return 1 for the same date, less for a typing error apart and
+     *         0 otherwise.
+     */
+    private static double birthDateSimilarity(final String a,
+            final String b) {
+        int first = -1;
+        int differences = 0;
+        for (int i = 0; i < a.length(); i++) {
+            if (a.charAt(i) != b.charAt(i)) {
+                if (differences++ == 0) {
+                    first = i;
+                }
+            }
+        }
+        if (differences == 0) {
+            return 1;
+        }
+        final boolean swapped = differences == 2 && first + 1 < a.length()
+            && a.charAt(first) == b.charAt(first + 1)
+            && a.charAt(first + 1) == b.charAt(first);
+        return differences == 1 || swapped ? MISTYPED_BIRTH_DATE : 0;
+    }
+
+    /**
+     * Gets the Jaro-Winkler similarity of two strings: the share of
+     * their characters in about the same places, rewarding a common
+     * prefix.
+     *
+     * @param a A string.
+     * @param b Another string.
+     * @return The similarity, from 0 for nothing in common to 1 for the
+     *         same string.
+     */
+    static double jaroWinkler(final String a, final String b) {
+        if (a.equals(b)) {
+            return 1;
+        }
+        if (a.isEmpty() || b.isEmpty()) {
+            return 0;
+        }
+        final int range = Math.max(0, Math.max(a.length(), b.length()) / 2 - 1);
+        final boolean[] matchedA = new boolean[a.length()];
+        final boolean[] matchedB = new boolean[b.length()];
+        int matching = 0;
+        for (int i = 0; i < a.length(); i++) {
+            final int end = Math.min(b.length(), i + range + 1);
+            for (int j = Math.max(0, i - range); j < end; j++) {
+                if (!matchedB[j] && a.charAt(i) == b.charAt(j)) {
+                    matchedA[i] = true;
+                    matchedB[j] = true;
+                    matching++;
+                    break;
+                }
+            }
+        }
+        if (matching == 0) {
+            return 0;
+        }
+        int transposed = 0;
+        for (int i = 0, j = 0; i < a.length(); i++) {
+            if (matchedA[i]) {
+                while (!matchedB[j]) {
+                    j++;
+                }
+                if (a.charAt(i) != b.charAt(j++)) {
+                    transposed++;
+                }
+            }
+        }
+        final double m = matching;
+        final double jaro = (m / a.length() + m / b.length()
+            + (m - transposed / 2.0) / m) / 3;
+        final int limit = Math.min(MAX_PREFIX,
+            Math.min(a.length(), b.length()));
+        int prefix = 0;
+        while (prefix < limit && a.charAt(prefix) == b.charAt(prefix)) {
+            prefix++;
+        }
+        return jaro + prefix * PREFIX_SCALE * (1 - jaro);
+    }
+
+    /**
+     * Gets a phonetic key of a name, so that names spelled differently
+     * but sounding alike, such as "Virtanen" and "Wirttanen", have the
+     * same key. Like Soundex, the key is the first letter and the
+     * following consonants without repeats.
+     *
+     * @param name The sounds of the name, as given by {@link #soundsOf}.
+     * @return The key, empty for an empty name.
+     */
+    static String phoneticKey(final String name) {
+        final StringBuilder key = new StringBuilder(PHONETIC_LENGTH);
+        for (int i = 0; i < name.length() && key.length() < PHONETIC_LENGTH;
+                i++) {
+            final char sound = name.charAt(i);
+            if (key.length() > 0 && (isVowel(sound)
+                    || sound == key.charAt(key.length() - 1))) {
+                continue;
+            }
+            key.append(sound);
+        }
+        return key.toString();
+    }
+
+    /**
+     * Gets the letter a letter sounds like in Finnish.
+     *
+     * @param letter A lower case letter.
+     * @return The letter it sounds like.
+     */
+    private static char soundOf(final char letter) {
+        switch (letter) {
+            case 'ä':
+                return 'a';
+            case 'ö':
+            case 'å':
+                return 'o';
+            case 'w':
+                return 'v';
+            case 'z':
+                return 's';
+            case 'c':
+            case 'q':
+            case 'x':
+                return 'k';
+            default:
+                return letter;
+        }
+    }
+
+    /**
+     * Checks whether a letter is a vowel.
+     *
+     * @param letter A lower case letter as returned by {@link #soundOf}.
+     * @return {@code true} for a vowel.
+     */
+    private static boolean isVowel(final char letter) {
+        return "aeiouy".indexOf(letter) >= 0;
+    }
+
+    /**
+     * Gets the letters of a name in lower case, with the letters that
+     * sound alike in Finnish made the same and without spaces and
+     * hyphens.
+     *
+     * @param name The name.
+     * @return The sounds of the name.
+     */
+    private static String soundsOf(final String name) {
+        final StringBuilder letters = new StringBuilder(name.length());
+        for (int i = 0; i < name.length(); i++) {
+            final char c = name.charAt(i);
+            if (Character.isLetter(c)) {
+                letters.append(soundOf(Character.toLowerCase(c)));
+            }
+        }
+        return letters.toString();
+    }
+
+    /**
+     * Checks whether a detail is missing.
+     *
+     * @param value The value of the detail.
+     * @return {@code true} if the value is null or empty.
+     */
+    private static boolean isEmpty(final String value) {
+        return value == null || value.isEmpty();
+    }
+
+    /**
+     * Writes the matches to a CSV file, one pair of contacts a line.
+     *
+     * @param report The file to write.
+     * @param matches The matches.
+     * @throws IOException If writing fails.
+     */
+    public static void writeReport(final Path report,
+            final List<ContactsMatch> matches) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(report)) {
+            writer.write("score,ssn,first_name,last_name,"
+                + "other_ssn,other_first_name,other_last_name\n");
+            for (ContactsMatch match : matches) {
+                writer.write(String.format(Locale.ROOT, "%.3f",
+                    match.getScore()));
+                for (Person person
+                        : new Person[] {match.getFirst(), match.getSecond()}) {
+                    writer.write(',');
+                    writer.write(person.getSsn());
+                    writer.write(',');
+                    writer.write(person.getFirstName());
+                    writer.write(',');
+                    writer.write(person.getLastName());
+                }
+                writer.write('\n');
+            }
+        }
+    }
+}
@@ -0,0 +1,474 @@
+package contacts;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Hash indexes of the phone numbers and email addresses of the
+ * contacts, for finding the contacts sharing one in constant time and
+ * for keeping them unique when asked to.
+ *
+ * Phone numbers are indexed in their national form when they are
+ * Finnish, so "+358401234567" and "0401234567" are the same number,
+ * and email addresses in lower case. Missing details are not indexed.
+ * A value of a single contact maps to its SSN as a String, a value of
+ * many contacts to a Set of their SSNs.
+ *
+ * The index is a listener of the ContactsManager and is kept up to date
+ * as contacts are created, changed and deleted. It is built from the
+ * contact store the first time it is used, so it costs nothing until
+ * then. Lookups never lock. Each value is changed atomically on its
+ * own, so changes to different contacts are indexed at the same time
+ * and only wait for a build in progress.
+ */
+public final class ContactsDetailIndex implements ContactsListener {
+    /** The details that are indexed. */
+    public static final List<ContactField> INDEXED_FIELDS =
+        Collections.unmodifiableList(Arrays.asList(
+            ContactField.PHONE_NUMBER, ContactField.EMAIL_ADDRESS));
+
+    /** The Finnish country calling code of phone numbers. */
+    private static final String FINNISH_PREFIX = "+358";
+
+    /** The values of each indexed detail keyed to the SSNs having them. */
+    private final EnumMap<ContactField, ConcurrentHashMap<String, Object>>
+        values = new EnumMap<>(ContactField.class);
+
+    /** The store the contacts are read from when building the index. */
+    private final ContactStore store;
+
+    /** Whether the index has been built. */
+    private volatile boolean built;
+
+    /**
+     * The lock held exclusively while the index is built or emptied,
+     * and shared by changes made before the index is known to be built,
+     * so that a build never misses a change.
+     */
+    private final ReentrantReadWriteLock buildLock =
+        new ReentrantReadWriteLock();
+
+    /**
+     * Creates an empty index over the given store.
+     *
+     * @param store The store holding the contacts.
+     */
+    public ContactsDetailIndex(final ContactStore store) {
+        this.store = store;
+        for (ContactField field : INDEXED_FIELDS) {
+            values.put(field, new ConcurrentHashMap<>());
+        }
+    }
+
+    /**
+     * Gets the form a detail is indexed in.
+     *
+     * @param field The detail.
+     * @param value The value of the detail.
+     * @return The indexed form, or null if the value is not indexed.
+     */
+    public static String keyOf(final ContactField field, final String value) {
+        if (value == null || value.isEmpty()) {
+            return null;
+        }
+        if (field == ContactField.PHONE_NUMBER) {
+            return value.startsWith(FINNISH_PREFIX)
+                ? "0" + value.substring(FINNISH_PREFIX.length()) : value;
+        }
+        return value.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Checks that no other contact has the value of a detail.
+     *
+     * @param ssn The social security number of the contact.
+     * @param field The detail.
+     * @param value The value of the detail.
+     * @throws IllegalArgumentException If another contact has the value.
+     */
+    public void checkUnique(final String ssn, final ContactField field,
+            final String value) {
+        if (!built) {
+            build();
+        }
+        final String key = keyOf(field, value);
+        if (key == null) {
+            return;
+        }
+        for (String other : ssnsOf(values.get(field).get(key))) {
+            if (!other.equals(ssn)) {
+                throw taken(field);
+            }
+        }
+    }
+
+    /**
+     * Makes the error of a value that another contact already has.
+     *
+     * @param field The detail.
+     * @return The error.
+     */
+    private static IllegalArgumentException taken(final ContactField field) {
+        return new IllegalArgumentException("Another contact already"
+            + " has this " + (field == ContactField.PHONE_NUMBER
+            ? "phone number." : "email address."));
+    }
+
+    /**
+     * Checks that no other contact has the values of the given details
+     * of a contact and indexes them for the contact, all at once, so a
+     * contact created or changed at the same time on another thread
+     * can't take the same values.
+     *
+     * @param person The contact, with the values to reserve.
+     * @param fields The details that have to be unique.
+     * @throws IllegalArgumentException If another contact has one of the
+     *         values, in which case none of them is reserved.
+     */
+    public void reserve(final Person person,
+            final Set<ContactField> fields) {
+        final Map<ContactField, String> details =
+            new EnumMap<>(ContactField.class);
+        for (ContactField field : fields) {
+            details.put(field, person.getDetail(field));
+        }
+        reserveAll(person.getSsn(), details);
+    }
+
+    /**
+     * Checks that no other contact has a new value of a detail and
+     * indexes it for the contact at once, before the contact is changed.
+     *
+     * @param ssn The social security number of the contact.
+     * @param field The detail.
+     * @param value The new value of the detail.
+     * @throws IllegalArgumentException If another contact has the value.
+     */
+    public void reserve(final String ssn, final ContactField field,
+            final String value) {
+        if (!built) {
+            build();
+        }
+        reserve(field, keyOf(field, value), ssn);
+    }
+
+    /**
+     * Checks that no other contact has any of the new values of the
+     * details of a contact that have to be unique and indexes them for
+     * the contact, all at once, before the contact is changed.
+     *
+     * @param ssn The social security number of the contact.
+     * @param details The new values of the details.
+     * @param fields The details that have to be unique.
+     * @throws IllegalArgumentException If another contact has one of the
+     *         values, in which case none of them is reserved.
+     */
+    public void reserve(final String ssn,
+            final Map<ContactField, String> details,
+            final Set<ContactField> fields) {
+        final Map<ContactField, String> unique =
+            new EnumMap<>(ContactField.class);
+        for (Map.Entry<ContactField, String> detail : details.entrySet()) {
+            if (fields.contains(detail.getKey())) {
+                unique.put(detail.getKey(), detail.getValue());
+            }
+        }
+        reserveAll(ssn, unique);
+    }
+
+    /**
+     * Reserves the values of several details of a contact, one at a
+     * time. If one of them is taken, the ones reserved before it are
+     * released again, so a contact racing for the same values on
+     * another thread may be refused too.
+     *
+     * @param ssn The social security number of the contact.
+     * @param details The values of the details to reserve.
+     * @throws IllegalArgumentException If another contact has one of the
+     *         values, in which case none of them is reserved.
+     */
+    private void reserveAll(final String ssn,
+            final Map<ContactField, String> details) {
+        if (!built) {
+            build();
+        }
+        final List<ContactField> reserved = new ArrayList<>();
+        try {
+            for (Map.Entry<ContactField, String> detail
+                    : details.entrySet()) {
+                if (reserve(detail.getKey(),
+                        keyOf(detail.getKey(), detail.getValue()), ssn)) {
+                    reserved.add(detail.getKey());
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            for (ContactField field : reserved) {
+                remove(field, keyOf(field, details.get(field)), ssn);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Indexes a value of a detail for a contact, unless another contact
+     * has it, checking and indexing it atomically.
+     *
+     * @param field The detail.
+     * @param key The indexed form of the value, or null if missing.
+     * @param ssn The social security number of the contact.
+     * @return {@code true} if the value was indexed, or {@code false}
+     *         if the contact already had it or it is missing.
+     * @throws IllegalArgumentException If another contact has the value.
+     */
+    private boolean reserve(final ContactField field, final String key,
+            final String ssn) {
+        if (key == null) {
+            return false;
+        }
+        final boolean[] added = new boolean[1];
+        values.get(field).compute(key, (value, ssns) -> {
+            if (ssns == null) {
+                added[0] = true;
+                return ssn;
+            }
+            if (ssns.equals(ssn)) {
+                return ssns;
+            }
+            throw taken(field);
+        });
+        return added[0];
+    }
+
+    /**
+     * Finds the social security numbers of the contacts having the
+     * given value of a detail.
+     *
+     * @param field The detail, one of {@link #INDEXED_FIELDS}.
+     * @param value The value, in any of its forms.
+     * @return The social security numbers.
+     */
+    public List<String> find(final ContactField field,
+            final String value) {
+        if (!built) {
+            build();
+        }
+        final String key = keyOf(field, value);
+        return key == null ? Collections.emptyList()
+            : new ArrayList<>(ssnsOf(values.get(field).get(key)));
+    }
+
+    /**
+     * Finds the values of a detail that more than one contact has.
+     *
+     * @param field The detail, one of {@link #INDEXED_FIELDS}.
+     * @return The social security numbers of the contacts keyed by the
+     *         indexed form of each shared value.
+     */
+    public Map<String, List<String>> duplicates(
+            final ContactField field) {
+        if (!built) {
+            build();
+        }
+        final Map<String, List<String>> shared = new HashMap<>();
+        for (Map.Entry<String, Object> value
+                : values.get(field).entrySet()) {
+            if (!(value.getValue() instanceof String)) {
+                shared.put(value.getKey(),
+                    new ArrayList<>(ssnsOf(value.getValue())));
+            }
+        }
+        return shared;
+    }
+
+    /**
+     * Indexes every contact of the store, unless another thread already
+     * did. Changes made meanwhile wait for the build and are indexed
+     * after it.
+     */
+    private void build() {
+        buildLock.writeLock().lock();
+        try {
+            if (!built) {
+                for (Person person : store) {
+                    add(person);
+                }
+                built = true;
+            }
+        } finally {
+            buildLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Checks whether the index is built, so changes have to be indexed,
+     * first waiting for a build in progress to end.
+     *
+     * @return {@code true} if the index is built.
+     */
+    private boolean isBuilt() {
+        if (!built) {
+            buildLock.readLock().lock();
+            buildLock.readLock().unlock();
+        }
+        return built;
+    }
+
+    /**
+     * Empties the index so that it is built again when next used.
+     * No contact may change meanwhile.
+     */
+    public void reset() {
+        buildLock.writeLock().lock();
+        try {
+            built = false;
+            clear();
+        } finally {
+            buildLock.writeLock().unlock();
+        }
+    }
+
+    /** Removes every value. */
+    private void clear() {
+        for (ConcurrentHashMap<String, Object> fieldValues
+                : values.values()) {
+            fieldValues.clear();
+        }
+    }
+
+    @Override
+    public void contactCreated(final Person person) {
+        if (isBuilt()) {
+            add(person);
+        }
+    }
+
+    @Override
+    public void contactUpdated(final Person person,
+            final ContactField field, final String oldValue) {
+        if (!values.containsKey(field) || !isBuilt()) {
+            return;
+        }
+        final String key = keyOf(field, person.getDetail(field));
+        final String oldKey = keyOf(field, oldValue);
+        if (oldKey != null && !oldKey.equals(key)) {
+            remove(field, oldKey, person.getSsn());
+        }
+        add(field, key, person.getSsn());
+    }
+
+    @Override
+    public void contactDeleted(final Person person) {
+        if (!isBuilt()) {
+            return;
+        }
+        for (ContactField field : INDEXED_FIELDS) {
+            remove(field, keyOf(field, person.getDetail(field)),
+                person.getSsn());
+        }
+    }
+
+    @Override
+    public void contactsCleared() {
+        buildLock.writeLock().lock();
+        try {
+            clear();
+        } finally {
+            buildLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Indexes the details of a contact.
+     *
+     * @param person The contact.
+     */
+    private void add(final Person person) {
+        for (ContactField field : INDEXED_FIELDS) {
+            add(field, keyOf(field, person.getDetail(field)),
+                person.getSsn());
+        }
+    }
+
+    /**
+     * Indexes a value of a detail for a contact, unless it already is.
+     *
+     * @param field The detail.
+     * @param key The indexed form of the value, or null if missing.
+     * @param ssn The social security number of the contact.
+     */
+    private void add(final ContactField field, final String key,
+            final String ssn) {
+        if (key == null) {
+            return;
+        }
+        values.get(field).merge(key, ssn, (ssns, added) -> {
+            if (ssns instanceof String) {
+                if (ssns.equals(ssn)) {
+                    return ssns;
+                }
+                final Set<String> set = ConcurrentHashMap.newKeySet();
+                set.add((String) ssns);
+                set.add(ssn);
+                return set;
+            }
+            setOf(ssns).add(ssn);
+            return ssns;
+        });
+    }
+
+    /**
+     * Removes a value of a detail of a contact from the index.
+     *
+     * @param field The detail.
+     * @param key The indexed form of the value, or null if missing.
+     * @param ssn The social security number of the contact.
+     */
+    private void remove(final ContactField field, final String key,
+            final String ssn) {
+        if (key == null) {
+            return;
+        }
+        values.get(field).computeIfPresent(key, (value, ssns) -> {
+            if (ssns instanceof String) {
+                return ssns.equals(ssn) ? null : ssns;
+            }
+            final Set<String> set = setOf(ssns);
+            set.remove(ssn);
+            return set.size() == 1 ? set.iterator().next() : set;
+        });
+    }
+
+    /**
+     * Gets the social security numbers stored for a value.
+     *
+     * @param ssns A single SSN, a Set of them, or null for none.
+     * @return The social security numbers.
+     */
+    private static Set<String> ssnsOf(final Object ssns) {
+        if (ssns == null) {
+            return Collections.emptySet();
+        }
+        return ssns instanceof String
+            ? Collections.singleton((String) ssns) : setOf(ssns);
+    }
+
+    /**
+     * Casts the SSNs stored for a value of many contacts.
+     *
+     * @param ssns The Set of the social security numbers.
+     * @return The Set.
+     */
+    @SuppressWarnings("unchecked")
+    private static Set<String> setOf(final Object ssns) {
+        return (Set<String>) ssns;
+    }
+}
@@ -0,0 +1,462 @@
+package contacts;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.Locale;
+import java.util.function.Predicate;
+
+/**
+ * A utility class for exporting contacts to other systems as CSV,
+ * JSON lines or vCards.
+ *
+ * The contacts are encoded straight into one reusable byte buffer that
+ * is written to the channel whenever it fills up, so exporting builds
+ * no strings and the memory used does not depend on the number of
+ * contacts. The CSV and vCard files can be imported back with
+ * {@link ContactsImporter}.
+ */
+public final class ContactsExporter {
+    /** The size of the buffer the contacts are encoded into. */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /** The longest a character can get once encoded and escaped. */
+    private static final int MAX_CHAR_SIZE = 8;
+
+    /** The length in bytes after which vCard lines are folded. */
+    private static final int VCARD_LINE_LENGTH = 75;
+
+    /** The hexadecimal digits. */
+    private static final byte[] HEX = {
+        '0', '1', '2', '3', '4', '5', '6', '7',
+        '8', '9', 'a', 'b', 'c', 'd', 'e', 'f'
+    };
+
+    /** The formats contacts can be exported in. */
+    public enum Format {
+        /** Comma-separated values with a header row, as in RFC 4180. */
+        CSV,
+        /** One JSON object per line. */
+        JSON_LINES,
+        /** vCard 3.0 with the SSN in an {@code X-SSN} property. */
+        VCARD;
+
+        /**
+         * Chooses the format from the extension of a file name:
+         * {@code .jsonl} or {@code .ndjson} for JSON lines,
+         * {@code .vcf} or {@code .vcard} for vCards and CSV otherwise.
+         *
+         * @param fileName The name of the file.
+         * @return The format.
+         */
+        public static Format of(final String fileName) {
+            final String name = fileName.toLowerCase(Locale.ROOT);
+            if (name.endsWith(".jsonl") || name.endsWith(".ndjson")) {
+                return JSON_LINES;
+            }
+            if (name.endsWith(".vcf") || name.endsWith(".vcard")) {
+                return VCARD;
+            }
+            return CSV;
+        }
+    }
+
+    /** Prevents instantiation of this utility class. */
+    private ContactsExporter() {
+    }
+
+    /**
+     * Exports a consistent snapshot of the contacts to a file. The
+     * contacts can keep changing while the file is written.
+     *
+     * @param file The file to write.
+     * @param format The format to write.
+     * @param filter The contacts to export.
+     * @return The number of exported contacts.
+     * @throws IOException If writing fails.
+     */
+    public static int exportSnapshot(final Path file, final Format format,
+            final Predicate<Person> filter) throws IOException {
+        final Collection<Person> snapshot = ContactsManager.snapshot();
+        try (FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            return export(snapshot, format, filter, channel);
+        }
+    }
+
+    /**
+     * Exports contacts to an output stream. The stream is not closed.
+     *
+     * @param contacts The contacts to export.
+     * @param format The format to write.
+     * @param filter The contacts to export.
+     * @param out The stream to write to.
+     * @return The number of exported contacts.
+     * @throws IOException If writing fails.
+     */
+    public static int export(final Iterable<Person> contacts,
+            final Format format, final Predicate<Person> filter,
+            final OutputStream out) throws IOException {
+        final int exported =
+            export(contacts, format, filter, Channels.newChannel(out));
+        out.flush();
+        return exported;
+    }
+
+    /**
+     * Exports contacts to a channel. The channel is not closed.
+     *
+     * @param contacts The contacts to export.
+     * @param format The format to write.
+     * @param filter The contacts to export.
+     * @param channel The channel to write to.
+     * @return The number of exported contacts.
+     * @throws IOException If writing fails.
+     */
+    public static int export(final Iterable<Person> contacts,
+            final Format format, final Predicate<Person> filter,
+            final WritableByteChannel channel) throws IOException {
+        final Output out = new Output(channel);
+        if (format == Format.CSV) {
+            out.ascii("ssn,first_name,last_name,phone_number,address,"
+                + "email_address\r\n");
+        }
+        int exported = 0;
+        for (Person person : contacts) {
+            if (!filter.test(person)) {
+                continue;
+            }
+            switch (format) {
+                case CSV:
+                    writeCsv(out, person);
+                    break;
+                case JSON_LINES:
+                    writeJson(out, person);
+                    break;
+                default:
+                    writeVCard(out, person);
+            }
+            exported++;
+        }
+        out.flush();
+        return exported;
+    }
+
+    /**
+     * Writes a contact as a CSV row.
+     *
+     * @param out The output to write to.
+     * @param person The contact.
+     * @throws IOException If writing fails.
+     */
+    private static void writeCsv(final Output out, final Person person)
+            throws IOException {
+        for (ContactField field : ContactField.values()) {
+            if (field != ContactField.SSN) {
+                out.ascii(',');
+            }
+            final String value = person.getDetail(field);
+            if (value == null) {
+                continue;
+            }
+            if (!needsQuotes(value)) {
+                out.text(value);
+                continue;
+            }
+            out.ascii('"');
+            for (int i = 0; i < value.length(); i++) {
+                final char ch = value.charAt(i);
+                if (ch == '"') {
+                    out.ascii('"');
+                }
+                out.put(ch);
+            }
+            out.ascii('"');
+        }
+        out.ascii("\r\n");
+    }
+
+    /**
+     * Checks whether a CSV field has to be quoted.
+     *
+     * @param value The value of the field.
+     * @return {@code true} if the value holds a comma, quote or line break.
+     */
+    private static boolean needsQuotes(final String value) {
+        for (int i = 0; i < value.length(); i++) {
+            final char ch = value.charAt(i);
+            if (ch == ',' || ch == '"' || ch == '\n' || ch == '\r') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Writes a contact as one line of JSON.
+     *
+     * @param out The output to write to.
+     * @param person The contact.
+     * @throws IOException If writing fails.
+     */
+    static void writeJson(final Output out, final Person person)
+            throws IOException {
+        out.ascii("{\"ssn\":");
+        writeJsonString(out, person.getSsn());
+        out.ascii(",\"firstName\":");
+        writeJsonString(out, person.getFirstName());
+        out.ascii(",\"lastName\":");
+        writeJsonString(out, person.getLastName());
+        out.ascii(",\"phoneNumber\":");
+        writeJsonString(out, person.getPhoneNumber());
+        out.ascii(",\"address\":");
+        writeJsonString(out, person.getAddress());
+        out.ascii(",\"emailAddress\":");
+        writeJsonString(out, person.getEmailAddress());
+        out.ascii("}\n");
+    }
+
+    /**
+     * Writes a JSON string, or null.
+     *
+     * @param out The output to write to.
+     * @param value The value of the string.
+     * @throws IOException If writing fails.
+     */
+    static void writeJsonString(final Output out, final String value)
+            throws IOException {
+        if (value == null) {
+            out.ascii("null");
+            return;
+        }
+        out.ascii('"');
+        for (int i = 0; i < value.length(); i++) {
+            final char ch = value.charAt(i);
+            if (ch == '"' || ch == '\\') {
+                out.ascii('\\');
+                out.ascii(ch);
+            } else if (ch == '\n') {
+                out.ascii("\\n");
+            } else if (ch < ' ') {
+                out.ascii("\\u00");
+                out.ascii((char) HEX[ch >> 4]);
+                out.ascii((char) HEX[ch & 0xF]);
+            } else {
+                out.put(ch);
+            }
+        }
+        out.ascii('"');
+    }
+
+    /**
+     * Writes a contact as a vCard.
+     *
+     * @param out The output to write to.
+     * @param person The contact.
+     * @throws IOException If writing fails.
+     */
+    private static void writeVCard(final Output out, final Person person)
+            throws IOException {
+        out.ascii("BEGIN:VCARD\r\nVERSION:3.0\r\nN:");
+        writeVCardValue(out, person.getLastName());
+        out.ascii(';');
+        writeVCardValue(out, person.getFirstName());
+        out.ascii(";;;\r\nFN:");
+        writeVCardValue(out, person.getFirstName());
+        out.ascii(' ');
+        writeVCardValue(out, person.getLastName());
+        out.ascii("\r\nTEL:");
+        writeVCardValue(out, person.getPhoneNumber());
+        if (!isEmpty(person.getAddress())) {
+            out.ascii("\r\nADR:;;");
+            writeVCardValue(out, person.getAddress());
+            out.ascii(";;;;");
+        }
+        if (!isEmpty(person.getEmailAddress())) {
+            out.ascii("\r\nEMAIL:");
+            writeVCardValue(out, person.getEmailAddress());
+        }
+        out.ascii("\r\nX-SSN:");
+        writeVCardValue(out, person.getSsn());
+        out.ascii("\r\nEND:VCARD\r\n");
+    }
+
+    /**
+     * Writes a vCard property value, escaping the characters that have
+     * a meaning in vCards and folding lines longer than 75 bytes.
+     *
+     * @param out The output to write to.
+     * @param value The value, or null for none.
+     * @throws IOException If writing fails.
+     */
+    private static void writeVCardValue(final Output out, final String value)
+            throws IOException {
+        if (value == null) {
+            return;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            final char ch = value.charAt(i);
+            if (out.lineLength >= VCARD_LINE_LENGTH
+                    && !Character.isLowSurrogate(ch)) {
+                out.ascii("\r\n ");
+            }
+            if (ch == '\\' || ch == ',' || ch == ';') {
+                out.ascii('\\');
+                out.ascii(ch);
+            } else if (ch == '\n') {
+                out.ascii("\\n");
+            } else {
+                out.put(ch);
+            }
+        }
+    }
+
+    /**
+     * Checks whether a detail is missing or empty.
+     *
+     * @param value The detail.
+     * @return {@code true} if there is nothing to write.
+     */
+    private static boolean isEmpty(final String value) {
+        return value == null || value.isEmpty();
+    }
+
+    /**
+     * A reusable buffer that encodes characters as UTF-8 and writes
+     * them to a channel whenever it fills up.
+     */
+    static final class Output {
+        /** The channel to write to. */
+        private final WritableByteChannel channel;
+
+        /** The buffer the characters are encoded into. */
+        private final ByteBuffer buffer;
+
+        /** The number of bytes written since the last line break. */
+        private int lineLength;
+
+        /** The high surrogate waiting for its low surrogate, if any. */
+        private char highSurrogate;
+
+        /**
+         * Creates an output writing to the given channel.
+         *
+         * @param channel The channel to write to.
+         */
+        Output(final WritableByteChannel channel) {
+            this(channel, BUFFER_SIZE);
+        }
+
+        /**
+         * Creates an output writing to the given channel through
+         * a buffer of the given size.
+         *
+         * @param channel The channel to write to.
+         * @param bufferSize The size of the buffer in bytes.
+         */
+        Output(final WritableByteChannel channel, final int bufferSize) {
+            this.channel = channel;
+            this.buffer = ByteBuffer.allocate(bufferSize);
+        }
+
+        /**
+         * Writes an ASCII character.
+         *
+         * @param ch The character.
+         * @throws IOException If writing fails.
+         */
+        void ascii(final char ch) throws IOException {
+            ensure();
+            buffer.put((byte) ch);
+            lineLength = ch == '\n' ? 0 : lineLength + 1;
+        }
+
+        /**
+         * Writes ASCII text.
+         *
+         * @param text The text.
+         * @throws IOException If writing fails.
+         */
+        void ascii(final String text) throws IOException {
+            for (int i = 0; i < text.length(); i++) {
+                ascii(text.charAt(i));
+            }
+        }
+
+        /**
+         * Writes text as it is.
+         *
+         * @param text The text.
+         * @throws IOException If writing fails.
+         */
+        void text(final String text) throws IOException {
+            for (int i = 0; i < text.length(); i++) {
+                put(text.charAt(i));
+            }
+        }
+
+        /**
+         * Writes a character encoded as UTF-8.
+         *
+         * @param ch The character.
+         * @throws IOException If writing fails.
+         */
+        void put(final char ch) throws IOException {
+            ensure();
+            if (ch < 0x80) {
+                buffer.put((byte) ch);
+                lineLength = ch == '\n' ? 0 : lineLength + 1;
+            } else if (ch < 0x800) {
+                buffer.put((byte) (0xC0 | ch >> 6));
+                buffer.put((byte) (0x80 | ch & 0x3F));
+                lineLength += 2;
+            } else if (Character.isHighSurrogate(ch)) {
+                highSurrogate = ch;
+            } else if (Character.isLowSurrogate(ch)) {
+                final int codePoint = Character.toCodePoint(highSurrogate, ch);
+                buffer.put((byte) (0xF0 | codePoint >> 18));
+                buffer.put((byte) (0x80 | codePoint >> 12 & 0x3F));
+                buffer.put((byte) (0x80 | codePoint >> 6 & 0x3F));
+                buffer.put((byte) (0x80 | codePoint & 0x3F));
+                lineLength += 4;
+            } else {
+                buffer.put((byte) (0xE0 | ch >> 12));
+                buffer.put((byte) (0x80 | ch >> 6 & 0x3F));
+                buffer.put((byte) (0x80 | ch & 0x3F));
+                lineLength += 3;
+            }
+        }
+
+        /**
+         * Makes room for one more character, writing out the buffer
+         * if it is nearly full.
+         *
+         * @throws IOException If writing fails.
+         */
+        private void ensure() throws IOException {
+            if (buffer.remaining() < MAX_CHAR_SIZE) {
+                flush();
+            }
+        }
+
+        /**
+         * Writes everything in the buffer to the channel.
+         *
+         * @throws IOException If writing fails.
+         */
+        void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+    }
+}
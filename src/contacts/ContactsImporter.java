@@ -0,0 +1,822 @@
+package contacts;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A utility class for importing contacts in bulk from CSV and vCard files
+ * without the console.
+ *
+ * The file is read as a stream and cut into chunks of records. The
+ * chunks are validated in parallel on one thread per core with the same
+ * rules as the console, and then added in file order, each chunk as one
+ * batch, so the stripes are locked once per chunk and the journal
+ * records every chunk as a single entry. Only a few chunks are held at once,
+ * so the memory used does not depend on the size of the file.
+ *
+ * Records that can't be imported are written to a reject report in CSV
+ * with the line they started on and the reason.
+ */
+public final class ContactsImporter {
+    /** The number of records validated as one unit of work. */
+    private static final int CHUNK_SIZE = 4096;
+
+    /** The number of threads validating records. */
+    private static final int THREADS =
+        Runtime.getRuntime().availableProcessors();
+
+    /** The number of chunks read ahead of the chunk being added. */
+    private static final int MAX_PENDING_CHUNKS = THREADS * 2;
+
+    /** The number of details of a contact. */
+    private static final int FIELDS = ContactField.values().length;
+
+    /** The number given to the next validating thread. */
+    private static AtomicInteger nextThread = new AtomicInteger();
+
+    /** The threads validating records. */
+    private static ExecutorService validators =
+        Executors.newFixedThreadPool(THREADS, runnable -> {
+            final Thread thread = new Thread(
+                runnable, "contacts-import-" + nextThread.getAndIncrement()
+            );
+            thread.setDaemon(true);
+            return thread;
+        });
+
+    /** Prevents instantiation of this utility class. */
+    private ContactsImporter() {
+    }
+
+    /** A source of records, each holding the details of one contact. */
+    private interface RecordReader extends Closeable {
+        /**
+         * Reads the next record.
+         *
+         * @return The details indexed by {@link ContactField#getCode()},
+         *         missing details being null, or null at the end.
+         * @throws IOException If reading fails.
+         */
+        String[] next() throws IOException;
+
+        /**
+         * Gets the line the last record started on.
+         *
+         * @return The line number, starting from 1.
+         */
+        int line();
+    }
+
+    /** A chunk of records and the result of validating them. */
+    private static final class Chunk {
+        /** The records. */
+        private final String[][] records = new String[CHUNK_SIZE][];
+
+        /** The line each record started on. */
+        private final int[] lines = new int[CHUNK_SIZE];
+
+        /** The valid contacts, null for rejected records. */
+        private final Person[] people = new Person[CHUNK_SIZE];
+
+        /** The reason each rejected record was rejected. */
+        private final String[] reasons = new String[CHUNK_SIZE];
+
+        /** The number of records. */
+        private int size;
+    }
+
+    /**
+     * Imports the contacts in a CSV or vCard file. Files ending with
+     * {@code .vcf} or {@code .vcard} are read as vCards, other files as
+     * CSV. A CSV file may start with a header naming its columns, such as
+     * {@code ssn,first_name,last_name,phone_number,address,email_address};
+     * without one the columns are expected in that order. In a vCard the
+     * social security number is read from the {@code X-SSN} property.
+     *
+     * @param input The file to import.
+     * @param report The file to write the rejected records to.
+     *        It is only created if a record is rejected.
+     * @return The number of imported contacts.
+     * @throws IOException If reading the file or writing the report fails.
+     */
+    public static int importContacts(final Path input, final Path report)
+            throws IOException {
+        final String name = input.getFileName().toString()
+            .toLowerCase(Locale.ROOT);
+        int imported = 0;
+        int rejected = 0;
+        BufferedWriter rejects = null;
+        try (RecordReader reader = name.endsWith(".vcf")
+                || name.endsWith(".vcard")
+                ? new VCardReader(Files.newBufferedReader(input))
+                : new CsvReader(Files.newBufferedReader(input))) {
+            final ArrayDeque<Future<Chunk>> pending = new ArrayDeque<>();
+            boolean more = true;
+            while (more || !pending.isEmpty()) {
+                if (more) {
+                    final Chunk chunk = readChunk(reader);
+                    more = chunk.size == CHUNK_SIZE;
+                    if (chunk.size > 0) {
+                        pending.add(validators.submit(() -> validate(chunk)));
+                    }
+                }
+                // Add finished chunks in order, waiting once enough are read.
+                while (!pending.isEmpty() && (!more
+                        || pending.size() >= MAX_PENDING_CHUNKS
+                        || pending.peek().isDone())) {
+                    final Chunk chunk = await(pending.poll());
+                    imported += add(chunk);
+                    for (int i = 0; i < chunk.size; i++) {
+                        if (chunk.reasons[i] == null) {
+                            continue;
+                        }
+                        if (rejects == null) {
+                            rejects = openReport(report);
+                        }
+                        writeReject(rejects, chunk.lines[i],
+                            chunk.reasons[i], chunk.records[i]);
+                        rejected++;
+                    }
+                    ContactsSerializer.checkpointIfNeeded();
+                }
+            }
+        } finally {
+            if (rejects != null) {
+                rejects.close();
+            }
+        }
+        ContactsLog.log(
+            "Imported " + imported + " contact/contacts from: "
+            + input.getFileName()
+        );
+        if (rejected > 0) {
+            ContactsLog.log(
+                "Rejected " + rejected + " record/records, see: "
+                + report.getFileName()
+            );
+        }
+        return imported;
+    }
+
+    /**
+     * Adds the valid contacts of a chunk as one batch, and records why
+     * the contacts that could not be added were rejected.
+     *
+     * @param chunk The validated chunk.
+     * @return The number of contacts added.
+     * @throws IOException If the contacts added could not be saved to
+     *         the journal.
+     */
+    private static int add(final Chunk chunk) throws IOException {
+        final List<Person> people = new ArrayList<>(chunk.size);
+        final int[] records = new int[chunk.size];
+        for (int i = 0; i < chunk.size; i++) {
+            if (chunk.people[i] != null) {
+                records[people.size()] = i;
+                people.add(chunk.people[i]);
+            }
+        }
+        if (people.isEmpty()) {
+            return 0;
+        }
+        final ContactsBatchResult result;
+        try {
+            result = ContactsManager.createValidated(people);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        for (Map.Entry<Integer, String> failure
+                : result.getFailures().entrySet()) {
+            chunk.reasons[records[failure.getKey()]] = failure.getValue();
+        }
+        return result.getApplied();
+    }
+
+    /**
+     * Reads up to a chunk of records.
+     *
+     * @param reader The reader to read from.
+     * @return The chunk, which is only partly filled at the end.
+     * @throws IOException If reading fails.
+     */
+    private static Chunk readChunk(final RecordReader reader)
+            throws IOException {
+        final Chunk chunk = new Chunk();
+        String[] record;
+        while (chunk.size < CHUNK_SIZE && (record = reader.next()) != null) {
+            chunk.records[chunk.size] = record;
+            chunk.lines[chunk.size] = reader.line();
+            chunk.size++;
+        }
+        return chunk;
+    }
+
+    /**
+     * Waits for a chunk to be validated.
+     *
+     * @param future The chunk being validated.
+     * @return The validated chunk.
+     * @throws IOException If interrupted while waiting.
+     */
+    private static Chunk await(final Future<Chunk> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Import was interrupted");
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(
+                "Failed to validate records", e.getCause()
+            );
+        }
+    }
+
+    /**
+     * Validates the records of a chunk and creates the contacts
+     * of the valid ones. Records whose social security number is
+     * already in use are rejected early; the final check is made
+     * when the contact is added.
+     *
+     * @param chunk The chunk to validate.
+     * @return The chunk.
+     */
+    private static Chunk validate(final Chunk chunk) {
+        for (int i = 0; i < chunk.size; i++) {
+            final String[] record = chunk.records[i];
+            for (int field = 0; field < FIELDS; field++) {
+                record[field] = record[field] == null ? "" : record[field];
+            }
+            record[ContactField.PHONE_NUMBER.getCode()] = normalizePhoneNumber(
+                record[ContactField.PHONE_NUMBER.getCode()]
+            );
+            final String ssn = record[ContactField.SSN.getCode()];
+            String reason = check(record);
+            if (reason == null && ContactsManager.getStore().contains(ssn)) {
+                reason = "Duplicate social security number";
+            }
+            if (reason == null) {
+                chunk.people[i] = new Person(ssn,
+                    record[ContactField.FIRST_NAME.getCode()],
+                    record[ContactField.LAST_NAME.getCode()],
+                    record[ContactField.PHONE_NUMBER.getCode()],
+                    record[ContactField.ADDRESS.getCode()],
+                    record[ContactField.EMAIL_ADDRESS.getCode()]);
+            } else {
+                chunk.reasons[i] = reason;
+            }
+        }
+        return chunk;
+    }
+
+    /**
+     * Checks the details of a record with the rules of the console.
+     *
+     * @param record The details of the record.
+     * @return The reason the record is invalid, or null if it is valid.
+     */
+    private static String check(final String[] record) {
+        final String ssn = record[ContactField.SSN.getCode()];
+        if (ssn.isEmpty()) {
+            return "Missing social security number";
+        }
+        if (!ContactsValidation.isValidFinnishSsnFormat(ssn)
+                || !ContactsValidation.isValidControlCharacter(ssn)) {
+            return "Invalid social security number";
+        }
+        if (!ContactsValidation.isValidName(
+                record[ContactField.FIRST_NAME.getCode()])) {
+            return "Invalid first name";
+        }
+        if (!ContactsValidation.isValidName(
+                record[ContactField.LAST_NAME.getCode()])) {
+            return "Invalid last name";
+        }
+        if (!ContactsValidation.isValidPhoneNumber(
+                record[ContactField.PHONE_NUMBER.getCode()])) {
+            return "Invalid phone number";
+        }
+        if (!ContactsValidation.isValidAddress(
+                record[ContactField.ADDRESS.getCode()])) {
+            return "Invalid address";
+        }
+        if (!ContactsValidation.isValidEmailAddress(
+                record[ContactField.EMAIL_ADDRESS.getCode()])) {
+            return "Invalid email address";
+        }
+        return null;
+    }
+
+    /**
+     * Removes the spaces, hyphens and parentheses that exported phone
+     * numbers are often formatted with, such as {@code +358 (40) 123-4567}.
+     *
+     * @param phoneNumber The phone number.
+     * @return The phone number without formatting.
+     */
+    private static String normalizePhoneNumber(final String phoneNumber) {
+        final StringBuilder normalized =
+            new StringBuilder(phoneNumber.length());
+        for (int i = 0; i < phoneNumber.length(); i++) {
+            final char ch = phoneNumber.charAt(i);
+            if (ch != ' ' && ch != '-' && ch != '(' && ch != ')') {
+                normalized.append(ch);
+            }
+        }
+        return normalized.length() == phoneNumber.length()
+            ? phoneNumber : normalized.toString();
+    }
+
+    /**
+     * Creates the reject report and writes its header.
+     *
+     * @param report The file of the report.
+     * @return The writer of the report.
+     * @throws IOException If the report can't be created.
+     */
+    private static BufferedWriter openReport(final Path report)
+            throws IOException {
+        final BufferedWriter writer = Files.newBufferedWriter(report);
+        writer.write("line,reason,ssn,first_name,last_name,"
+            + "phone_number,address,email_address\n");
+        return writer;
+    }
+
+    /**
+     * Writes a rejected record to the reject report.
+     *
+     * @param writer The writer of the report.
+     * @param line The line the record started on.
+     * @param reason The reason the record was rejected.
+     * @param record The details of the record.
+     * @throws IOException If writing fails.
+     */
+    private static void writeReject(final BufferedWriter writer,
+            final int line, final String reason, final String[] record)
+            throws IOException {
+        writer.write(Integer.toString(line));
+        writer.write(',');
+        writer.write(reason);
+        for (String value : record) {
+            writer.write(',');
+            writeCsvField(writer, value == null ? "" : value);
+        }
+        writer.write('\n');
+    }
+
+    /**
+     * Writes a CSV field, quoting it if needed.
+     *
+     * @param writer The writer to write to.
+     * @param value The value of the field.
+     * @throws IOException If writing fails.
+     */
+    private static void writeCsvField(final BufferedWriter writer,
+            final String value) throws IOException {
+        boolean quote = false;
+        for (int i = 0; i < value.length() && !quote; i++) {
+            final char ch = value.charAt(i);
+            quote = ch == ',' || ch == '"' || ch == '\n' || ch == '\r';
+        }
+        if (!quote) {
+            writer.write(value);
+            return;
+        }
+        writer.write('"');
+        writer.write(value.replace("\"", "\"\""));
+        writer.write('"');
+    }
+
+    /**
+     * Finds the detail a CSV column or vCard property name stands for.
+     * Case, spaces, hyphens and underscores are ignored, so
+     * {@code first_name}, {@code First Name} and {@code firstName}
+     * are all the first name.
+     *
+     * @param name The name of the column.
+     * @return The detail, or null if the name is not known.
+     */
+    private static ContactField fieldOf(final String name) {
+        final String key = name.trim().toLowerCase(Locale.ROOT)
+            .replace("_", "").replace("-", "").replace(" ", "");
+        switch (key) {
+            case "ssn":
+            case "socialsecuritynumber":
+            case "xssn":
+                return ContactField.SSN;
+            case "firstname":
+            case "givenname":
+                return ContactField.FIRST_NAME;
+            case "lastname":
+            case "familyname":
+            case "surname":
+                return ContactField.LAST_NAME;
+            case "phonenumber":
+            case "phone":
+            case "tel":
+                return ContactField.PHONE_NUMBER;
+            case "address":
+            case "homeaddress":
+            case "adr":
+                return ContactField.ADDRESS;
+            case "emailaddress":
+            case "email":
+                return ContactField.EMAIL_ADDRESS;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Reads records from a CSV file as described in RFC 4180: fields are
+     * separated by commas and may be quoted, and quoted fields may hold
+     * commas, doubled quotes and line breaks. Blank lines are skipped.
+     */
+    private static final class CsvReader implements RecordReader {
+        /** The reader of the file. */
+        private final Reader in;
+
+        /** The characters read ahead from the file. */
+        private final char[] buffer = new char[1 << 13];
+
+        /** The position of the next character in the buffer. */
+        private int position;
+
+        /** The number of characters in the buffer. */
+        private int limit;
+
+        /** The current line. */
+        private int lineNumber = 1;
+
+        /** The line the last record started on. */
+        private int recordLine;
+
+        /** The detail of each column, null for unknown columns. */
+        private ContactField[] columns;
+
+        /** The field being read. */
+        private final StringBuilder field = new StringBuilder();
+
+        /**
+         * Creates a reader of CSV records.
+         *
+         * @param in The reader of the file.
+         */
+        CsvReader(final BufferedReader in) {
+            this.in = in;
+        }
+
+        @Override
+        public String[] next() throws IOException {
+            List<String> row = readRow();
+            if (row == null) {
+                return null;
+            }
+            if (columns == null) {
+                columns = header(row);
+                if (columns == null) {
+                    columns = ContactField.values();
+                } else if ((row = readRow()) == null) {
+                    return null;
+                }
+            }
+            final String[] record = new String[FIELDS];
+            for (int i = 0; i < row.size() && i < columns.length; i++) {
+                if (columns[i] != null) {
+                    record[columns[i].getCode()] = row.get(i).trim();
+                }
+            }
+            return record;
+        }
+
+        @Override
+        public int line() {
+            return recordLine;
+        }
+
+        /**
+         * Reads the columns of a header row.
+         *
+         * @param row The first row of the file.
+         * @return The detail of each column, or null if the row is not
+         *         a header.
+         */
+        private ContactField[] header(final List<String> row) {
+            final ContactField[] fields = new ContactField[row.size()];
+            boolean known = false;
+            for (int i = 0; i < fields.length; i++) {
+                fields[i] = fieldOf(row.get(i));
+                known |= fields[i] != null;
+            }
+            return known ? fields : null;
+        }
+
+        /**
+         * Reads the next non-blank row.
+         *
+         * @return The fields of the row, or null at the end of the file.
+         * @throws IOException If reading fails.
+         */
+        private List<String> readRow() throws IOException {
+            while (true) {
+                int ch = read();
+                if (ch < 0) {
+                    return null;
+                }
+                recordLine = lineNumber;
+                final List<String> row = new ArrayList<>(FIELDS);
+                boolean quoted = false;
+                boolean blank = true;
+                field.setLength(0);
+                while (true) {
+                    if (ch < 0) {
+                        break;
+                    } else if (quoted) {
+                        if (ch == '"') {
+                            final int following = read();
+                            if (following == '"') {
+                                field.append('"');
+                            } else {
+                                quoted = false;
+                                ch = following;
+                                continue;
+                            }
+                        } else {
+                            if (ch == '\n') {
+                                lineNumber++;
+                            }
+                            field.append((char) ch);
+                        }
+                    } else if (ch == ',') {
+                        row.add(field.toString());
+                        field.setLength(0);
+                        blank = false;
+                    } else if (ch == '\n') {
+                        lineNumber++;
+                        break;
+                    } else if (ch == '"' && field.length() == 0) {
+                        quoted = true;
+                        blank = false;
+                    } else if (ch != '\r') {
+                        field.append((char) ch);
+                        blank = false;
+                    }
+                    ch = read();
+                }
+                if (!blank) {
+                    row.add(field.toString());
+                    return row;
+                }
+            }
+        }
+
+        /**
+         * Reads the next character.
+         *
+         * @return The character, or -1 at the end of the file.
+         * @throws IOException If reading fails.
+         */
+        private int read() throws IOException {
+            if (position == limit) {
+                limit = in.read(buffer, 0, buffer.length);
+                position = 0;
+                if (limit <= 0) {
+                    limit = 0;
+                    return -1;
+                }
+            }
+            return buffer[position++];
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+
+    /**
+     * Reads records from a vCard file, one record per card. The social
+     * security number is read from the {@code X-SSN} property, the names
+     * from {@code N} or else {@code FN}, and the first {@code TEL},
+     * {@code ADR} and {@code EMAIL} of the card are used.
+     */
+    private static final class VCardReader implements RecordReader {
+        /** The reader of the file. */
+        private final BufferedReader in;
+
+        /** The line read ahead to see whether it continues the last one. */
+        private String lookahead;
+
+        /** The number of lines read. */
+        private int lineNumber;
+
+        /** The line the last record started on. */
+        private int recordLine;
+
+        /**
+         * Creates a reader of vCard records.
+         *
+         * @param in The reader of the file.
+         */
+        VCardReader(final BufferedReader in) {
+            this.in = in;
+        }
+
+        @Override
+        public String[] next() throws IOException {
+            String[] record = null;
+            String formattedName = null;
+            String line;
+            while ((line = readLine()) != null) {
+                final int colon = line.indexOf(':');
+                if (colon < 0) {
+                    continue;
+                }
+                String name = line.substring(0, colon);
+                final int parameters = name.indexOf(';');
+                if (parameters >= 0) {
+                    name = name.substring(0, parameters);
+                }
+                name = name.substring(name.lastIndexOf('.') + 1)
+                    .toUpperCase(Locale.ROOT);
+                final String value = line.substring(colon + 1);
+                if (name.equals("BEGIN")) {
+                    record = new String[FIELDS];
+                    formattedName = null;
+                    recordLine = lineNumber;
+                    continue;
+                }
+                if (record == null) {
+                    continue;
+                }
+                switch (name) {
+                    case "END":
+                        if (formattedName != null) {
+                            splitFormattedName(record, formattedName);
+                        }
+                        return record;
+                    case "N":
+                        final List<String> names = split(value);
+                        set(record, ContactField.LAST_NAME, names.get(0));
+                        if (names.size() > 1) {
+                            set(record, ContactField.FIRST_NAME, names.get(1));
+                        }
+                        break;
+                    case "FN":
+                        formattedName = unescape(value);
+                        break;
+                    case "ADR":
+                        final StringBuilder address = new StringBuilder();
+                        for (String part : split(value)) {
+                            if (!part.isEmpty()) {
+                                if (address.length() > 0) {
+                                    address.append(", ");
+                                }
+                                address.append(part);
+                            }
+                        }
+                        set(record, ContactField.ADDRESS, address.toString());
+                        break;
+                    default:
+                        final ContactField field = fieldOf(name);
+                        if (field != null) {
+                            set(record, field, unescape(value));
+                        }
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public int line() {
+            return recordLine;
+        }
+
+        /**
+         * Uses the formatted name for the names the card did not have in
+         * its {@code N} property. The last word is taken as the last name.
+         *
+         * @param record The details of the card.
+         * @param formattedName The formatted name.
+         */
+        private static void splitFormattedName(final String[] record,
+                final String formattedName) {
+            final String name = formattedName.trim();
+            final int space = name.lastIndexOf(' ');
+            set(record, ContactField.FIRST_NAME,
+                space < 0 ? "" : name.substring(0, space).trim());
+            set(record, ContactField.LAST_NAME, name.substring(space + 1));
+        }
+
+        /**
+         * Sets a detail unless the card already gave it.
+         *
+         * @param record The details of the card.
+         * @param field The detail to set.
+         * @param value The value of the detail.
+         */
+        private static void set(final String[] record,
+                final ContactField field, final String value) {
+            final int code = field.getCode();
+            if (record[code] == null || record[code].isEmpty()) {
+                record[code] = value.trim();
+            }
+        }
+
+        /**
+         * Splits a structured value at the semicolons that are not
+         * escaped, and unescapes the parts.
+         *
+         * @param value The structured value.
+         * @return The parts.
+         */
+        private static List<String> split(final String value) {
+            final List<String> parts = new ArrayList<>();
+            int start = 0;
+            for (int i = 0; i < value.length(); i++) {
+                if (value.charAt(i) == '\\') {
+                    i++;
+                } else if (value.charAt(i) == ';') {
+                    parts.add(unescape(value.substring(start, i)));
+                    start = i + 1;
+                }
+            }
+            parts.add(unescape(value.substring(start)));
+            return parts;
+        }
+
+        /**
+         * Removes the backslash escapes of a vCard value.
+         *
+         * @param value The escaped value.
+         * @return The value.
+         */
+        private static String unescape(final String value) {
+            if (value.indexOf('\\') < 0) {
+                return value;
+            }
+            final StringBuilder text = new StringBuilder(value.length());
+            for (int i = 0; i < value.length(); i++) {
+                char ch = value.charAt(i);
+                if (ch == '\\' && i + 1 < value.length()) {
+                    ch = value.charAt(++i);
+                    if (ch == 'n' || ch == 'N') {
+                        ch = '\n';
+                    }
+                }
+                text.append(ch);
+            }
+            return text.toString();
+        }
+
+        /**
+         * Reads the next logical line, joining the folded lines
+         * that start with a space or a tab.
+         *
+         * @return The line, or null at the end of the file.
+         * @throws IOException If reading fails.
+         */
+        private String readLine() throws IOException {
+            String line = lookahead != null ? lookahead : in.readLine();
+            lookahead = null;
+            if (line == null) {
+                return null;
+            }
+            lineNumber++;
+            StringBuilder folded = null;
+            String next;
+            while ((next = in.readLine()) != null
+                    && !next.isEmpty()
+                    && (next.charAt(0) == ' ' || next.charAt(0) == '\t')) {
+                lineNumber++;
+                if (folded == null) {
+                    folded = new StringBuilder(line);
+                }
+                folded.append(next, 1, next.length());
+            }
+            lookahead = next;
+            return folded == null ? line : folded.toString();
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+}
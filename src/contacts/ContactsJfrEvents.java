@@ -0,0 +1,114 @@
+package contacts;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * The JDK Flight Recorder events of the app, recorded with for example
+ * {@code java -XX:StartFlightRecording=filename=contacts.jfr ContactsApp}
+ * and shown under "Contacts" in JDK Mission Control.
+ *
+ * The events are committed by {@link ContactsMetrics} after the fact,
+ * so their latency is a field of its own. Events cost next to nothing
+ * when no recording is running.
+ */
+final class ContactsJfrEvents {
+    /** The category of the events. */
+    private static final String CATEGORY = "Contacts";
+
+    /** Prevents instantiation of this class. */
+    private ContactsJfrEvents() {
+    }
+
+    /**
+     * A create, lookup, update or delete of a contact. Disabled by
+     * default because there can be millions of them a second; enable
+     * {@code contacts.Operation} in the recording settings to see them.
+     */
+    @Name("contacts.Operation")
+    @Label("Contact Operation")
+    @Category(CATEGORY)
+    @Enabled(false)
+    @StackTrace(false)
+    static final class Operation extends Event {
+        /** The operation. */
+        @Label("Operation")
+        String operation;
+
+        /** Whether the operation found the contact or added it. */
+        @Label("Succeeded")
+        boolean succeeded;
+
+        /** The time the operation took. */
+        @Label("Latency")
+        @Timespan(Timespan.NANOSECONDS)
+        long latency;
+    }
+
+    /** A batch of changes applied at once. */
+    @Name("contacts.Batch")
+    @Label("Contacts Batch")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    static final class Batch extends Event {
+        /** The number of changes in the batch. */
+        @Label("Changes")
+        int changes;
+
+        /** The number of changes that failed. */
+        @Label("Failures")
+        int failures;
+
+        /** The time the batch took. */
+        @Label("Latency")
+        @Timespan(Timespan.NANOSECONDS)
+        long latency;
+    }
+
+    /** A detail that failed validation. */
+    @Name("contacts.ValidationFailure")
+    @Label("Contact Validation Failure")
+    @Category(CATEGORY)
+    static final class ValidationFailure extends Event {
+        /** The detail that was invalid. */
+        @Label("Detail")
+        String field;
+    }
+
+    /** The contacts being loaded from or saved to a file. */
+    @Name("contacts.File")
+    @Label("Contacts File")
+    @Category(CATEGORY)
+    @Description("The contacts file loaded or saved, or the journal synced")
+    @StackTrace(false)
+    static final class File extends Event {
+        /** Whether the file was loaded or saved. */
+        @Label("Operation")
+        String operation;
+
+        /** The name of the file. */
+        @Label("File")
+        String file;
+
+        /** The size of the file. */
+        @Label("Size")
+        @DataAmount
+        long bytes;
+
+        /** The number of contacts. */
+        @Label("Contacts")
+        int contacts;
+
+        /** The time loading or saving took. */
+        @Label("Latency")
+        @Timespan(Timespan.NANOSECONDS)
+        long latency;
+    }
+}
@@ -0,0 +1,618 @@
+package contacts;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Objects;
+import java.util.zip.CRC32;
+
+/**
+ * An append-only write-ahead journal of the changes made to the contacts.
+ * Every create, update, delete and delete-all is appended to the journal
+ * as it happens, so a session can be recovered by loading the last
+ * snapshot of the contacts file and replaying the journal on top of it.
+ *
+ * Appending only copies the change into a memory buffer, under the
+ * lock of the change. Once the lock is released, the thread that made
+ * the change calls {@link #sync()}, which returns only when the change
+ * is on disk. The first thread to get there writes and forces every
+ * change buffered so far, and the threads whose changes that covered
+ * return without writing, so changes made at the same time share the
+ * cost of a single fsync.
+ *
+ * Each entry is made of its body length, a CRC32 of the body and the
+ * body itself. An entry that was only partly written when the program
+ * stopped fails its checksum and is cut off during replay. The changes
+ * of a batch are written as the bodies of one entry, so a batch is
+ * either replayed whole or not at all.
+ *
+ * Before a checkpoint the journal is rotated: the changes so far are
+ * moved aside to a second file that is deleted once the checkpoint is
+ * on disk, while new changes go to a fresh file. Every entry sets an
+ * absolute value, so replaying entries that a checkpoint already
+ * contains does not change the result.
+ */
+public class ContactsJournal implements ContactsListener {
+    /** The entry type of a created contact. */
+    private static final byte CREATE = 1;
+
+    /** The entry type of an updated detail. */
+    private static final byte UPDATE = 2;
+
+    /** The entry type of a deleted contact. */
+    private static final byte DELETE = 3;
+
+    /** The entry type of deleting all contacts. */
+    private static final byte CLEAR = 4;
+
+    /** The entry type of a batch of changes. */
+    private static final byte BATCH = 5;
+
+    /** The size of the length and checksum in front of every entry. */
+    private static final int ENTRY_HEADER_SIZE = 8;
+
+    /** The journal file. */
+    private final Path path;
+
+    /** The file holding the changes moved aside by {@link #rotate()}. */
+    private final Path rotatedPath;
+
+    /** The channel the journal is appended to. */
+    private FileChannel channel;
+
+    /** The buffer collecting changes until the next group commit. */
+    private ByteBuffer pending =
+        ByteBuffer.allocate(ContactRecordCodec.BUFFER_SIZE);
+
+    /** The buffer that is written while the other one collects changes. */
+    private ByteBuffer writing =
+        ByteBuffer.allocate(ContactRecordCodec.BUFFER_SIZE);
+
+    /** The size of the journal including the changes not yet written. */
+    private long size;
+
+    /** The number of bytes appended since the journal was opened. */
+    private long appended;
+
+    /** The lock held while a group of changes is written and forced. */
+    private final Object commitLock = new Object();
+
+    /** The number of bytes appended that are known to be on disk. */
+    private long durable;
+
+    /**
+     * The number of bytes appended before the last rotation, which the
+     * checkpoint that follows the rotation holds.
+     */
+    private long rotatedEnd;
+
+    /**
+     * Why writing a group of changes failed, or null. Once set, no
+     * change is reported durable until a checkpoint has replaced the
+     * journal, because the changes of the failed group may be missing
+     * from it.
+     */
+    private IOException failure;
+
+    /** The bodies of the batch being applied, or null outside a batch. */
+    private ByteBuffer batch;
+
+    /**
+     * Creates a journal stored in the given file.
+     *
+     * @param path The journal file.
+     */
+    public ContactsJournal(final Path path) {
+        this.path = path;
+        this.rotatedPath = path.resolveSibling(path.getFileName() + ".1");
+    }
+
+    /**
+     * Replays the changes in the journal files into the given store,
+     * starting with the changes that were moved aside by a rotation.
+     *
+     * @param store The store to apply the changes to.
+     * @param listener The listener told about the replayed changes,
+     *        or null.
+     * @return The number of changes replayed.
+     * @throws IOException If the journal cannot be read.
+     */
+    public int replay(final ContactStore store,
+            final ContactsListener listener) throws IOException {
+        return replay(rotatedPath, store, listener)
+            + replay(path, store, listener);
+    }
+
+    /**
+     * Replays the changes in a journal file into the given store.
+     * A partly written entry at the end of the file is cut off.
+     *
+     * @param file The journal file to replay.
+     * @param store The store to apply the changes to.
+     * @param listener The listener told about the replayed changes,
+     *        or null.
+     * @return The number of changes replayed.
+     * @throws IOException If the journal cannot be read.
+     */
+    static int replay(final Path file, final ContactStore store,
+            final ContactsListener listener) throws IOException {
+        if (!Files.exists(file)) {
+            return 0;
+        }
+        int replayed = 0;
+        long validSize = 0;
+        try (FileChannel in = FileChannel.open(file,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer =
+                ByteBuffer.allocate(ContactRecordCodec.BUFFER_SIZE).flip();
+            final CRC32 crc = new CRC32();
+            while (true) {
+                try {
+                    buffer = ContactRecordCodec.fill(
+                        buffer, in, ENTRY_HEADER_SIZE
+                    );
+                    final int bodySize = buffer.getInt();
+                    final int checksum = buffer.getInt();
+                    if (bodySize <= 0) {
+                        break;
+                    }
+                    buffer = ContactRecordCodec.fill(buffer, in, bodySize);
+                    final ByteBuffer body = buffer.slice();
+                    body.limit(bodySize);
+                    crc.reset();
+                    crc.update(body.duplicate());
+                    if ((int) crc.getValue() != checksum) {
+                        break;
+                    }
+                    apply(body, store, listener);
+                    buffer.position(buffer.position() + bodySize);
+                } catch (EOFException e) {
+                    break;
+                }
+                validSize = in.position() - buffer.remaining();
+                replayed++;
+            }
+            if (validSize < in.size()) {
+                in.truncate(validSize);
+            }
+        }
+        return replayed;
+    }
+
+    /**
+     * Applies a single journal entry to the store. A created contact
+     * with the SSN of an existing one is replayed as updates to the
+     * details that differ, so the contact keeps its place in the
+     * insertion order.
+     *
+     * @param body The body of the entry.
+     * @param store The store to apply the change to.
+     * @param listener The listener told about the change, or null.
+     * @throws IOException If the entry is malformed.
+     */
+    private static void apply(final ByteBuffer body, final ContactStore store,
+            final ContactsListener listener) throws IOException {
+        switch (body.get()) {
+            case CREATE:
+                final Person created = ContactRecordCodec.readRecord(body);
+                final Person existing = store.get(created.getSsn());
+                if (existing == null) {
+                    store.add(created);
+                    if (listener != null) {
+                        listener.contactCreated(created);
+                    }
+                    break;
+                }
+                for (ContactField field : ContactField.values()) {
+                    final String oldValue = existing.getDetail(field);
+                    final String value = created.getDetail(field);
+                    if (!Objects.equals(oldValue, value)) {
+                        existing.restoreDetail(field, value);
+                        store.updated(existing);
+                        if (listener != null) {
+                            listener.contactUpdated(existing, field, oldValue);
+                        }
+                    }
+                }
+                break;
+            case UPDATE:
+                final Person person =
+                    store.get(ContactRecordCodec.readString(body));
+                final ContactField field = ContactField.fromCode(body.get());
+                final String value = ContactRecordCodec.readString(body);
+                if (person != null) {
+                    final String oldValue = person.getDetail(field);
+                    person.restoreDetail(field, value);
+                    store.updated(person);
+                    if (listener != null) {
+                        listener.contactUpdated(person, field, oldValue);
+                    }
+                }
+                break;
+            case DELETE:
+                final Person deleted =
+                    store.remove(ContactRecordCodec.readString(body));
+                if (deleted != null && listener != null) {
+                    listener.contactDeleted(deleted);
+                }
+                break;
+            case CLEAR:
+                store.clear();
+                if (listener != null) {
+                    listener.contactsCleared();
+                }
+                break;
+            case BATCH:
+                while (body.hasRemaining()) {
+                    final int changeSize = body.getInt();
+                    apply(body.slice().limit(changeSize), store, listener);
+                    body.position(body.position() + changeSize);
+                }
+                break;
+            default:
+                throw new IOException("Unknown journal entry");
+        }
+    }
+
+    /**
+     * Opens the journal for appending.
+     *
+     * @throws IOException If the journal file cannot be opened.
+     */
+    public void open() throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.CREATE,
+            StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        size = channel.size();
+    }
+
+    @Override
+    public void contactCreated(final Person person) {
+        append(createEntry(person));
+    }
+
+    @Override
+    public void contactUpdated(final Person person, final ContactField field,
+            final String oldValue) {
+        append(updateEntry(person.getSsn(), field, person.getDetail(field)));
+    }
+
+    @Override
+    public void contactDeleted(final Person person) {
+        append(deleteEntry(person.getSsn()));
+    }
+
+    @Override
+    public void contactsCleared() {
+        append(clearEntry());
+    }
+
+    @Override
+    public void awaitDurable() throws IOException {
+        sync();
+    }
+
+    /**
+     * Makes the body of an entry creating a contact.
+     *
+     * @param person The created contact.
+     * @return The filled body.
+     */
+    static ByteBuffer createEntry(final Person person) {
+        final ByteBuffer record = ContactRecordCodec.encodeRecord(person);
+        return ByteBuffer.allocate(1 + record.remaining())
+            .put(CREATE).put(record);
+    }
+
+    /**
+     * Makes the body of an entry setting a detail of a contact.
+     *
+     * @param ssn The social security number of the contact.
+     * @param field The detail.
+     * @param value The new value of the detail.
+     * @return The filled body.
+     */
+    static ByteBuffer updateEntry(final String ssn, final ContactField field,
+            final String value) {
+        final ByteBuffer body = ByteBuffer.allocate(
+            2 + ContactRecordCodec.stringSize(ssn)
+            + ContactRecordCodec.stringSize(value)
+        );
+        body.put(UPDATE);
+        ContactRecordCodec.writeString(ssn, body);
+        body.put((byte) field.getCode());
+        ContactRecordCodec.writeString(value, body);
+        return body;
+    }
+
+    /**
+     * Makes the body of an entry deleting a contact.
+     *
+     * @param ssn The social security number of the contact.
+     * @return The filled body.
+     */
+    static ByteBuffer deleteEntry(final String ssn) {
+        final ByteBuffer body =
+            ByteBuffer.allocate(1 + ContactRecordCodec.stringSize(ssn));
+        body.put(DELETE);
+        ContactRecordCodec.writeString(ssn, body);
+        return body;
+    }
+
+    /**
+     * Makes the body of an entry deleting all contacts.
+     *
+     * @return The filled body.
+     */
+    static ByteBuffer clearEntry() {
+        return ByteBuffer.allocate(1).put(CLEAR);
+    }
+
+    /**
+     * Writes entries to a channel in the format of the journal.
+     *
+     * @param bodies The filled bodies of the entries.
+     * @param channel The channel to write to.
+     * @return The number of bytes written.
+     * @throws IOException If writing fails.
+     */
+    static long writeEntries(final Iterable<ByteBuffer> bodies,
+            final FileChannel channel) throws IOException {
+        final ByteBuffer buffer =
+            ByteBuffer.allocate(ContactRecordCodec.BUFFER_SIZE);
+        final CRC32 crc = new CRC32();
+        long written = 0;
+        for (ByteBuffer body : bodies) {
+            body.flip();
+            if (buffer.remaining() < ENTRY_HEADER_SIZE + body.remaining()) {
+                ContactRecordCodec.flush(buffer, channel);
+            }
+            crc.reset();
+            crc.update(body.duplicate());
+            final int entrySize = ENTRY_HEADER_SIZE + body.remaining();
+            final ByteBuffer header = buffer.remaining() < entrySize
+                ? ByteBuffer.allocate(ENTRY_HEADER_SIZE) : buffer;
+            header.putInt(body.remaining()).putInt((int) crc.getValue());
+            if (header == buffer) {
+                buffer.put(body);
+            } else {
+                header.flip();
+                while (header.hasRemaining()) {
+                    channel.write(header);
+                }
+                while (body.hasRemaining()) {
+                    channel.write(body);
+                }
+            }
+            written += entrySize;
+        }
+        ContactRecordCodec.flush(buffer, channel);
+        return written;
+    }
+
+    @Override
+    public synchronized void batchStarted() {
+        batch = ByteBuffer.allocate(ContactRecordCodec.BUFFER_SIZE);
+    }
+
+    @Override
+    public void batchApplied() {
+        final ByteBuffer bodies;
+        synchronized (this) {
+            bodies = batch.flip();
+            batch = null;
+        }
+        if (bodies.hasRemaining()) {
+            append(ByteBuffer.allocate(1 + bodies.remaining())
+                .put(BATCH).put(bodies));
+        }
+    }
+
+    /**
+     * Appends an entry to the buffer of the next group commit, or to
+     * the batch being applied.
+     *
+     * @param body The filled body of the entry.
+     */
+    private synchronized void append(final ByteBuffer body) {
+        body.flip();
+        if (batch != null) {
+            if (batch.remaining() < Integer.BYTES + body.remaining()) {
+                final ByteBuffer larger = ByteBuffer.allocate(Math.max(
+                    batch.capacity() * 2,
+                    batch.position() + Integer.BYTES + body.remaining()
+                ));
+                batch = larger.put(batch.flip());
+            }
+            batch.putInt(body.remaining()).put(body);
+            return;
+        }
+        final CRC32 crc = new CRC32();
+        crc.update(body.duplicate());
+        final int entrySize = ENTRY_HEADER_SIZE + body.remaining();
+        if (pending.remaining() < entrySize) {
+            final ByteBuffer larger = ByteBuffer.allocate(
+                Math.max(pending.capacity() * 2, pending.position() + entrySize)
+            );
+            pending.flip();
+            pending = larger.put(pending);
+        }
+        pending.putInt(body.remaining());
+        pending.putInt((int) crc.getValue());
+        pending.put(body);
+        size += entrySize;
+        appended += entrySize;
+    }
+
+    /**
+     * Waits until every change appended so far is on disk. If another
+     * thread is writing a group of changes, this waits for it and
+     * returns if that group held the changes; otherwise it writes and
+     * forces every change buffered by then as the next group. Changes
+     * made while a group is written are collected into the other
+     * buffer for the group after it.
+     *
+     * @throws IOException If writing the changes failed, now or in an
+     *         earlier group whose changes are not yet in a checkpoint.
+     *         The changes stay made in memory and are saved by the next
+     *         checkpoint, but they may not be on disk before that.
+     */
+    public void sync() throws IOException {
+        final long target;
+        synchronized (this) {
+            target = appended;
+        }
+        synchronized (commitLock) {
+            if (durable >= target) {
+                return;
+            }
+            if (failure == null) {
+                try {
+                    commit();
+                    return;
+                } catch (IOException e) {
+                    failure = e;
+                }
+            }
+            throw new IOException("Failed to write the journal "
+                + path.getFileName() + ": " + failure.getMessage(), failure);
+        }
+    }
+
+    /**
+     * Writes and forces the buffered changes. The commit lock
+     * must be held by the caller. After a failure the changes written
+     * are not counted as durable, since the ones of the failed group
+     * may be missing in front of them. A group that fails is dropped
+     * from the buffer; the checkpoint that clears the failure holds it.
+     *
+     * @throws IOException If writing fails.
+     */
+    private void commit() throws IOException {
+        final ByteBuffer batch;
+        final long end;
+        synchronized (this) {
+            end = appended;
+            batch = pending;
+            pending = writing;
+            writing = batch;
+        }
+        if (batch.position() > 0) {
+            try {
+                ContactRecordCodec.flush(batch, channel);
+            } finally {
+                batch.clear();
+            }
+            channel.force(false);
+        }
+        if (failure == null) {
+            durable = end;
+        }
+    }
+
+    /**
+     * Moves the changes so far aside so that they can be dropped with
+     * {@link #deleteRotated()} once a checkpoint containing them is on
+     * disk. If an earlier rotation was never dropped, the changes are
+     * appended to it so that nothing is lost.
+     *
+     * @throws IOException If the journal cannot be rotated.
+     */
+    public void rotate() throws IOException {
+        synchronized (commitLock) {
+            try {
+                commit();
+            } catch (IOException e) {
+                failure = e;
+                throw e;
+            }
+            if (Files.exists(rotatedPath)) {
+                try (FileChannel current = FileChannel.open(
+                        path, StandardOpenOption.READ);
+                    FileChannel rotated = FileChannel.open(
+                        rotatedPath, StandardOpenOption.WRITE,
+                        StandardOpenOption.APPEND)) {
+                    long position = 0;
+                    while (position < current.size()) {
+                        position += current.transferTo(
+                            position, current.size() - position, rotated
+                        );
+                    }
+                    rotated.force(false);
+                }
+                channel.truncate(0);
+                channel.force(true);
+            } else {
+                channel.close();
+                Files.move(path, rotatedPath, StandardCopyOption.ATOMIC_MOVE);
+                channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+            }
+            synchronized (this) {
+                size = pending.position();
+                rotatedEnd = appended;
+            }
+        }
+    }
+
+    /**
+     * Deletes the changes moved aside by {@link #rotate()} after a
+     * checkpoint containing them has been written. A failure to write
+     * them is forgotten, since the checkpoint holds them now.
+     *
+     * @throws IOException If the file cannot be deleted.
+     */
+    public void deleteRotated() throws IOException {
+        synchronized (commitLock) {
+            Files.deleteIfExists(rotatedPath);
+            if (failure != null) {
+                durable = Math.max(durable, rotatedEnd);
+                failure = null;
+            }
+        }
+    }
+
+    /**
+     * Gets the size of the journal including the changes not yet written.
+     *
+     * @return The size in bytes.
+     */
+    public synchronized long size() {
+        return size;
+    }
+
+    /**
+     * Empties the journal when there are no contacts left to recover.
+     *
+     * @throws IOException If the journal cannot be truncated.
+     */
+    public void truncate() throws IOException {
+        synchronized (commitLock) {
+            synchronized (this) {
+                pending.clear();
+                size = 0;
+                durable = appended;
+            }
+            channel.truncate(0);
+            channel.force(true);
+            deleteRotated();
+        }
+    }
+
+    /**
+     * Writes the remaining changes and closes the journal.
+     *
+     * @throws IOException If writing the remaining changes fails.
+     */
+    public void close() throws IOException {
+        try {
+            sync();
+        } finally {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package contacts;
+
+import java.io.IOException;
+
+/**
+ * A listener that is told about every change the ContactsManager
+ * makes to the contacts. Listeners are not told about contacts
+ * that are loaded from a file.
+ *
+ * Changes to different contacts may be told at the same time on
+ * different threads, while the changes to one contact are told one at
+ * a time and in order. Deleting all contacts and the changes of a
+ * batch are told while no other change is made.
+ */
+public interface ContactsListener {
+    /**
+     * Called after a new contact has been added.
+     *
+     * @param person The added contact.
+     */
+    void contactCreated(Person person);
+
+    /**
+     * Called after a detail of a contact has been changed.
+     *
+     * @param person The changed contact.
+     * @param field The detail that was changed.
+     * @param oldValue The value the detail had before the change.
+     */
+    void contactUpdated(Person person, ContactField field, String oldValue);
+
+    /**
+     * Called after a contact has been deleted.
+     *
+     * @param person The deleted contact.
+     */
+    void contactDeleted(Person person);
+
+    /** Called after all contacts have been deleted. */
+    void contactsCleared();
+
+    /**
+     * Called before the changes of a batch are made. The changes are
+     * then told one by one as usual, followed by {@link #batchApplied()}.
+     * No other changes are made in between.
+     */
+    default void batchStarted() {
+    }
+
+    /** Called after all changes of a batch have been made. */
+    default void batchApplied() {
+    }
+
+    /**
+     * Called by the thread that made changes once their locks are
+     * released, before the changes are reported as done. A listener
+     * that saves the changes returns once they are on disk.
+     *
+     * @throws IOException If the changes could not be saved.
+     */
+    default void awaitDurable() throws IOException {
+    }
+}
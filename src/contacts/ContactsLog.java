@@ -0,0 +1,53 @@
+package contacts;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * The messages of the model and persistence layers, such as contacts
+ * being loaded, saved or imported, or a file failing to be written.
+ *
+ * Nothing is written to the console here: the messages are handed to
+ * the listeners, and the console of the ContactsApp subscribes with an
+ * {@link AsyncLogWriter}. Without listeners a message costs nothing
+ * more than building it, so imports, benchmarks and the HTTP server
+ * do no console I/O of their own.
+ */
+public final class ContactsLog {
+    /** The listeners told about every message. */
+    private static CopyOnWriteArrayList<ContactsLogListener> listeners =
+        new CopyOnWriteArrayList<>();
+
+    /** Prevents instantiation of this class. */
+    private ContactsLog() {
+    }
+
+    /**
+     * Reports a message to the listeners.
+     *
+     * @param message The message, which may span several lines.
+     */
+    public static void log(final String message) {
+        for (ContactsLogListener listener : listeners) {
+            listener.log(message);
+        }
+    }
+
+    /**
+     * Adds a listener that is told about every message.
+     *
+     * @param listener The listener to add.
+     */
+    public static void addListener(final ContactsLogListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Removes a listener added with
+     * {@link #addListener(ContactsLogListener)}.
+     *
+     * @param listener The listener to remove.
+     */
+    public static void removeListener(final ContactsLogListener listener) {
+        listeners.remove(listener);
+    }
+}
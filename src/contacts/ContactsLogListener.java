@@ -0,0 +1,15 @@
+package contacts;
+
+/**
+ * A listener that is told about the messages the app reports through
+ * {@link ContactsLog}, such as contacts being loaded or saved.
+ */
+public interface ContactsLogListener {
+    /**
+     * Called with a message. Called on the thread that reported the
+     * message, so it should return quickly.
+     *
+     * @param message The message, which may span several lines.
+     */
+    void log(String message);
+}
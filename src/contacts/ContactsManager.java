@@ -0,0 +1,766 @@
+package contacts;
+
+import java.io.Console;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.time.LocalDate;
+import java.time.MonthDay;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+
+/**
+ * A class responsible for managing contacts.
+ * It provides methods to create, update, delete, and read contacts.
+ *
+ * The contacts are kept in the default {@link ContactBook}, the same
+ * implementation every named book uses, and the static methods below
+ * work on it. Besides the console menus, contacts can be changed from
+ * any thread through {@link #createContact(Person)},
+ * {@link #updateDetail(String, ContactField, String)},
+ * {@link #deleteContact(String)}, {@link #deleteAllContacts()} and
+ * {@link #applyBatch(ContactsBatch)}.
+ */
+public class ContactsManager {
+    /** The console object for reading user input. */
+    private static Console c = System.console();
+
+    /** The message shown when a detail entered is saved. */
+    private static final String DETAIL_SAVED = "Detail saved successfully";
+    /** The number of contacts shown for a search. */
+    private static final int SEARCH_RESULTS = 20;
+    /** The number of contacts shown on one page of the console. */
+    private static final int PAGE_SIZE = 10;
+    /** The counters and latencies of the operations on the contacts. */
+    private static final ContactsMetrics METRICS = new ContactsMetrics();
+    /** The default book holding the contacts. */
+    private static final ContactBook BOOK = new ContactBook(METRICS);
+
+    /**
+     * Creates a new contact by creating a new Person object.
+     * Sets the social security number of the contact and then invokes
+     * a second method to set the rest of the details.
+     */
+    public static void createNewContact() {
+        Person person = new Person();
+        do {
+            try {
+                System.out.println("Enter a Finnish social security number:");
+                String ssn = c.readLine();
+
+                if (BOOK.getStore().contains(ssn)) {
+                    System.out.println(
+                        "Contact with this social"
+                        + " security number already exists."
+                    );
+                } else {
+                    person.setSsn(ssn);
+                    System.out.println(DETAIL_SAVED);
+                    updateAllInformation(person);
+                    if (createContact(person)) {
+                        System.out.println("Contact saved successfully");
+                        break;
+                    }
+                    System.out.println(
+                        "Contact with this social"
+                        + " security number already exists."
+                    );
+                }
+            } catch (IllegalArgumentException e) {
+                System.out.println(e.getMessage());
+            }
+        } while (true);
+    }
+
+    /**
+     * Is used in updating the specified contact by providing a menu to modify
+     * a chosen detail or all details of the contact.
+     *
+     * @param person The contact to be updated.
+     */
+    public static void updateContact(final Person person) {
+        if (person == null) {
+            return;
+        }
+
+        while (true) {
+            System.out.println(
+            "Type 1 to update first name\n"
+            + "Type 2 to update last name\n"
+            + "Type 3 to update phone number\n"
+            + "Type 4 to update address\n"
+            + "Type 5 to update email address\n"
+            + "Type 6 to update all of the above\n"
+            + "Type 7 to go back to the main menu"
+            );
+
+            switch (c.readLine()) {
+                case "1" :
+                    updateFirstName(person);
+                    break;
+                case "2" :
+                    updateLastName(person);
+                    break;
+                case "3":
+                    updatePhoneNumber(person);
+                    break;
+                case "4":
+                    updateAddress(person);
+                    break;
+                case "5":
+                    updateEmailAddress(person);
+                    break;
+                case "6" :
+                    updateAllInformation(person);
+                    break;
+                case "7" :
+                    return;
+                default :
+                    System.out.println("Invalid choice");
+            }
+        }
+    }
+
+    /**
+     * Updates the first name of the specified contact.
+     *
+     * @param person The contact to be updated.
+     */
+    public static void updateFirstName(final Person person) {
+        do {
+            try {
+                System.out.println("Enter a first name:");
+                setDetail(person, ContactField.FIRST_NAME, c.readLine());
+                break;
+            } catch (IllegalArgumentException e) {
+                System.out.println(e.getMessage());
+            }
+        } while (true);
+    }
+
+    /**
+     * Updates the last name of the specified contact.
+     *
+     * @param person The contact to be updated.
+     */
+    public static void updateLastName(final Person person) {
+        do {
+            try {
+                System.out.println("Enter a last name:");
+                setDetail(person, ContactField.LAST_NAME, c.readLine());
+                break;
+            } catch (IllegalArgumentException e) {
+                System.out.println(e.getMessage());
+            }
+        } while (true);
+    }
+
+    /**
+     * Updates the phone number of the specified contact.
+     *
+     * @param person The contact to be updated.
+     */
+    public static void updatePhoneNumber(final Person person) {
+        do {
+            try {
+                System.out.println("Enter a phone number:");
+                setDetail(person, ContactField.PHONE_NUMBER, c.readLine());
+                break;
+            } catch (IllegalArgumentException e) {
+                System.out.println(e.getMessage());
+            }
+        } while (true);
+    }
+
+    /**
+     * Updates the address of the specified contact.
+     *
+     * @param person The contact to be updated.
+     */
+    public static void updateAddress(final Person person) {
+        do {
+            try {
+                System.out.println("Enter an address: (optional)");
+                setDetail(person, ContactField.ADDRESS, c.readLine());
+                break;
+            } catch (IllegalArgumentException e) {
+                System.out.println(e.getMessage());
+            }
+        } while (true);
+    }
+
+    /**
+     * Updates the email address of the specified contact.
+     *
+     * @param person The contact to be updated.
+     */
+    public static void updateEmailAddress(final Person person) {
+        do {
+            try {
+                System.out.println("Enter an email address: (optional)");
+                setDetail(person, ContactField.EMAIL_ADDRESS,
+                    c.readLine().toLowerCase());
+                break;
+            } catch (IllegalArgumentException e) {
+                System.out.println(e.getMessage());
+            }
+        } while (true);
+    }
+
+    /**
+     * Updates all details except the social security
+     * number of the specified contact.
+     *
+     * @param person The contact to be updated.
+     */
+    public static void updateAllInformation(final Person person) {
+        updateFirstName(person);
+        updateLastName(person);
+        updatePhoneNumber(person);
+        updateAddress(person);
+        updateEmailAddress(person);
+    }
+
+    /**
+     * Sets a detail of a contact entered through the console. A contact
+     * that is still being created is changed directly, because it is
+     * reported as a whole once it is added.
+     *
+     * @param person The contact to change.
+     * @param field The detail to set.
+     * @param value The value of the detail.
+     * @throws IllegalArgumentException If the value is invalid.
+     */
+    private static void setDetail(final Person person,
+            final ContactField field, final String value) {
+        final Person updated = updateDetail(person.getSsn(), field, value);
+        if (updated == null) {
+            BOOK.checkUnique(person.getSsn(), field, value);
+            person.setDetail(field, value);
+        } else if (updated != person) {
+            // The store handed out a copy, so keep the caller's one current.
+            person.restoreDetail(field, updated.getDetail(field));
+        }
+        System.out.println(DETAIL_SAVED);
+    }
+
+    /**
+     * Deletes specific contact or
+     * all contacts based on user input.
+     */
+    public static void deleteContacts() {
+        while (true) {
+            if (getContactsSize() == 0) {
+                System.out.println(
+                    "No contacts left.\n"
+                    + "Returning to the main menu."
+                    );
+                return;
+            }
+            System.out.println(
+                "Type 1 to delete contact by its SSN:\n"
+                + "Type 2 to delete all contacts:\n"
+                + "Type 3 to go back to the main menu:"
+            );
+            switch (c.readLine()) {
+                case "1" :
+                    Person person = checkForSsn();
+                    if (person != null
+                            && deleteContact(person.getSsn()) != null) {
+                        System.out.println("Contact deleted successfully.");
+                    }
+                    break;
+                case "2" :
+                    deleteAllContacts();
+                    System.out.println(
+                        "All contacts deleted successfully.\n"
+                         + "returning to the main menu."
+                    );
+                    return;
+                case "3" :
+                    return;
+                default :
+                    System.out.println("Invalid choice");
+            }
+        }
+    }
+
+    /**
+     * Reads and displays the contacts a page at a time
+     * in the order chosen via the console.
+     */
+    public static void readContacts() {
+        System.out.println(
+            "Type 1 to sort by last name\n"
+            + "Type 2 to sort by first name\n"
+            + "Type 3 to sort by birth date"
+        );
+        final ContactSort sort;
+        switch (c.readLine()) {
+            case "1":
+                sort = ContactSort.LAST_NAME;
+                break;
+            case "2":
+                sort = ContactSort.FIRST_NAME;
+                break;
+            case "3":
+                sort = ContactSort.BIRTH_DATE;
+                break;
+            default:
+                System.out.println("Invalid choice");
+                return;
+        }
+        String cursor = null;
+        do {
+            final ContactsPage page =
+                listContacts(sort, person -> true, cursor, PAGE_SIZE);
+            System.out.println("Contacts:");
+            for (Person contact : page.getContacts()) {
+                System.out.println(contact);
+                System.out.println();
+            }
+            cursor = page.getNextCursor();
+            if (cursor == null) {
+                return;
+            }
+            System.out.println(
+                "Type 1 to see the next page\n"
+                + "Type 2 to go back to the main menu"
+            );
+        } while (c.readLine().equals("1"));
+    }
+
+    /**
+     * Asks for words to search for via the console and displays
+     * the contacts whose details have words starting with them.
+     */
+    public static void searchContacts() {
+        System.out.println(
+            "Enter a name, phone number, email address or address\n"
+            + "to search for:"
+        );
+        final List<Person> found = search(c.readLine(), SEARCH_RESULTS);
+        if (found.isEmpty()) {
+            System.out.println("No contacts found.");
+            return;
+        }
+        System.out.println("Found " + found.size() + " contact/contacts:");
+        for (Person contact : found) {
+            System.out.println(contact);
+            System.out.println();
+        }
+    }
+
+    /**
+     * Asks for a social security number via the console and
+     * then checks if it can find a contact that has that.
+     *
+     * @return The contact if found, otherwise null.
+     */
+    public static Person checkForSsn() {
+        System.out.println(
+            "Enter the social security number\n"
+            + "of the contact you wish to modify:"
+        );
+        Person contact = BOOK.getStore().get(c.readLine());
+        if (contact != null) {
+            System.out.println("Found a contact.");
+            return contact;
+        }
+        System.out.println(
+            "No contact found with this social security number.\n"
+            + "Returning to the previous selection..."
+        );
+        return null;
+    }
+
+
+    /**
+     * Adds a new, fully validated contact unless its social security
+     * number is already in use. Safe to call from any thread.
+     *
+     * @param person The contact to add.
+     * @return {@code true} if added, {@code false} if the SSN already exists.
+     * @throws IllegalArgumentException If another contact has a detail
+     *         that has to be unique, see {@link #requireUnique}.
+     */
+    public static boolean createContact(final Person person) {
+        return BOOK.createContact(person);
+    }
+
+    /**
+     * Validates and sets a detail of the contact with the given social
+     * security number. Safe to call from any thread.
+     *
+     * @param ssn The social security number of the contact.
+     * @param field The detail to set.
+     * @param value The value of the detail.
+     * @return The updated contact or null if there is no such contact.
+     * @throws IllegalArgumentException If the value is invalid, or
+     *         another contact has it and it has to be unique.
+     */
+    public static Person updateDetail(final String ssn,
+            final ContactField field, final String value) {
+        return BOOK.updateDetail(ssn, field, value);
+    }
+
+    /**
+     * Validates and sets several details of the contact with the given
+     * social security number as one change, so the contact is either
+     * changed as a whole or not at all. Safe to call from any thread.
+     *
+     * @param ssn The social security number of the contact.
+     * @param details The values of the details to set.
+     * @return The updated contact or null if there is no such contact.
+     * @throws IllegalArgumentException If a value is invalid, the
+     *         social security number is among the details, or another
+     *         contact has a value that has to be unique.
+     */
+    public static Person updateDetails(final String ssn,
+            final Map<ContactField, String> details) {
+        return BOOK.updateDetails(ssn, details);
+    }
+
+    /**
+     * Deletes the contact with the given social security number.
+     * Safe to call from any thread.
+     *
+     * @param ssn The social security number of the contact.
+     * @return The deleted contact or null if there was no such contact.
+     */
+    public static Person deleteContact(final String ssn) {
+        return BOOK.deleteContact(ssn);
+    }
+
+    /**
+     * Deletes all contacts. Every stripe is locked, in order, so no other
+     * change can slip in between the deletion and the listeners.
+     * Safe to call from any thread.
+     */
+    public static void deleteAllContacts() {
+        BOOK.deleteAllContacts();
+    }
+
+    /**
+     * Applies a batch of creates, updates and deletes. Every change is
+     * validated first, in parallel for large batches, with the same
+     * rules as the setters of Person.
+     * The valid changes are then made in order while every stripe is
+     * locked, so no other change is made in between, and the listeners
+     * are told about them as one batch, which the journal writes as a
+     * single entry. A change that fails does not stop the others.
+     * Safe to call from any thread.
+     *
+     * @param batch The changes to make.
+     * @return The number of changes made and the reasons of the others.
+     */
+    public static ContactsBatchResult applyBatch(final ContactsBatch batch) {
+        return BOOK.applyBatch(batch);
+    }
+
+    /**
+     * Creates contacts whose details have already been validated with
+     * the same rules as the setters of Person, as one batch like
+     * {@link #applyBatch(ContactsBatch)} but without validating them
+     * again. A contact whose SSN or unique detail is already in use is
+     * not created.
+     *
+     * @param people The contacts to create.
+     * @return The number of contacts created and the reasons of the
+     *         others keyed by their index in the list.
+     */
+    static ContactsBatchResult createValidated(final List<Person> people) {
+        return BOOK.createValidated(people);
+    }
+
+    /**
+     * Adds an already validated contact, for example one loaded from a file.
+     * The contact is not added if its SSN is already in use.
+     *
+     * @param person The contact to add.
+     * @return {@code true} if added, {@code false} if the SSN already exists.
+     */
+    public static boolean addContact(final Person person) {
+        return BOOK.addContact(person);
+    }
+
+    /**
+     * Finds the contact with the given social security number.
+     *
+     * @param ssn The social security number to look for.
+     * @return The contact if found, otherwise null.
+     */
+    public static Person findContact(final String ssn) {
+        return BOOK.findContact(ssn);
+    }
+
+    /**
+     * Finds the contacts having a word starting with each word of the
+     * query in their names, phone number, email address or address.
+     * Safe to call from any thread.
+     *
+     * @param query The words to search for, separated by spaces.
+     * @param limit The maximum number of contacts to find.
+     * @return The contacts found.
+     * @see ContactsSearchIndex#search(String, int)
+     */
+    public static List<Person> search(final String query, final int limit) {
+        return BOOK.search(query, limit);
+    }
+
+    /**
+     * Requires no two contacts to share a phone number or an email
+     * address, or stops requiring it. Contacts already sharing one are
+     * kept, but no contact is created or changed to share one.
+     *
+     * @param field {@link ContactField#PHONE_NUMBER} or
+     *        {@link ContactField#EMAIL_ADDRESS}.
+     * @param unique Whether the detail has to be unique.
+     * @throws IllegalArgumentException If the detail is not indexed.
+     */
+    public static void requireUnique(final ContactField field,
+            final boolean unique) {
+        BOOK.requireUnique(field, unique);
+    }
+
+    /**
+     * Gets the details no two contacts may share, for the contact books
+     * to require the same.
+     *
+     * @return The details, empty if none has to be unique.
+     */
+    static Set<ContactField> getUniqueFields() {
+        return BOOK.getUniqueFields();
+    }
+
+    /**
+     * Finds the contacts having the given phone number or email address.
+     * Finnish phone numbers match in both their international and their
+     * national form, and email addresses in any case.
+     * Safe to call from any thread.
+     *
+     * @param field {@link ContactField#PHONE_NUMBER} or
+     *        {@link ContactField#EMAIL_ADDRESS}.
+     * @param value The phone number or email address.
+     * @return The contacts found.
+     */
+    public static List<Person> findSharing(final ContactField field,
+            final String value) {
+        return BOOK.findSharing(field, value);
+    }
+
+    /**
+     * Finds the groups of contacts sharing a phone number or an email
+     * address. Safe to call from any thread.
+     *
+     * @param field {@link ContactField#PHONE_NUMBER} or
+     *        {@link ContactField#EMAIL_ADDRESS}.
+     * @return The contacts of each shared value, keyed by the value.
+     */
+    public static Map<String, List<Person>> findDuplicates(
+            final ContactField field) {
+        return BOOK.findDuplicates(field);
+    }
+
+    /**
+     * Finds the contacts born within a range of dates, from the birth
+     * dates in their social security numbers. The dates are kept in a
+     * sorted index, so the time depends on the contacts found rather
+     * than on all of them. Safe to call from any thread.
+     *
+     * @param from The first birth date.
+     * @param to The last birth date.
+     * @param limit The maximum number of contacts to find.
+     * @return The contacts found, the oldest first.
+     */
+    public static List<Person> findBornBetween(final LocalDate from,
+            final LocalDate to, final int limit) {
+        return BOOK.findBornBetween(from, to, limit);
+    }
+
+    /**
+     * Finds the contacts having their birthday within a range of days
+     * of the year, such as this week. A range from a later day to an
+     * earlier one goes over the new year. Safe to call from any thread.
+     *
+     * @param from The first day.
+     * @param to The last day.
+     * @param limit The maximum number of contacts to find.
+     * @return The contacts found, in the order of their birthdays from
+     *         the first day.
+     */
+    public static List<Person> findBirthdaysBetween(final MonthDay from,
+            final MonthDay to, final int limit) {
+        return BOOK.findBirthdaysBetween(from, to, limit);
+    }
+
+    /**
+     * Lists a page of the contacts in the given order. Pages are read
+     * from sorted indexes, so listing a page costs the same however far
+     * into the contacts it is. Safe to call from any thread.
+     *
+     * @param sort The order of the contacts.
+     * @param filter The contacts to list.
+     * @param cursor The cursor of the previous page, or null for the
+     *        first page.
+     * @param pageSize The maximum number of contacts on the page.
+     * @return The page.
+     * @see ContactsSortIndex#list(ContactSort, Predicate, String, int)
+     */
+    public static ContactsPage listContacts(final ContactSort sort,
+            final Predicate<Person> filter, final String cursor,
+            final int pageSize) {
+        return BOOK.listContacts(sort, filter, cursor, pageSize);
+    }
+
+    /**
+     * Gets a read-only view of the contacts in insertion order.
+     * The view reflects later changes and can be iterated while
+     * other threads change the contacts.
+     *
+     * @return The contacts.
+     */
+    public static Collection<Person> getContacts() {
+        return BOOK.getContacts();
+    }
+
+    /**
+     * Takes a consistent view of the contacts as they are now, which
+     * can be read while the contacts keep changing. Every stripe is
+     * locked while the view is taken, so the view never holds half of
+     * a change. Safe to call from any thread.
+     *
+     * @return The contacts in insertion order.
+     */
+    public static Collection<Person> snapshot() {
+        return BOOK.snapshot();
+    }
+
+    /**
+     * Takes a consistent view of the contacts like {@link #snapshot()}
+     * and forgets the changes made so far, for saving every contact.
+     *
+     * @param journal The journal to move aside while no change can be
+     *        made, so that it holds exactly the changes in the view,
+     *        or null.
+     * @return The contacts in insertion order.
+     * @throws IOException If the journal could not be moved aside.
+     *         Nothing is forgotten then.
+     */
+    static Collection<Person> snapshotForSave(final ContactsJournal journal)
+            throws IOException {
+        return BOOK.snapshotForSave(journal);
+    }
+
+    /**
+     * Takes the changes made since the contacts were last saved as
+     * journal entries, for saving only the contacts that changed.
+     * Every stripe is locked so no change is made in between.
+     *
+     * @param journal The journal to move aside while no change can be
+     *        made, so that it holds exactly the changes taken, or null.
+     * @return The bodies of the entries, or null if every contact has
+     *         to be saved with {@link #snapshotForSave} instead, in which
+     *         case the journal is not moved.
+     * @throws IOException If the journal could not be moved aside.
+     *         No change is taken then.
+     */
+    static List<ByteBuffer> takeChanges(final ContactsJournal journal)
+            throws IOException {
+        return BOOK.takeChanges(journal);
+    }
+
+    /**
+     * Checks whether the contacts changed since they were last saved.
+     *
+     * @return {@code true} if there are changes to save.
+     */
+    public static boolean hasUnsavedChanges() {
+        return BOOK.hasUnsavedChanges();
+    }
+
+    /**
+     * Marks every contact as changed, for example when saving the
+     * changes failed.
+     */
+    static void markAllUnsaved() {
+        BOOK.markAllUnsaved();
+    }
+
+    /**
+     * Gets the tracker of the changes made since the contacts were last
+     * saved, for telling it about changes replayed from the journal.
+     *
+     * @return The change tracker.
+     */
+    static ContactsChangeTracker getChangeTracker() {
+        return BOOK.getChangeTracker();
+    }
+
+    /**
+     * Adds a listener that is told about every change to the contacts.
+     *
+     * @param listener The listener to add.
+     */
+    public static void addListener(final ContactsListener listener) {
+        BOOK.addListener(listener);
+    }
+
+    /**
+     * Removes a listener added with {@link #addListener(ContactsListener)}.
+     *
+     * @param listener The listener to remove.
+     */
+    public static void removeListener(final ContactsListener listener) {
+        BOOK.removeListener(listener);
+    }
+
+    /**
+     * Gets the store that holds the contacts.
+     *
+     * @return The contact store.
+     */
+    public static ContactStore getStore() {
+        return BOOK.getStore();
+    }
+
+    /**
+     * Replaces the store that holds the contacts.
+     * This is meant to be done at startup before any contacts are loaded,
+     * and the contacts of the new store count as saved.
+     *
+     * @param store The contact store to use.
+     */
+    public static void useStore(final ContactStore store) {
+        BOOK.useStore(store);
+    }
+
+    /**
+     * Gets the counters and latencies of the operations on the contacts.
+     *
+     * @return The metrics.
+     */
+    public static ContactsMetrics getMetrics() {
+        return METRICS;
+    }
+
+    /**
+     * Gets the number of contacts.
+     *
+     * @return The number of contacts.
+     */
+    public static int getContactsSize() {
+        return BOOK.getContactsSize();
+    }
+    /**
+     * Gets the default book holding the contacts, for the code that
+     * works on any book.
+     *
+     * @return The default book.
+     */
+    static ContactBook getBook() {
+        return BOOK;
+    }
+}
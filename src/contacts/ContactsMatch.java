@@ -0,0 +1,58 @@
+package contacts;
+
+/**
+ * Two contacts that may be the same person, found by the
+ * {@link ContactsDeduplicator}, with how alike they are.
+ */
+public final class ContactsMatch {
+    /** The contact with the smaller social security number. */
+    private final Person first;
+
+    /** The contact with the larger social security number. */
+    private final Person second;
+
+    /** How alike the contacts are, from 0 to 1. */
+    private final double score;
+
+    /**
+     * Creates a match.
+     *
+     * @param first The contact with the smaller social security number.
+     * @param second The contact with the larger social security number.
+     * @param score How alike the contacts are, from 0 to 1.
+     */
+    ContactsMatch(final Person first, final Person second,
+            final double score) {
+        this.first = first;
+        this.second = second;
+        this.score = score;
+    }
+
+    /**
+     * Gets the contact with the smaller social security number.
+     *
+     * @return The first contact.
+     */
+    public Person getFirst() {
+        return first;
+    }
+
+    /**
+     * Gets the contact with the larger social security number.
+     *
+     * @return The second contact.
+     */
+    public Person getSecond() {
+        return second;
+    }
+
+    /**
+     * Gets how alike the contacts are.
+     *
+     * @return The score, from 0 for nothing alike to 1 for the same
+     *         details.
+     */
+    public double getScore() {
+        return score;
+    }
+}
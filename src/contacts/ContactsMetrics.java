@@ -0,0 +1,304 @@
+package contacts;
+
+import java.lang.management.ManagementFactory;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Counters and latency histograms of the hot paths of the
+ * ContactsManager and the ContactsSerializer.
+ *
+ * Recording an operation costs two reads of the clock and a few
+ * uncontended atomic increments, so it is always on. The metrics can
+ * be read through JMX once {@link #register()} has been called, as
+ * text with {@code java contacts.ContactsApp metrics} or
+ * {@code GET /metrics}, and every recorded operation is also a
+ * {@link ContactsJfrEvents JDK Flight Recorder event}.
+ */
+public final class ContactsMetrics implements ContactsMetricsMXBean {
+    /** The name the metrics are registered with in JMX. */
+    public static final String OBJECT_NAME = "ContactsApp:type=Metrics";
+
+    /** The operations whose latency is recorded. */
+    public enum Operation {
+        /** Creating a contact. */
+        CREATE,
+        /** Finding a contact by its social security number. */
+        LOOKUP,
+        /** Changing a detail of a contact. */
+        UPDATE,
+        /** Deleting a contact. */
+        DELETE,
+        /** Applying a batch of changes. */
+        BATCH,
+        /** Loading the contacts file and replaying the journal. */
+        LOAD,
+        /** Saving the contacts file or syncing the journal. */
+        SAVE
+    }
+
+    /** The percentiles shown for each operation. */
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9};
+
+    /** The nanoseconds in a microsecond. */
+    private static final double NANOS_PER_MICRO = 1000.0;
+
+    /** The latency of each operation. */
+    private final EnumMap<Operation, LatencyHistogram> latencies =
+        new EnumMap<>(Operation.class);
+
+    /**
+     * The number of each operation that found no contact, or for
+     * creates, found the social security number already in use.
+     */
+    private final EnumMap<Operation, LongAdder> misses =
+        new EnumMap<>(Operation.class);
+
+    /** The bytes loaded and saved. */
+    private final EnumMap<Operation, LongAdder> bytes =
+        new EnumMap<>(Operation.class);
+
+    /** The number of changes in the batches applied. */
+    private final LongAdder batchChanges = new LongAdder();
+
+    /** The number of changes of the batches that failed. */
+    private final LongAdder batchFailures = new LongAdder();
+
+    /** The number of validation failures of each detail. */
+    private final EnumMap<ContactField, LongAdder> validationFailures =
+        new EnumMap<>(ContactField.class);
+
+    /** Creates empty metrics. */
+    ContactsMetrics() {
+        for (Operation operation : Operation.values()) {
+            latencies.put(operation, new LatencyHistogram());
+            misses.put(operation, new LongAdder());
+            bytes.put(operation, new LongAdder());
+        }
+        for (ContactField field : ContactField.values()) {
+            validationFailures.put(field, new LongAdder());
+        }
+    }
+
+    /**
+     * Registers the metrics with the platform MBean server.
+     * Failing to register only leaves the metrics out of JMX.
+     */
+    public void register() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this,
+                new ObjectName(OBJECT_NAME));
+        } catch (JMException e) {
+            ContactsLog.log(
+                "Failed to register the metrics: " + e.getMessage()
+            );
+        }
+    }
+
+    /**
+     * Gets the time an operation starts.
+     *
+     * @return The time in nanoseconds, to be passed on to
+     *         {@link #record(Operation, long, boolean)}.
+     */
+    public long start() {
+        return System.nanoTime();
+    }
+
+    /**
+     * Records a create, lookup, update or delete that started at
+     * the given time and ends now.
+     *
+     * @param operation The operation.
+     * @param start The time the operation started, from {@link #start()}.
+     * @param succeeded Whether the contact was found, or for a create,
+     *        its social security number was free. An operation that
+     *        failed for another reason, such as an invalid detail,
+     *        is not a miss.
+     */
+    public void record(final Operation operation, final long start,
+            final boolean succeeded) {
+        final long latency = System.nanoTime() - start;
+        latencies.get(operation).record(latency);
+        if (!succeeded) {
+            misses.get(operation).increment();
+        }
+        final ContactsJfrEvents.Operation event =
+            new ContactsJfrEvents.Operation();
+        if (event.isEnabled()) {
+            event.operation = operation.name();
+            event.succeeded = succeeded;
+            event.latency = latency;
+            event.commit();
+        }
+    }
+
+    /**
+     * Records a batch that started at the given time and ends now.
+     *
+     * @param start The time the batch started, from {@link #start()}.
+     * @param changes The number of changes in the batch.
+     * @param failures The number of changes that failed.
+     */
+    public void recordBatch(final long start, final int changes,
+            final int failures) {
+        final long latency = System.nanoTime() - start;
+        latencies.get(Operation.BATCH).record(latency);
+        batchChanges.add(changes);
+        batchFailures.add(failures);
+        final ContactsJfrEvents.Batch event = new ContactsJfrEvents.Batch();
+        if (event.isEnabled()) {
+            event.changes = changes;
+            event.failures = failures;
+            event.latency = latency;
+            event.commit();
+        }
+    }
+
+    /**
+     * Records loading or saving a file that started at the given time
+     * and ends now.
+     *
+     * @param operation {@link Operation#LOAD} or {@link Operation#SAVE}.
+     * @param start The time loading or saving started,
+     *        from {@link #start()}.
+     * @param file The name of the file.
+     * @param size The size of the file in bytes.
+     * @param contacts The number of contacts loaded or saved.
+     */
+    public void recordFile(final Operation operation, final long start,
+            final String file, final long size, final int contacts) {
+        final long latency = System.nanoTime() - start;
+        latencies.get(operation).record(latency);
+        bytes.get(operation).add(size);
+        final ContactsJfrEvents.File event = new ContactsJfrEvents.File();
+        if (event.isEnabled()) {
+            event.operation = operation.name();
+            event.file = file;
+            event.bytes = size;
+            event.contacts = contacts;
+            event.latency = latency;
+            event.commit();
+        }
+    }
+
+    /**
+     * Records a detail that failed validation.
+     *
+     * @param field The detail.
+     */
+    public void recordValidationFailure(final ContactField field) {
+        validationFailures.get(field).increment();
+        final ContactsJfrEvents.ValidationFailure event =
+            new ContactsJfrEvents.ValidationFailure();
+        if (event.isEnabled()) {
+            event.field = field.name();
+            event.commit();
+        }
+    }
+
+    /**
+     * Gets the latency histogram of an operation.
+     *
+     * @param operation The operation.
+     * @return The histogram.
+     */
+    public LatencyHistogram getLatency(final Operation operation) {
+        return latencies.get(operation);
+    }
+
+    @Override
+    public int getContactCount() {
+        return ContactsManager.getContactsSize();
+    }
+
+    @Override
+    public Map<String, Long> getCounters() {
+        final Map<String, Long> counters = new LinkedHashMap<>();
+        counters.put("contacts", (long) getContactCount());
+        for (Operation operation : Operation.values()) {
+            final String name = name(operation);
+            counters.put(name + ".count",
+                latencies.get(operation).getCount());
+            if (operation.compareTo(Operation.DELETE) <= 0) {
+                counters.put(name + ".misses", misses.get(operation).sum());
+            }
+        }
+        counters.put("batch.changes", batchChanges.sum());
+        counters.put("batch.failures", batchFailures.sum());
+        if (ContactsManager.getStore() instanceof DiskContactStore) {
+            final DiskContactStore store =
+                (DiskContactStore) ContactsManager.getStore();
+            counters.put("cache.size", (long) store.getCachedCount());
+            counters.put("cache.hits", store.getCacheHits());
+            counters.put("cache.misses", store.getCacheMisses());
+            counters.put("cache.evictions", store.getCacheEvictions());
+            counters.put("cache.writebacks", store.getWriteBacks());
+        }
+        counters.put("load.bytes", bytes.get(Operation.LOAD).sum());
+        counters.put("save.bytes", bytes.get(Operation.SAVE).sum());
+        for (ContactField field : ContactField.values()) {
+            counters.put("validation.failures." + name(field),
+                validationFailures.get(field).sum());
+        }
+        return counters;
+    }
+
+    @Override
+    public Map<String, Double> getLatencies() {
+        final Map<String, Double> values = new LinkedHashMap<>();
+        for (Operation operation : Operation.values()) {
+            final LatencyHistogram histogram = latencies.get(operation);
+            final String name = name(operation);
+            values.put(name + ".mean",
+                histogram.getMean() / NANOS_PER_MICRO);
+            for (double percentile : PERCENTILES) {
+                values.put(name + ".p" + format(percentile),
+                    histogram.getPercentile(percentile) / NANOS_PER_MICRO);
+            }
+            values.put(name + ".max", histogram.getMax() / NANOS_PER_MICRO);
+        }
+        return values;
+    }
+
+    @Override
+    public String dump() {
+        final StringBuilder text = new StringBuilder();
+        for (Map.Entry<String, Long> counter : getCounters().entrySet()) {
+            text.append(counter.getKey()).append(' ')
+                .append(counter.getValue()).append('\n');
+        }
+        for (Map.Entry<String, Double> latency
+                : getLatencies().entrySet()) {
+            text.append(latency.getKey()).append(".us ")
+                .append(format(latency.getValue())).append('\n');
+        }
+        return text.toString();
+    }
+
+    /**
+     * Gets the name of an operation or a detail used in the metrics.
+     *
+     * @param constant The operation or detail.
+     * @return The name in lower case.
+     */
+    private static String name(final Enum<?> constant) {
+        return constant.name().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Formats a number with at most three decimals.
+     *
+     * @param value The number.
+     * @return The formatted number.
+     */
+    private static String format(final double value) {
+        return String.format(Locale.ROOT, "%.3f", value)
+            .replaceAll("\\.?0+$", "");
+    }
+}
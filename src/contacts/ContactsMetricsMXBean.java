@@ -0,0 +1,42 @@
+package contacts;
+
+import java.util.Map;
+
+/**
+ * The management interface of {@link ContactsMetrics}, registered with
+ * the platform MBean server so that the metrics can be read with
+ * JConsole, VisualVM or any other JMX client.
+ */
+public interface ContactsMetricsMXBean {
+    /**
+     * Gets the number of contacts.
+     *
+     * @return The number of contacts.
+     */
+    int getContactCount();
+
+    /**
+     * Gets the counters: the number of each operation and of those that
+     * found no contact, the validation failures of each detail and the
+     * bytes loaded and saved.
+     *
+     * @return The counters keyed by name, such as {@code create.count}.
+     */
+    Map<String, Long> getCounters();
+
+    /**
+     * Gets the mean, median, 90th, 99th and 99.9th percentile and the
+     * largest latency of each operation.
+     *
+     * @return The latencies in microseconds keyed by name,
+     *         such as {@code lookup.p99}.
+     */
+    Map<String, Double> getLatencies();
+
+    /**
+     * Gets every metric as text, one per line.
+     *
+     * @return The metrics.
+     */
+    String dump();
+}
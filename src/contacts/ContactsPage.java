@@ -0,0 +1,55 @@
+package contacts;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * One page of a contact listing, together with the cursor of the page
+ * after it.
+ */
+public final class ContactsPage {
+    /** The contacts of the page. */
+    private final List<Person> contacts;
+
+    /** The cursor of the next page, or null if this is the last page. */
+    private final String nextCursor;
+
+    /**
+     * Creates a page.
+     *
+     * @param contacts The contacts of the page.
+     * @param nextCursor The cursor of the next page, or null if there
+     *        are no more contacts.
+     */
+    ContactsPage(final List<Person> contacts, final String nextCursor) {
+        this.contacts = Collections.unmodifiableList(contacts);
+        this.nextCursor = nextCursor;
+    }
+
+    /**
+     * Gets the contacts of the page.
+     *
+     * @return The contacts in listing order.
+     */
+    public List<Person> getContacts() {
+        return contacts;
+    }
+
+    /**
+     * Gets the cursor to pass to get the next page.
+     *
+     * @return The cursor, or null if this is the last page.
+     */
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    /**
+     * Checks whether there are more contacts after this page.
+     *
+     * @return {@code true} if there is a next page.
+     */
+    public boolean hasNext() {
+        return nextCursor != null;
+    }
+}
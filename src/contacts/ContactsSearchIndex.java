@@ -0,0 +1,719 @@
+package contacts;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * An in-memory prefix search index over the names, phone numbers,
+ * email addresses and home addresses of the contacts.
+ *
+ * Every detail is cut into words that are folded to lower case the
+ * Finnish way: Å, Ä and Ö become å, ä and ö and stay letters of their
+ * own, so "mäki" does not find "Maki". The words are kept in a sorted
+ * map from word to the social security numbers of the contacts having
+ * it, and a prefix query reads the range of words starting with the
+ * prefix, the same way walking down a trie would. Phone numbers are also
+ * indexed by their digits and, for Finnish numbers, in their national
+ * form, so both "+35840" and "040" find "+358401234567".
+ *
+ * The index is a listener of the ContactsManager and is kept up to date
+ * as contacts are created, changed and deleted. It is built from the
+ * contact store on the first search, so it costs nothing until used.
+ * Searches never lock. Changes to different contacts are indexed at
+ * the same time, each word under one of a fixed set of lock stripes
+ * chosen by the word, and only wait for a build in progress.
+ */
+public final class ContactsSearchIndex implements ContactsListener {
+    /** The Finnish country calling code of phone numbers. */
+    private static final String FINNISH_COUNTRY_CODE = "358";
+
+    /** The most words of the index a query word is checked against. */
+    private static final int MAX_FILTER_WORDS = 16;
+
+    /** The number of lock stripes of the words, a power of two. */
+    private static final int WORD_LOCK_STRIPES = 64;
+
+    /** The details that are searched. */
+    private static final ContactField[] SEARCHED_FIELDS = {
+        ContactField.FIRST_NAME, ContactField.LAST_NAME,
+        ContactField.PHONE_NUMBER, ContactField.EMAIL_ADDRESS,
+        ContactField.ADDRESS
+    };
+
+    /**
+     * The words keyed to the SSNs of the contacts having them. A word
+     * of a single contact maps to its SSN as a String, a word of many
+     * contacts to a concurrent Set of their SSNs.
+     */
+    private volatile ConcurrentSkipListMap<String, Object> words =
+        new ConcurrentSkipListMap<>();
+
+    /** The store the contacts are looked up from. */
+    private final ContactStore store;
+
+    /** Whether the index has been built. */
+    private volatile boolean built;
+
+    /**
+     * The lock held exclusively while the index is built or emptied,
+     * and shared by changes made before the index is known to be built,
+     * so that a build never misses a change.
+     */
+    private final ReentrantReadWriteLock buildLock =
+        new ReentrantReadWriteLock();
+
+    /** The locks of the words, one for each stripe. */
+    private final Object[] wordLocks = new Object[WORD_LOCK_STRIPES];
+
+    /**
+     * Creates an empty index over the given store.
+     *
+     * @param store The store holding the contacts.
+     */
+    public ContactsSearchIndex(final ContactStore store) {
+        this.store = store;
+        for (int i = 0; i < WORD_LOCK_STRIPES; i++) {
+            wordLocks[i] = new Object();
+        }
+    }
+
+    /**
+     * Finds the contacts having a word starting with each word of the
+     * query, in no particular order. For example "mat kor" finds
+     * Matti Korhonen, and "virtanen helsinki" finds the Virtanens
+     * living in Helsinki.
+     *
+     * @param query The words to search for, separated by spaces.
+     * @param limit The maximum number of contacts to find.
+     * @return The contacts found.
+     */
+    public List<Person> search(final String query, final int limit) {
+        if (!built) {
+            build();
+        }
+        final List<String> queryWords = queryWords(query);
+        if (queryWords.isEmpty() || limit <= 0) {
+            return Collections.emptyList();
+        }
+        // The contacts of the rarest word are read, and the other
+        // words are checked against each of those contacts.
+        Map<String, Object> leading = null;
+        long leadingCount = Long.MAX_VALUE;
+        for (String word : queryWords) {
+            final Map<String, Object> range = prefixRange(word);
+            final long count = countUpTo(range, leadingCount);
+            if (count < leadingCount) {
+                leading = range;
+                leadingCount = count;
+            }
+        }
+        // Words matching only a few words of the index are checked
+        // against the index before the contact is looked up at all.
+        final List<List<Object>> filters = new ArrayList<>();
+        for (String word : queryWords) {
+            final Map<String, Object> range = prefixRange(word);
+            if (range != leading) {
+                final List<Object> filter = new ArrayList<>();
+                for (Object ssns : range.values()) {
+                    filter.add(ssns);
+                    if (filter.size() > MAX_FILTER_WORDS) {
+                        break;
+                    }
+                }
+                if (filter.size() <= MAX_FILTER_WORDS) {
+                    filters.add(filter);
+                }
+            }
+        }
+        final Set<String> seen = new HashSet<>();
+        final List<Person> found = new ArrayList<>();
+        for (Object ssns : leading.values()) {
+            for (String ssn : ssnsOf(ssns)) {
+                if (!seen.add(ssn) || !passes(filters, ssn)) {
+                    continue;
+                }
+                final Person person = store.get(ssn);
+                if (person != null && matches(person, queryWords)) {
+                    found.add(person);
+                    if (found.size() == limit) {
+                        return found;
+                    }
+                }
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Counts the words in the index.
+     *
+     * @return The number of distinct words.
+     */
+    public int size() {
+        return words.size();
+    }
+
+    /**
+     * Indexes every contact of the store, unless another thread
+     * already did. The words are gathered into a hash map first and
+     * then sorted once, which is much faster than inserting them into
+     * the sorted map one by one. Changes made meanwhile wait for the
+     * build and are indexed after it.
+     */
+    private void build() {
+        buildLock.writeLock().lock();
+        try {
+            if (!built) {
+                buildWords();
+            }
+        } finally {
+            buildLock.writeLock().unlock();
+        }
+    }
+
+    /** Gathers and sorts the words of every contact of the store. */
+    private void buildWords() {
+        final HashMap<String, Object> gathered = new HashMap<>();
+        final Set<String> personWords = new HashSet<>();
+        for (Person person : store) {
+            final String ssn = person.getSsn();
+            personWords.clear();
+            addWords(personWords, person);
+            for (String word : personWords) {
+                gathered.merge(word, ssn, (ssns, added) -> {
+                    if (ssns instanceof String) {
+                        final Set<String> set = ConcurrentHashMap.newKeySet();
+                        set.add((String) ssns);
+                        set.add(ssn);
+                        return set;
+                    }
+                    setOf(ssns).add(ssn);
+                    return ssns;
+                });
+            }
+        }
+        words = new ConcurrentSkipListMap<>(new TreeMap<>(gathered));
+        built = true;
+    }
+
+    /**
+     * Empties the index so that it is built again on the next search.
+     * No contact may change meanwhile.
+     */
+    public void reset() {
+        buildLock.writeLock().lock();
+        try {
+            built = false;
+            words.clear();
+        } finally {
+            buildLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Checks whether the index is built, so changes have to be indexed,
+     * first waiting for a build in progress to end.
+     *
+     * @return {@code true} if the index is built.
+     */
+    private boolean isBuilt() {
+        if (!built) {
+            buildLock.readLock().lock();
+            buildLock.readLock().unlock();
+        }
+        return built;
+    }
+
+    @Override
+    public void contactCreated(final Person person) {
+        if (isBuilt()) {
+            add(person);
+        }
+    }
+
+    @Override
+    public void contactUpdated(final Person person,
+            final ContactField field, final String oldValue) {
+        if (!isSearched(field) || !isBuilt()) {
+            return;
+        }
+        final Set<String> current = wordsOf(person);
+        final Set<String> old = new HashSet<>();
+        addWords(old, field, oldValue);
+        for (String word : old) {
+            if (!current.contains(word)) {
+                removeWord(word, person.getSsn());
+            }
+        }
+        final Set<String> added = new HashSet<>();
+        addWords(added, field, person.getDetail(field));
+        for (String word : added) {
+            addWord(word, person.getSsn());
+        }
+    }
+
+    @Override
+    public void contactDeleted(final Person person) {
+        if (!isBuilt()) {
+            return;
+        }
+        for (String word : wordsOf(person)) {
+            removeWord(word, person.getSsn());
+        }
+    }
+
+    @Override
+    public void contactsCleared() {
+        buildLock.writeLock().lock();
+        try {
+            words.clear();
+        } finally {
+            buildLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Indexes every word of a contact.
+     *
+     * @param person The contact.
+     */
+    private void add(final Person person) {
+        for (String word : wordsOf(person)) {
+            addWord(word, person.getSsn());
+        }
+    }
+
+    /**
+     * Adds a contact to the contacts having a word.
+     *
+     * @param word The word.
+     * @param ssn The social security number of the contact.
+     */
+    private void addWord(final String word, final String ssn) {
+        synchronized (lockFor(word)) {
+            final Object ssns = words.get(word);
+            if (ssns == null) {
+                words.put(word, ssn);
+            } else if (ssns instanceof String) {
+                if (!ssns.equals(ssn)) {
+                    final Set<String> set = ConcurrentHashMap.newKeySet();
+                    set.add((String) ssns);
+                    set.add(ssn);
+                    words.put(word, set);
+                }
+            } else {
+                setOf(ssns).add(ssn);
+            }
+        }
+    }
+
+    /**
+     * Removes a contact from the contacts having a word, and the
+     * word itself once no contact has it.
+     *
+     * @param word The word.
+     * @param ssn The social security number of the contact.
+     */
+    private void removeWord(final String word, final String ssn) {
+        synchronized (lockFor(word)) {
+            final Object ssns = words.get(word);
+            if (ssns instanceof String) {
+                if (ssns.equals(ssn)) {
+                    words.remove(word);
+                }
+            } else if (ssns != null) {
+                final Set<String> set = setOf(ssns);
+                set.remove(ssn);
+                if (set.isEmpty()) {
+                    words.remove(word);
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets the lock of the stripe of a word.
+     *
+     * @param word The word.
+     * @return The lock.
+     */
+    private Object lockFor(final String word) {
+        final int hash = word.hashCode();
+        return wordLocks[(hash ^ (hash >>> 16)) & (WORD_LOCK_STRIPES - 1)];
+    }
+
+    /**
+     * Gets the words starting with the given prefix.
+     *
+     * @param prefix The prefix.
+     * @return The words and the SSNs of the contacts having them.
+     */
+    private Map<String, Object> prefixRange(final String prefix) {
+        return words.subMap(prefix, true, prefix + Character.MAX_VALUE, false);
+    }
+
+    /**
+     * Checks whether a contact has one of the words of every filter.
+     *
+     * @param filters The SSNs of the words of each filter.
+     * @param ssn The social security number of the contact.
+     * @return {@code true} if every filter has the contact.
+     */
+    private static boolean passes(final List<List<Object>> filters,
+            final String ssn) {
+        for (List<Object> filter : filters) {
+            boolean found = false;
+            for (Object ssns : filter) {
+                if (ssns instanceof String ? ssns.equals(ssn)
+                        : setOf(ssns).contains(ssn)) {
+                    found = true;
+                    break;
+                }
+            }
+            if (!found) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Counts the contacts of a range of words, stopping early once the
+     * count reaches the given limit.
+     *
+     * @param range The range of words.
+     * @param limit The count after which counting stops.
+     * @return The count, or the limit if the count reached it.
+     */
+    private static long countUpTo(final Map<String, Object> range,
+            final long limit) {
+        long count = 0;
+        for (Object ssns : range.values()) {
+            count += ssns instanceof String ? 1 : setOf(ssns).size();
+            if (count >= limit) {
+                return limit;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Gets the SSNs stored for a word as a collection.
+     *
+     * @param ssns A single SSN or a Set of them.
+     * @return The SSNs.
+     */
+    private static Iterable<String> ssnsOf(final Object ssns) {
+        return ssns instanceof String
+            ? Collections.singletonList((String) ssns) : setOf(ssns);
+    }
+
+    /**
+     * Casts the SSNs stored for a word of many contacts.
+     *
+     * @param ssns The Set of SSNs.
+     * @return The Set.
+     */
+    @SuppressWarnings("unchecked")
+    private static Set<String> setOf(final Object ssns) {
+        return (Set<String>) ssns;
+    }
+
+    /**
+     * Checks whether a contact has a word starting with each query word.
+     * The details are scanned in place, without cutting them into words.
+     *
+     * @param person The contact.
+     * @param queryWords The folded words of the query.
+     * @return {@code true} if every query word matches.
+     */
+    private static boolean matches(final Person person,
+            final List<String> queryWords) {
+        for (String queryWord : queryWords) {
+            boolean match = false;
+            for (ContactField field : SEARCHED_FIELDS) {
+                final String value = person.getDetail(field);
+                if (value != null && (field == ContactField.PHONE_NUMBER
+                        ? phoneMatches(value, queryWord)
+                        : hasWordStartingWith(value, queryWord))) {
+                    match = true;
+                    break;
+                }
+            }
+            if (!match) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Checks whether text has a word, or for email addresses the whole
+     * text, starting with the given prefix once folded.
+     *
+     * @param text The text.
+     * @param prefix The folded prefix.
+     * @return {@code true} if a word starts with the prefix.
+     */
+    private static boolean hasWordStartingWith(final String text,
+            final String prefix) {
+        for (int i = 0; i + prefix.length() <= text.length(); i++) {
+            final boolean wordStart = i == 0
+                || (Character.isLetterOrDigit(text.charAt(i))
+                && !Character.isLetterOrDigit(text.charAt(i - 1)));
+            if (wordStart && startsWithFolded(text, i, prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Checks whether a phone number starts with the given digits,
+     * written either with or without the Finnish country code.
+     *
+     * @param phoneNumber The phone number.
+     * @param prefix The digits.
+     * @return {@code true} if the phone number starts with the digits.
+     */
+    private static boolean phoneMatches(final String phoneNumber,
+            final String prefix) {
+        final int digits = phoneNumber.startsWith("+") ? 1 : 0;
+        if (startsWithFolded(phoneNumber, digits, prefix)) {
+            return true;
+        }
+        final int national = 1 + FINNISH_COUNTRY_CODE.length();
+        return phoneNumber.startsWith("+" + FINNISH_COUNTRY_CODE)
+            && prefix.startsWith("0")
+            && phoneNumber.regionMatches(national, prefix, 1,
+                prefix.length() - 1);
+    }
+
+    /**
+     * Checks whether text folded has the prefix at the given position.
+     *
+     * @param text The text.
+     * @param offset The position in the text.
+     * @param prefix The folded prefix.
+     * @return {@code true} if the prefix is there.
+     */
+    private static boolean startsWithFolded(final String text,
+            final int offset, final String prefix) {
+        if (offset + prefix.length() > text.length()) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length(); i++) {
+            if (fold(text.charAt(offset + i)) != prefix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Checks whether a detail is searched.
+     *
+     * @param field The detail.
+     * @return {@code true} if the detail is indexed.
+     */
+    private static boolean isSearched(final ContactField field) {
+        return field != ContactField.SSN;
+    }
+
+    /**
+     * Gets every indexed word of a contact.
+     *
+     * @param person The contact.
+     * @return The folded words.
+     */
+    private static Set<String> wordsOf(final Person person) {
+        final Set<String> result = new HashSet<>();
+        addWords(result, person);
+        return result;
+    }
+
+    /**
+     * Adds every indexed word of a contact.
+     *
+     * @param result The set to add the words to.
+     * @param person The contact.
+     */
+    private static void addWords(final Set<String> result,
+            final Person person) {
+        for (ContactField field : SEARCHED_FIELDS) {
+            addWords(result, field, person.getDetail(field));
+        }
+    }
+
+    /**
+     * Adds the indexed words of one detail. Names and addresses are cut
+     * into words at everything but letters and digits. Email addresses
+     * are indexed whole and by their parts, and phone numbers by their
+     * digits.
+     *
+     * @param result The set to add the words to.
+     * @param field The detail.
+     * @param value The value of the detail, may be null.
+     */
+    private static void addWords(final Set<String> result,
+            final ContactField field, final String value) {
+        if (value == null || value.isEmpty()) {
+            return;
+        }
+        if (field == ContactField.PHONE_NUMBER) {
+            final String digits = digitsOf(value);
+            result.add(digits);
+            if (value.startsWith("+" + FINNISH_COUNTRY_CODE)) {
+                result.add("0"
+                    + digits.substring(FINNISH_COUNTRY_CODE.length()));
+            }
+            return;
+        }
+        final String folded = fold(value);
+        if (field == ContactField.EMAIL_ADDRESS) {
+            result.add(folded);
+        }
+        int start = -1;
+        for (int i = 0; i <= folded.length(); i++) {
+            final boolean wordChar = i < folded.length()
+                && Character.isLetterOrDigit(folded.charAt(i));
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                result.add(folded.substring(start, i));
+                start = -1;
+            }
+        }
+    }
+
+    /**
+     * Cuts a query into folded words. Words that look like phone numbers
+     * are reduced to their digits, and words of an email address are
+     * kept whole.
+     *
+     * @param query The query.
+     * @return The folded query words.
+     */
+    private static List<String> queryWords(final String query) {
+        final List<String> result = new ArrayList<>();
+        for (String part : query.trim().split("\\s+")) {
+            if (part.isEmpty()) {
+                continue;
+            }
+            final String word = isPhoneLike(part) ? digitsOf(part)
+                : part.indexOf('@') >= 0 ? fold(part)
+                : trimSeparators(fold(part));
+            if (!word.isEmpty()) {
+                result.add(word);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Removes the characters that are not letters or digits from both
+     * ends of a query word, such as the comma in "Helsinki,".
+     *
+     * @param word The folded word.
+     * @return The word without them.
+     */
+    private static String trimSeparators(final String word) {
+        int start = 0;
+        int end = word.length();
+        while (start < end && !Character.isLetterOrDigit(word.charAt(start))) {
+            start++;
+        }
+        while (end > start
+                && !Character.isLetterOrDigit(word.charAt(end - 1))) {
+            end--;
+        }
+        return word.substring(start, end);
+    }
+
+    /**
+     * Checks whether a query word is written like a phone number.
+     *
+     * @param word The query word.
+     * @return {@code true} if it is made of digits and a leading plus.
+     */
+    private static boolean isPhoneLike(final String word) {
+        for (int i = 0; i < word.length(); i++) {
+            final char ch = word.charAt(i);
+            if (!(ch >= '0' && ch <= '9') && !(ch == '+' && i == 0)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Keeps only the digits of a phone number.
+     *
+     * @param phoneNumber The phone number.
+     * @return The digits.
+     */
+    private static String digitsOf(final String phoneNumber) {
+        final StringBuilder digits = new StringBuilder(phoneNumber.length());
+        for (int i = 0; i < phoneNumber.length(); i++) {
+            final char ch = phoneNumber.charAt(i);
+            if (ch >= '0' && ch <= '9') {
+                digits.append(ch);
+            }
+        }
+        return digits.toString();
+    }
+
+    /**
+     * Folds text to lower case the Finnish way.
+     *
+     * @param text The text to fold.
+     * @return The folded text.
+     * @see #fold(char)
+     */
+    static String fold(final String text) {
+        char[] folded = null;
+        for (int i = 0; i < text.length(); i++) {
+            final char ch = text.charAt(i);
+            final char lower = fold(ch);
+            if (lower != ch && folded == null) {
+                folded = text.toCharArray();
+            }
+            if (folded != null) {
+                folded[i] = lower;
+            }
+        }
+        return folded == null ? text : new String(folded);
+    }
+
+    /**
+     * Folds a character to lower case the Finnish way. A-Z, Å, Ä and Ö
+     * are lowered directly, and other characters the way Java lowers
+     * them in any locale.
+     *
+     * @param ch The character to fold.
+     * @return The folded character.
+     */
+    static char fold(final char ch) {
+        if (ch >= 'A' && ch <= 'Z') {
+            return (char) (ch + ('a' - 'A'));
+        } else if (ch == 'Å') {
+            return 'å';
+        } else if (ch == 'Ä') {
+            return 'ä';
+        } else if (ch == 'Ö') {
+            return 'ö';
+        } else if (ch < 0x80) {
+            return ch;
+        }
+        return Character.toLowerCase(ch);
+    }
+}
@@ -0,0 +1,192 @@
+package contacts;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The segments holding the changes saved since the contacts file was
+ * last rewritten. Saving writes only the contacts that changed into a
+ * new segment, in the entry format of the {@link ContactsJournal}, and
+ * loading replays the segments in order on top of the contacts file.
+ *
+ * Segments are named after the generation of the contacts file they
+ * belong to and their number, such as {@code SavedContacts.segment.3.1}.
+ * Once the contacts file is rewritten with a newer generation, the
+ * segments of older generations are stale and are deleted instead of
+ * replayed, even if the program stopped before deleting them.
+ */
+public class ContactsSegments {
+    /** The directory holding the segments. */
+    private final Path directory;
+
+    /** The start of the names of the segments. */
+    private final String prefix;
+
+    /** The number of segments of the current generation. */
+    private int count;
+
+    /** The number of the last segment of the current generation. */
+    private int last;
+
+    /** The total size of the segments in bytes. */
+    private long size;
+
+    /**
+     * Creates the segments stored next to the given contacts file.
+     *
+     * @param file The contacts file.
+     * @param baseName The name of the contacts file without extension.
+     */
+    public ContactsSegments(final Path file, final String baseName) {
+        this.directory = file.toAbsolutePath().getParent();
+        this.prefix = baseName + ".segment.";
+    }
+
+    /**
+     * Replays the segments of the given generation in order into the
+     * store and deletes every other segment.
+     *
+     * @param generation The generation of the contacts file.
+     * @param store The store to apply the changes to.
+     * @return The number of segments replayed.
+     * @throws IOException If a segment cannot be read.
+     */
+    public synchronized int replay(final long generation,
+            final ContactStore store) throws IOException {
+        final TreeMap<Integer, Path> current = new TreeMap<>();
+        for (Path segment : list()) {
+            final int number = numberOf(segment, generation);
+            if (number > 0) {
+                current.put(number, segment);
+            } else {
+                Files.deleteIfExists(segment);
+            }
+        }
+        count = 0;
+        last = 0;
+        size = 0;
+        for (Map.Entry<Integer, Path> segment : current.entrySet()) {
+            ContactsJournal.replay(segment.getValue(), store, null);
+            count++;
+            last = segment.getKey();
+            size += Files.size(segment.getValue());
+        }
+        return count;
+    }
+
+    /**
+     * Writes the given changes into a new segment of the generation.
+     * The segment is written under a temporary name, forced to disk and
+     * then renamed, so a segment is never seen half written.
+     *
+     * @param generation The generation of the contacts file.
+     * @param entries The bodies of the journal entries of the changes.
+     * @return The name of the segment.
+     * @throws IOException If writing fails.
+     */
+    public synchronized String write(final long generation,
+            final List<ByteBuffer> entries) throws IOException {
+        final String name = prefix + generation + '.' + (last + 1);
+        final Path segment = directory.resolve(name);
+        final Path temp = directory.resolve(name + ".tmp");
+        final long written;
+        try (FileChannel channel = FileChannel.open(temp,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            written = ContactsJournal.writeEntries(entries, channel);
+            channel.force(true);
+        }
+        try {
+            Files.move(temp, segment, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, segment, StandardCopyOption.REPLACE_EXISTING);
+        }
+        count++;
+        last++;
+        size += written;
+        return name;
+    }
+
+    /**
+     * Deletes every segment, once the contacts file holds their changes
+     * or there are no contacts left.
+     *
+     * @throws IOException If a segment cannot be deleted.
+     */
+    public synchronized void deleteAll() throws IOException {
+        for (Path segment : list()) {
+            Files.deleteIfExists(segment);
+        }
+        count = 0;
+        last = 0;
+        size = 0;
+    }
+
+    /**
+     * Gets the number of segments of the current generation.
+     *
+     * @return The number of segments.
+     */
+    public synchronized int count() {
+        return count;
+    }
+
+    /**
+     * Gets the total size of the segments of the current generation.
+     *
+     * @return The size in bytes.
+     */
+    public synchronized long size() {
+        return size;
+    }
+
+    /**
+     * Lists every segment file, of any generation, including
+     * temporary files left behind.
+     *
+     * @return The segment files.
+     * @throws IOException If the directory cannot be read.
+     */
+    private List<Path> list() throws IOException {
+        try (DirectoryStream<Path> files =
+                Files.newDirectoryStream(directory, prefix + "*")) {
+            final List<Path> segments = new ArrayList<>();
+            for (Path file : files) {
+                segments.add(file);
+            }
+            return segments;
+        }
+    }
+
+    /**
+     * Gets the number of a segment of the given generation.
+     *
+     * @param segment The segment file.
+     * @param generation The generation.
+     * @return The number, or 0 if the file is not a complete segment
+     *         of the generation.
+     */
+    private int numberOf(final Path segment, final long generation) {
+        final String name = segment.getFileName().toString();
+        final String start = prefix + generation + '.';
+        if (!name.startsWith(start)) {
+            return 0;
+        }
+        try {
+            return Integer.parseInt(name.substring(start.length()));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,917 @@
+package contacts;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectStreamClass;
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Saves and loads the contacts of a {@link ContactBook} to and from a
+ * file. The static methods load the contacts of the ContactsManager
+ * from the contacts file and save them back into it, and every named
+ * book is saved in a file of its own the same way.
+ *
+ * Contacts are stored in the compact binary format described in
+ * {@link ContactRecordCodec}. Files written with Java serialization
+ * by earlier versions of the application are migrated on first load.
+ *
+ * Changes made during a session are appended to a
+ * {@link ContactsJournal} as they happen. A checkpoint folds the journal
+ * back into the saved contacts by writing only the contacts that
+ * changed, as tracked by the book, into a new one of the
+ * {@link ContactsSegments}. The contacts file is only rewritten once
+ * the segments have grown as large as it, so a save costs as much as
+ * the changes rather than as all contacts. Checkpoints run on a
+ * background thread and write temporary files that atomically replace
+ * the real ones, so nothing is ever left half written.
+ */
+public class ContactsSerializer {
+    /** The contacts file of the default book. */
+    private static volatile ContactsSerializer contactsFile =
+        new ContactsSerializer(ContactsManager.getBook(),
+            Path.of("SavedContacts.dat"));
+
+    /** The number of segments from which the contacts file is rewritten. */
+    private static final int MAX_SEGMENTS = 64;
+
+    /** The journal size below which the journal is never compacted. */
+    private static final long MIN_COMPACTION_SIZE = 1 << 20;
+
+    /** The time after which changes in the journal are checkpointed. */
+    private static final long CHECKPOINT_INTERVAL = 5 * 60 * 1000;
+
+    /** The time an idle checkpoint thread is kept, in seconds. */
+    private static final long CHECKPOINT_KEEP_ALIVE = 60;
+
+    /** The book whose contacts are saved in the file. */
+    private final ContactBook book;
+
+    /** The file name for saving and loading contacts. */
+    private final String fileName;
+
+    /** The file object representing the contacts file. */
+    private final File file;
+
+    /** The file name used by earlier versions of the application. */
+    private final String legacyFileName;
+
+    /** The file object representing the legacy serialization file. */
+    private final File legacyFile;
+
+    /** The file name of the journal of changes. */
+    private final String journalFileName;
+
+    /** The journal of changes made since the contacts file was written. */
+    private ContactsJournal journal;
+
+    /** The changes saved since the contacts file was rewritten. */
+    private final ContactsSegments segments;
+
+    /** The generation of the contacts file, see {@link ContactRecordCodec}. */
+    private volatile long generation;
+
+    /** What the last checkpoint saved, for telling the user. */
+    private volatile String lastSaved;
+
+    /** The time the last checkpoint was started. */
+    private long lastCheckpoint = System.currentTimeMillis();
+
+    /** The checkpoint that is being written, if any. */
+    private Future<Boolean> checkpoint;
+
+    /**
+     * The background thread writing the checkpoints of this book, so that
+     * a slow book never holds up another. It ends when idle, so a book
+     * that is no longer used keeps no thread.
+     */
+    private final ExecutorService checkpointer;
+
+    /**
+     * The number of threads decoding the chunks of the contacts file,
+     * set with {@code -Dcontacts.load.threads}. Defaults to the number
+     * of processors.
+     */
+    private static final String LOAD_THREADS = "contacts.load.threads";
+
+    /**
+     * Creates a serializer saving the contacts of a book in a file.
+     * The journal, the segments and the legacy file are kept next to it
+     * with the same base name.
+     *
+     * @param book The book whose contacts are saved.
+     * @param path The contacts file.
+     */
+    ContactsSerializer(final ContactBook book, final Path path) {
+        final String name = path.getFileName().toString();
+        final String baseName = name.endsWith(".dat")
+            ? name.substring(0, name.length() - ".dat".length()) : name;
+        this.book = book;
+        fileName = name;
+        file = path.toFile();
+        legacyFileName = baseName + ".ser";
+        legacyFile = path.resolveSibling(legacyFileName).toFile();
+        journalFileName = baseName + ".journal";
+        segments = new ContactsSegments(path, baseName);
+        checkpointer = new ThreadPoolExecutor(0, 1, CHECKPOINT_KEEP_ALIVE,
+            TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+                final Thread thread =
+                    new Thread(runnable, "contacts-checkpoint-" + baseName);
+                thread.setDaemon(true);
+                return thread;
+            });
+    }
+
+    /**
+     * Loads the contacts of the ContactsManager from the contacts file,
+     * see {@link #load()}.
+     */
+    public static void loadContactsFromFile() {
+        contactsFile.load();
+    }
+
+    /**
+     * Saves the contacts of the ContactsManager to the contacts file and
+     * closes the journal, see {@link #saveAndClose()}. This is meant to
+     * be called once when the program exits.
+     */
+    public static void saveContactsToFile() {
+        contactsFile.saveAndClose();
+    }
+
+    /**
+     * Writes every contact of the ContactsManager to the contacts file
+     * right away, see {@link #saveAll()}.
+     *
+     * @return {@code true} if the contacts were saved, {@code false} otherwise.
+     */
+    public static boolean saveSnapshot() {
+        return contactsFile.saveAll();
+    }
+
+    /**
+     * Changes the contacts file, for example to keep a benchmark away
+     * from the real contacts. The journal and the legacy file are kept
+     * next to it with the same base name. Must be called before loading.
+     *
+     * @param path The contacts file to use.
+     */
+    public static void useFile(final Path path) {
+        contactsFile = new ContactsSerializer(ContactsManager.getBook(), path);
+    }
+
+    /**
+     * Starts a background checkpoint of the contacts of the
+     * ContactsManager if needed, see {@link #checkpointIfDue()}.
+     * Safe to call from any thread, such as a scheduled one.
+     *
+     * @return {@code true} if a checkpoint was started,
+     *         {@code false} otherwise.
+     */
+    public static boolean checkpointIfNeeded() {
+        return contactsFile.checkpointIfDue();
+    }
+
+    /**
+     * If the file exits, this method loads contacts from the contacts file
+     * and adds them to the book, unless the contact store can
+     * serve them straight from the file. If only a legacy serialization
+     * file exists, its contacts are loaded and migrated to the new format.
+     * If the file exists but is corrupted, it is moved aside so that the
+     * program can continue. The changes saved in the segments of the
+     * contacts file are replayed on top of it. Finally the changes in
+     * the journal are replayed and the journal is opened for the
+     * changes to come.
+     */
+    synchronized void load() {
+        final ContactsMetrics metrics = book.getMetrics();
+        final long start = metrics.start();
+        try {
+            // Left behind if the program stopped while writing a checkpoint.
+            Files.deleteIfExists(tempPath());
+        } catch (IOException e) {
+            ContactsLog.log("Failed to delete " + tempPath().getFileName());
+        }
+
+        generation = 0;
+        if (!file.exists() && legacyFile.exists()) {
+            deleteSegments();
+            migrateLegacyFile();
+        } else if (file.exists()) {
+            try {
+                if (!book.getStore().attach(file.toPath())) {
+                    try (FileChannel channel = FileChannel.open(
+                            file.toPath(), StandardOpenOption.READ)) {
+                        readContacts(channel, book.getStore());
+                    }
+                }
+                try (FileChannel channel = FileChannel.open(
+                        file.toPath(), StandardOpenOption.READ)) {
+                    generation = ContactRecordCodec.readGeneration(channel);
+                }
+                replaySegments();
+                ContactsLog.log(
+                    "Loaded " + book.getContactsSize()
+                    + " contact/contacts from: " + fileName
+                );
+                if (legacyFile.exists()) {
+                    ContactsLog.log(
+                        legacyFileName + " was never migrated and is"
+                        + " ignored while " + fileName + " exists."
+                    );
+                }
+            } catch (IOException e) {
+                final Path corrupted =
+                    file.toPath().resolveSibling(fileName + ".corrupt");
+                ContactsLog.log(
+                    "Sorry but unfortunately " + fileName + " is corrupted\n"
+                    + "and the contacts saved in it can't be loaded.\n"
+                    + "It is moved to " + corrupted.getFileName() + "."
+                );
+                try {
+                    Files.move(file.toPath(), corrupted,
+                        StandardCopyOption.REPLACE_EXISTING);
+                } catch (IOException ex) {
+                    deleteFile();
+                }
+                deleteSegments();
+            }
+        } else {
+            deleteSegments();
+        }
+        openJournal();
+        metrics.recordFile(ContactsMetrics.Operation.LOAD, start, fileName,
+            file.length() + (journal == null ? 0 : journal.size()),
+            book.getContactsSize());
+    }
+
+    /**
+     * Replays the segments of the contacts file into the book.
+     * If a segment can't be read, the contacts loaded so far are
+     * rewritten by the next save.
+     */
+    private void replaySegments() {
+        try {
+            segments.replay(generation, book.getStore());
+        } catch (IOException e) {
+            ContactsLog.log(
+                "Failed to load the changes saved next to " + fileName
+                + ": " + e.getMessage()
+            );
+            book.markAllUnsaved();
+        }
+    }
+
+    /**
+     * Replays the journal into the book and
+     * starts recording the changes made to the contacts.
+     * Replayed changes are checkpointed right away, so the journal
+     * does not grow from session to session, and only the changes
+     * made in this session count as unsaved.
+     */
+    private void openJournal() {
+        journal = new ContactsJournal(
+            file.toPath().resolveSibling(journalFileName)
+        );
+        try {
+            final int replayed = journal.replay(book.getStore(),
+                book.getChangeTracker());
+            if (replayed > 0) {
+                ContactsLog.log(
+                    "Recovered " + replayed + " change/changes from: "
+                    + journalFileName
+                );
+            }
+            journal.open();
+            book.addListener(journal);
+            if (replayed > 0) {
+                startCheckpoint(false);
+            }
+        } catch (IOException e) {
+            ContactsLog.log(
+                "Failed to open " + journalFileName + ".\n"
+                + "Changes will only be saved on exit."
+            );
+            journal = null;
+        }
+    }
+
+    /**
+     * Reads the header and all records from the channel and
+     * adds the decoded contacts to the given store.
+     *
+     * @param channel The channel to read from.
+     * @param store The store to add the contacts to.
+     * @throws IOException If reading fails or the file is malformed.
+     */
+    private static void readContacts(final FileChannel channel,
+            final ContactStore store) throws IOException {
+        final int threads = Integer.getInteger(LOAD_THREADS,
+            Runtime.getRuntime().availableProcessors());
+        if (threads > 1) {
+            final ContactRecordCodec.Chunk[] chunks =
+                ContactRecordCodec.readChunkDirectory(channel);
+            if (chunks != null && chunks.length > 1) {
+                readChunks(channel, chunks, threads, store);
+                return;
+            }
+        }
+        ByteBuffer buffer =
+            ByteBuffer.allocate(ContactRecordCodec.BUFFER_SIZE).flip();
+        buffer = ContactRecordCodec.fill(
+            buffer, channel, ContactRecordCodec.HEADER_SIZE
+        );
+        final int recordCount = ContactRecordCodec.readHeader(buffer);
+
+        for (int i = 0; i < recordCount; i++) {
+            buffer = ContactRecordCodec.fill(
+                buffer, channel, ContactRecordCodec.RECORD_PREFIX_SIZE
+            );
+            final int recordSize = ContactRecordCodec.RECORD_PREFIX_SIZE
+                + buffer.getInt(buffer.position());
+            buffer = ContactRecordCodec.fill(buffer, channel, recordSize);
+            store.add(ContactRecordCodec.readRecord(buffer));
+        }
+    }
+
+    /**
+     * Decodes the chunks of the contacts file in parallel and adds the
+     * decoded contacts to the given store in file order. The store
+     * may add them in parallel too, see {@link ContactStore#addAll}.
+     *
+     * @param channel The channel to read from.
+     * @param chunks The chunks of the file.
+     * @param threads The number of threads to use.
+     * @param store The store to add the contacts to.
+     * @throws IOException If reading fails or the file is malformed.
+     */
+    private static void readChunks(final FileChannel channel,
+            final ContactRecordCodec.Chunk[] chunks, final int threads,
+            final ContactStore store) throws IOException {
+        final ByteBuffer header = ByteBuffer.allocate(
+            ContactRecordCodec.HEADER_SIZE);
+        while (header.hasRemaining()) {
+            if (channel.read(header, header.position()) < 0) {
+                throw new EOFException("Unexpected end of contacts file");
+            }
+        }
+        final int recordCount = ContactRecordCodec.readHeader(header.flip());
+        long chunkedCount = 0;
+        final List<Callable<Person[]>> tasks = new ArrayList<>();
+        for (ContactRecordCodec.Chunk chunk : chunks) {
+            chunkedCount += chunk.getCount();
+            tasks.add(() -> ContactRecordCodec.readChunk(channel, chunk));
+        }
+        if (chunkedCount != recordCount) {
+            throw new StreamCorruptedException("Invalid chunk directory");
+        }
+        final ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            final List<Person[]> decoded = new ArrayList<>(chunks.length);
+            for (Future<Person[]> chunk : pool.invokeAll(tasks)) {
+                decoded.add(chunk.get());
+            }
+            pool.submit(() -> store.addAll(decoded)).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while loading", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Loads contacts from the legacy Java serialization file and
+     * saves them in the binary format. The legacy file is deleted
+     * once the contacts have been saved in the new format. If the
+     * legacy file can't be read to the end, the contacts read so far
+     * are dropped rather than saved as if they were all of them, and
+     * the legacy file is kept.
+     */
+    private void migrateLegacyFile() {
+        try (
+            LegacyInputStream ois =
+            new LegacyInputStream(new FileInputStream(legacyFile))) {
+            while (true) {
+                /*
+                 * Loading Person objects from the file
+                 * till the end of file exception occurs.
+                 * The end must fall between two objects, otherwise
+                 * the last one was cut off.
+                 */
+                final long position = ois.position();
+                try {
+                    Person person = (Person) ois.readObject();
+                    book.addContact(person);
+                } catch (EOFException e) {
+                    if (ois.position() != position) {
+                        throw new StreamCorruptedException(
+                            "The last contact is cut off");
+                    }
+                    break;
+                }
+            }
+        } catch (IOException | ClassNotFoundException e) {
+            book.getStore().clear();
+            ContactsLog.log(
+                "Sorry but unfortunately " + legacyFileName + " is corrupted\n"
+                + "and could not be migrated to " + fileName + ".\n"
+                + "None of its contacts were loaded, and it is kept"
+                + " so that the migration can be retried."
+            );
+            return;
+        }
+
+        ContactsLog.log(
+            "Migrating " + book.getContactsSize()
+            + " contact/contacts from: " + legacyFileName
+        );
+        if (writeContacts() && !legacyFile.delete()) {
+            ContactsLog.log(
+                "Failed to delete " + legacyFileName + ".\n"
+                + "Please delete the file manually."
+            );
+        }
+    }
+
+    /**
+     * Saves contacts from the book to the contacts file.
+     * If there are no contacts to save and the file exists, file is deleted.
+     * Nothing is written if nothing changed since the contacts were saved.
+     * When the changes are already in the journal, only the journal is
+     * forced to disk unless it has grown large enough to be checkpointed.
+     * This waits for a running checkpoint and then closes the journal,
+     * unless saving failed, so that no change made later is lost.
+     *
+     * @return {@code true} if the contacts were saved, {@code false} otherwise.
+     */
+    synchronized boolean saveAndClose() {
+        awaitCheckpoint();
+        boolean saved = true;
+        if (book.getContacts().isEmpty()) {
+            if (file.exists()) {
+                ContactsLog.log("No contacts to save.");
+                deleteFile();
+            }
+            deleteSegments();
+            truncateJournal();
+        } else if (!book.hasUnsavedChanges()) {
+            ContactsLog.log("No changes to save.");
+        } else if (journal == null || journalNeedsCheckpoint()) {
+            saved = startCheckpoint(false) && awaitCheckpoint();
+            if (saved) {
+                ContactsLog.log("Saved " + lastSaved);
+            }
+        } else {
+            try {
+                final ContactsMetrics metrics = book.getMetrics();
+                final long start = metrics.start();
+                journal.sync();
+                metrics.recordFile(ContactsMetrics.Operation.SAVE, start,
+                    journalFileName, journal.size(),
+                    book.getContactsSize());
+                ContactsLog.log("Saved the changes to: " + journalFileName);
+            } catch (IOException e) {
+                saved = writeContacts();
+            }
+        }
+        if (saved && journal != null) {
+            book.removeListener(journal);
+            try {
+                journal.close();
+            } catch (IOException e) {
+                ContactsLog.log(
+                    "Failed to close " + journalFileName + ": "
+                    + e.getMessage()
+                );
+            }
+            journal = null;
+        }
+        return saved;
+    }
+
+    /**
+     * Writes every contact to the contacts file right away and folds the
+     * journal into it, waiting until the file is on disk.
+     *
+     * @return {@code true} if the contacts were saved, {@code false} otherwise.
+     */
+    synchronized boolean saveAll() {
+        awaitCheckpoint();
+        if (journal == null) {
+            return writeContacts();
+        }
+        return startCheckpoint(true) && awaitCheckpoint();
+    }
+
+    /**
+     * Saves the changes made since the contacts were last saved, into a
+     * new segment or by rewriting the contacts file, and waits until
+     * they are on disk. The journal stays open.
+     *
+     * @return {@code true} if the contacts are saved, {@code false} otherwise.
+     */
+    synchronized boolean saveChanges() {
+        awaitCheckpoint();
+        if (!book.hasUnsavedChanges()) {
+            return true;
+        }
+        return startCheckpoint(false) && awaitCheckpoint();
+    }
+
+    /**
+     * Starts a background checkpoint if the journal has grown large,
+     * or if the journal has held changes for longer than the checkpoint
+     * interval. Safe to call from any thread: the checkpoint takes the
+     * changes while every stripe of the book is locked, and the methods
+     * starting or awaiting checkpoints of the file run one at a time.
+     *
+     * @return {@code true} if a checkpoint was started,
+     *         {@code false} otherwise.
+     */
+    synchronized boolean checkpointIfDue() {
+        if (journal == null || (checkpoint != null && !checkpoint.isDone())) {
+            return false;
+        }
+        final boolean intervalPassed = journal.size() > 0
+            && System.currentTimeMillis() - lastCheckpoint
+            > CHECKPOINT_INTERVAL;
+        if (!intervalPassed && !journalNeedsCheckpoint()) {
+            return false;
+        }
+        return startCheckpoint(false);
+    }
+
+    /**
+     * Checks whether the journal has grown large enough to be
+     * checkpointed. Checkpoints only write the contacts that changed,
+     * so this does not depend on the size of the contacts file.
+     *
+     * @return {@code true} if the journal should be checkpointed.
+     */
+    private boolean journalNeedsCheckpoint() {
+        return journal.size() >= MIN_COMPACTION_SIZE;
+    }
+
+    /**
+     * Checks whether the segments have grown as large as the contacts
+     * file, so that the cost of rewriting the file is spread over at
+     * least as many bytes of changes, or so many that loading them
+     * would be slow.
+     *
+     * @return {@code true} if the contacts file should be rewritten.
+     */
+    private boolean segmentsNeedRewrite() {
+        return !file.exists() || segments.count() >= MAX_SEGMENTS
+            || segments.size() >= Math.max(MIN_COMPACTION_SIZE, file.length());
+    }
+
+    /**
+     * Takes the changes made since the last save, moving the journal
+     * aside before any further change can be made, and writes the
+     * changes into a new segment on the background thread. If the
+     * contacts file needs to be rewritten, a view of all contacts is
+     * taken and written instead. The moved journal is deleted once the
+     * changes are on disk.
+     *
+     * @param rewrite Whether to rewrite the contacts file in any case.
+     * @return {@code true} if the checkpoint was started,
+     *         {@code false} if the journal could not be moved aside.
+     */
+    private boolean startCheckpoint(final boolean rewrite) {
+        final ContactsJournal rotated = journal;
+        final List<ByteBuffer> changes;
+        final Collection<Person> snapshot;
+        try {
+            changes = rewrite || segmentsNeedRewrite()
+                ? null : book.takeChanges(rotated);
+            snapshot = changes == null
+                ? book.snapshotForSave(rotated) : null;
+        } catch (IOException e) {
+            ContactsLog.log(
+                "Failed to checkpoint " + journalFileName + ": "
+                + e.getMessage()
+            );
+            return false;
+        }
+        lastCheckpoint = System.currentTimeMillis();
+        checkpoint = checkpointer.submit(() -> {
+            try {
+                if (changes == null) {
+                    writeCheckpoint(snapshot);
+                    lastSaved = snapshot.size() + " contact/contacts to: "
+                        + fileName;
+                } else if (!changes.isEmpty()) {
+                    lastSaved = changes.size() + " change/changes to: "
+                        + writeSegment(changes);
+                }
+                if (rotated != null) {
+                    rotated.deleteRotated();
+                }
+                return true;
+            } catch (IOException e) {
+                book.markAllUnsaved();
+                ContactsLog.log(
+                    "Failed to save contact/contacts to\n"
+                    + fileName + ": " + e.getMessage()
+                );
+                return false;
+            }
+        });
+        return true;
+    }
+
+    /**
+     * Waits for the running checkpoint, if any, to finish.
+     *
+     * @return {@code true} if the last checkpoint succeeded,
+     *         {@code false} otherwise.
+     */
+    private boolean awaitCheckpoint() {
+        if (checkpoint == null) {
+            return false;
+        }
+        try {
+            return checkpoint.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (ExecutionException e) {
+            return false;
+        }
+    }
+
+    /** Empties the journal when there are no contacts left to recover. */
+    private void truncateJournal() {
+        if (journal == null) {
+            return;
+        }
+        try {
+            journal.truncate();
+        } catch (IOException e) {
+            ContactsLog.log(
+                "Failed to empty " + journalFileName + ": " + e.getMessage()
+            );
+        }
+    }
+
+    /**
+     * Writes every contact of the book to the contacts file.
+     *
+     * @return {@code true} if the contacts were saved, {@code false} otherwise.
+     */
+    private boolean writeContacts() {
+        try {
+            writeCheckpoint(book.snapshotForSave(null));
+        } catch (IOException e) {
+            ContactsLog.log("Failed to save contact/contacts to\n"
+             + fileName + ": " + e.getMessage() + ". Please try again."
+            );
+            return false;
+        }
+        ContactsLog.log(
+            "Saved " + book.getContactsSize()
+            + " contact/contacts to: " + fileName
+        );
+        return true;
+    }
+
+    /**
+     * Gets the temporary file that checkpoints are written to.
+     *
+     * @return The path of the temporary file.
+     */
+    private Path tempPath() {
+        return tempPath(file.toPath());
+    }
+
+    /**
+     * Gets the temporary file that a contacts file is replaced from.
+     *
+     * @param target The contacts file.
+     * @return The path of the temporary file.
+     */
+    private static Path tempPath(final Path target) {
+        return target.resolveSibling(target.getFileName() + ".tmp");
+    }
+
+    /**
+     * Replaces the contacts file with the given contacts without ever
+     * leaving it half written, see {@link #replaceFile}. The new file is
+     * one generation newer, so the segments it replaces are deleted, or
+     * ignored if deleting them fails.
+     *
+     * @param contacts The contacts to write.
+     * @throws IOException If writing fails. The contacts file is unchanged.
+     */
+    private void writeCheckpoint(final Collection<Person> contacts)
+            throws IOException {
+        final ContactsMetrics metrics = book.getMetrics();
+        final long start = metrics.start();
+        final long next = generation + 1;
+        replaceFile(file.toPath(), contacts, next);
+        generation = next;
+        deleteSegments();
+        try {
+            book.getStore().snapshotSaved(contacts, file.toPath());
+        } catch (IOException e) {
+            ContactsLog.log("Could not map the saved contacts: "
+                + e.getMessage());
+        }
+        metrics.recordFile(ContactsMetrics.Operation.SAVE, start, fileName,
+            file.length(), contacts.size());
+    }
+
+    /**
+     * Replaces a contacts file with the given contacts without ever
+     * leaving it half written. The contacts are written to a temporary
+     * file that is forced to disk and then atomically renamed over the
+     * contacts file. Finally the directory is forced so that the rename
+     * itself survives a crash.
+     *
+     * @param target The contacts file.
+     * @param contacts The contacts to write.
+     * @param fileGeneration The generation of the new file.
+     * @throws IOException If writing fails. The contacts file is unchanged.
+     */
+    private static void replaceFile(final Path target,
+            final Collection<Person> contacts, final long fileGeneration)
+            throws IOException {
+        final Path tempFile = tempPath(target);
+        writeSnapshot(tempFile, contacts, fileGeneration);
+        try {
+            Files.move(tempFile, target, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tempFile, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+        forceDirectory(target);
+    }
+
+    /**
+     * Writes changes into a new segment of the contacts file.
+     *
+     * @param changes The bodies of the journal entries of the changes.
+     * @return The name of the segment.
+     * @throws IOException If writing fails.
+     */
+    private String writeSegment(final List<ByteBuffer> changes)
+            throws IOException {
+        final ContactsMetrics metrics = book.getMetrics();
+        final long start = metrics.start();
+        final long sizeBefore = segments.size();
+        final String name = segments.write(generation, changes);
+        forceDirectory(file.toPath());
+        metrics.recordFile(ContactsMetrics.Operation.SAVE, start, name,
+            segments.size() - sizeBefore, changes.size());
+        return name;
+    }
+
+    /**
+     * Forces the directory of a contacts file to disk, so that
+     * renaming a file in it survives a crash.
+     *
+     * @param target The contacts file.
+     */
+    private static void forceDirectory(final Path target) {
+        final Path directory = target.toAbsolutePath().getParent();
+        try (FileChannel channel =
+                FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // Not every platform allows forcing a directory.
+        }
+    }
+
+    /** Deletes the segments of the contacts file. */
+    private void deleteSegments() {
+        try {
+            segments.deleteAll();
+        } catch (IOException e) {
+            ContactsLog.log(
+                "Failed to delete the changes saved next to " + fileName
+                + ": " + e.getMessage()
+            );
+        }
+    }
+
+    /**
+     * Writes the given contacts into a file in the binary format.
+     *
+     * @param target The file to write.
+     * @param contacts The contacts to write.
+     * @param fileGeneration The generation of the file.
+     * @throws IOException If writing fails.
+     */
+    private static void writeSnapshot(final Path target,
+            final Collection<Person> contacts, final long fileGeneration)
+            throws IOException {
+        try (FileChannel channel = FileChannel.open(
+                target, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer =
+                ByteBuffer.allocateDirect(ContactRecordCodec.BUFFER_SIZE);
+            ContactRecordCodec.writeHeader(buffer, contacts.size());
+            final long[] chunks = new long[(contacts.size()
+                + ContactRecordCodec.CHUNK_RECORDS - 1)
+                / ContactRecordCodec.CHUNK_RECORDS];
+            int written = 0;
+            for (Person person : contacts) {
+                if (written % ContactRecordCodec.CHUNK_RECORDS == 0) {
+                    chunks[written / ContactRecordCodec.CHUNK_RECORDS] =
+                        channel.position() + buffer.position();
+                }
+                buffer = ContactRecordCodec.writeRecord(
+                    person, buffer, channel
+                );
+                written++;
+            }
+            ContactRecordCodec.writeChunkDirectory(chunks, contacts.size(),
+                buffer, channel);
+            ContactRecordCodec.writeTrailer(fileGeneration, buffer, channel);
+            ContactRecordCodec.flush(buffer, channel);
+            channel.force(true);
+        }
+    }
+
+    /**
+     * Attempts to delete the contacts file.
+     * Displays a message based on the success or failure of the deletion.
+     */
+    private void deleteFile() {
+        if (file.delete()) {
+            ContactsLog.log("File deleted successfully");
+        } else {
+            ContactsLog.log(
+                "Failed to delete the file\n."
+                + "Please try again or delete the file manually."
+            );
+        }
+    }
+
+    /**
+     * Reads the legacy serialization file, which was written while the
+     * classes of the app were in the default package.
+     */
+    private static final class LegacyInputStream extends ObjectInputStream {
+        /** The file read from. */
+        private final FileInputStream file;
+
+        /**
+         * Creates a stream reading the legacy serialization file.
+         *
+         * @param in The file to read from.
+         * @throws IOException If the stream header can't be read.
+         */
+        LegacyInputStream(final FileInputStream in) throws IOException {
+            super(in);
+            this.file = in;
+        }
+
+        /**
+         * Gets the number of bytes read from the file so far. Objects
+         * are read straight from the file, so between two objects this
+         * is where the next one starts.
+         *
+         * @return The position in the file.
+         * @throws IOException If the position can't be read.
+         */
+        long position() throws IOException {
+            return file.getChannel().position();
+        }
+
+        @Override
+        protected Class<?> resolveClass(final ObjectStreamClass desc)
+                throws IOException, ClassNotFoundException {
+            if (desc.getName().equals(Person.class.getSimpleName())) {
+                return Person.class;
+            }
+            return super.resolveClass(desc);
+        }
+    }
+}
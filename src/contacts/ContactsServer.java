@@ -0,0 +1,964 @@
+package contacts;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.MonthDay;
+import java.time.format.DateTimeParseException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An embedded HTTP server exposing the contacts as JSON, built on the
+ * HTTP server of the JDK.
+ *
+ * <ul>
+ * <li>{@code POST /contacts} creates a contact from a JSON object.</li>
+ * <li>{@code GET /contacts/{ssn}} gets a contact.</li>
+ * <li>{@code PATCH /contacts/{ssn}} changes the details given in a
+ * JSON object.</li>
+ * <li>{@code DELETE /contacts/{ssn}} deletes a contact.</li>
+ * <li>{@code GET /contacts?q=words&limit=20} searches the contacts.</li>
+ * <li>{@code GET /contacts?sort=last_name&limit=20&cursor=...} lists
+ * a page of the contacts, sorted by {@code last_name},
+ * {@code first_name} or {@code birth_date}.</li>
+ * <li>{@code GET /contacts?born_from=1980-01-01&born_to=1985-12-31}
+ * finds the contacts born within the dates, either of which may be
+ * left out, the oldest first.</li>
+ * <li>{@code GET /contacts?birthdays=7} finds the contacts having their
+ * birthday within a number of days from today, in that order.</li>
+ * <li>{@code GET /metrics} gets the metrics of the app as text.</li>
+ * <li>{@code GET /books} lists the names of the contact books.</li>
+ * </ul>
+ *
+ * Every request to {@code /contacts} can also be made to the contacts
+ * of a named {@link ContactBook}, such as
+ * {@code GET /books/work/contacts/{ssn}}. The book is loaded by the
+ * first request to it and created by the first contact added to it.
+ *
+ * Contacts are JSON objects with the string members {@code ssn},
+ * {@code firstName}, {@code lastName}, {@code phoneNumber},
+ * {@code address} and {@code emailAddress}, as in the JSON lines
+ * export. A missing or null detail is empty. Details are validated by
+ * the setters of Person, and an invalid request gets an object with
+ * an {@code error} member.
+ *
+ * Every request is handled on a virtual thread of its own when the
+ * JDK has them, and on a cached pool of platform threads otherwise.
+ * Requests go through the thread-safe API of the ContactsManager, or
+ * of the book, which is kept open until the response is sent. A
+ * change is answered only once the journal has it on disk. If the
+ * journal can't be written, the change is answered with an error,
+ * although it is made and is saved by the next checkpoint. While
+ * serving, a background thread checkpoints the journal of the contacts
+ * once it has grown large or old enough, so it never grows without end.
+ */
+public final class ContactsServer {
+    /** The path of the contacts resource. */
+    private static final String CONTACTS_PATH = "/contacts";
+
+    /** The path of the contact books resource. */
+    private static final String BOOKS_PATH = "/books";
+
+    /** The path of the metrics resource. */
+    private static final String METRICS_PATH = "/metrics";
+
+    /** The number of contacts returned when no limit is given. */
+    private static final int DEFAULT_LIMIT = 20;
+
+    /** The largest number of contacts returned at once. */
+    private static final int MAX_LIMIT = 1000;
+
+    /** The most days birthdays are found within. */
+    private static final int MAX_BIRTHDAY_DAYS = 365;
+
+    /** The largest request body accepted, in bytes. */
+    private static final int MAX_BODY_SIZE = 1 << 16;
+
+    /** The number of connections waiting to be accepted. */
+    private static final int BACKLOG = 4096;
+
+    /** The size of the buffer responses are encoded into. */
+    private static final int RESPONSE_BUFFER_SIZE = 1 << 12;
+
+    /** The seconds given to running requests when stopping. */
+    private static final int STOP_DELAY = 1;
+
+    /** The seconds between checks whether the journal needs a checkpoint. */
+    private static final int CHECKPOINT_CHECK_INTERVAL = 1;
+
+    /** The HTTP server. */
+    private final HttpServer server;
+
+    /** The executor running the requests. */
+    private final ExecutorService executor;
+
+    /** The contact books served under {@value #BOOKS_PATH}. */
+    private final ContactBooks books;
+
+    /** The background thread checkpointing the journal of the contacts. */
+    private final ScheduledExecutorService checkpointer =
+        Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "contacts-http-save");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+    /**
+     * Creates a server listening on the given port.
+     * The server is started with {@link #start()}.
+     *
+     * @param port The port, or 0 for any free port.
+     * @param books The contact books to serve.
+     * @throws IOException If the port can't be listened on.
+     */
+    public ContactsServer(final int port, final ContactBooks books)
+            throws IOException {
+        this.books = books;
+        server = HttpServer.create(new InetSocketAddress(port), BACKLOG);
+        executor = newRequestExecutor();
+        server.setExecutor(executor);
+        server.createContext(CONTACTS_PATH, this::handle);
+        server.createContext(BOOKS_PATH, this::handle);
+        server.createContext(METRICS_PATH, ContactsServer::metrics);
+    }
+
+    /**
+     * Creates an executor running every task on a new virtual thread,
+     * or on a cached pool of daemon threads if the JDK has no virtual
+     * threads. Reflection keeps the app running on older JDKs.
+     *
+     * @return The executor.
+     */
+    private static ExecutorService newRequestExecutor() {
+        try {
+            return (ExecutorService) Executors.class
+                .getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return Executors.newCachedThreadPool(runnable -> {
+                final Thread thread = new Thread(runnable, "contacts-http");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    /** Starts serving requests and checkpointing the journal. */
+    public void start() {
+        server.start();
+        checkpointer.scheduleWithFixedDelay(
+            ContactsSerializer::checkpointIfNeeded, CHECKPOINT_CHECK_INTERVAL,
+            CHECKPOINT_CHECK_INTERVAL, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Stops serving requests, giving running requests a moment to finish.
+     */
+    public void stop() {
+        server.stop(STOP_DELAY);
+        executor.shutdown();
+        checkpointer.shutdown();
+        try {
+            executor.awaitTermination(STOP_DELAY, TimeUnit.SECONDS);
+            checkpointer.awaitTermination(STOP_DELAY, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Gets the port the server listens on.
+     *
+     * @return The port.
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Serves the contacts and the contact books until the app is
+     * stopped, for example with Ctrl+C. Returns once the server has
+     * stopped and the loaded books are saved, so the caller can save
+     * the contacts before the app exits.
+     *
+     * @param port The port to listen on.
+     * @param books The contact books to serve.
+     * @throws IOException If the port can't be listened on.
+     */
+    public static void serve(final int port, final ContactBooks books)
+            throws IOException {
+        try {
+            serveUntilStopped(new ContactsServer(port, books));
+        } finally {
+            books.close();
+        }
+    }
+
+    /**
+     * Serves requests until the app is stopped.
+     *
+     * @param contactsServer The server.
+     */
+    private static void serveUntilStopped(
+            final ContactsServer contactsServer) {
+        final Thread main = Thread.currentThread();
+        final Object stopped = new Object();
+        final boolean[] stopping = new boolean[1];
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            contactsServer.stop();
+            synchronized (stopped) {
+                stopping[0] = true;
+                stopped.notifyAll();
+            }
+            try {
+                // Let the main thread save the contacts before exiting.
+                main.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, "contacts-http-stop"));
+        contactsServer.start();
+        ContactsLog.log(
+            "Serving contacts at http://localhost:" + contactsServer.getPort()
+            + CONTACTS_PATH
+        );
+        synchronized (stopped) {
+            while (!stopping[0]) {
+                try {
+                    stopped.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Handles a request to the contacts or to the contact books.
+     *
+     * @param exchange The request and its response.
+     * @throws IOException If reading the request or writing the
+     *         response fails.
+     */
+    private void handle(final HttpExchange exchange) throws IOException {
+        try {
+            final String path = exchange.getRequestURI().getRawPath();
+            if (!path.startsWith(BOOKS_PATH)) {
+                route(exchange, ContactsManager.getBook(), path);
+                return;
+            }
+            if (path.equals(BOOKS_PATH) || path.equals(BOOKS_PATH + '/')) {
+                if (exchange.getRequestMethod().equals("GET")) {
+                    listBooks(exchange);
+                } else {
+                    notAllowed(exchange, "GET");
+                }
+                return;
+            }
+            final int slash = path.indexOf('/', BOOKS_PATH.length() + 1);
+            if (!path.startsWith(BOOKS_PATH + '/') || slash < 0) {
+                error(exchange, 404, "Unknown path " + path);
+                return;
+            }
+            final String name = URLDecoder.decode(
+                path.substring(BOOKS_PATH.length() + 1, slash),
+                StandardCharsets.UTF_8
+            );
+            try (ContactBook book = books.open(name)) {
+                route(exchange, book, path.substring(slash));
+            }
+        } catch (IllegalArgumentException e) {
+            error(exchange, 400, e.getMessage());
+        } catch (UncheckedIOException e) {
+            error(exchange, 500, "The change was made but could not be"
+                + " saved: " + e.getCause().getMessage());
+        } catch (RuntimeException e) {
+            error(exchange, 500, "Internal error: " + e);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * Routes a request to the contacts resource.
+     *
+     * @param exchange The request and its response.
+     * @param book The open book of the contacts, or the default book
+     *        of the ContactsManager.
+     * @param path The path of the request within the book.
+     * @throws IOException If reading the request or writing the
+     *         response fails.
+     */
+    private static void route(final HttpExchange exchange,
+            final ContactBook book, final String path) throws IOException {
+        final String method = exchange.getRequestMethod();
+        if (!path.equals(CONTACTS_PATH)
+                && !path.startsWith(CONTACTS_PATH + '/')) {
+            error(exchange, 404, "Unknown path "
+                + exchange.getRequestURI().getRawPath());
+            return;
+        }
+        if (path.equals(CONTACTS_PATH) || path.equals(CONTACTS_PATH + '/')) {
+            if (method.equals("GET")) {
+                list(exchange, book);
+            } else if (method.equals("POST")) {
+                create(exchange, book);
+            } else {
+                notAllowed(exchange, "GET, POST");
+            }
+            return;
+        }
+        final String ssn = URLDecoder.decode(
+            path.substring(CONTACTS_PATH.length() + 1),
+            StandardCharsets.UTF_8
+        );
+        switch (method) {
+            case "GET":
+                get(exchange, book, ssn);
+                break;
+            case "PATCH":
+                update(exchange, book, ssn);
+                break;
+            case "DELETE":
+                delete(exchange, book, ssn);
+                break;
+            default:
+                notAllowed(exchange, "GET, PATCH, DELETE");
+        }
+    }
+
+    /**
+     * Sends the names of the contact books.
+     *
+     * @param exchange The request and its response.
+     * @throws IOException If writing the response fails.
+     */
+    private void listBooks(final HttpExchange exchange) throws IOException {
+        final List<String> names;
+        try {
+            names = books.list();
+        } catch (IOException e) {
+            error(exchange, 500, "Failed to list the books: "
+                + e.getMessage());
+            return;
+        }
+        final ByteArrayOutputStream body = new ByteArrayOutputStream();
+        final ContactsExporter.Output out = new ContactsExporter.Output(
+            Channels.newChannel(body), RESPONSE_BUFFER_SIZE
+        );
+        out.ascii("{\"books\":[");
+        for (int i = 0; i < names.size(); i++) {
+            if (i > 0) {
+                out.ascii(',');
+            }
+            ContactsExporter.writeJsonString(out, names.get(i));
+        }
+        out.ascii("]}\n");
+        out.flush();
+        send(exchange, 200, body);
+    }
+
+    /**
+     * Sends the metrics of the app as text, one per line.
+     *
+     * @param exchange The request and its response.
+     * @throws IOException If writing the response fails.
+     */
+    private static void metrics(final HttpExchange exchange)
+            throws IOException {
+        try {
+            if (!exchange.getRequestMethod().equals("GET")) {
+                notAllowed(exchange, "GET");
+                return;
+            }
+            final byte[] body = ContactsManager.getMetrics().dump()
+                .getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type",
+                "text/plain; charset=utf-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * Creates a contact.
+     *
+     * @param exchange The request and its response.
+     * @param book The book of the contact.
+     * @throws IOException If writing the response fails.
+     */
+    private static void create(final HttpExchange exchange,
+            final ContactBook book) throws IOException {
+        final Map<ContactField, String> details = readDetails(exchange);
+        final String ssn = details.get(ContactField.SSN);
+        if (ssn == null) {
+            throw new IllegalArgumentException(
+                "The social security number is missing."
+            );
+        }
+        final Person person = new Person();
+        person.setSsn(ssn);
+        for (ContactField field : ContactField.values()) {
+            if (field != ContactField.SSN) {
+                person.setDetail(field, details.getOrDefault(field, ""));
+            }
+        }
+        if (!book.createContact(person)) {
+            error(exchange, 409,
+                "Contact with this social security number already exists.");
+            return;
+        }
+        exchange.getResponseHeaders().set("Location",
+            (book.getName() == null ? "" : BOOKS_PATH + '/' + book.getName())
+            + CONTACTS_PATH + '/' + person.getSsn());
+        contact(exchange, 201, person);
+    }
+
+    /**
+     * Gets a contact.
+     *
+     * @param exchange The request and its response.
+     * @param book The book of the contact.
+     * @param ssn The social security number of the contact.
+     * @throws IOException If writing the response fails.
+     */
+    private static void get(final HttpExchange exchange,
+            final ContactBook book, final String ssn) throws IOException {
+        final Person person = book.findContact(ssn);
+        if (person == null) {
+            notFound(exchange);
+        } else {
+            contact(exchange, 200, person);
+        }
+    }
+
+    /**
+     * Changes the details of a contact as one change, so a detail that
+     * is invalid or already taken leaves the contact as it was.
+     *
+     * @param exchange The request and its response.
+     * @param book The book of the contact.
+     * @param ssn The social security number of the contact.
+     * @throws IOException If writing the response fails.
+     */
+    private static void update(final HttpExchange exchange,
+            final ContactBook book, final String ssn) throws IOException {
+        final Map<ContactField, String> details = readDetails(exchange);
+        final String newSsn = details.remove(ContactField.SSN);
+        if (newSsn != null && !newSsn.equals(ssn)) {
+            throw new IllegalArgumentException(
+                "The social security number of a contact can't be changed."
+            );
+        }
+        final Person person = book.updateDetails(ssn, details);
+        if (person == null) {
+            notFound(exchange);
+        } else {
+            contact(exchange, 200, person);
+        }
+    }
+
+    /**
+     * Deletes a contact.
+     *
+     * @param exchange The request and its response.
+     * @param book The book of the contact.
+     * @param ssn The social security number of the contact.
+     * @throws IOException If writing the response fails.
+     */
+    private static void delete(final HttpExchange exchange,
+            final ContactBook book, final String ssn) throws IOException {
+        final Person deleted = book.deleteContact(ssn);
+        if (deleted == null) {
+            notFound(exchange);
+        } else {
+            exchange.sendResponseHeaders(204, -1);
+        }
+    }
+
+    /**
+     * Searches or lists the contacts.
+     *
+     * @param exchange The request and its response.
+     * @param book The book of the contacts.
+     * @throws IOException If writing the response fails.
+     */
+    private static void list(final HttpExchange exchange,
+            final ContactBook book) throws IOException {
+        final Map<String, String> query =
+            parseQuery(exchange.getRequestURI().getRawQuery());
+        final int limit = parseLimit(query.get("limit"));
+        final List<Person> contacts;
+        String nextCursor = null;
+        if (query.containsKey("q")) {
+            contacts = book.search(query.get("q"), limit);
+        } else if (query.containsKey("born_from")
+                || query.containsKey("born_to")) {
+            final LocalDate from =
+                parseDate(query.get("born_from"), LocalDate.MIN);
+            final LocalDate to = parseDate(query.get("born_to"), LocalDate.MAX);
+            contacts = book.findBornBetween(from, to, limit);
+        } else if (query.containsKey("birthdays")) {
+            final LocalDate today = LocalDate.now();
+            final MonthDay from = MonthDay.from(today);
+            final MonthDay to = MonthDay.from(today.plusDays(
+                parseDays(query.get("birthdays")) - 1));
+            contacts = book.findBirthdaysBetween(from, to, limit);
+        } else {
+            final String sortName = query.getOrDefault("sort", "last_name");
+            final ContactSort sort;
+            try {
+                sort = ContactSort.valueOf(sortName.toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException(
+                    "Unknown sort " + sortName
+                    + ", use last_name, first_name or birth_date."
+                );
+            }
+            final ContactsPage page = book.listContacts(
+                sort, person -> true, query.get("cursor"), limit);
+            contacts = page.getContacts();
+            nextCursor = page.getNextCursor();
+        }
+        final ByteArrayOutputStream body = new ByteArrayOutputStream();
+        final ContactsExporter.Output out = new ContactsExporter.Output(
+            Channels.newChannel(body), RESPONSE_BUFFER_SIZE
+        );
+        out.ascii("{\"contacts\":[");
+        for (int i = 0; i < contacts.size(); i++) {
+            if (i > 0) {
+                out.ascii(',');
+            }
+            ContactsExporter.writeJson(out, contacts.get(i));
+        }
+        out.ascii("],\"nextCursor\":");
+        ContactsExporter.writeJsonString(out, nextCursor);
+        out.ascii("}\n");
+        out.flush();
+        send(exchange, 200, body);
+    }
+
+    /**
+     * Parses the number of contacts asked for.
+     *
+     * @param limit The limit parameter, may be null.
+     * @return The number of contacts.
+     * @throws IllegalArgumentException If the limit is not a number
+     *         from 1 to {@value #MAX_LIMIT}.
+     */
+    private static int parseLimit(final String limit) {
+        if (limit == null) {
+            return DEFAULT_LIMIT;
+        }
+        try {
+            final int value = Integer.parseInt(limit);
+            if (value >= 1 && value <= MAX_LIMIT) {
+                return value;
+            }
+        } catch (NumberFormatException e) {
+            // Reported below.
+        }
+        throw new IllegalArgumentException(
+            "The limit must be a number from 1 to " + MAX_LIMIT + "."
+        );
+    }
+
+    /**
+     * Parses a date parameter.
+     *
+     * @param date The date as yyyy-mm-dd, may be null.
+     * @param missing The date to use if the parameter is missing.
+     * @return The date.
+     * @throws IllegalArgumentException If the date is not valid.
+     */
+    private static LocalDate parseDate(final String date,
+            final LocalDate missing) {
+        if (date == null) {
+            return missing;
+        }
+        try {
+            return LocalDate.parse(date);
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException(
+                "Invalid date " + date + ", use yyyy-mm-dd."
+            );
+        }
+    }
+
+    /**
+     * Parses the number of days birthdays are found within.
+     *
+     * @param days The birthdays parameter.
+     * @return The number of days.
+     * @throws IllegalArgumentException If the days are not a number
+     *         from 1 to {@value #MAX_BIRTHDAY_DAYS}.
+     */
+    private static int parseDays(final String days) {
+        try {
+            final int value = Integer.parseInt(days);
+            if (value >= 1 && value <= MAX_BIRTHDAY_DAYS) {
+                return value;
+            }
+        } catch (NumberFormatException e) {
+            // Reported below.
+        }
+        throw new IllegalArgumentException(
+            "The birthdays must be a number of days from 1 to "
+            + MAX_BIRTHDAY_DAYS + "."
+        );
+    }
+
+    /**
+     * Parses the parameters of a query string.
+     *
+     * @param rawQuery The query string, may be null.
+     * @return The parameters keyed by name.
+     */
+    private static Map<String, String> parseQuery(final String rawQuery) {
+        final Map<String, String> parameters = new HashMap<>();
+        if (rawQuery == null) {
+            return parameters;
+        }
+        for (String parameter : rawQuery.split("&")) {
+            final int equals = parameter.indexOf('=');
+            final String name = equals < 0 ? parameter
+                : parameter.substring(0, equals);
+            final String value = equals < 0 ? ""
+                : parameter.substring(equals + 1);
+            parameters.put(URLDecoder.decode(name, StandardCharsets.UTF_8),
+                URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+        return parameters;
+    }
+
+    /**
+     * Reads the details of a contact from the JSON object in the
+     * request body.
+     *
+     * @param exchange The request.
+     * @return The details, in the order of the object.
+     * @throws IOException If reading the request fails.
+     * @throws IllegalArgumentException If the body is not a JSON object
+     *         of contact details.
+     */
+    private static Map<ContactField, String> readDetails(
+            final HttpExchange exchange) throws IOException {
+        final byte[] body;
+        try (InputStream in = exchange.getRequestBody()) {
+            body = in.readNBytes(MAX_BODY_SIZE + 1);
+        }
+        if (body.length > MAX_BODY_SIZE) {
+            throw new IllegalArgumentException("The request is too large.");
+        }
+        return new JsonReader(new String(body, StandardCharsets.UTF_8))
+            .readDetails();
+    }
+
+    /**
+     * Sends a contact.
+     *
+     * @param exchange The request and its response.
+     * @param status The HTTP status code.
+     * @param person The contact.
+     * @throws IOException If writing the response fails.
+     */
+    private static void contact(final HttpExchange exchange, final int status,
+            final Person person) throws IOException {
+        final ByteArrayOutputStream body = new ByteArrayOutputStream();
+        final ContactsExporter.Output out = new ContactsExporter.Output(
+            Channels.newChannel(body), RESPONSE_BUFFER_SIZE
+        );
+        ContactsExporter.writeJson(out, person);
+        out.flush();
+        send(exchange, status, body);
+    }
+
+    /**
+     * Sends an error.
+     *
+     * @param exchange The request and its response.
+     * @param status The HTTP status code.
+     * @param message The error message.
+     * @throws IOException If writing the response fails.
+     */
+    private static void error(final HttpExchange exchange, final int status,
+            final String message) throws IOException {
+        final ByteArrayOutputStream body = new ByteArrayOutputStream();
+        final ContactsExporter.Output out = new ContactsExporter.Output(
+            Channels.newChannel(body), RESPONSE_BUFFER_SIZE
+        );
+        out.ascii("{\"error\":");
+        ContactsExporter.writeJsonString(out, message);
+        out.ascii("}\n");
+        out.flush();
+        send(exchange, status, body);
+    }
+
+    /**
+     * Sends that there is no such contact.
+     *
+     * @param exchange The request and its response.
+     * @throws IOException If writing the response fails.
+     */
+    private static void notFound(final HttpExchange exchange)
+            throws IOException {
+        error(exchange, 404, "No contact with this social security number.");
+    }
+
+    /**
+     * Sends that the method can't be used on the resource.
+     *
+     * @param exchange The request and its response.
+     * @param allowed The methods that can be used.
+     * @throws IOException If writing the response fails.
+     */
+    private static void notAllowed(final HttpExchange exchange,
+            final String allowed) throws IOException {
+        exchange.getResponseHeaders().set("Allow", allowed);
+        error(exchange, 405, "Use " + allowed + ".");
+    }
+
+    /**
+     * Sends a JSON response.
+     *
+     * @param exchange The request and its response.
+     * @param status The HTTP status code.
+     * @param body The JSON body.
+     * @throws IOException If writing the response fails.
+     */
+    private static void send(final HttpExchange exchange, final int status,
+            final ByteArrayOutputStream body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type",
+            "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, body.size());
+        try (OutputStream out = exchange.getResponseBody()) {
+            body.writeTo(out);
+        }
+    }
+
+    /**
+     * Reads a JSON object of contact details: string or null members
+     * named as in the JSON lines export.
+     */
+    private static final class JsonReader {
+        /** The JSON text. */
+        private final String json;
+
+        /** The position of the next character. */
+        private int position;
+
+        /**
+         * Creates a reader of the given JSON text.
+         *
+         * @param json The JSON text.
+         */
+        JsonReader(final String json) {
+            this.json = json;
+        }
+
+        /**
+         * Reads the object.
+         *
+         * @return The details, in the order of the object.
+         * @throws IllegalArgumentException If the text is not a JSON
+         *         object of contact details.
+         */
+        Map<ContactField, String> readDetails() {
+            final Map<ContactField, String> details =
+                new LinkedHashMap<>();
+            expect('{');
+            if (peek() == '}') {
+                position++;
+            } else {
+                do {
+                    final String name = readString();
+                    expect(':');
+                    final ContactField field = fieldOf(name);
+                    if (details.containsKey(field)) {
+                        throw new IllegalArgumentException(
+                            "The detail " + name + " is given twice."
+                        );
+                    }
+                    details.put(field, readValue());
+                } while (next(',', '}') == ',');
+            }
+            if (peek() != -1) {
+                throw invalid();
+            }
+            return details;
+        }
+
+        /**
+         * Finds the detail of a member name.
+         *
+         * @param name The member name.
+         * @return The detail.
+         * @throws IllegalArgumentException If no detail has the name.
+         */
+        private static ContactField fieldOf(final String name) {
+            switch (name) {
+                case "ssn":
+                    return ContactField.SSN;
+                case "firstName":
+                    return ContactField.FIRST_NAME;
+                case "lastName":
+                    return ContactField.LAST_NAME;
+                case "phoneNumber":
+                    return ContactField.PHONE_NUMBER;
+                case "address":
+                    return ContactField.ADDRESS;
+                case "emailAddress":
+                    return ContactField.EMAIL_ADDRESS;
+                default:
+                    throw new IllegalArgumentException(
+                        "Unknown detail " + name
+                    );
+            }
+        }
+
+        /**
+         * Reads a string, or null as an empty string.
+         *
+         * @return The string.
+         */
+        private String readValue() {
+            if (peek() == 'n' && json.startsWith("null", position)) {
+                position += "null".length();
+                return "";
+            }
+            return readString();
+        }
+
+        /**
+         * Reads a string.
+         *
+         * @return The string.
+         */
+        private String readString() {
+            expect('"');
+            final StringBuilder value = new StringBuilder();
+            while (true) {
+                if (position >= json.length()) {
+                    throw invalid();
+                }
+                final char ch = json.charAt(position++);
+                if (ch == '"') {
+                    return value.toString();
+                }
+                if (ch != '\\') {
+                    value.append(ch);
+                    continue;
+                }
+                if (position >= json.length()) {
+                    throw invalid();
+                }
+                final char escaped = json.charAt(position++);
+                switch (escaped) {
+                    case 'b':
+                        value.append('\b');
+                        break;
+                    case 'f':
+                        value.append('\f');
+                        break;
+                    case 'n':
+                        value.append('\n');
+                        break;
+                    case 'r':
+                        value.append('\r');
+                        break;
+                    case 't':
+                        value.append('\t');
+                        break;
+                    case 'u':
+                        if (position + 4 > json.length()) {
+                            throw invalid();
+                        }
+                        try {
+                            value.append((char) Integer.parseInt(
+                                json.substring(position, position + 4), 16
+                            ));
+                        } catch (NumberFormatException e) {
+                            throw invalid();
+                        }
+                        position += 4;
+                        break;
+                    default:
+                        value.append(escaped);
+                }
+            }
+        }
+
+        /**
+         * Skips white space and reads the given character.
+         *
+         * @param expected The character.
+         */
+        private void expect(final char expected) {
+            if (peek() != expected) {
+                throw invalid();
+            }
+            position++;
+        }
+
+        /**
+         * Skips white space and reads one of two characters.
+         *
+         * @param first The first character.
+         * @param second The second character.
+         * @return The character read.
+         */
+        private char next(final char first, final char second) {
+            final int ch = peek();
+            if (ch != first && ch != second) {
+                throw invalid();
+            }
+            position++;
+            return (char) ch;
+        }
+
+        /**
+         * Skips white space and gets the next character without reading it.
+         *
+         * @return The character, or -1 at the end.
+         */
+        private int peek() {
+            while (position < json.length()
+                    && Character.isWhitespace(json.charAt(position))) {
+                position++;
+            }
+            return position < json.length() ? json.charAt(position) : -1;
+        }
+
+        /**
+         * Creates the error of invalid JSON.
+         *
+         * @return The error.
+         */
+        private IllegalArgumentException invalid() {
+            return new IllegalArgumentException(
+                "The request is not a JSON object of contact details."
+            );
+        }
+    }
+}
@@ -0,0 +1,233 @@
+package contacts;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Predicate;
+
+/**
+ * Sorted secondary indexes for listing contacts a page at a time.
+ *
+ * For every {@link ContactSort} there is a sorted map from the sort key
+ * of each contact to its social security number. A page is read from
+ * the map starting right after the key the previous page ended with,
+ * which the cursor carries, so no page re-sorts or re-reads the
+ * contacts before it.
+ *
+ * The index is a listener of the ContactsManager and is kept up to date
+ * as contacts are created, changed and deleted. The map of an order is
+ * built from the contact store the first time the order is listed.
+ * Listing never locks. Every sort key ends with the SSN, so it belongs
+ * to a single contact, whose changes the book makes one at a time;
+ * changes to different contacts are indexed at the same time and only
+ * wait for a build in progress.
+ */
+public final class ContactsSortIndex implements ContactsListener {
+    /** The number of orders. */
+    private static final int SORT_COUNT = ContactSort.values().length;
+
+    /** The store the contacts are looked up from. */
+    private final ContactStore store;
+
+    /** The sort keys of each built order keyed to the SSNs. */
+    private final Map<ContactSort, ConcurrentSkipListMap<String, String>>
+        orders = new ConcurrentHashMap<>();
+
+    /**
+     * The lock held exclusively while an order is built or emptied,
+     * and shared by changes made before every order is built, so that
+     * a build never misses a change.
+     */
+    private final ReentrantReadWriteLock buildLock =
+        new ReentrantReadWriteLock();
+
+    /**
+     * Creates an empty index over the given store.
+     *
+     * @param store The store holding the contacts.
+     */
+    public ContactsSortIndex(final ContactStore store) {
+        this.store = store;
+    }
+
+    /**
+     * Lists a page of contacts in the given order.
+     *
+     * @param sort The order of the contacts.
+     * @param filter The contacts to list.
+     * @param cursor The cursor of a previous page, or null for the
+     *        first page.
+     * @param pageSize The maximum number of contacts on the page.
+     * @return The page. A filtered listing can end with an empty page.
+     * @throws IllegalArgumentException If the cursor is not one given
+     *         for this order.
+     */
+    public ContactsPage list(final ContactSort sort,
+            final Predicate<Person> filter, final String cursor,
+            final int pageSize) {
+        final ConcurrentSkipListMap<String, String> order = orderOf(sort);
+        final Map<String, String> rest = cursor == null ? order
+            : order.tailMap(decodeCursor(sort, cursor), false);
+        final List<Person> contacts = new ArrayList<>(pageSize);
+        String lastKey = null;
+        for (Map.Entry<String, String> entry : rest.entrySet()) {
+            if (contacts.size() == pageSize) {
+                return new ContactsPage(contacts, encodeCursor(sort, lastKey));
+            }
+            lastKey = entry.getKey();
+            final Person person = store.get(entry.getValue());
+            if (person != null && filter.test(person)) {
+                contacts.add(person);
+            }
+        }
+        return new ContactsPage(contacts, null);
+    }
+
+    /**
+     * Gets the map of an order, building it if needed.
+     *
+     * @param sort The order.
+     * @return The sort keys keyed to the SSNs.
+     */
+    private ConcurrentSkipListMap<String, String> orderOf(
+            final ContactSort sort) {
+        final ConcurrentSkipListMap<String, String> order = orders.get(sort);
+        return order != null ? order : build(sort);
+    }
+
+    /**
+     * Builds the map of an order, unless another thread already did.
+     * Changes made meanwhile wait for the build and are indexed after it.
+     *
+     * @param sort The order.
+     * @return The sort keys keyed to the SSNs.
+     */
+    private ConcurrentSkipListMap<String, String> build(
+            final ContactSort sort) {
+        buildLock.writeLock().lock();
+        try {
+            ConcurrentSkipListMap<String, String> order = orders.get(sort);
+            if (order == null) {
+                // Sorting the keys once is much faster than
+                // inserting them into the sorted map one by one.
+                final HashMap<String, String> keys = new HashMap<>();
+                for (Person person : store) {
+                    keys.put(sort.key(person), person.getSsn());
+                }
+                order = new ConcurrentSkipListMap<>(new TreeMap<>(keys));
+                orders.put(sort, order);
+            }
+            return order;
+        } finally {
+            buildLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Waits for a build in progress to end, unless every order is
+     * already built, so that a change is indexed in every order built.
+     */
+    private void awaitBuild() {
+        if (orders.size() < SORT_COUNT) {
+            buildLock.readLock().lock();
+            buildLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Makes a cursor pointing right after the given sort key.
+     *
+     * @param sort The order the key belongs to.
+     * @param key The sort key of the last contact of a page.
+     * @return The cursor.
+     */
+    private static String encodeCursor(final ContactSort sort,
+            final String key) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(
+            (sort.name() + ':' + key).getBytes(StandardCharsets.UTF_8)
+        );
+    }
+
+    /**
+     * Reads the sort key from a cursor.
+     *
+     * @param sort The order being listed.
+     * @param cursor The cursor.
+     * @return The sort key.
+     * @throws IllegalArgumentException If the cursor is not one given
+     *         for this order.
+     */
+    private static String decodeCursor(final ContactSort sort,
+            final String cursor) {
+        final String decoded = new String(
+            Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8
+        );
+        final String prefix = sort.name() + ':';
+        if (!decoded.startsWith(prefix)) {
+            throw new IllegalArgumentException(
+                "The cursor is not for listing by " + sort
+            );
+        }
+        return decoded.substring(prefix.length());
+    }
+
+    @Override
+    public void contactCreated(final Person person) {
+        awaitBuild();
+        for (Map.Entry<ContactSort, ConcurrentSkipListMap<String, String>>
+                order : orders.entrySet()) {
+            order.getValue().put(order.getKey().key(person), person.getSsn());
+        }
+    }
+
+    @Override
+    public void contactUpdated(final Person person,
+            final ContactField field, final String oldValue) {
+        if (field != ContactField.FIRST_NAME
+                && field != ContactField.LAST_NAME) {
+            return;
+        }
+        awaitBuild();
+        final String oldFirstName = field == ContactField.FIRST_NAME
+            ? oldValue : person.getFirstName();
+        final String oldLastName = field == ContactField.LAST_NAME
+            ? oldValue : person.getLastName();
+        for (Map.Entry<ContactSort, ConcurrentSkipListMap<String, String>>
+                order : orders.entrySet()) {
+            final ContactSort sort = order.getKey();
+            order.getValue().remove(
+                sort.key(person.getSsn(), oldFirstName, oldLastName)
+            );
+            order.getValue().put(sort.key(person), person.getSsn());
+        }
+    }
+
+    @Override
+    public void contactDeleted(final Person person) {
+        awaitBuild();
+        for (Map.Entry<ContactSort, ConcurrentSkipListMap<String, String>>
+                order : orders.entrySet()) {
+            order.getValue().remove(order.getKey().key(person));
+        }
+    }
+
+    @Override
+    public void contactsCleared() {
+        buildLock.writeLock().lock();
+        try {
+            for (ConcurrentSkipListMap<String, String> order
+                    : orders.values()) {
+                order.clear();
+            }
+        } finally {
+            buildLock.writeLock().unlock();
+        }
+    }
+}
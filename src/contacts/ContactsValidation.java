@@ -0,0 +1,317 @@
+package contacts;
+
+/**
+ * A utility class for validating contact details such as
+ * social security numbers, names, phone numbers, addresses,
+ * and email addresses.
+ *
+ * The validators scan the characters of the input directly instead of
+ * matching regular expressions, so validating a detail allocates nothing.
+ * Each validator documents the regular expression it is equivalent to
+ * and the length limit it adds, if any.
+ */
+public class ContactsValidation {
+    /** The length of a Finnish social security number. */
+    private static final int SSN_LENGTH = 11;
+
+    /** The index of the century character in a social security number. */
+    private static final int SSN_CENTURY_INDEX = 6;
+
+    /** The index of the control character in a social security number. */
+    private static final int SSN_CONTROL_INDEX = 10;
+
+    /** The possible control characters of a social security number. */
+    private static final char[] CONTROL_CHARACTERS = {
+        '0', '1', '2', '3', '4', '5', '6', '7', '8', '9',
+        'A', 'B', 'C', 'D', 'E', 'F', 'H', 'J', 'K', 'L',
+        'M', 'N', 'P', 'R', 'S', 'T', 'U', 'V', 'W', 'X', 'Y'
+    };
+
+    /** The minimum number of digits in a phone number. */
+    private static final int PHONE_MIN_DIGITS = 7;
+
+    /** The maximum number of digits in a phone number. */
+    private static final int PHONE_MAX_DIGITS = 20;
+
+    /** The maximum number of digits in a country code. */
+    private static final int COUNTRY_CODE_MAX_DIGITS = 3;
+
+    /** The maximum length of a name. */
+    public static final int NAME_MAX_LENGTH = 100;
+
+    /** The maximum length of an address. */
+    public static final int ADDRESS_MAX_LENGTH = 200;
+
+    /** The maximum length of an email address. */
+    public static final int EMAIL_MAX_LENGTH = 254;
+
+    /** The maximum number of periods in the user name of an email address. */
+    private static final int EMAIL_MAX_PERIODS = 64;
+
+    /**
+     * The minimum length of a label between two periods in the user name
+     * of an email address. The pattern allows at most one period per
+     * repetition of its group, so such a label has to hold the end of
+     * one repetition and the start of the next.
+     */
+    private static final int EMAIL_INNER_LABEL_MIN_LENGTH = 2;
+
+    /**
+     * Validates whether the given string has a valid Finnish SSN format.
+     * This follows the rules applying to finnish social security numbers:
+     * {@code ^(0[1-9]|[12][0-9]|3[01])(0[1-9]|1[0-2])\d{2}[A-]
+     * (00[2-9]|[0-8][0-9][0-9])([0-9A-FHJ-NPR-Y])$}.
+     *
+     * @param ssn The social security number to validate.
+     * @return {@code true} if valid, {@code false} otherwise.
+     */
+    public static boolean isValidFinnishSsnFormat(final String ssn) {
+        if (ssn.length() != SSN_LENGTH) {
+            return false;
+        }
+        for (int i = 0; i < SSN_CONTROL_INDEX; i++) {
+            if (i != SSN_CENTURY_INDEX && !isDigit(ssn.charAt(i))) {
+                return false;
+            }
+        }
+        final int day = twoDigits(ssn, 0);
+        final int month = twoDigits(ssn, 2);
+        final char century = ssn.charAt(SSN_CENTURY_INDEX);
+        final char individual = ssn.charAt(SSN_CENTURY_INDEX + 1);
+        return day >= 1 && day <= 31
+            && month >= 1 && month <= 12
+            && (century == 'A' || century == '-')
+            && individual <= '8'
+            && controlIndex(ssn.charAt(SSN_CONTROL_INDEX)) >= 0;
+    }
+
+    /**
+     * Validates whether the given string's last character is valid.
+     * This validation is based on specific algortihm where the last
+     * character (control character) is chosen by dividing the first
+     * 9 numbers from the string (social security number) with the
+     * amount of possible control characters and counting the modulo
+     * of that operation. If the control character in the social
+     * security number matches the control character of the algorithm
+     * then the ssn is valid.
+     *
+     * Note that this method should be used in combination with the
+     * {@link #isValidFinnishSsnFormat(String)} to first ensure that
+     * the social security number has a valid format. A string that
+     * is not 11 characters long or has non-digits where the numbers
+     * should be is reported as invalid.
+     * @param ssn The social security number to validate.
+     * @return {@code true} if valid {@code false} otherwise
+     */
+    public static boolean isValidControlCharacter(final String ssn) {
+        if (ssn.length() != SSN_LENGTH) {
+            return false;
+        }
+        int ssnDigits = 0;
+        for (int i = 0; i < SSN_CONTROL_INDEX; i++) {
+            if (i == SSN_CENTURY_INDEX) {
+                continue;
+            }
+            final char digit = ssn.charAt(i);
+            if (!isDigit(digit)) {
+                return false;
+            }
+            ssnDigits = ssnDigits * 10 + (digit - '0');
+        }
+        return controlCharacter(ssnDigits) == ssn.charAt(SSN_CONTROL_INDEX);
+    }
+
+    /**
+     * Gets the control character for the given nine digits of a
+     * social security number: the birth date followed by the
+     * individual number.
+     *
+     * @param ssnDigits The nine digits as a number.
+     * @return The control character.
+     */
+    public static char controlCharacter(final int ssnDigits) {
+        return CONTROL_CHARACTERS[ssnDigits % CONTROL_CHARACTERS.length];
+    }
+
+    /**
+     * Validates whether the given string is a valid name.
+     * This allows alphabets, spaces and hyphens: {@code ^[A-ZÅÄÖa-zåäö \-]+$},
+     * up to {@value #NAME_MAX_LENGTH} characters.
+     *
+     * @param name The name to validate.
+     * @return {@code true} if valid, {@code false} otherwise.
+     */
+    public static boolean isValidName(final String name) {
+        if (name.isEmpty() || name.length() > NAME_MAX_LENGTH) {
+            return false;
+        }
+        for (int i = 0; i < name.length(); i++) {
+            final char ch = name.charAt(i);
+            if (!isLetter(ch) && ch != ' ' && ch != '-') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Validates whether the given string is a valid phone number.
+     * This allows optional country code followed by 7 to 20 digits:
+     * {@code ^(\+\d{1,3})?\d{7,20}$}.
+     *
+     * @param phoneNumber The phone number to validate.
+     * @return {@code true} if valid, {@code false} otherwise.
+     */
+    public static boolean isValidPhoneNumber(final String phoneNumber) {
+        final int start = phoneNumber.startsWith("+") ? 1 : 0;
+        final int digits = phoneNumber.length() - start;
+        for (int i = start; i < phoneNumber.length(); i++) {
+            if (!isDigit(phoneNumber.charAt(i))) {
+                return false;
+            }
+        }
+        if (start == 0) {
+            return digits >= PHONE_MIN_DIGITS && digits <= PHONE_MAX_DIGITS;
+        }
+        // The country code takes 1 to 3 of the digits.
+        return digits >= PHONE_MIN_DIGITS + 1
+            && digits <= PHONE_MAX_DIGITS + COUNTRY_CODE_MAX_DIGITS;
+    }
+
+    /**
+     * Validates whether the given string is a valid address.
+     * This allows blank inputs or typical characters found in addresses:
+     * {@code ^$|^[A-Z-ÅÄÖa-zäåö\d ,.-]+$}, up to
+     * {@value #ADDRESS_MAX_LENGTH} characters.
+     *
+     * @param address The address to validate.
+     * @return {@code true} if valid, {@code false} otherwise.
+     */
+    public static boolean isValidAddress(final String address) {
+        if (address.length() > ADDRESS_MAX_LENGTH) {
+            return false;
+        }
+        for (int i = 0; i < address.length(); i++) {
+            final char ch = address.charAt(i);
+            if (!isLetter(ch) && !isDigit(ch)
+                    && ch != ' ' && ch != ',' && ch != '.' && ch != '-') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Validates whether the given string is a valid email address.
+     * This allows blank inputs or alternatively standard email formats:
+     * {@code ^$|^([a-z0-9-]+(\.[a-z0-9-]+)?){1,64}@([a-z0-9-]+\.[a-z0-9-]+)$}.
+     * That is, a user name of lowercase labels joined by at most 64
+     * single periods, where the labels between two periods have at least
+     * two characters, and a domain of exactly two lowercase labels,
+     * up to {@value #EMAIL_MAX_LENGTH} characters in all.
+     *
+     * @param emailAddress The email address to validate.
+     * @return {@code true} if valid, {@code false} otherwise.
+     */
+    public static boolean isValidEmailAddress(final String emailAddress) {
+        if (emailAddress.isEmpty()) {
+            return true;
+        }
+        if (emailAddress.length() > EMAIL_MAX_LENGTH) {
+            return false;
+        }
+        final int at = emailAddress.indexOf('@');
+        if (at < 0) {
+            return false;
+        }
+        final int periods = countLabelPeriods(emailAddress, 0, at,
+            EMAIL_INNER_LABEL_MIN_LENGTH);
+        if (periods < 0 || periods > EMAIL_MAX_PERIODS) {
+            return false;
+        }
+        return countLabelPeriods(emailAddress, at + 1, emailAddress.length(),
+            1) == 1;
+    }
+
+    /**
+     * Checks that a range of characters is made of non-empty labels of
+     * lowercase letters, digits and hyphens joined by single periods.
+     *
+     * @param text The text to check.
+     * @param start The start of the range, inclusive.
+     * @param end The end of the range, exclusive.
+     * @param innerMinLength The minimum length of the labels that have
+     *        a period on both sides.
+     * @return The number of periods, or -1 if the range is not valid.
+     */
+    private static int countLabelPeriods(final String text, final int start,
+            final int end, final int innerMinLength) {
+        int periods = 0;
+        int labelLength = 0;
+        for (int i = start; i < end; i++) {
+            final char ch = text.charAt(i);
+            if (ch == '.') {
+                if (labelLength < (periods == 0 ? 1 : innerMinLength)) {
+                    return -1;
+                }
+                periods++;
+                labelLength = 0;
+            } else if ((ch >= 'a' && ch <= 'z') || isDigit(ch) || ch == '-') {
+                labelLength++;
+            } else {
+                return -1;
+            }
+        }
+        return labelLength > 0 ? periods : -1;
+    }
+
+    /**
+     * Checks whether the character is an ASCII digit.
+     *
+     * @param ch The character to check.
+     * @return {@code true} if the character is 0-9.
+     */
+    private static boolean isDigit(final char ch) {
+        return ch >= '0' && ch <= '9';
+    }
+
+    /**
+     * Checks whether the character is a letter of the Finnish alphabet.
+     *
+     * @param ch The character to check.
+     * @return {@code true} if the character is A-Z, Å, Ä, Ö or
+     *         their lowercase versions.
+     */
+    private static boolean isLetter(final char ch) {
+        return (ch >= 'A' && ch <= 'Z') || (ch >= 'a' && ch <= 'z')
+            || ch == 'Å' || ch == 'Ä' || ch == 'Ö'
+            || ch == 'å' || ch == 'ä' || ch == 'ö';
+    }
+
+    /**
+     * Reads a two digit number that is known to be made of digits.
+     *
+     * @param text The text to read from.
+     * @param index The index of the first digit.
+     * @return The number.
+     */
+    private static int twoDigits(final String text, final int index) {
+        return (text.charAt(index) - '0') * 10 + (text.charAt(index + 1) - '0');
+    }
+
+    /**
+     * Finds the position of a control character among the
+     * possible control characters.
+     *
+     * @param ch The character to look for.
+     * @return The position or -1 if it is not a control character.
+     */
+    private static int controlIndex(final char ch) {
+        for (int i = 0; i < CONTROL_CHARACTERS.length; i++) {
+            if (CONTROL_CHARACTERS[i] == ch) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
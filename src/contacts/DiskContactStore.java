@@ -0,0 +1,1051 @@
+package contacts;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.lang.ref.Cleaner;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractCollection;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * A contact store that keeps the contacts in an indexed file on disk
+ * and only a bounded number of them on the heap, so the memory used is
+ * set by the size of the cache rather than by the number of contacts.
+ *
+ * The records are encoded with {@link ContactRecordCodec} into slots
+ * appended to a data file in insertion order. A changed contact is
+ * written over its record when it still fits, and otherwise moved to a
+ * new slot at the end of the file that its first slot points to, so
+ * reading the file from the start still follows insertion order. The
+ * file is compacted once more than half of it is dead.
+ *
+ * An SSN hash table in a memory-mapped index file maps a 64-bit hash
+ * of each social security number to the offset of its first slot. In
+ * front of the files sits a least recently used cache of decoded
+ * contacts, holding {@value #DEFAULT_CACHE_SIZE} contacts by default.
+ * Changed contacts are written back when they are evicted, when a
+ * snapshot is taken or on {@link #flush()}.
+ *
+ * The files are working files in the given directory: the contacts
+ * are still saved by the ContactsSerializer, and the files are deleted
+ * when the store is closed or the program exits.
+ * Every operation takes the lock of the store.
+ */
+public class DiskContactStore implements ContactStore, Closeable {
+    /** The number of contacts cached by default. */
+    public static final int DEFAULT_CACHE_SIZE = 10_000;
+
+    /** The state of a slot that holds nothing. */
+    private static final byte DEAD = 0;
+
+    /** The state of a slot holding the record of a contact. */
+    private static final byte LIVE = 1;
+
+    /** The state of the first slot of a contact whose record was moved. */
+    private static final byte FORWARDED = 2;
+
+    /** The state of a slot holding a record moved from another slot. */
+    private static final byte MOVED = 3;
+
+    /** The offset of the capacity of the record in a slot header. */
+    private static final int CAPACITY_OFFSET = 1;
+
+    /** The offset of the offset of the moved record in a slot header. */
+    private static final int FORWARD_OFFSET = 5;
+
+    /** The offset of the insertion sequence in a slot header. */
+    private static final int SEQUENCE_OFFSET = 13;
+
+    /** The size of a slot header. */
+    private static final int SLOT_HEADER_SIZE = 21;
+
+    /** The size of an index entry: the hash and the offset plus one. */
+    private static final int INDEX_ENTRY_SIZE = 16;
+
+    /** The number of entries the index starts with. */
+    private static final int INITIAL_INDEX_CAPACITY = 1 << 12;
+
+    /** The largest number of entries of the index, mapped at once. */
+    private static final int MAX_INDEX_CAPACITY = 1 << 26;
+
+    /** The size of the buffer of appended slots and of read batches. */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /** The bytes read at once when the size of a slot is not known. */
+    private static final int PEEK_SIZE = 256;
+
+    /** The dead bytes below which the data file is never compacted. */
+    private static final long MIN_COMPACTION_SIZE = 1 << 24;
+
+    /** The offset basis of the FNV-1a hash of social security numbers. */
+    private static final long FNV_OFFSET = 0xCBF29CE484222325L;
+
+    /** The prime of the FNV-1a hash of social security numbers. */
+    private static final long FNV_PRIME = 0x100000001B3L;
+
+    /** Deletes the copies taken for snapshots once they are unused. */
+    private static final Cleaner CLEANER = Cleaner.create();
+
+    /** Visits the records of the slots read from a data file. */
+    private interface SlotVisitor {
+        /**
+         * Visits the record of a contact.
+         *
+         * @param record The record, from its position to its limit.
+         * @param sequence The insertion sequence of the contact.
+         * @throws IOException If the record is malformed.
+         */
+        void visit(ByteBuffer record, long sequence) throws IOException;
+    }
+
+    /** The directory holding the files. */
+    private final Path directory;
+
+    /** The number of contacts cached. */
+    private final int cacheSize;
+
+    /** The data file. */
+    private Path dataPath;
+
+    /** The channel of the data file. */
+    private FileChannel data;
+
+    /** The index file. */
+    private Path indexPath;
+
+    /** The mapped index file. */
+    private MappedByteBuffer index;
+
+    /** The number of entries of the index, a power of two. */
+    private int indexCapacity;
+
+    /** The slots appended but not yet written to the data file. */
+    private final ByteBuffer appendBuffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+    /** The offset in the data file of the start of the append buffer. */
+    private long appendStart;
+
+    /** The number of contacts. */
+    private int size;
+
+    /** The bytes of the data file that hold nothing current. */
+    private long deadBytes;
+
+    /** The insertion sequence of the next added contact. */
+    private long nextSequence;
+
+    /** The number of times the offsets of the slots have changed. */
+    private int rewrites;
+
+    /** The cached contacts keyed by SSN, least recently used first. */
+    private final LinkedHashMap<String, Person> cache;
+
+    /** The cached contacts that changed since they were written. */
+    private final HashMap<String, Person> dirty = new HashMap<>();
+
+    /** The number of contacts found in the cache. */
+    private long hits;
+
+    /** The number of contacts read from the data file. */
+    private long misses;
+
+    /** The number of contacts evicted from the cache. */
+    private long evictions;
+
+    /** The number of changed contacts written to the data file. */
+    private long writeBacks;
+
+    /**
+     * Creates an empty store with its files in the given directory.
+     *
+     * @param directory The directory for the files.
+     * @param cacheSize The number of contacts to cache.
+     * @throws IOException If the files can't be created.
+     */
+    public DiskContactStore(final Path directory, final int cacheSize)
+            throws IOException {
+        this.directory = directory;
+        this.cacheSize = Math.max(1, cacheSize);
+        cache = new LinkedHashMap<String, Person>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(
+                    final Map.Entry<String, Person> eldest) {
+                return evict(eldest);
+            }
+        };
+        Files.createDirectories(directory);
+        dataPath = createFile(".data");
+        data = FileChannel.open(dataPath,
+            StandardOpenOption.READ, StandardOpenOption.WRITE);
+        createIndex(INITIAL_INDEX_CAPACITY);
+    }
+
+    /**
+     * Creates a working file that is deleted when the program exits.
+     *
+     * @param suffix The suffix of the file name.
+     * @return The file.
+     * @throws IOException If the file can't be created.
+     */
+    private Path createFile(final String suffix) throws IOException {
+        final Path file = Files.createTempFile(directory, "contacts", suffix);
+        file.toFile().deleteOnExit();
+        return file;
+    }
+
+    /**
+     * Replaces the index with an empty one.
+     *
+     * @param capacity The number of entries, a power of two.
+     * @throws IOException If the index file can't be created.
+     */
+    private void createIndex(final int capacity) throws IOException {
+        if (capacity > MAX_INDEX_CAPACITY) {
+            throw new IllegalStateException("The disk store can hold at most "
+                + MAX_INDEX_CAPACITY / 2 + " contacts");
+        }
+        final Path oldPath = indexPath;
+        indexPath = createFile(".index");
+        try (FileChannel channel = FileChannel.open(indexPath,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            index = channel.map(FileChannel.MapMode.READ_WRITE, 0,
+                (long) capacity * INDEX_ENTRY_SIZE);
+        }
+        indexCapacity = capacity;
+        if (oldPath != null) {
+            Files.deleteIfExists(oldPath);
+        }
+    }
+
+    /**
+     * Wraps a failure of the files, which the store can't recover from.
+     *
+     * @param e The failure.
+     * @return The exception to throw.
+     */
+    private static IllegalStateException failure(final IOException e) {
+        return new IllegalStateException(e.getMessage(), e);
+    }
+
+    /**
+     * Hashes a social security number for the index.
+     *
+     * @param ssn The social security number.
+     * @return The hash.
+     */
+    private static long hash(final String ssn) {
+        long hash = FNV_OFFSET;
+        for (int i = 0; i < ssn.length(); i++) {
+            hash = (hash ^ ssn.charAt(i)) * FNV_PRIME;
+        }
+        return hash ^ hash >>> 29;
+    }
+
+    /**
+     * Finds the index entry of the given SSN.
+     *
+     * @param ssn The social security number to look for.
+     * @return The number of the entry or -1 if there is no such contact.
+     * @throws IOException If a slot can't be read.
+     */
+    private int findEntry(final String ssn) throws IOException {
+        if (ssn == null) {
+            return -1;
+        }
+        final long hash = hash(ssn);
+        int entry = (int) hash & (indexCapacity - 1);
+        while (index.getLong(entry * INDEX_ENTRY_SIZE + Long.BYTES) != 0) {
+            if (index.getLong(entry * INDEX_ENTRY_SIZE) == hash
+                    && ssn.equals(ssnAt(offsetAt(entry)))) {
+                return entry;
+            }
+            entry = (entry + 1) & (indexCapacity - 1);
+        }
+        return -1;
+    }
+
+    /**
+     * Gets the offset of the first slot of the contact of an entry.
+     *
+     * @param entry The number of the entry.
+     * @return The offset in the data file.
+     */
+    private long offsetAt(final int entry) {
+        return index.getLong(entry * INDEX_ENTRY_SIZE + Long.BYTES) - 1;
+    }
+
+    /**
+     * Puts the first slot of a new contact into the index, growing
+     * the index when it is half full.
+     *
+     * @param ssn The social security number of the contact.
+     * @param offset The offset of the slot in the data file.
+     * @throws IOException If the index can't be grown.
+     */
+    private void insertEntry(final String ssn, final long offset)
+            throws IOException {
+        if ((size + 1L) * 2 > indexCapacity) {
+            final MappedByteBuffer old = index;
+            final int oldCapacity = indexCapacity;
+            createIndex(indexCapacity * 2);
+            for (int entry = 0; entry < oldCapacity; entry++) {
+                final int position = entry * INDEX_ENTRY_SIZE;
+                final long stored = old.getLong(position + Long.BYTES);
+                if (stored != 0) {
+                    putEntry(old.getLong(position), stored - 1);
+                }
+            }
+        }
+        putEntry(hash(ssn), offset);
+    }
+
+    /**
+     * Puts an entry into the first free place of the index.
+     *
+     * @param hash The hash of the social security number.
+     * @param offset The offset of the first slot of the contact.
+     */
+    private void putEntry(final long hash, final long offset) {
+        int entry = (int) hash & (indexCapacity - 1);
+        while (index.getLong(entry * INDEX_ENTRY_SIZE + Long.BYTES) != 0) {
+            entry = (entry + 1) & (indexCapacity - 1);
+        }
+        index.putLong(entry * INDEX_ENTRY_SIZE, hash);
+        index.putLong(entry * INDEX_ENTRY_SIZE + Long.BYTES, offset + 1);
+    }
+
+    /**
+     * Removes an entry from the index, moving the entries after it back
+     * so that no lookup stops early at the hole.
+     *
+     * @param removed The number of the entry.
+     */
+    private void removeEntry(final int removed) {
+        final int mask = indexCapacity - 1;
+        int hole = removed;
+        int entry = removed;
+        while (true) {
+            entry = (entry + 1) & mask;
+            final int position = entry * INDEX_ENTRY_SIZE;
+            final long offset = index.getLong(position + Long.BYTES);
+            if (offset == 0) {
+                break;
+            }
+            final long hash = index.getLong(position);
+            final int home = (int) hash & mask;
+            if (((entry - home) & mask) >= ((entry - hole) & mask)) {
+                index.putLong(hole * INDEX_ENTRY_SIZE, hash);
+                index.putLong(hole * INDEX_ENTRY_SIZE + Long.BYTES, offset);
+                hole = entry;
+            }
+        }
+        index.putLong(hole * INDEX_ENTRY_SIZE, 0);
+        index.putLong(hole * INDEX_ENTRY_SIZE + Long.BYTES, 0);
+    }
+
+    /**
+     * Gets the offset just past the last slot, including the slots
+     * still in the append buffer.
+     *
+     * @return The offset.
+     */
+    private long dataEnd() {
+        return appendStart + appendBuffer.position();
+    }
+
+    /**
+     * Writes the appended slots to the data file.
+     *
+     * @throws IOException If writing fails.
+     */
+    private void flushAppends() throws IOException {
+        appendBuffer.flip();
+        while (appendBuffer.hasRemaining()) {
+            data.write(appendBuffer, appendStart + appendBuffer.position());
+        }
+        appendStart += appendBuffer.limit();
+        appendBuffer.clear();
+    }
+
+    /**
+     * Appends a slot to the data file.
+     *
+     * @param slot The slot, ready to be read.
+     * @return The offset of the slot.
+     * @throws IOException If writing fails.
+     */
+    private long append(final ByteBuffer slot) throws IOException {
+        if (slot.remaining() > appendBuffer.remaining()) {
+            flushAppends();
+        }
+        final long offset = dataEnd();
+        if (slot.remaining() > appendBuffer.remaining()) {
+            write(offset, slot);
+            appendStart += slot.limit();
+        } else {
+            appendBuffer.put(slot);
+        }
+        return offset;
+    }
+
+    /**
+     * Writes over bytes of a slot. Slots are appended whole, so a slot
+     * is either in the data file or in the append buffer.
+     *
+     * @param offset The offset to write at.
+     * @param bytes The bytes to write, from position 0.
+     * @throws IOException If writing fails.
+     */
+    private void write(final long offset, final ByteBuffer bytes)
+            throws IOException {
+        if (offset >= appendStart) {
+            flushAppends();
+        }
+        while (bytes.hasRemaining()) {
+            data.write(bytes, offset + bytes.position());
+        }
+    }
+
+    /**
+     * Reads a slot of the data file.
+     *
+     * @param offset The offset of the slot.
+     * @return The slot, ready to be read.
+     * @throws IOException If reading fails or the slot is malformed.
+     */
+    private ByteBuffer readSlot(final long offset) throws IOException {
+        if (offset >= appendStart) {
+            flushAppends();
+        }
+        return readSlot(data, offset, appendStart);
+    }
+
+    /**
+     * Reads a slot of a data file.
+     *
+     * @param channel The channel of the data file.
+     * @param offset The offset of the slot.
+     * @param end The offset just past the last slot.
+     * @return The slot, ready to be read.
+     * @throws IOException If reading fails or the slot is malformed.
+     */
+    private static ByteBuffer readSlot(final FileChannel channel,
+            final long offset, final long end) throws IOException {
+        ByteBuffer slot = ContactRecordCodec.read(channel, offset,
+            (int) Math.min(PEEK_SIZE, end - offset));
+        if (slot.limit() < SLOT_HEADER_SIZE) {
+            throw new StreamCorruptedException("Truncated slot");
+        }
+        final int capacity = slot.getInt(CAPACITY_OFFSET);
+        if (capacity < 0 || offset + SLOT_HEADER_SIZE + capacity > end) {
+            throw new StreamCorruptedException("Invalid slot capacity");
+        }
+        if (SLOT_HEADER_SIZE + capacity > slot.limit()) {
+            slot = ContactRecordCodec.read(channel, offset,
+                SLOT_HEADER_SIZE + capacity);
+        }
+        return slot.limit(SLOT_HEADER_SIZE + capacity);
+    }
+
+    /**
+     * Creates a slot holding a record.
+     *
+     * @param state The state of the slot.
+     * @param capacity The room for the record.
+     * @param sequence The insertion sequence of the contact.
+     * @param record The record, ready to be read.
+     * @return The slot, ready to be read.
+     */
+    private static ByteBuffer slot(final byte state, final int capacity,
+            final long sequence, final ByteBuffer record) {
+        final ByteBuffer slot =
+            ByteBuffer.allocate(SLOT_HEADER_SIZE + capacity);
+        slot.put(state).putInt(capacity).putLong(0).putLong(sequence)
+            .put(record);
+        return slot.clear();
+    }
+
+    /**
+     * Sets the state of a slot.
+     *
+     * @param offset The offset of the slot.
+     * @param state The new state.
+     * @throws IOException If writing fails.
+     */
+    private void setState(final long offset, final byte state)
+            throws IOException {
+        write(offset, ByteBuffer.allocate(1).put(0, state));
+    }
+
+    /**
+     * Gets the social security number stored in a slot.
+     *
+     * @param offset The offset of the slot.
+     * @return The social security number.
+     * @throws IOException If reading fails or the slot is malformed.
+     */
+    private String ssnAt(final long offset) throws IOException {
+        final ByteBuffer slot = readSlot(offset);
+        slot.position(SLOT_HEADER_SIZE + Integer.BYTES);
+        return ContactRecordCodec.readString(slot);
+    }
+
+    /**
+     * Decodes the current record of a contact.
+     *
+     * @param offset The offset of the first slot of the contact.
+     * @return The contact.
+     * @throws IOException If reading fails or the record is malformed.
+     */
+    private Person readContact(final long offset) throws IOException {
+        ByteBuffer slot = readSlot(offset);
+        if (slot.get(0) == FORWARDED) {
+            slot = readSlot(slot.getLong(FORWARD_OFFSET));
+        }
+        slot.position(SLOT_HEADER_SIZE);
+        return ContactRecordCodec.readRecord(slot);
+    }
+
+    /**
+     * Writes a changed contact back to the data file, over its record if
+     * the record still fits and into a new slot at the end otherwise.
+     *
+     * @param person The changed contact.
+     * @throws IOException If writing fails.
+     */
+    private void writeBack(final Person person) throws IOException {
+        final int entry = findEntry(person.getSsn());
+        if (entry < 0) {
+            return;
+        }
+        writeBacks++;
+        final long first = offsetAt(entry);
+        final ByteBuffer firstSlot = readSlot(first);
+        final boolean forwarded = firstSlot.get(0) == FORWARDED;
+        final long target =
+            forwarded ? firstSlot.getLong(FORWARD_OFFSET) : first;
+        final int capacity = (forwarded ? readSlot(target) : firstSlot)
+            .getInt(CAPACITY_OFFSET);
+        final ByteBuffer record = ContactRecordCodec.encodeRecord(person);
+        if (record.remaining() <= capacity) {
+            write(target + SLOT_HEADER_SIZE, record);
+            return;
+        }
+        final long moved = append(slot(MOVED,
+            record.remaining() + record.remaining() / 4, 0, record));
+        if (forwarded) {
+            setState(target, DEAD);
+            deadBytes += SLOT_HEADER_SIZE + capacity;
+        } else {
+            deadBytes += capacity;
+        }
+        write(first, ByteBuffer.allocate(SEQUENCE_OFFSET).put(FORWARDED)
+            .putInt(firstSlot.getInt(CAPACITY_OFFSET)).putLong(moved)
+            .flip());
+        compactIfNeeded();
+    }
+
+    /**
+     * Evicts the least recently used contact once the cache is full,
+     * writing it back first if it changed.
+     *
+     * @param eldest The least recently used contact.
+     * @return {@code true} if the contact was evicted.
+     */
+    private boolean evict(final Map.Entry<String, Person> eldest) {
+        if (cache.size() <= cacheSize) {
+            return false;
+        }
+        final Person changed = dirty.remove(eldest.getKey());
+        if (changed != null) {
+            try {
+                writeBack(changed);
+            } catch (IOException e) {
+                throw failure(e);
+            }
+        }
+        evictions++;
+        return true;
+    }
+
+    /**
+     * Compacts the data file once more than half of it is dead.
+     *
+     * @throws IOException If compacting fails.
+     */
+    private void compactIfNeeded() throws IOException {
+        if (deadBytes >= MIN_COMPACTION_SIZE && deadBytes * 2 >= dataEnd()) {
+            compact();
+        }
+    }
+
+    /**
+     * Copies the current record of every contact in insertion order into
+     * a new data file and index, leaving the dead slots behind.
+     *
+     * @throws IOException If compacting fails.
+     */
+    private void compact() throws IOException {
+        flushAppends();
+        final long end = appendStart;
+        final FileChannel oldData = data;
+        final Path oldPath = dataPath;
+        dataPath = createFile(".data");
+        data = FileChannel.open(dataPath,
+            StandardOpenOption.READ, StandardOpenOption.WRITE);
+        appendStart = 0;
+        deadBytes = 0;
+        createIndex(indexCapacity);
+        final SlotVisitor copier = (record, sequence) -> {
+            final int length = Integer.BYTES + record.getInt(record.position());
+            final ByteBuffer copy = record.duplicate();
+            copy.limit(copy.position() + length);
+            record.position(record.position() + Integer.BYTES);
+            final String ssn = ContactRecordCodec.readString(record);
+            putEntry(hash(ssn), append(slot(LIVE, length, sequence, copy)));
+        };
+        long position = 0;
+        while (position < end) {
+            position = readSlots(oldData, position, end, copier);
+        }
+        oldData.close();
+        Files.deleteIfExists(oldPath);
+        rewrites++;
+    }
+
+    /**
+     * Reads a batch of slots of a data file and visits the current
+     * record of every contact whose first slot is among them.
+     *
+     * @param channel The channel of the data file.
+     * @param position The offset of the first slot to read.
+     * @param end The offset just past the last slot.
+     * @param visitor The visitor of the records.
+     * @return The offset of the slot after the batch.
+     * @throws IOException If reading fails or a slot is malformed.
+     */
+    private static long readSlots(final FileChannel channel,
+            final long position, final long end, final SlotVisitor visitor)
+            throws IOException {
+        ByteBuffer slots = ContactRecordCodec.read(channel, position,
+            (int) Math.min(BUFFER_SIZE, end - position));
+        long next = position;
+        while (slots.remaining() >= SLOT_HEADER_SIZE) {
+            int start = slots.position();
+            final int slotSize = SLOT_HEADER_SIZE
+                + slots.getInt(start + CAPACITY_OFFSET);
+            if (slotSize < SLOT_HEADER_SIZE || next + slotSize > end) {
+                throw new StreamCorruptedException("Invalid slot capacity");
+            }
+            if (slots.remaining() < slotSize) {
+                if (next > position) {
+                    break;
+                }
+                slots = readSlot(channel, next, end);
+                start = 0;
+            }
+            final byte state = slots.get(start);
+            final long sequence = slots.getLong(start + SEQUENCE_OFFSET);
+            if (state == LIVE) {
+                final ByteBuffer record = slots.duplicate();
+                record.limit(start + slotSize)
+                    .position(start + SLOT_HEADER_SIZE);
+                visitor.visit(record, sequence);
+            } else if (state == FORWARDED) {
+                final ByteBuffer moved = readSlot(channel,
+                    slots.getLong(start + FORWARD_OFFSET), end);
+                visitor.visit(moved.position(SLOT_HEADER_SIZE), sequence);
+            }
+            next += slotSize;
+            slots.position(start + slotSize);
+        }
+        if (next == position) {
+            throw new StreamCorruptedException("Truncated slot");
+        }
+        return next;
+    }
+
+    @Override
+    public synchronized Person get(final String ssn) {
+        Person person = cache.get(ssn);
+        if (person != null) {
+            hits++;
+            return person;
+        }
+        misses++;
+        try {
+            final int entry = findEntry(ssn);
+            if (entry < 0) {
+                return null;
+            }
+            person = readContact(offsetAt(entry));
+        } catch (IOException e) {
+            throw failure(e);
+        }
+        cache.put(ssn, person);
+        return person;
+    }
+
+    @Override
+    public synchronized boolean contains(final String ssn) {
+        try {
+            return cache.containsKey(ssn) || findEntry(ssn) >= 0;
+        } catch (IOException e) {
+            throw failure(e);
+        }
+    }
+
+    @Override
+    public synchronized boolean add(final Person person) {
+        final String ssn = person.getSsn();
+        try {
+            if (cache.containsKey(ssn) || findEntry(ssn) >= 0) {
+                return false;
+            }
+            final ByteBuffer record = ContactRecordCodec.encodeRecord(person);
+            final long offset = append(slot(LIVE, record.remaining(),
+                nextSequence++, record));
+            insertEntry(ssn, offset);
+        } catch (IOException e) {
+            throw failure(e);
+        }
+        size++;
+        cache.put(ssn, person);
+        return true;
+    }
+
+    @Override
+    public synchronized Person remove(final String ssn) {
+        try {
+            final int entry = findEntry(ssn);
+            if (entry < 0) {
+                return null;
+            }
+            final long first = offsetAt(entry);
+            final Person changed = dirty.remove(ssn);
+            final Person cached = cache.remove(ssn);
+            final Person removed = changed != null ? changed
+                : cached != null ? cached : readContact(first);
+            final ByteBuffer firstSlot = readSlot(first);
+            if (firstSlot.get(0) == FORWARDED) {
+                final long moved = firstSlot.getLong(FORWARD_OFFSET);
+                deadBytes += SLOT_HEADER_SIZE
+                    + readSlot(moved).getInt(CAPACITY_OFFSET);
+                setState(moved, DEAD);
+                deadBytes += SLOT_HEADER_SIZE;
+            } else {
+                deadBytes += SLOT_HEADER_SIZE
+                    + firstSlot.getInt(CAPACITY_OFFSET);
+            }
+            setState(first, DEAD);
+            removeEntry(entry);
+            size--;
+            compactIfNeeded();
+            return removed;
+        } catch (IOException e) {
+            throw failure(e);
+        }
+    }
+
+    @Override
+    public synchronized void clear() {
+        cache.clear();
+        dirty.clear();
+        appendBuffer.clear();
+        appendStart = 0;
+        deadBytes = 0;
+        size = 0;
+        rewrites++;
+        try {
+            data.truncate(0);
+            createIndex(INITIAL_INDEX_CAPACITY);
+        } catch (IOException e) {
+            throw failure(e);
+        }
+    }
+
+    @Override
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Caches the changed contact until it is written back.
+     *
+     * @param person The changed contact.
+     */
+    @Override
+    public synchronized void updated(final Person person) {
+        final String ssn = person.getSsn();
+        try {
+            if (!cache.containsKey(ssn) && findEntry(ssn) < 0) {
+                return;
+            }
+        } catch (IOException e) {
+            throw failure(e);
+        }
+        cache.put(ssn, person);
+        dirty.put(ssn, person);
+    }
+
+    /**
+     * Writes the changed contacts in the cache to the data file.
+     */
+    public synchronized void flush() {
+        try {
+            for (Person person : dirty.values()) {
+                writeBack(person);
+            }
+            dirty.clear();
+            flushAppends();
+        } catch (IOException e) {
+            throw failure(e);
+        }
+    }
+
+    /**
+     * Iterates the contacts in insertion order, reading the data file
+     * in batches. A batch is read under the lock of the store, and after
+     * the data file has been compacted the iteration continues from the
+     * contact after the last one read.
+     *
+     * @return The iterator of the contacts.
+     */
+    @Override
+    public Iterator<Person> iterator() {
+        return new Iterator<Person>() {
+            private final ArrayList<Person> batch = new ArrayList<>();
+            private int next;
+            private long position;
+            private long lastSequence = -1;
+            private int rewritesSeen = rewrites;
+
+            @Override
+            public boolean hasNext() {
+                if (next < batch.size()) {
+                    return true;
+                }
+                batch.clear();
+                next = 0;
+                synchronized (DiskContactStore.this) {
+                    if (rewritesSeen != rewrites) {
+                        rewritesSeen = rewrites;
+                        position = 0;
+                    }
+                    try {
+                        flushAppends();
+                        while (batch.isEmpty() && position < appendStart) {
+                            position = readSlots(data, position, appendStart,
+                                this::add);
+                        }
+                    } catch (IOException e) {
+                        throw failure(e);
+                    }
+                }
+                return !batch.isEmpty();
+            }
+
+            /**
+             * Adds a contact not read yet to the batch, in its changed
+             * version if it has changed.
+             *
+             * @param record The record of the contact.
+             * @param sequence The insertion sequence of the contact.
+             * @throws IOException If the record is malformed.
+             */
+            private void add(final ByteBuffer record, final long sequence)
+                    throws IOException {
+                if (sequence <= lastSequence) {
+                    return;
+                }
+                lastSequence = sequence;
+                final Person person = ContactRecordCodec.readRecord(record);
+                final Person changed = dirty.get(person.getSsn());
+                batch.add(changed != null ? changed : person);
+            }
+
+            @Override
+            public Person next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return batch.get(next++);
+            }
+        };
+    }
+
+    /**
+     * Writes back the changed contacts and takes a copy of the data file,
+     * also on disk, which the view reads the contacts from. The copy is
+     * deleted once the view is no longer used.
+     *
+     * @return The contacts in insertion order.
+     */
+    @Override
+    public synchronized Collection<Person> snapshot() {
+        final Path copy;
+        final long end;
+        try {
+            flush();
+            end = appendStart;
+            copy = createFile(".snapshot");
+            try (FileChannel target = FileChannel.open(copy,
+                    StandardOpenOption.WRITE)) {
+                long copied = 0;
+                while (copied < end) {
+                    copied += data.transferTo(copied, end - copied, target);
+                }
+            }
+        } catch (IOException e) {
+            throw failure(e);
+        }
+        final int count = size;
+        final Collection<Person> view = new AbstractCollection<Person>() {
+            @Override
+            public Iterator<Person> iterator() {
+                return snapshotIterator(this, copy, end);
+            }
+
+            @Override
+            public int size() {
+                return count;
+            }
+        };
+        CLEANER.register(view, () -> {
+            try {
+                Files.deleteIfExists(copy);
+            } catch (IOException e) {
+                // Deleted when the program exits instead.
+            }
+        });
+        return view;
+    }
+
+    /**
+     * Iterates the contacts of a copy of the data file, which is closed
+     * once every contact has been read. The iterator keeps the view it
+     * belongs to reachable, so the copy is not deleted while it is used.
+     *
+     * @param view The view of the contacts that owns the copy.
+     * @param copy The copy of the data file.
+     * @param end The offset just past the last slot.
+     * @return The iterator of the contacts.
+     */
+    private static Iterator<Person> snapshotIterator(
+            final Collection<Person> view, final Path copy, final long end) {
+        return new Iterator<Person>() {
+            /** The view, held so that its copy is not cleaned up. */
+            private final Collection<Person> owner = view;
+            private final ArrayList<Person> batch = new ArrayList<>();
+            private int next;
+            private long position;
+            private FileChannel channel;
+
+            @Override
+            public boolean hasNext() {
+                if (next < batch.size()) {
+                    return true;
+                }
+                batch.clear();
+                next = 0;
+                try {
+                    if (channel == null && position < end) {
+                        channel = FileChannel.open(copy,
+                            StandardOpenOption.READ);
+                    }
+                    while (batch.isEmpty() && position < end) {
+                        position = readSlots(channel, position, end,
+                            (record, sequence) -> batch.add(
+                                ContactRecordCodec.readRecord(record)));
+                    }
+                    if (position >= end && channel != null) {
+                        channel.close();
+                        channel = null;
+                    }
+                } catch (IOException e) {
+                    throw failure(e);
+                }
+                return !batch.isEmpty();
+            }
+
+            @Override
+            public Person next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return batch.get(next++);
+            }
+        };
+    }
+
+    /**
+     * Gets the number of contacts found in the cache.
+     *
+     * @return The number of cache hits.
+     */
+    public synchronized long getCacheHits() {
+        return hits;
+    }
+
+    /**
+     * Gets the number of contacts read from the data file.
+     *
+     * @return The number of cache misses.
+     */
+    public synchronized long getCacheMisses() {
+        return misses;
+    }
+
+    /**
+     * Gets the number of contacts evicted from the cache.
+     *
+     * @return The number of evictions.
+     */
+    public synchronized long getCacheEvictions() {
+        return evictions;
+    }
+
+    /**
+     * Gets the number of changed contacts written to the data file.
+     *
+     * @return The number of write-backs.
+     */
+    public synchronized long getWriteBacks() {
+        return writeBacks;
+    }
+
+    /**
+     * Gets the number of contacts in the cache.
+     *
+     * @return The number of cached contacts.
+     */
+    public synchronized int getCachedCount() {
+        return cache.size();
+    }
+
+    /**
+     * Closes and deletes the files. The store can't be used afterwards.
+     *
+     * @throws IOException If a file can't be deleted.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        cache.clear();
+        dirty.clear();
+        data.close();
+        Files.deleteIfExists(dataPath);
+        Files.deleteIfExists(indexPath);
+    }
+}
@@ -0,0 +1,164 @@
+package contacts;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.IntStream;
+
+/**
+ * The default contact store that keeps every contact on the heap.
+ * It can be used from many threads at once: lookups never lock,
+ * and adding or removing a contact only locks the hash bin of its
+ * social security number. Iteration follows insertion order and
+ * sees the contacts added or removed while it runs at most once.
+ */
+public class HeapContactStore implements ContactStore {
+    /** A contact together with the position it was added at. */
+    private static final class Entry {
+        /** The position the contact was added at. */
+        private final long sequence;
+
+        /** The contact. */
+        private final Person person;
+
+        /**
+         * Creates an entry.
+         *
+         * @param sequence The position the contact was added at.
+         * @param person The contact.
+         */
+        Entry(final long sequence, final Person person) {
+            this.sequence = sequence;
+            this.person = person;
+        }
+    }
+
+    /** The contacts keyed by their social security number. */
+    private final ConcurrentHashMap<String, Entry> contacts =
+        new ConcurrentHashMap<>();
+
+    /** The contacts keyed by the position they were added at. */
+    private final ConcurrentSkipListMap<Long, Person> order =
+        new ConcurrentSkipListMap<>();
+
+    /** The position given to the next added contact. */
+    private final AtomicLong nextSequence = new AtomicLong();
+
+    @Override
+    public Person get(final String ssn) {
+        final Entry entry = contacts.get(ssn);
+        return entry == null ? null : entry.person;
+    }
+
+    @Override
+    public boolean contains(final String ssn) {
+        return contacts.containsKey(ssn);
+    }
+
+    @Override
+    public boolean add(final Person person) {
+        final boolean[] added = new boolean[1];
+        contacts.computeIfAbsent(person.getSsn(), ssn -> {
+            final Entry entry =
+                new Entry(nextSequence.getAndIncrement(), person);
+            order.put(entry.sequence, person);
+            added[0] = true;
+            return entry;
+        });
+        return added[0];
+    }
+
+    /**
+     * Adds the chunks in parallel, in the fork/join pool of the caller.
+     * Every contact gets the position it would have got when added one
+     * by one, so the order is the same however the chunks are split
+     * between threads, and of two contacts with the same social security
+     * number the one added first is kept.
+     *
+     * @param chunks The contacts to add, chunk by chunk.
+     * @return The number of contacts added.
+     */
+    @Override
+    public int addAll(final List<Person[]> chunks) {
+        final long[] starts = new long[chunks.size()];
+        long total = 0;
+        for (int i = 0; i < starts.length; i++) {
+            starts[i] = total;
+            total += chunks.get(i).length;
+        }
+        final long base = nextSequence.getAndAdd(total);
+        final AtomicInteger added = new AtomicInteger();
+        IntStream.range(0, starts.length).parallel().forEach(i -> {
+            final Person[] chunk = chunks.get(i);
+            for (int j = 0; j < chunk.length; j++) {
+                if (add(new Entry(base + starts[i] + j, chunk[j]), base)) {
+                    added.incrementAndGet();
+                }
+            }
+        });
+        return added.get();
+    }
+
+    /**
+     * Adds an entry of {@link #addAll(List)}, replacing a contact with
+     * the same social security number that came later in the same call.
+     *
+     * @param entry The entry to add.
+     * @param base The first position given out by the call.
+     * @return {@code true} if the number of contacts grew.
+     */
+    private boolean add(final Entry entry, final long base) {
+        final boolean[] added = new boolean[1];
+        contacts.compute(entry.person.getSsn(), (ssn, old) -> {
+            if (old != null && (old.sequence < entry.sequence
+                    || old.sequence < base)) {
+                return old;
+            }
+            if (old != null) {
+                order.remove(old.sequence);
+            } else {
+                added[0] = true;
+            }
+            order.put(entry.sequence, entry.person);
+            return entry;
+        });
+        return added[0];
+    }
+
+    @Override
+    public Person remove(final String ssn) {
+        final Person[] removed = new Person[1];
+        contacts.computeIfPresent(ssn, (key, entry) -> {
+            order.remove(entry.sequence);
+            removed[0] = entry.person;
+            return null;
+        });
+        return removed[0];
+    }
+
+    @Override
+    public void clear() {
+        for (String ssn : contacts.keySet()) {
+            remove(ssn);
+        }
+    }
+
+    @Override
+    public int size() {
+        return contacts.size();
+    }
+
+    @Override
+    public void updated(final Person person) {
+        // The contact on the heap is the one that was changed.
+    }
+
+    @Override
+    public Iterator<Person> iterator() {
+        return Collections.unmodifiableCollection(order.values()).iterator();
+    }
+}
@@ -0,0 +1,129 @@
+package contacts;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A histogram of durations in the style of HdrHistogram: the buckets
+ * grow exponentially, and each power of two is split into
+ * {@value #SUB_BUCKETS} linear buckets. Every recorded value is kept
+ * within about 3% of its true value, from a nanosecond up to centuries,
+ * in a fixed 15 kB of memory.
+ *
+ * Recording never locks or allocates, so it can be done on every call
+ * of a hot path from many threads at once.
+ */
+public final class LatencyHistogram {
+    /** The number of bits of a value kept exactly. */
+    private static final int PRECISION_BITS = 5;
+
+    /** The number of linear buckets in each power of two. */
+    private static final int SUB_BUCKETS = 1 << PRECISION_BITS;
+
+    /** The number of buckets, covering every positive long. */
+    private static final int BUCKETS =
+        (Long.SIZE - PRECISION_BITS) * SUB_BUCKETS;
+
+    /** The number of values recorded in each bucket. */
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+    /** The number of values recorded. */
+    private final LongAdder count = new LongAdder();
+
+    /** The sum of the values recorded. */
+    private final LongAdder sum = new LongAdder();
+
+    /** The largest value recorded. */
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    /**
+     * Records a duration.
+     *
+     * @param nanos The duration in nanoseconds. Negative values are
+     *        recorded as zero.
+     */
+    public void record(final long nanos) {
+        final long value = Math.max(0, nanos);
+        counts.incrementAndGet(bucketOf(value));
+        count.increment();
+        sum.add(value);
+        max.accumulate(value);
+    }
+
+    /**
+     * Gets the bucket of a value. Values below {@code 2 * SUB_BUCKETS}
+     * have a bucket of their own; larger ones keep their highest
+     * {@code PRECISION_BITS + 1} bits.
+     *
+     * @param value The value, not negative.
+     * @return The bucket.
+     */
+    private static int bucketOf(final long value) {
+        final int shift = Math.max(0,
+            Long.SIZE - Long.numberOfLeadingZeros(value) - PRECISION_BITS - 1);
+        return (shift << PRECISION_BITS) + (int) (value >>> shift);
+    }
+
+    /**
+     * Gets the largest value that falls into a bucket.
+     *
+     * @param bucket The bucket.
+     * @return The largest value of the bucket.
+     */
+    private static long highestValueOf(final int bucket) {
+        final int shift = Math.max(0, (bucket >> PRECISION_BITS) - 1);
+        final long mantissa = bucket - ((long) shift << PRECISION_BITS);
+        return ((mantissa + 1) << shift) - 1;
+    }
+
+    /**
+     * Gets the number of values recorded.
+     *
+     * @return The number of values.
+     */
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * Gets the mean of the values recorded.
+     *
+     * @return The mean in nanoseconds, or 0 if nothing was recorded.
+     */
+    public double getMean() {
+        final long values = count.sum();
+        return values == 0 ? 0 : (double) sum.sum() / values;
+    }
+
+    /**
+     * Gets the largest value recorded.
+     *
+     * @return The largest value in nanoseconds.
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Gets the value below which the given percentage of the values fall.
+     *
+     * @param percentile The percentage, from 0 to 100.
+     * @return The value in nanoseconds, or 0 if nothing was recorded.
+     */
+    public long getPercentile(final double percentile) {
+        long total = 0;
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            total += counts.get(bucket);
+        }
+        final long rank = (long) Math.ceil(total * percentile / 100);
+        long seen = 0;
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            seen += counts.get(bucket);
+            if (seen >= Math.max(1, rank)) {
+                return Math.min(highestValueOf(bucket), getMax());
+            }
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,547 @@
+package contacts;
+
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractCollection;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * A contact store that serves contacts straight from a memory-mapped
+ * contacts file. At startup only the record offsets are scanned and
+ * an SSN hash table of record numbers is built from the raw bytes.
+ * A contact is decoded into a Person only when it is asked for.
+ *
+ * Contacts that are changed, added or deleted after the file was
+ * attached are kept on the heap until the contacts are saved again.
+ * Once a snapshot has been written to a new contacts file, the store
+ * maps the new file and keeps only the changes made since the snapshot,
+ * so the heap used does not grow with the changes of a long session.
+ * The store is safe to use from many threads, but unlike the heap
+ * store every operation takes the lock of the store.
+ */
+public class MappedContactStore implements ContactStore {
+    /** The largest region of the file mapped at once. */
+    private static final long MAX_REGION_SIZE = 1L << 30;
+
+    /** The offset of the SSN bytes from the start of a record. */
+    private static final int SSN_OFFSET = 6;
+
+    /** The mapped contacts file. */
+    private Mapping mapping = new Mapping();
+
+    /** The records of the file that have been deleted. */
+    private BitSet deleted = new BitSet();
+
+    /** The number of records of the file that have been deleted. */
+    private int deletedCount;
+
+    /** The changed records of the file keyed by record number. */
+    private HashMap<Integer, Person> changed = new HashMap<>();
+
+    /** The contacts added after the file was attached. */
+    private LinkedHashMap<String, Person> added = new LinkedHashMap<>();
+
+    /**
+     * The contacts changed, added or deleted since the file was mapped,
+     * with the number of the last change to each, in the order added.
+     */
+    private LinkedHashMap<String, Long> modified = new LinkedHashMap<>();
+
+    /** The number of the last change to the contacts. */
+    private long sequence;
+
+    /** The number of the change that last deleted every contact. */
+    private long clearedAt = -1;
+
+    /**
+     * The records of a mapped contacts file: the mapped regions, the
+     * offset of every record and the SSN hash table. A mapping is never
+     * changed once built, so views of the store keep reading the file
+     * they were taken from after the store has mapped a newer one.
+     */
+    private static final class Mapping {
+        /** The mapped regions of the contacts file. */
+        private final ArrayList<MappedByteBuffer> regions = new ArrayList<>();
+
+        /** The file offsets at which the mapped regions start. */
+        private long[] regionStarts = new long[0];
+
+        /** The file offset of every record in the file. */
+        private long[] offsets = new long[0];
+
+        /** The number of records in the file. */
+        private int recordCount;
+
+        /** The SSN hash table holding record numbers plus one. */
+        private int[] table = new int[0];
+
+        /**
+         * Maps a contacts file and indexes its records.
+         *
+         * @param file The contacts file.
+         * @return The mapping.
+         * @throws IOException If the file cannot be read or is corrupted.
+         */
+        static Mapping of(final Path file) throws IOException {
+            final Mapping mapping = new Mapping();
+            try (FileChannel channel =
+                    FileChannel.open(file, StandardOpenOption.READ)) {
+                final long fileSize = channel.size();
+                MappedByteBuffer region = mapping.map(channel, 0, fileSize);
+                if (region.limit() < ContactRecordCodec.HEADER_SIZE) {
+                    throw new StreamCorruptedException("Missing file header");
+                }
+                final int count = ContactRecordCodec.readHeader(region);
+                mapping.offsets = new long[count];
+                long regionStart = 0;
+                long position = ContactRecordCodec.HEADER_SIZE;
+
+                for (int i = 0; i < count; i++) {
+                    final long prefixEnd =
+                        position + ContactRecordCodec.RECORD_PREFIX_SIZE;
+                    if (prefixEnd > regionStart + region.limit()) {
+                        regionStart = position;
+                        region = mapping.map(channel, regionStart, fileSize);
+                    }
+                    final int recordSize =
+                        ContactRecordCodec.RECORD_PREFIX_SIZE
+                        + region.getInt((int) (position - regionStart));
+                    if (position + recordSize > fileSize) {
+                        throw new StreamCorruptedException("Truncated record");
+                    }
+                    if (position + recordSize > regionStart + region.limit()) {
+                        regionStart = position;
+                        region = mapping.map(channel, regionStart, fileSize);
+                    }
+                    mapping.offsets[i] = position;
+                    position += recordSize;
+                }
+                mapping.recordCount = count;
+            }
+            mapping.buildTable();
+            return mapping;
+        }
+
+        /**
+         * Maps a region of the file starting from the given offset.
+         *
+         * @param channel The channel of the file.
+         * @param start The offset where the region starts.
+         * @param fileSize The size of the file.
+         * @return The mapped region.
+         * @throws IOException If mapping fails.
+         */
+        private MappedByteBuffer map(final FileChannel channel,
+                final long start, final long fileSize) throws IOException {
+            final MappedByteBuffer region = channel.map(
+                FileChannel.MapMode.READ_ONLY, start,
+                Math.min(fileSize - start, MAX_REGION_SIZE)
+            );
+            regions.add(region);
+            regionStarts = Arrays.copyOf(regionStarts, regions.size());
+            regionStarts[regions.size() - 1] = start;
+            return region;
+        }
+
+        /** Builds the SSN hash table from the raw SSN bytes of every record. */
+        private void buildTable() {
+            final int capacity =
+                Integer.highestOneBit(Math.max(recordCount, 1)) << 2;
+            table = new int[capacity];
+            for (int i = 0; i < recordCount; i++) {
+                final ByteBuffer region = regionOf(i);
+                final int ssnStart = ssnStart(i);
+                final int length = region.getShort(ssnStart - 2);
+                int hash = 0;
+                for (int j = 0; j < length; j++) {
+                    hash = 31 * hash + region.get(ssnStart + j);
+                }
+                int index = mix(hash) & (table.length - 1);
+                while (table[index] != 0) {
+                    index = (index + 1) & (table.length - 1);
+                }
+                table[index] = i + 1;
+            }
+        }
+
+        /**
+         * Gets the index of the mapped region holding the given record.
+         *
+         * @param record The record number.
+         * @return The index of the region holding the record.
+         */
+        private int regionIndex(final int record) {
+            final int index =
+                Arrays.binarySearch(regionStarts, offsets[record]);
+            return index < 0 ? -index - 2 : index;
+        }
+
+        /**
+         * Gets the mapped region holding the given record.
+         *
+         * @param record The record number.
+         * @return The region holding the record.
+         */
+        private ByteBuffer regionOf(final int record) {
+            return regions.get(regionIndex(record));
+        }
+
+        /**
+         * Gets the position of the SSN bytes of a record within its region.
+         *
+         * @param record The record number.
+         * @return The position of the first SSN byte.
+         */
+        private int ssnStart(final int record) {
+            return (int) (offsets[record] - regionStarts[regionIndex(record)])
+                + SSN_OFFSET;
+        }
+
+        /**
+         * Finds the record number of the given SSN in the file.
+         *
+         * @param ssn The social security number to look for.
+         * @param deletedRecords The records to skip.
+         * @return The record number or -1 if the file has no such record.
+         */
+        int find(final String ssn, final BitSet deletedRecords) {
+            if (recordCount == 0 || ssn == null) {
+                return -1;
+            }
+            int index = mix(ssn.hashCode()) & (table.length - 1);
+            while (table[index] != 0) {
+                final int record = table[index] - 1;
+                if (!deletedRecords.get(record) && ssnEquals(record, ssn)) {
+                    return record;
+                }
+                index = (index + 1) & (table.length - 1);
+            }
+            return -1;
+        }
+
+        /**
+         * Compares the SSN of a record to the given string without
+         * decoding it.
+         *
+         * @param record The record number.
+         * @param ssn The social security number to compare with.
+         * @return {@code true} if the SSNs are equal, {@code false} otherwise.
+         */
+        private boolean ssnEquals(final int record, final String ssn) {
+            final ByteBuffer region = regionOf(record);
+            final int ssnStart = ssnStart(record);
+            if (region.getShort(ssnStart - 2) != ssn.length()) {
+                return false;
+            }
+            for (int i = 0; i < ssn.length(); i++) {
+                if (region.get(ssnStart + i) != ssn.charAt(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Gets a version of a record, decoding it from the mapped
+         * file unless it is one of the given changed records.
+         *
+         * @param record The record number.
+         * @param changedRecords The changed records keyed by record number.
+         * @return The contact stored in the record.
+         */
+        Person decode(final int record,
+                final Map<Integer, Person> changedRecords) {
+            final Person person = changedRecords.get(record);
+            if (person != null) {
+                return person;
+            }
+            final ByteBuffer region = regionOf(record).duplicate();
+            region.position(ssnStart(record) - SSN_OFFSET);
+            try {
+                return ContactRecordCodec.readRecord(region);
+            } catch (StreamCorruptedException e) {
+                throw new IllegalStateException(e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * A view of the contacts taken with {@link #snapshot()}, which
+     * remembers the change it was taken at.
+     */
+    private final class Snapshot extends AbstractCollection<Person> {
+        /** The mapped file of the view. */
+        private final Mapping snapshotMapping = mapping;
+
+        /** The deleted records of the file. */
+        private final BitSet deletedCopy = (BitSet) deleted.clone();
+
+        /** The changed records of the file keyed by record number. */
+        private final Map<Integer, Person> changedCopy = new HashMap<>(changed);
+
+        /** The contacts added after the file was attached. */
+        private final ArrayList<Person> addedCopy =
+            new ArrayList<>(added.values());
+
+        /** The number of the last change seen by the view. */
+        private final long takenAt = sequence;
+
+        /** The number of contacts. */
+        private final int size = MappedContactStore.this.size();
+
+        /**
+         * Takes the view. The lock of the store must be held.
+         *
+         * @param copyContacts Whether to copy the changed and added
+         *        contacts too, so that later changes to their details
+         *        are not seen.
+         */
+        Snapshot(final boolean copyContacts) {
+            if (copyContacts) {
+                changedCopy.replaceAll((record, person) -> person.copy());
+                addedCopy.replaceAll(Person::copy);
+            }
+        }
+
+        /**
+         * Gets the store the view was taken from.
+         *
+         * @return The store.
+         */
+        MappedContactStore store() {
+            return MappedContactStore.this;
+        }
+
+        @Override
+        public Iterator<Person> iterator() {
+            final Iterator<Person> addedIterator = addedCopy.iterator();
+            return new Iterator<Person>() {
+                private int next = deletedCopy.nextClearBit(0);
+
+                @Override
+                public boolean hasNext() {
+                    return next < snapshotMapping.recordCount
+                        || addedIterator.hasNext();
+                }
+
+                @Override
+                public Person next() {
+                    if (next < snapshotMapping.recordCount) {
+                        final Person person =
+                            snapshotMapping.decode(next, changedCopy);
+                        next = deletedCopy.nextClearBit(next + 1);
+                        return person;
+                    }
+                    if (!addedIterator.hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    return addedIterator.next();
+                }
+            };
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+
+    @Override
+    public synchronized boolean attach(final Path file) throws IOException {
+        mapping = Mapping.of(file);
+        deleted = new BitSet();
+        deletedCount = 0;
+        changed = new HashMap<>();
+        added = new LinkedHashMap<>();
+        modified = new LinkedHashMap<>();
+        clearedAt = -1;
+        return true;
+    }
+
+    /**
+     * Maps the file the snapshot was written to and keeps only the
+     * changes made since the snapshot was taken, so that the contacts
+     * changed before are served from the file again.
+     */
+    @Override
+    public void snapshotSaved(final Collection<Person> snapshot,
+            final Path file) throws IOException {
+        if (!(snapshot instanceof Snapshot)
+                || ((Snapshot) snapshot).store() != this) {
+            return;
+        }
+        final long takenAt = ((Snapshot) snapshot).takenAt;
+        final Mapping next = Mapping.of(file);
+        synchronized (this) {
+            final BitSet nextDeleted = new BitSet();
+            int nextDeletedCount = 0;
+            if (clearedAt > takenAt) {
+                nextDeleted.set(0, next.recordCount);
+                nextDeletedCount = next.recordCount;
+            }
+            final HashMap<Integer, Person> nextChanged = new HashMap<>();
+            final LinkedHashMap<String, Person> nextAdded =
+                new LinkedHashMap<>();
+            final LinkedHashMap<String, Long> nextModified =
+                new LinkedHashMap<>();
+            for (Map.Entry<String, Long> change : modified.entrySet()) {
+                if (change.getValue() <= takenAt) {
+                    continue;
+                }
+                final String ssn = change.getKey();
+                nextModified.put(ssn, change.getValue());
+                final Person current = get(ssn);
+                final int record = next.find(ssn, nextDeleted);
+                if (current == null) {
+                    if (record >= 0) {
+                        nextDeleted.set(record);
+                        nextDeletedCount++;
+                    }
+                } else if (record >= 0) {
+                    nextChanged.put(record, current);
+                } else {
+                    nextAdded.put(ssn, current);
+                }
+            }
+            mapping = next;
+            deleted = nextDeleted;
+            deletedCount = nextDeletedCount;
+            changed = nextChanged;
+            added = nextAdded;
+            modified = nextModified;
+        }
+    }
+
+    /**
+     * Spreads the bits of a hash code over the whole int.
+     *
+     * @param hash The hash code to spread.
+     * @return The spread hash code.
+     */
+    private static int mix(final int hash) {
+        final int h = hash * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Finds the record number of the given SSN in the file.
+     *
+     * @param ssn The social security number to look for.
+     * @return The record number or -1 if the file has no such record.
+     */
+    private int find(final String ssn) {
+        return mapping.find(ssn, deleted);
+    }
+
+    /**
+     * Remembers that the contact with the given SSN changed, for keeping
+     * the change once the contacts are saved in a new file.
+     *
+     * @param ssn The social security number of the contact.
+     * @param moveToEnd Whether the contact was added, so that contacts
+     *        added later come after it.
+     */
+    private void modified(final String ssn, final boolean moveToEnd) {
+        if (moveToEnd) {
+            modified.remove(ssn);
+        }
+        modified.put(ssn, ++sequence);
+    }
+
+    @Override
+    public synchronized Person get(final String ssn) {
+        final Person person = added.get(ssn);
+        if (person != null) {
+            return person;
+        }
+        final int record = find(ssn);
+        return record < 0 ? null : mapping.decode(record, changed);
+    }
+
+    @Override
+    public synchronized boolean contains(final String ssn) {
+        return added.containsKey(ssn) || find(ssn) >= 0;
+    }
+
+    @Override
+    public synchronized boolean add(final Person person) {
+        if (find(person.getSsn()) >= 0
+                || added.putIfAbsent(person.getSsn(), person) != null) {
+            return false;
+        }
+        modified(person.getSsn(), true);
+        return true;
+    }
+
+    @Override
+    public synchronized Person remove(final String ssn) {
+        final Person person = added.remove(ssn);
+        if (person != null) {
+            modified(ssn, false);
+            return person;
+        }
+        final int record = find(ssn);
+        if (record < 0) {
+            return null;
+        }
+        final Person removed = mapping.decode(record, changed);
+        deleted.set(record);
+        deletedCount++;
+        changed.remove(record);
+        modified(ssn, false);
+        return removed;
+    }
+
+    @Override
+    public synchronized void clear() {
+        deleted.set(0, mapping.recordCount);
+        deletedCount = mapping.recordCount;
+        changed.clear();
+        added.clear();
+        modified.clear();
+        clearedAt = ++sequence;
+    }
+
+    @Override
+    public synchronized int size() {
+        return mapping.recordCount - deletedCount + added.size();
+    }
+
+    @Override
+    public synchronized void updated(final Person person) {
+        final int record = find(person.getSsn());
+        if (record >= 0) {
+            changed.put(record, person);
+        }
+        modified(person.getSsn(), false);
+    }
+
+    @Override
+    public synchronized Iterator<Person> iterator() {
+        return new Snapshot(false).iterator();
+    }
+
+    /**
+     * Takes a view that shares the read-only mapping of the file and
+     * copies only the changes made since the file was attached.
+     *
+     * @return The contacts in insertion order.
+     */
+    @Override
+    public synchronized Collection<Person> snapshot() {
+        return new Snapshot(true);
+    }
+}
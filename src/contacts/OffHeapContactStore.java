@@ -0,0 +1,535 @@
+package contacts;
+
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+import java.util.AbstractCollection;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A contact store that keeps the contact records outside the Java heap,
+ * so that even millions of contacts add almost nothing for the garbage
+ * collector to trace.
+ *
+ * The records are encoded with {@link ContactRecordCodec} into slots of
+ * direct byte buffers allocated in arenas of {@value #ARENA_SIZE} bytes.
+ * Slot sizes are powers of two, and a deleted slot is put on the free
+ * list of its size to be reused by the next record of that size. The
+ * free lists are linked through the free slots themselves.
+ *
+ * Only primitive arrays are kept on the heap: an SSN hash table from
+ * the packed social security number to the address of the slot, and
+ * the packed social security numbers in insertion order. A contact is
+ * decoded into a Person when it is asked for, and a changed contact is
+ * encoded again when the store is told about the change.
+ *
+ * Every operation takes the lock of the store.
+ */
+public class OffHeapContactStore implements ContactStore {
+    /** The size of an arena of slots. */
+    private static final int ARENA_SIZE = 1 << 26;
+
+    /** The size of the smallest slot, as a power of two. */
+    private static final int MIN_SLOT_SHIFT = 6;
+
+    /** The number of slot sizes, up to the size of an arena. */
+    private static final int SLOT_SIZES = 27 - MIN_SLOT_SHIFT;
+
+    /** The size of the header of a slot holding its insertion position. */
+    private static final int SLOT_HEADER_SIZE = 4;
+
+    /** The size of the buffers a snapshot copies the records into. */
+    private static final int SNAPSHOT_CHUNK_SIZE = 1 << 20;
+
+    /** The address standing for no slot. */
+    private static final long NO_ADDRESS = -1;
+
+    /** The packed social security number of an empty table slot. */
+    private static final long NO_KEY = 0;
+
+    /** The number of contacts the heap arrays first have room for. */
+    private static final int INITIAL_CAPACITY = 1024;
+
+    /** The arenas holding the slots. */
+    private final ArrayList<ByteBuffer> arenas = new ArrayList<>();
+
+    /** The number of bytes handed out from the last arena. */
+    private int arenaTop = ARENA_SIZE;
+
+    /** The first free slot of each size, linked through the slots. */
+    private final long[] freeSlots = new long[SLOT_SIZES];
+
+    /** The packed SSNs in insertion order, {@link #NO_KEY} if deleted. */
+    private long[] order = new long[INITIAL_CAPACITY];
+
+    /** The number of used insertion positions, including deleted ones. */
+    private int orderSize;
+
+    /** The number of contacts. */
+    private int size;
+
+    /** The packed SSNs of the hash table, {@link #NO_KEY} if empty. */
+    private long[] tableKeys = new long[INITIAL_CAPACITY * 2];
+
+    /** The slot address of each packed SSN in the hash table. */
+    private long[] tableAddresses = new long[INITIAL_CAPACITY * 2];
+
+    /** Creates an empty store. */
+    public OffHeapContactStore() {
+        Arrays.fill(freeSlots, NO_ADDRESS);
+    }
+
+    /**
+     * Gets the size class of a record.
+     *
+     * @param recordSize The size of the encoded record.
+     * @return The index of the smallest slot size the record fits into.
+     */
+    private static int sizeClass(final int recordSize) {
+        final int slotSize = SLOT_HEADER_SIZE + recordSize - 1;
+        return Math.max(0,
+            Integer.SIZE - Integer.numberOfLeadingZeros(slotSize)
+            - MIN_SLOT_SHIFT);
+    }
+
+    /**
+     * Gets the arena of a slot address.
+     *
+     * @param address The address.
+     * @return The arena.
+     */
+    private ByteBuffer arenaOf(final long address) {
+        return arenas.get((int) (address >>> 32));
+    }
+
+    /**
+     * Gets the offset of a slot address within its arena.
+     *
+     * @param address The address.
+     * @return The offset.
+     */
+    private static int offsetOf(final long address) {
+        return (int) address;
+    }
+
+    /**
+     * Takes a free slot of the given size, allocating a new arena
+     * if the last one is full.
+     *
+     * @param sizeClass The size class of the slot.
+     * @return The address of the slot.
+     */
+    private long allocate(final int sizeClass) {
+        final long free = freeSlots[sizeClass];
+        if (free != NO_ADDRESS) {
+            freeSlots[sizeClass] = arenaOf(free).getLong(offsetOf(free));
+            return free;
+        }
+        final int slotSize = 1 << (sizeClass + MIN_SLOT_SHIFT);
+        if (arenaTop + slotSize > ARENA_SIZE) {
+            arenas.add(ByteBuffer.allocateDirect(ARENA_SIZE));
+            arenaTop = 0;
+        }
+        final long address = ((long) (arenas.size() - 1) << 32) | arenaTop;
+        arenaTop += slotSize;
+        return address;
+    }
+
+    /**
+     * Puts a slot on the free list of its size.
+     *
+     * @param address The address of the slot.
+     */
+    private void free(final long address) {
+        final ByteBuffer arena = arenaOf(address);
+        final int offset = offsetOf(address);
+        final int sizeClass = sizeClass(ContactRecordCodec.RECORD_PREFIX_SIZE
+            + arena.getInt(offset + SLOT_HEADER_SIZE));
+        arena.putLong(offset, freeSlots[sizeClass]);
+        freeSlots[sizeClass] = address;
+    }
+
+    /**
+     * Encodes a contact into a slot, reusing the given slot if the
+     * record still fits into it.
+     *
+     * @param person The contact.
+     * @param position The insertion position of the contact.
+     * @param oldAddress The slot the contact was in, or
+     *        {@link #NO_ADDRESS} for a new contact.
+     * @return The address of the slot holding the record.
+     */
+    private long write(final Person person, final int position,
+            final long oldAddress) {
+        final ByteBuffer record = ContactRecordCodec.encodeRecord(person);
+        final int sizeClass = sizeClass(record.remaining());
+        long address = oldAddress;
+        if (oldAddress == NO_ADDRESS || sizeClass != sizeClass(
+                ContactRecordCodec.RECORD_PREFIX_SIZE + arenaOf(oldAddress)
+                .getInt(offsetOf(oldAddress) + SLOT_HEADER_SIZE))) {
+            if (oldAddress != NO_ADDRESS) {
+                free(oldAddress);
+            }
+            address = allocate(sizeClass);
+        }
+        final ByteBuffer slot = arenaOf(address).duplicate();
+        slot.position(offsetOf(address));
+        slot.putInt(position);
+        slot.put(record);
+        return address;
+    }
+
+    /**
+     * Decodes the contact held by a slot.
+     *
+     * @param arena The arena of the slot.
+     * @param offset The offset of the slot in the arena.
+     * @return The contact.
+     */
+    private static Person read(final ByteBuffer arena, final int offset) {
+        return decode(arena, offset + SLOT_HEADER_SIZE);
+    }
+
+    /**
+     * Decodes the contact record at the given offset of a buffer.
+     *
+     * @param buffer The buffer holding the record.
+     * @param offset The offset of the record.
+     * @return The contact.
+     */
+    private static Person decode(final ByteBuffer buffer, final int offset) {
+        final ByteBuffer record = buffer.duplicate();
+        record.position(offset);
+        try {
+            return ContactRecordCodec.readRecord(record);
+        } catch (StreamCorruptedException e) {
+            throw new IllegalStateException(e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public synchronized Person get(final String ssn) {
+        final long address = find(ColumnarContactStore.pack(ssn));
+        return address == NO_ADDRESS ? null
+            : read(arenaOf(address), offsetOf(address));
+    }
+
+    @Override
+    public synchronized boolean contains(final String ssn) {
+        return find(ColumnarContactStore.pack(ssn)) != NO_ADDRESS;
+    }
+
+    /**
+     * Adds a contact unless its social security number is already in use.
+     *
+     * @param person The contact to add.
+     * @return {@code true} if added, {@code false} if the SSN already exists.
+     * @throws IllegalArgumentException If the social security number
+     *         is not valid and can't be packed.
+     */
+    @Override
+    public synchronized boolean add(final Person person) {
+        final long key = ColumnarContactStore.pack(person.getSsn());
+        if (key == NO_KEY) {
+            throw new IllegalArgumentException(
+                "Invalid social security number " + person.getSsn()
+            );
+        }
+        if (find(key) != NO_ADDRESS) {
+            return false;
+        }
+        if (orderSize == order.length) {
+            compactOrder();
+        }
+        final int position = orderSize++;
+        order[position] = key;
+        insert(key, write(person, position, NO_ADDRESS));
+        size++;
+        return true;
+    }
+
+    @Override
+    public synchronized Person remove(final String ssn) {
+        final long key = ColumnarContactStore.pack(ssn);
+        final long address = find(key);
+        if (address == NO_ADDRESS) {
+            return null;
+        }
+        final ByteBuffer arena = arenaOf(address);
+        final Person removed = read(arena, offsetOf(address));
+        order[arena.getInt(offsetOf(address))] = NO_KEY;
+        free(address);
+        delete(key);
+        size--;
+        return removed;
+    }
+
+    /**
+     * Deletes every contact. The arenas are kept for the contacts
+     * added next.
+     */
+    @Override
+    public synchronized void clear() {
+        arenaTop = arenas.isEmpty() ? ARENA_SIZE : 0;
+        if (arenas.size() > 1) {
+            arenas.subList(1, arenas.size()).clear();
+        }
+        Arrays.fill(freeSlots, NO_ADDRESS);
+        order = new long[INITIAL_CAPACITY];
+        orderSize = 0;
+        size = 0;
+        tableKeys = new long[INITIAL_CAPACITY * 2];
+        tableAddresses = new long[INITIAL_CAPACITY * 2];
+    }
+
+    @Override
+    public synchronized int size() {
+        return size;
+    }
+
+    @Override
+    public synchronized void updated(final Person person) {
+        final long key = ColumnarContactStore.pack(person.getSsn());
+        final long address = find(key);
+        if (address != NO_ADDRESS) {
+            final int position = arenaOf(address).getInt(offsetOf(address));
+            final long newAddress = write(person, position, address);
+            if (newAddress != address) {
+                delete(key);
+                insert(key, newAddress);
+            }
+        }
+    }
+
+    @Override
+    public Iterator<Person> iterator() {
+        final long[] keys;
+        synchronized (this) {
+            keys = Arrays.copyOf(order, orderSize);
+        }
+        return new Iterator<Person>() {
+            private int position;
+
+            private Person next = advance();
+
+            private Person advance() {
+                synchronized (OffHeapContactStore.this) {
+                    while (position < keys.length) {
+                        final long address = find(keys[position++]);
+                        if (address != NO_ADDRESS) {
+                            return read(arenaOf(address), offsetOf(address));
+                        }
+                    }
+                    return null;
+                }
+            }
+
+            @Override
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            @Override
+            public Person next() {
+                if (next == null) {
+                    throw new NoSuchElementException();
+                }
+                final Person current = next;
+                next = advance();
+                return current;
+            }
+        };
+    }
+
+    /**
+     * Takes a copy of the records of the contacts, also off the heap,
+     * packed one after another in insertion order. Only the records are
+     * copied, not the free slots or the unused ends of the slots, so the
+     * copy takes no more memory than the contacts themselves. Copying
+     * the raw bytes is much cheaper than decoding every contact.
+     *
+     * @return The contacts in insertion order.
+     */
+    @Override
+    public synchronized Collection<Person> snapshot() {
+        final ArrayList<ByteBuffer> copies = new ArrayList<>();
+        ByteBuffer copy = null;
+        final long[] addresses = new long[size];
+        int count = 0;
+        for (int position = 0; position < orderSize; position++) {
+            if (order[position] == NO_KEY) {
+                continue;
+            }
+            final long address = find(order[position]);
+            final ByteBuffer record = arenaOf(address).duplicate();
+            final int start = offsetOf(address) + SLOT_HEADER_SIZE;
+            final int recordSize = ContactRecordCodec.RECORD_PREFIX_SIZE
+                + record.getInt(start);
+            record.position(start).limit(start + recordSize);
+            if (copy == null || copy.remaining() < recordSize) {
+                copy = ByteBuffer.allocateDirect(
+                    Math.max(recordSize, SNAPSHOT_CHUNK_SIZE));
+                copies.add(copy);
+            }
+            addresses[count++] =
+                ((long) (copies.size() - 1) << 32) | copy.position();
+            copy.put(record);
+        }
+        final ByteBuffer[] chunks = copies.toArray(new ByteBuffer[0]);
+        return new AbstractCollection<Person>() {
+            @Override
+            public Iterator<Person> iterator() {
+                return new Iterator<Person>() {
+                    private int next;
+
+                    @Override
+                    public boolean hasNext() {
+                        return next < addresses.length;
+                    }
+
+                    @Override
+                    public Person next() {
+                        if (next >= addresses.length) {
+                            throw new NoSuchElementException();
+                        }
+                        final long address = addresses[next++];
+                        return decode(chunks[(int) (address >>> 32)],
+                            offsetOf(address));
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return addresses.length;
+            }
+        };
+    }
+
+    /**
+     * Drops the insertion positions of deleted contacts, or makes room
+     * for more if there are few of them.
+     */
+    private void compactOrder() {
+        if (orderSize - size < orderSize >> 2) {
+            order = Arrays.copyOf(order, order.length * 2);
+            return;
+        }
+        int live = 0;
+        for (int position = 0; position < orderSize; position++) {
+            final long key = order[position];
+            if (key != NO_KEY) {
+                final long address = find(key);
+                arenaOf(address).putInt(offsetOf(address), live);
+                order[live++] = key;
+            }
+        }
+        Arrays.fill(order, live, orderSize, NO_KEY);
+        orderSize = live;
+    }
+
+    /**
+     * Finds the slot of a packed social security number.
+     *
+     * @param key The packed number.
+     * @return The address, or {@link #NO_ADDRESS} if there is no
+     *         such contact.
+     */
+    private long find(final long key) {
+        if (key == NO_KEY) {
+            return NO_ADDRESS;
+        }
+        final int mask = tableKeys.length - 1;
+        for (int slot = slotOf(key, mask); ; slot = (slot + 1) & mask) {
+            if (tableKeys[slot] == key) {
+                return tableAddresses[slot];
+            }
+            if (tableKeys[slot] == NO_KEY) {
+                return NO_ADDRESS;
+            }
+        }
+    }
+
+    /**
+     * Adds a packed social security number to the hash table,
+     * growing the table to keep it at most half full.
+     *
+     * @param key The packed number.
+     * @param address The address of the slot of the contact.
+     */
+    private void insert(final long key, final long address) {
+        if ((size + 1) * 2 > tableKeys.length) {
+            final long[] oldKeys = tableKeys;
+            final long[] oldAddresses = tableAddresses;
+            tableKeys = new long[oldKeys.length * 2];
+            tableAddresses = new long[oldKeys.length * 2];
+            for (int slot = 0; slot < oldKeys.length; slot++) {
+                if (oldKeys[slot] != NO_KEY) {
+                    put(oldKeys[slot], oldAddresses[slot]);
+                }
+            }
+        }
+        put(key, address);
+    }
+
+    /**
+     * Puts a packed social security number into a free slot of
+     * the hash table.
+     *
+     * @param key The packed number.
+     * @param address The address of the slot of the contact.
+     */
+    private void put(final long key, final long address) {
+        final int mask = tableKeys.length - 1;
+        int slot = slotOf(key, mask);
+        while (tableKeys[slot] != NO_KEY) {
+            slot = (slot + 1) & mask;
+        }
+        tableKeys[slot] = key;
+        tableAddresses[slot] = address;
+    }
+
+    /**
+     * Removes a packed social security number from the hash table,
+     * moving back the keys after it so that lookups never stop early.
+     *
+     * @param key The packed number.
+     */
+    private void delete(final long key) {
+        final int mask = tableKeys.length - 1;
+        int slot = slotOf(key, mask);
+        while (tableKeys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        int next = slot;
+        while (true) {
+            next = (next + 1) & mask;
+            if (tableKeys[next] == NO_KEY) {
+                break;
+            }
+            final int home = slotOf(tableKeys[next], mask);
+            // Move the key back unless its home lies in (slot, next].
+            if (((next - home) & mask) >= ((next - slot) & mask)) {
+                tableKeys[slot] = tableKeys[next];
+                tableAddresses[slot] = tableAddresses[next];
+                slot = next;
+            }
+        }
+        tableKeys[slot] = NO_KEY;
+    }
+
+    /**
+     * Gets the home slot of a packed social security number.
+     *
+     * @param key The packed number.
+     * @param mask The number of slots minus one.
+     * @return The slot.
+     */
+    private static int slotOf(final long key, final int mask) {
+        final long hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+}
@@ -0,0 +1,378 @@
+package contacts;
+
+import java.io.Serializable;
+
+/**
+ * The class Represents a person with contact details including
+ * a Finnish social security number, first name, last name,
+ * phone number, home address, and email address.
+ * It implements the Serializable interface to enable object serialization.
+ * The details are volatile so that a change made by one thread is
+ * seen by every other thread reading the contact without locking.
+ *
+ * The details are only read through the getters, so a contact store
+ * can hand out subclasses that read them from somewhere else.
+ *
+ * Outside this package a person is read-only. The setters are package
+ * private, so a contact in the book is only changed through the
+ * {@link ContactBook}, which also indexes and journals the change.
+ */
+public class Person implements Serializable {
+    /**
+     * The serialization version of the class. It is pinned to the value
+     * the original class had so that legacy contact files can still be read.
+     */
+    private static final long serialVersionUID = -5603820145009965711L;
+
+    /** The Finnish social security number of the person. */
+    private volatile String ssn;
+
+    /** The first name of the person. */
+    private volatile String firstName;
+
+    /** The last name of the person. */
+    private volatile String lastName;
+
+    /** The phone number of the person. */
+    private volatile String phoneNumber;
+
+    /** The home address of the person. */
+    private volatile String address;
+
+    /** The email address of the person. */
+    private volatile String emailAddress;
+
+    /**
+     * Creates an empty person whose details are set one by one
+     * through the validating setters.
+     */
+    Person() {
+    }
+
+    /**
+     * Creates a person with already validated details, for example
+     * when decoding a person from the contacts file. No validation
+     * is done.
+     *
+     * @param ssn The Finnish social security number.
+     * @param firstName The first name.
+     * @param lastName The last name.
+     * @param phoneNumber The phone number.
+     * @param address The home address.
+     * @param emailAddress The email address.
+     */
+    Person(final String ssn, final String firstName, final String lastName,
+            final String phoneNumber, final String address,
+            final String emailAddress) {
+        this.ssn = ssn;
+        this.firstName = firstName;
+        this.lastName = lastName;
+        this.phoneNumber = phoneNumber;
+        this.address = address;
+        this.emailAddress = emailAddress;
+    }
+
+    /**
+     * Sets the Finnish social security number of the person.
+     *
+     * @param ssn The Finnish social security number to set.
+     * @throws IllegalArgumentException If the SSN is invalid.
+     */
+    void setSsn(final String ssn) {
+        validate(ContactField.SSN, ssn);
+        this.ssn = ssn;
+    }
+
+    /**
+     * Gets the Finnish social security number of the person.
+     *
+     * @return The Finnish social security number.
+     */
+    public String getSsn() {
+        return ssn;
+    }
+
+    /**
+     * Sets the first name of the person.
+     *
+     * @param firstName The first name to set.
+     * @throws IllegalArgumentException If thefirst name is invalid.
+     */
+    void setFirstName(final String firstName) {
+        validate(ContactField.FIRST_NAME, firstName);
+        this.firstName = firstName;
+    }
+
+    /**
+     * Gets the first name of the person.
+     *
+     * @return The first name.
+     */
+    public String getFirstName() {
+        return firstName;
+    }
+
+    /**
+     * Sets the last name of the person.
+     *
+     * @param lastName The last name to set.
+     * @throws IllegalArgumentException If the last name is invalid.
+     */
+    void setLastName(final String lastName) {
+        validate(ContactField.LAST_NAME, lastName);
+        this.lastName = lastName;
+    }
+
+    /**
+     * Gets the last name of the person.
+     *
+     * @return The last name.
+     */
+    public String getLastName() {
+        return lastName;
+    }
+
+    /**
+     * Sets the phone number of the person.
+     *
+     * @param phoneNumber The phone number to set.
+     * @throws IllegalArgumentException If the phone number is invalid.
+     */
+    void setPhoneNumber(final String phoneNumber) {
+        validate(ContactField.PHONE_NUMBER, phoneNumber);
+        this.phoneNumber = phoneNumber;
+    }
+
+    /**
+     * Gets the phone number of the person.
+     *
+     * @return The phone number.
+     */
+    public String getPhoneNumber() {
+        return phoneNumber;
+    }
+
+    /**
+     * Sets the home address of the person.
+     *
+     * @param address The home address to set.
+     * @throws IllegalArgumentException If the address is invalid.
+     */
+    void setAddress(final String address) {
+        validate(ContactField.ADDRESS, address);
+        this.address = address;
+    }
+
+    /**
+     * Gets the home address of the person.
+     *
+     * @return The home address.
+     */
+    public String getAddress() {
+        return address;
+    }
+
+    /**
+     * Sets the email address of the person.
+     *
+     * @param emailAddress The email address to set.
+     * @throws IllegalArgumentException If the email address is invalid.
+     */
+    void setEmailAddress(final String emailAddress) {
+        validate(ContactField.EMAIL_ADDRESS, emailAddress);
+        this.emailAddress = emailAddress;
+    }
+
+    /**
+     * Gets the email address of the person.
+     *
+     * @return The email address.
+     */
+    public String getEmailAddress() {
+        return emailAddress;
+    }
+
+    /**
+     * Gets the value of the given detail of the person.
+     *
+     * @param field The detail to get.
+     * @return The value of the detail.
+     */
+    public String getDetail(final ContactField field) {
+        switch (field) {
+            case SSN:
+                return getSsn();
+            case FIRST_NAME:
+                return getFirstName();
+            case LAST_NAME:
+                return getLastName();
+            case PHONE_NUMBER:
+                return getPhoneNumber();
+            case ADDRESS:
+                return getAddress();
+            case EMAIL_ADDRESS:
+                return getEmailAddress();
+            default:
+                throw new IllegalArgumentException("Unknown field " + field);
+        }
+    }
+
+    /**
+     * Sets the given detail of the person with the same
+     * validation as the setter of that detail.
+     *
+     * @param field The detail to set.
+     * @param value The value of the detail.
+     * @throws IllegalArgumentException If the value is invalid
+     *         or the detail is the social security number.
+     */
+    void setDetail(final ContactField field, final String value) {
+        switch (field) {
+            case FIRST_NAME:
+                setFirstName(value);
+                break;
+            case LAST_NAME:
+                setLastName(value);
+                break;
+            case PHONE_NUMBER:
+                setPhoneNumber(value);
+                break;
+            case ADDRESS:
+                setAddress(value);
+                break;
+            case EMAIL_ADDRESS:
+                setEmailAddress(value);
+                break;
+            default:
+                throw new IllegalArgumentException(
+                    "The social security number of a contact can't be changed."
+                );
+        }
+    }
+
+    /**
+     * Checks a detail with the same validation as its setter, without
+     * setting it.
+     *
+     * @param field The detail to check.
+     * @param value The value of the detail.
+     * @throws IllegalArgumentException If the value is invalid.
+     */
+    static void validate(final ContactField field, final String value) {
+        final boolean valid;
+        final String message;
+        if (value == null) {
+            ContactsManager.getMetrics().recordValidationFailure(field);
+            throw new IllegalArgumentException("Missing " + field);
+        }
+        switch (field) {
+            case SSN:
+                valid = ContactsValidation.isValidFinnishSsnFormat(value)
+                    && ContactsValidation.isValidControlCharacter(value);
+                message = "Invalid Finnish social security number.\n"
+                    + "Accepted format: 'ddmmyyA-xxxc', where\n"
+                    + "'dd' is the day, 'mm' the month, 'yy' the year\n"
+                    + "and 'A-' the century ('A' for the 2000s\n"
+                    + "or '-' for the 1900s). 'xxx' is 3 digits between\n"
+                    + "002-899 and 'c' is the control character.\n"
+                    + "Example of a valid social security number:\n"
+                    + "010203A456R (born on 1 February 2003).";
+                break;
+            case FIRST_NAME:
+                valid = ContactsValidation.isValidName(value);
+                message = "Invalid first name. A-ö, spaces and hyphens"
+                    + " are accepted,\nat most "
+                    + ContactsValidation.NAME_MAX_LENGTH + " characters.";
+                break;
+            case LAST_NAME:
+                valid = ContactsValidation.isValidName(value);
+                message = "Invalid last name. A-ö, spaces and hyphens"
+                    + " are accepted,\nat most "
+                    + ContactsValidation.NAME_MAX_LENGTH + " characters.";
+                break;
+            case PHONE_NUMBER:
+                valid = ContactsValidation.isValidPhoneNumber(value);
+                message = "Invalid phone number.\n"
+                    + "country code is optional and no spaces are accepted.\n"
+                    + "Phone number is minimum of 7 and maximum of 20 digits.\n"
+                    + "Examples: +358123456789, 0123456, +123456789123456789.";
+                break;
+            case ADDRESS:
+                valid = ContactsValidation.isValidAddress(value);
+                message = "Invalid address. A-ö, numbers, spaces, hyphens,\n"
+                    + "periods and commas are accepted, at most "
+                    + ContactsValidation.ADDRESS_MAX_LENGTH + " characters.";
+                break;
+            case EMAIL_ADDRESS:
+                valid = ContactsValidation.isValidEmailAddress(value);
+                message = "Invalid email address. Accepted format:\n"
+                    + "username@example.domain or user.name@example.domain,\n"
+                    + "at most " + ContactsValidation.EMAIL_MAX_LENGTH
+                    + " characters.";
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown field " + field);
+        }
+        if (!valid) {
+            ContactsManager.getMetrics().recordValidationFailure(field);
+            throw new IllegalArgumentException(message);
+        }
+    }
+
+    /**
+     * Sets an already validated detail of the person, for example when
+     * replaying a change from the journal. No validation is done.
+     *
+     * @param field The detail to set.
+     * @param value The value of the detail.
+     */
+    void restoreDetail(final ContactField field, final String value) {
+        switch (field) {
+            case SSN:
+                ssn = value;
+                break;
+            case FIRST_NAME:
+                firstName = value;
+                break;
+            case LAST_NAME:
+                lastName = value;
+                break;
+            case PHONE_NUMBER:
+                phoneNumber = value;
+                break;
+            case ADDRESS:
+                address = value;
+                break;
+            case EMAIL_ADDRESS:
+                emailAddress = value;
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown field " + field);
+        }
+    }
+
+    /**
+     * Creates a copy of the person with the details it has now,
+     * which later changes to the person do not affect.
+     *
+     * @return The copy.
+     */
+    Person copy() {
+        return new Person(getSsn(), getFirstName(), getLastName(),
+            getPhoneNumber(), getAddress(), getEmailAddress());
+    }
+
+    /**
+     * Returns a string representation of the person's details.
+     *
+     * @return A formatted string containing the person's details.
+     */
+    public String toString() {
+        return "Social security number: " + getSsn() + "\n"
+                + "First Name: " + getFirstName() + "\n"
+                + "Last Name: " + getLastName() + "\n"
+                + "Phone Number: " + getPhoneNumber() + "\n"
+                + "Home Address: " + getAddress() + "\n"
+                + "Email Address: " + getEmailAddress();
+    }
+}
@@ -0,0 +1,27 @@
+package contacts;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Pins how the century character of an SSN decodes to a birth year.
+ */
+class ContactsBirthDateIndexTest {
+    /** An 'A' is the 2000s. */
+    @Test
+    void centuryAIsThe2000s() {
+        assertTrue(ContactsValidation.isValidControlCharacter("010203A456R"));
+        assertEquals(20030201,
+            ContactsBirthDateIndex.birthDateOf("010203A456R"));
+    }
+
+    /** A '-' is the 1900s. */
+    @Test
+    void centuryHyphenIsThe1900s() {
+        assertTrue(ContactsValidation.isValidControlCharacter("131052-308T"));
+        assertEquals(19521013,
+            ContactsBirthDateIndex.birthDateOf("131052-308T"));
+    }
+}
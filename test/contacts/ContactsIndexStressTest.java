@@ -0,0 +1,520 @@
+package contacts;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Creates, changes and deletes the same few hundred contacts from many
+ * threads at once, while other threads build and read the indexes, and
+ * then checks that the search, detail, sort and birth-date indexes and
+ * the change tracker agree with the store.
+ */
+class ContactsIndexStressTest {
+    /** The number of threads changing the contacts. */
+    private static final int WRITERS = 8;
+
+    /** The number of changes each writer makes. */
+    private static final int CHANGES = 10_000;
+
+    /** The number of different contacts. */
+    private static final int KEYS = 512;
+
+    /** One change in this many deletes every contact. */
+    private static final int CLEAR_ONE_IN = 10_000;
+
+    /** The first names given to the contacts. */
+    private static final String[] FIRST_NAMES = {
+        "Matti", "Maija", "Aino", "Eero", "Ömer", "Anna-Liisa"
+    };
+
+    /** The last names given to the contacts. */
+    private static final String[] LAST_NAMES = {
+        "Virtanen", "Korhonen", "Mäkinen", "Nieminen", "Äijälä"
+    };
+
+    /** The streets of the addresses given to the contacts. */
+    private static final String[] STREETS = {
+        "Mannerheimintie", "Hämeentie", "Aleksanterinkatu"
+    };
+
+    /** The number of different phone numbers and email addresses. */
+    private static final int SHARED_VALUES = 64;
+
+    /** A birth date before every contact was born. */
+    private static final LocalDate FIRST_BIRTH_DATE = LocalDate.of(1900, 1, 1);
+
+    /** A birth date after every contact was born. */
+    private static final LocalDate LAST_BIRTH_DATE = LocalDate.of(2099, 12, 31);
+
+    /** The directory of the journal the changes are replayed from. */
+    @TempDir
+    Path directory;
+
+    @Test
+    void indexesAgreeWithTheStoreAfterConcurrentChanges() throws Exception {
+        final ContactBook book = new ContactBook(new ContactsMetrics());
+        final ContactStore store = book.getStore();
+        final ContactsSearchIndex searchIndex = new ContactsSearchIndex(store);
+        final ContactsDetailIndex detailIndex = new ContactsDetailIndex(store);
+        final ContactsSortIndex sortIndex = new ContactsSortIndex(store);
+        final ContactsBirthDateIndex birthDateIndex =
+            new ContactsBirthDateIndex(store);
+        book.addListener(searchIndex);
+        book.addListener(detailIndex);
+        book.addListener(sortIndex);
+        book.addListener(birthDateIndex);
+
+        final AtomicBoolean writing = new AtomicBoolean(true);
+        final ExecutorService threads =
+            Executors.newFixedThreadPool(WRITERS + 2);
+        try {
+            final List<Future<?>> writers = new ArrayList<>();
+            for (int i = 0; i < WRITERS; i++) {
+                final Random random = new Random(i);
+                writers.add(threads.submit(() -> change(book, random)));
+            }
+            // The indexes are built while the contacts change.
+            final List<Future<?>> readers = new ArrayList<>();
+            for (int i = 0; i < 2; i++) {
+                readers.add(threads.submit(() -> {
+                    while (writing.get()) {
+                        read(book, searchIndex, detailIndex, sortIndex,
+                            birthDateIndex);
+                        Thread.sleep(1);
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> writer : writers) {
+                writer.get();
+            }
+            writing.set(false);
+            for (Future<?> reader : readers) {
+                reader.get();
+            }
+        } finally {
+            threads.shutdownNow();
+        }
+
+        checkSearchIndex(store, searchIndex);
+        checkDetailIndex(store, detailIndex);
+        checkSortIndex(store, sortIndex);
+        checkBirthDateIndex(store, birthDateIndex);
+        checkChangeTracker(book);
+        // The indexes of the book itself, read through the book.
+        assertEquals(sorted(ssnsOf(searchIndex.search("mä", KEYS))),
+            sorted(ssnsOf(book.search("mä", KEYS))));
+        for (ContactSort sort : ContactSort.values()) {
+            assertEquals(inOrder(store, sort), ssnsOf(book.listContacts(
+                sort, person -> true, null, KEYS + 1).getContacts()));
+        }
+        assertEquals(byBirthDate(store), ssnsOf(book.findBornBetween(
+            FIRST_BIRTH_DATE, LAST_BIRTH_DATE, Integer.MAX_VALUE)));
+    }
+
+    @Test
+    void uniqueDetailsStayUniqueAfterConcurrentChanges() throws Exception {
+        final ContactBook book = new ContactBook(new ContactsMetrics());
+        book.requireUnique(ContactField.PHONE_NUMBER, true);
+        book.requireUnique(ContactField.EMAIL_ADDRESS, true);
+        final ExecutorService threads = Executors.newFixedThreadPool(WRITERS);
+        try {
+            final List<Future<?>> writers = new ArrayList<>();
+            for (int i = 0; i < WRITERS; i++) {
+                final Random random = new Random(i);
+                writers.add(threads.submit(() -> change(book, random)));
+            }
+            for (Future<?> writer : writers) {
+                writer.get();
+            }
+        } finally {
+            threads.shutdownNow();
+        }
+
+        for (ContactField field : ContactsDetailIndex.INDEXED_FIELDS) {
+            final Map<String, List<String>> sharing =
+                valuesOf(book.getStore(), field);
+            for (Map.Entry<String, List<String>> value : sharing.entrySet()) {
+                assertEquals(1, value.getValue().size(),
+                    field + " " + value.getKey() + " is shared");
+                assertEquals(value.getValue(), book.findSharing(field,
+                    value.getKey()).stream().map(Person::getSsn)
+                    .collect(Collectors.toList()));
+            }
+            assertEquals(Map.of(), book.findDuplicates(field));
+        }
+    }
+
+    /**
+     * Makes random changes to the contacts, ignoring the ones refused
+     * because a unique detail is taken.
+     *
+     * @param book The book of the contacts.
+     * @param random The random contacts and changes.
+     */
+    private static void change(final ContactBook book, final Random random) {
+        for (int i = 0; i < CHANGES; i++) {
+            final String ssn = ssn(random.nextInt(KEYS));
+            try {
+                switch (random.nextInt(8)) {
+                    case 0:
+                    case 1:
+                        book.createContact(person(ssn, random));
+                        break;
+                    case 2:
+                        book.deleteContact(ssn);
+                        break;
+                    case 3:
+                        book.updateDetail(ssn, ContactField.FIRST_NAME,
+                            pick(FIRST_NAMES, random));
+                        break;
+                    case 4:
+                        book.updateDetail(ssn, ContactField.LAST_NAME,
+                            pick(LAST_NAMES, random));
+                        break;
+                    case 5:
+                        book.updateDetail(ssn, ContactField.PHONE_NUMBER,
+                            phoneNumber(random));
+                        break;
+                    case 6:
+                        book.updateDetails(ssn, Map.of(
+                            ContactField.EMAIL_ADDRESS, emailAddress(random),
+                            ContactField.ADDRESS, address(random)));
+                        break;
+                    default:
+                        if (random.nextInt(CLEAR_ONE_IN / 8) == 0) {
+                            book.deleteAllContacts();
+                        }
+                }
+            } catch (IllegalArgumentException e) {
+                // A unique detail was taken.
+            }
+        }
+    }
+
+    /**
+     * Reads from the indexes, building them on the first read.
+     *
+     * @param book The book of the contacts.
+     * @param searchIndex The search index.
+     * @param detailIndex The detail index.
+     * @param sortIndex The sort index.
+     * @param birthDateIndex The birth-date index.
+     */
+    private static void read(final ContactBook book,
+            final ContactsSearchIndex searchIndex,
+            final ContactsDetailIndex detailIndex,
+            final ContactsSortIndex sortIndex,
+            final ContactsBirthDateIndex birthDateIndex) {
+        book.search("mä", 10);
+        searchIndex.search("vir", 10);
+        detailIndex.duplicates(ContactField.PHONE_NUMBER);
+        for (ContactSort sort : ContactSort.values()) {
+            sortIndex.list(sort, person -> true, null, 10);
+        }
+        birthDateIndex.bornBetween(LocalDate.of(1950, 1, 1),
+            LocalDate.of(2000, 1, 1), 10);
+    }
+
+    /**
+     * Checks that the search index finds what an index built from the
+     * store finds, and has the same words.
+     *
+     * @param store The store of the contacts.
+     * @param index The index kept up to date while the contacts changed.
+     */
+    private static void checkSearchIndex(final ContactStore store,
+            final ContactsSearchIndex index) {
+        final ContactsSearchIndex built = new ContactsSearchIndex(store);
+        final List<String> queries = new ArrayList<>();
+        for (String[] words : new String[][] {
+                FIRST_NAMES, LAST_NAMES, STREETS}) {
+            for (String word : words) {
+                queries.add(word);
+                queries.add(word.substring(0, 2));
+            }
+        }
+        queries.add("040");
+        queries.add("user1");
+        for (String query : queries) {
+            assertEquals(
+                sorted(ssnsOf(built.search(query, Integer.MAX_VALUE))),
+                sorted(ssnsOf(index.search(query, Integer.MAX_VALUE))),
+                query);
+        }
+        assertEquals(built.size(), index.size());
+    }
+
+    /**
+     * Checks that the detail index has the contacts of every value of
+     * the store, and no others.
+     *
+     * @param store The store of the contacts.
+     * @param index The index kept up to date while the contacts changed.
+     */
+    private static void checkDetailIndex(final ContactStore store,
+            final ContactsDetailIndex index) {
+        for (ContactField field : ContactsDetailIndex.INDEXED_FIELDS) {
+            final Map<String, List<String>> values = valuesOf(store, field);
+            final Map<String, List<String>> shared = new HashMap<>();
+            for (Map.Entry<String, List<String>> value : values.entrySet()) {
+                assertEquals(value.getValue(),
+                    sorted(index.find(field, value.getKey())));
+                if (value.getValue().size() > 1) {
+                    shared.put(value.getKey(), value.getValue());
+                }
+            }
+            final Map<String, List<String>> duplicates = new HashMap<>();
+            index.duplicates(field).forEach(
+                (value, ssns) -> duplicates.put(value, sorted(ssns)));
+            assertEquals(shared, duplicates, field.toString());
+        }
+    }
+
+    /**
+     * Checks that the sort index lists every contact of the store once,
+     * in order.
+     *
+     * @param store The store of the contacts.
+     * @param index The index kept up to date while the contacts changed.
+     */
+    private static void checkSortIndex(final ContactStore store,
+            final ContactsSortIndex index) {
+        for (ContactSort sort : ContactSort.values()) {
+            assertEquals(inOrder(store, sort), ssnsOf(index.list(sort,
+                person -> true, null, KEYS + 1).getContacts()),
+                sort.toString());
+        }
+    }
+
+    /**
+     * Checks that the birth-date index has the SSN of every contact of
+     * the store, oldest first, and no others.
+     *
+     * @param store The store of the contacts.
+     * @param index The index kept up to date while the contacts changed.
+     */
+    private static void checkBirthDateIndex(final ContactStore store,
+            final ContactsBirthDateIndex index) {
+        assertEquals(byBirthDate(store), index.bornBetween(FIRST_BIRTH_DATE,
+            LAST_BIRTH_DATE, Integer.MAX_VALUE));
+    }
+
+    /**
+     * Checks that replaying the changes tracked by the book onto an
+     * empty store gives the contacts of the book.
+     *
+     * @param book The book of the contacts.
+     * @throws IOException If the changes cannot be written or read.
+     */
+    private void checkChangeTracker(final ContactBook book)
+            throws IOException {
+        assertFalse(book.getChangeTracker().needsEverything());
+        final Path journal = directory.resolve("changes.journal");
+        try (FileChannel channel = FileChannel.open(journal,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            ContactsJournal.writeEntries(book.takeChanges(null), channel);
+        }
+        final HeapContactStore replayed = new HeapContactStore();
+        ContactsJournal.replay(journal, replayed, null);
+        Files.delete(journal);
+        assertEquals(detailsOf(book.getStore()), detailsOf(replayed));
+    }
+
+    /**
+     * Gets the SSNs of the contacts of a store having each value of
+     * a detail.
+     *
+     * @param store The store of the contacts.
+     * @param field The detail.
+     * @return The sorted SSNs keyed by the indexed form of each value.
+     */
+    private static Map<String, List<String>> valuesOf(
+            final ContactStore store, final ContactField field) {
+        final Map<String, List<String>> values = new HashMap<>();
+        for (Person person : store) {
+            final String key =
+                ContactsDetailIndex.keyOf(field, person.getDetail(field));
+            if (key != null) {
+                values.computeIfAbsent(key, value -> new ArrayList<>())
+                    .add(person.getSsn());
+            }
+        }
+        values.values().forEach(ssns -> ssns.sort(null));
+        return values;
+    }
+
+    /**
+     * Gets the details of every contact of a store.
+     *
+     * @param store The store of the contacts.
+     * @return The details of each contact, keyed by its SSN.
+     */
+    private static Map<String, List<String>> detailsOf(
+            final ContactStore store) {
+        final Map<String, List<String>> details = new TreeMap<>();
+        for (Person person : store) {
+            final List<String> values = new ArrayList<>();
+            for (ContactField field : ContactField.values()) {
+                values.add(person.getDetail(field));
+            }
+            details.put(person.getSsn(), values);
+        }
+        return details;
+    }
+
+    /**
+     * Gets the SSNs of the contacts of a store in order.
+     *
+     * @param store The store of the contacts.
+     * @return The sorted SSNs.
+     */
+    private static List<String> sorted(final ContactStore store) {
+        final TreeSet<String> ssns = new TreeSet<>();
+        store.forEach(person -> ssns.add(person.getSsn()));
+        return new ArrayList<>(ssns);
+    }
+
+    /**
+     * Gets the SSNs of the contacts of a store in a sort order.
+     *
+     * @param store The store of the contacts.
+     * @param sort The order.
+     * @return The SSNs in order.
+     */
+    private static List<String> inOrder(final ContactStore store,
+            final ContactSort sort) {
+        final List<Person> people = new ArrayList<>();
+        store.forEach(people::add);
+        people.sort(Comparator.comparing((Person person) -> sort.key(person)));
+        return ssnsOf(people);
+    }
+
+    /**
+     * Gets the SSNs of the contacts of a store, the oldest first.
+     *
+     * @param store The store of the contacts.
+     * @return The SSNs in the order of the birth dates.
+     */
+    private static List<String> byBirthDate(final ContactStore store) {
+        final List<String> ssns = sorted(store);
+        ssns.sort(Comparator.comparingLong(ContactsBirthDateIndex::keyOf));
+        return ssns;
+    }
+
+    /**
+     * Sorts social security numbers.
+     *
+     * @param ssns The social security numbers.
+     * @return The sorted SSNs.
+     */
+    private static List<String> sorted(final List<String> ssns) {
+        final List<String> sorted = new ArrayList<>(ssns);
+        sorted.sort(null);
+        return sorted;
+    }
+
+    /**
+     * Gets the SSNs of contacts.
+     *
+     * @param people The contacts.
+     * @return The SSNs.
+     */
+    private static List<String> ssnsOf(final List<Person> people) {
+        return people.stream().map(Person::getSsn)
+            .collect(Collectors.toList());
+    }
+
+    /**
+     * Gets the SSN of a contact, born on one of a few hundred days
+     * around the turn of the century.
+     *
+     * @param index The index of the contact.
+     * @return The social security number.
+     */
+    private static String ssn(final int index) {
+        final LocalDate born = LocalDate.of(1990, 1, 1).plusDays(index * 47L);
+        final long date = born.getYear() * 10000L
+            + born.getMonthValue() * 100 + born.getDayOfMonth();
+        return ContactsBirthDateIndex.ssnOf(date * 1000 + 2 + index % 800);
+    }
+
+    /**
+     * Makes a contact with random details.
+     *
+     * @param ssn The social security number of the contact.
+     * @param random The random details.
+     * @return The contact.
+     */
+    private static Person person(final String ssn, final Random random) {
+        return new Person(ssn, pick(FIRST_NAMES, random),
+            pick(LAST_NAMES, random), phoneNumber(random), address(random),
+            emailAddress(random));
+    }
+
+    /**
+     * Picks a random value.
+     *
+     * @param values The values.
+     * @param random The random value.
+     * @return The value.
+     */
+    private static String pick(final String[] values, final Random random) {
+        return values[random.nextInt(values.length)];
+    }
+
+    /**
+     * Makes one of a few phone numbers, in either form.
+     *
+     * @param random The random number.
+     * @return The phone number.
+     */
+    private static String phoneNumber(final Random random) {
+        final int number = 1_000_000 + random.nextInt(SHARED_VALUES);
+        return (random.nextBoolean() ? "+35840" : "040") + number;
+    }
+
+    /**
+     * Makes one of a few email addresses, in any case.
+     *
+     * @param random The random address.
+     * @return The email address.
+     */
+    private static String emailAddress(final Random random) {
+        final String user = "user" + random.nextInt(SHARED_VALUES);
+        return (random.nextBoolean() ? user : user.toUpperCase())
+            + "@example.com";
+    }
+
+    /**
+     * Makes a random address.
+     *
+     * @param random The random address.
+     * @return The address.
+     */
+    private static String address(final Random random) {
+        return pick(STREETS, random) + " " + (random.nextInt(99) + 1);
+    }
+}